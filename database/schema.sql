@@ -23,11 +23,31 @@ CREATE TABLE utilisateurs (
     groupe VARCHAR(50) COMMENT 'Groupe d''appartenance (entreprise, école, etc.)',
     latitude DECIMAL(10, 8) COMMENT 'Latitude du point de départ',
     longitude DECIMAL(11, 8) COMMENT 'Longitude du point de départ',
+    position POINT NOT NULL SRID 4326 DEFAULT (ST_SRID(POINT(0, 0), 4326))
+        COMMENT 'POINT(longitude, latitude), tenu à jour par UtilisateurDAO; (0, 0) tant que non géocodé',
+    region VARCHAR(20) COMMENT 'Région dérivée des coordonnées (TUNIS, SFAX, ...), NULL hors zone',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     
     INDEX idx_groupe (groupe),
-    INDEX idx_horaires (heure_depart, heure_arrivee)
+    INDEX idx_utilisateurs_nom (nom),
+    INDEX idx_horaires (heure_depart, heure_arrivee),
+    SPATIAL INDEX idx_utilisateurs_position (position),
+    INDEX idx_utilisateurs_region (region)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- ============================================
+-- TABLE: geocodage_cache
+-- Cache persistant du géocodage des adresses
+-- (latitude NULL = adresse introuvable)
+-- ============================================
+CREATE TABLE geocodage_cache (
+    adresse_normalisee VARCHAR(255) PRIMARY KEY COMMENT 'Adresse en minuscules, espaces réduits',
+    adresse VARCHAR(255) NOT NULL,
+    latitude DECIMAL(10, 8),
+    longitude DECIMAL(11, 8),
+    fournisseur VARCHAR(50) NOT NULL COMMENT 'Service qui a répondu (nominatim, local)',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- ============================================
@@ -42,12 +62,14 @@ CREATE TABLE vehicules (
     heure_debut_disponibilite TIME,
     heure_fin_disponibilite TIME,
     disponible BOOLEAN DEFAULT TRUE,
+    region VARCHAR(20) COMMENT 'Région du conducteur',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     
     FOREIGN KEY (conducteur_id) REFERENCES utilisateurs(id) ON DELETE CASCADE,
     INDEX idx_conducteur (conducteur_id),
-    INDEX idx_disponibilite (disponible)
+    INDEX idx_disponibilite (disponible),
+    INDEX idx_vehicules_region (region, disponible)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- ============================================
@@ -59,14 +81,16 @@ CREATE TABLE trajets (
     vehicule_id BIGINT NOT NULL,
     distance_totale DECIMAL(10, 2) DEFAULT 0 COMMENT 'Distance en kilomètres',
     temps_total_minutes DECIMAL(10, 2) DEFAULT 0 COMMENT 'Temps en minutes',
-    route_polyline TEXT COMMENT 'Polyline encodée pour Google Maps',
+    route_geometrie MEDIUMBLOB COMMENT 'Tracé par niveau de zoom, binaire compact (varint, Deflate)',
     optimise BOOLEAN DEFAULT FALSE,
+    region VARCHAR(20) COMMENT 'Région du véhicule (un trajet ne traverse jamais deux régions)',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     
     FOREIGN KEY (vehicule_id) REFERENCES vehicules(id) ON DELETE CASCADE,
     INDEX idx_vehicule (vehicule_id),
-    INDEX idx_optimise (optimise)
+    INDEX idx_optimise (optimise),
+    INDEX idx_trajets_region (region)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- ============================================
@@ -159,15 +183,19 @@ FROM (
 -- ============================================
 
 -- Insertion d'utilisateurs tunisiens de test
-INSERT INTO utilisateurs (nom, adresse_depart, adresse_arrivee, heure_depart, heure_arrivee, groupe, latitude, longitude) VALUES
-('Ahmed Ben Salem', 'Avenue Habib Bourguiba, Tunis', 'Rue de la Liberté, La Marsa', '08:00:00', '09:00:00', 'Entreprise TechnoTunis', 36.8065, 10.1815),
-('Fatma Trabelsi', 'Rue de Marseille, Tunis', 'Avenue Mohamed V, Ariana', '08:15:00', '09:15:00', 'Entreprise TechnoTunis', 36.8189, 10.1658),
-('Mohamed Karoui', 'Boulevard du 7 Novembre, Sfax', 'Avenue Ali Belhouane, Sfax', '08:30:00', '09:30:00', 'Banque Centrale', 34.7406, 10.7603),
-('Leila Jebali', 'Avenue de la République, Sousse', 'Boulevard Yahia Ibn Omar, Sousse', '07:45:00', '08:45:00', 'Entreprise TechnoTunis', 35.8256, 10.6369),
-('Karim Hamdi', 'Rue de la Kasbah, Tunis', 'Avenue Kheireddine Pacha, Le Bardo', '08:00:00', '09:00:00', 'Ministère', 36.8081, 10.1771),
-('Sarra Meddeb', 'Rue Ibn Khaldoun, Tunis', 'Centre Urbain Nord, Tunis', '08:20:00', '09:20:00', 'Banque Centrale', 36.8008, 10.1647),
-('Youssef Gharbi', 'Avenue Farhat Hached, Bizerte', 'Port de Bizerte, Bizerte', '07:30:00', '08:30:00', 'Port Authority', 37.2744, 9.8739),
-('Amira Mansouri', 'Rue de Palestine, Tunis', 'Lac 2, Tunis', '08:10:00', '09:10:00', 'Entreprise TechnoTunis', 36.8129, 10.1817);
+INSERT INTO utilisateurs (nom, adresse_depart, adresse_arrivee, heure_depart, heure_arrivee, groupe, latitude, longitude, region) VALUES
+('Ahmed Ben Salem', 'Avenue Habib Bourguiba, Tunis', 'Rue de la Liberté, La Marsa', '08:00:00', '09:00:00', 'Entreprise TechnoTunis', 36.8065, 10.1815, 'TUNIS'),
+('Fatma Trabelsi', 'Rue de Marseille, Tunis', 'Avenue Mohamed V, Ariana', '08:15:00', '09:15:00', 'Entreprise TechnoTunis', 36.8189, 10.1658, 'TUNIS'),
+('Mohamed Karoui', 'Boulevard du 7 Novembre, Sfax', 'Avenue Ali Belhouane, Sfax', '08:30:00', '09:30:00', 'Banque Centrale', 34.7406, 10.7603, 'SFAX'),
+('Leila Jebali', 'Avenue de la République, Sousse', 'Boulevard Yahia Ibn Omar, Sousse', '07:45:00', '08:45:00', 'Entreprise TechnoTunis', 35.8256, 10.6369, 'SOUSSE'),
+('Karim Hamdi', 'Rue de la Kasbah, Tunis', 'Avenue Kheireddine Pacha, Le Bardo', '08:00:00', '09:00:00', 'Ministère', 36.8081, 10.1771, 'TUNIS'),
+('Sarra Meddeb', 'Rue Ibn Khaldoun, Tunis', 'Centre Urbain Nord, Tunis', '08:20:00', '09:20:00', 'Banque Centrale', 36.8008, 10.1647, 'TUNIS'),
+('Youssef Gharbi', 'Avenue Farhat Hached, Bizerte', 'Port de Bizerte, Bizerte', '07:30:00', '08:30:00', 'Port Authority', 37.2744, 9.8739, 'BIZERTE'),
+('Amira Mansouri', 'Rue de Palestine, Tunis', 'Lac 2, Tunis', '08:10:00', '09:10:00', 'Entreprise TechnoTunis', 36.8129, 10.1817, 'TUNIS');
+
+-- Colonne spatiale des utilisateurs insérés ci-dessus
+UPDATE utilisateurs SET position = ST_SRID(POINT(longitude, latitude), 4326)
+WHERE latitude IS NOT NULL AND longitude IS NOT NULL;
 
 -- Insertion de véhicules tunisiens de test
 INSERT INTO vehicules (conducteur_id, immatriculation, capacite, heure_debut_disponibilite, heure_fin_disponibilite, disponible) VALUES
@@ -176,11 +204,17 @@ INSERT INTO vehicules (conducteur_id, immatriculation, capacite, heure_debut_dis
 (5, 'TUN-9012-789', 5, '07:00:00', '11:00:00', TRUE),
 (7, 'TUN-3456-234', 4, '07:00:00', '10:00:00', TRUE);
 
+-- Région des véhicules: celle de leur conducteur
+UPDATE vehicules v JOIN utilisateurs u ON v.conducteur_id = u.id SET v.region = u.region;
+
 -- Insertion de trajets de test
 INSERT INTO trajets (vehicule_id, distance_totale, temps_total_minutes, optimise) VALUES
 (1, 12.5, 35, FALSE),
 (2, 15.3, 42, FALSE);
 
+-- Région des trajets: celle de leur véhicule
+UPDATE trajets t JOIN vehicules v ON t.vehicule_id = v.id SET t.region = v.region;
+
 -- Association utilisateurs - trajets
 INSERT INTO trajet_utilisateurs (trajet_id, utilisateur_id, ordre_prise_en_charge) VALUES
 (1, 2, 1),
@@ -205,7 +239,9 @@ CREATE PROCEDURE sp_utilisateurs_compatibles(
 BEGIN
     SELECT u.*
     FROM utilisateurs u
-    WHERE NOT EXISTS (
+    -- <=> : un véhicule hors zone (région NULL) est compatible avec les utilisateurs hors zone
+    WHERE u.region <=> (SELECT region FROM vehicules WHERE id = p_vehicule_id)
+    AND NOT EXISTS (
         SELECT 1 
         FROM trajet_utilisateurs tu
         JOIN trajets t ON tu.trajet_id = t.id
@@ -278,6 +314,43 @@ DELIMITER ;
 CREATE INDEX idx_utilisateurs_adresses ON utilisateurs(adresse_depart(50), adresse_arrivee(50));
 CREATE INDEX idx_trajets_metrics ON trajets(distance_totale, temps_total_minutes);
 
+-- Migration d'une base existante (MySQL 8.0.13+) vers la colonne spatiale:
+-- ALTER TABLE utilisateurs
+--     ADD COLUMN position POINT NOT NULL SRID 4326 DEFAULT (ST_SRID(POINT(0, 0), 4326)) AFTER longitude;
+-- UPDATE utilisateurs SET position = ST_SRID(POINT(longitude, latitude), 4326)
+-- WHERE latitude IS NOT NULL AND longitude IS NOT NULL;
+-- ALTER TABLE utilisateurs ADD SPATIAL INDEX idx_utilisateurs_position (position);
+
+-- Migration d'une base existante vers la liste paginée et la recherche par nom:
+-- ALTER TABLE utilisateurs ADD INDEX idx_utilisateurs_nom (nom);
+
+-- Migration d'une base existante vers le cache de géocodage:
+-- CREATE TABLE IF NOT EXISTS geocodage_cache (
+--     adresse_normalisee VARCHAR(255) PRIMARY KEY COMMENT 'Adresse en minuscules, espaces réduits',
+--     adresse VARCHAR(255) NOT NULL,
+--     latitude DECIMAL(10, 8),
+--     longitude DECIMAL(11, 8),
+--     fournisseur VARCHAR(50) NOT NULL COMMENT 'Service qui a répondu (nominatim, local)',
+--     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+-- ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- Migration d'une base existante vers le tracé binaire. Les anciennes
+-- polylignes ne sont pas converties: route_geometrie reste NULL (trajet sans
+-- tracé) jusqu'à ce que les trajets concernés soient réoptimisés, ce qui
+-- recalcule et enregistre leur tracé:
+-- ALTER TABLE trajets ADD COLUMN route_geometrie MEDIUMBLOB
+--     COMMENT 'Tracé par niveau de zoom, binaire compact (varint, Deflate)' AFTER temps_total_minutes;
+-- ALTER TABLE trajets DROP COLUMN route_polyline;
+
+-- Migration d'une base existante vers les régions (renseignées au démarrage
+-- de l'application pour les lignes où region est NULL, voir RegionListener):
+-- ALTER TABLE utilisateurs ADD COLUMN region VARCHAR(20) AFTER position,
+--     ADD INDEX idx_utilisateurs_region (region);
+-- ALTER TABLE vehicules ADD COLUMN region VARCHAR(20) AFTER disponible,
+--     ADD INDEX idx_vehicules_region (region, disponible);
+-- ALTER TABLE trajets ADD COLUMN region VARCHAR(20) AFTER optimise,
+--     ADD INDEX idx_trajets_region (region);
+
 -- ============================================
 -- FIN DU SCRIPT
 -- ============================================
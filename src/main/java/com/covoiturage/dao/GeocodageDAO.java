@@ -0,0 +1,125 @@
+package com.covoiturage.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.models.ResultatGeocodage;
+import com.covoiturage.utils.DatabaseManager;
+
+/**
+ * DAO (Data Access Object) pour le cache persistant du géocodage.
+ *
+ * Gère la table geocodage_cache, indexée par adresse normalisée. Les adresses
+ * introuvables y sont aussi enregistrées, mais ne sont plus servies après
+ * {@link #DUREE_VIE_INTROUVABLE_JOURS} jours pour pouvoir être retentées.
+ */
+public class GeocodageDAO {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeocodageDAO.class);
+
+    /** Durée pendant laquelle une adresse introuvable n'est pas redemandée. */
+    public static final int DUREE_VIE_INTROUVABLE_JOURS = 7;
+
+    private final DatabaseManager dbManager;
+
+    public GeocodageDAO() {
+        this.dbManager = DatabaseManager.getInstance();
+    }
+
+    /**
+     * Cherche une adresse dans le cache.
+     *
+     * @param adresseNormalisee Adresse normalisée (voir GeoUtils.normaliserAdresse)
+     * @return Optional contenant le résultat s'il est en cache et toujours valide
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public Optional<ResultatGeocodage> findByAdresse(String adresseNormalisee) throws SQLException {
+        String sql = "SELECT * FROM geocodage_cache WHERE adresse_normalisee = ? " +
+                     "AND (latitude IS NOT NULL OR created_at > NOW() - INTERVAL " +
+                     DUREE_VIE_INTROUVABLE_JOURS + " DAY)";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, adresseNormalisee);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(mapResultSetToResultat(rs));
+                }
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Enregistre (ou remplace) le résultat du géocodage d'une adresse.
+     *
+     * @param resultat Le résultat à enregistrer
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public void save(ResultatGeocodage resultat) throws SQLException {
+        String sql = "INSERT INTO geocodage_cache (adresse_normalisee, adresse, latitude, longitude, fournisseur) " +
+                     "VALUES (?, ?, ?, ?, ?) " +
+                     "ON DUPLICATE KEY UPDATE adresse = VALUES(adresse), latitude = VALUES(latitude), " +
+                     "longitude = VALUES(longitude), fournisseur = VALUES(fournisseur), " +
+                     "created_at = CURRENT_TIMESTAMP";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, resultat.getAdresseNormalisee());
+            pstmt.setString(2, resultat.getAdresse());
+
+            if (resultat.getLatitude() != null) {
+                pstmt.setDouble(3, resultat.getLatitude());
+            } else {
+                pstmt.setNull(3, Types.DECIMAL);
+            }
+
+            if (resultat.getLongitude() != null) {
+                pstmt.setDouble(4, resultat.getLongitude());
+            } else {
+                pstmt.setNull(4, Types.DECIMAL);
+            }
+
+            pstmt.setString(5, resultat.getFournisseur());
+            pstmt.executeUpdate();
+            logger.debug("Géocodage mis en cache: {}", resultat);
+        }
+    }
+
+    /**
+     * Mappe un ResultSet vers un objet ResultatGeocodage.
+     *
+     * @param rs Le ResultSet
+     * @return Le résultat créé depuis le ResultSet
+     * @throws SQLException En cas d'erreur SQL
+     */
+    private ResultatGeocodage mapResultSetToResultat(ResultSet rs) throws SQLException {
+        ResultatGeocodage resultat = new ResultatGeocodage();
+        resultat.setAdresseNormalisee(rs.getString("adresse_normalisee"));
+        resultat.setAdresse(rs.getString("adresse"));
+        resultat.setFournisseur(rs.getString("fournisseur"));
+
+        Double latitude = rs.getDouble("latitude");
+        if (!rs.wasNull()) {
+            resultat.setLatitude(latitude);
+        }
+
+        Double longitude = rs.getDouble("longitude");
+        if (!rs.wasNull()) {
+            resultat.setLongitude(longitude);
+        }
+
+        return resultat;
+    }
+}
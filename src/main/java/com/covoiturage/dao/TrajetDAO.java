@@ -1,7 +1,9 @@
 package com.covoiturage.dao;
 
+import com.covoiturage.models.Region;
 import com.covoiturage.models.Trajet;
 import com.covoiturage.models.Utilisateur;
+import com.covoiturage.spatial.IndexAppariement;
 import com.covoiturage.utils.DatabaseManager;
 
 import org.slf4j.Logger;
@@ -9,7 +11,10 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -17,10 +22,21 @@ import java.util.Optional;
  * 
  * Gère toutes les opérations CRUD sur la table trajets
  * et la table de liaison trajet_utilisateurs.
+ * 
+ * Le tracé (route_geometrie, binaire) n'est lu que par findById ou sur demande
+ * explicite des requêtes de liste: les listes et statistiques n'en ont pas besoin.
+ * 
+ * La région d'un trajet est celle de son véhicule; findByRegion ne lit que les
+ * trajets de la région (index idx_trajets_region).
  */
 public class TrajetDAO {
     
     private static final Logger logger = LoggerFactory.getLogger(TrajetDAO.class);
+    
+    /** Colonnes lues par les requêtes de liste qui ne demandent pas le tracé. */
+    private static final String COLONNES_SANS_GEOMETRIE =
+        "id, vehicule_id, distance_totale, temps_total_minutes, optimise, region";
+    
     private final DatabaseManager dbManager;
     private final UtilisateurDAO utilisateurDAO;
     
@@ -38,7 +54,8 @@ public class TrajetDAO {
      */
     public Trajet create(Trajet trajet) throws SQLException {
         String sql = "INSERT INTO trajets (vehicule_id, distance_totale, temps_total_minutes, " +
-                     "route_polyline, optimise) VALUES (?, ?, ?, ?, ?)";
+                     "route_geometrie, optimise, region) " +
+                     "VALUES (?, ?, ?, ?, ?, COALESCE(?, (SELECT region FROM vehicules WHERE id = ?)))";
         
         Connection conn = null;
         try {
@@ -49,8 +66,10 @@ public class TrajetDAO {
                 pstmt.setLong(1, trajet.getVehiculeId());
                 pstmt.setDouble(2, trajet.getDistanceTotale());
                 pstmt.setDouble(3, trajet.getTempsTotalMinutes());
-                pstmt.setString(4, trajet.getRoutePolyline());
+                definirGeometrie(pstmt, 4, trajet);
                 pstmt.setBoolean(5, trajet.isOptimise());
+                UtilisateurDAO.definirRegion(pstmt, 6, trajet.getRegion());
+                pstmt.setLong(7, trajet.getVehiculeId());
                 
                 int affectedRows = pstmt.executeUpdate();
                 
@@ -72,6 +91,7 @@ public class TrajetDAO {
             }
             
             conn.commit();
+            IndexAppariement.getInstance().marquer(trajet.getVehiculeId());
             return trajet;
             
         } catch (SQLException e) {
@@ -103,7 +123,19 @@ public class TrajetDAO {
      * @throws SQLException En cas d'erreur SQL
      */
     public Optional<Trajet> findById(Long id) throws SQLException {
-        String sql = "SELECT * FROM trajets WHERE id = ?";
+        return findById(id, true);
+    }
+    
+    /**
+     * Récupère un trajet par son ID avec ses utilisateurs.
+     * 
+     * @param id L'ID du trajet
+     * @param avecGeometrie true pour lire aussi le tracé
+     * @return Optional contenant le trajet s'il existe
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public Optional<Trajet> findById(Long id, boolean avecGeometrie) throws SQLException {
+        String sql = "SELECT " + colonnes(avecGeometrie) + " FROM trajets WHERE id = ?";
         
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -112,7 +144,7 @@ public class TrajetDAO {
             
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    Trajet trajet = mapResultSetToTrajet(rs);
+                    Trajet trajet = mapResultSetToTrajet(rs, avecGeometrie);
                     chargerUtilisateurs(trajet);
                     return Optional.of(trajet);
                 }
@@ -123,21 +155,32 @@ public class TrajetDAO {
     }
     
     /**
-     * Récupère tous les trajets avec leurs utilisateurs.
+     * Récupère tous les trajets avec leurs utilisateurs, sans leur tracé.
      * 
      * @return Liste de tous les trajets
      * @throws SQLException En cas d'erreur SQL
      */
     public List<Trajet> findAll() throws SQLException {
+        return findAll(false);
+    }
+    
+    /**
+     * Récupère tous les trajets avec leurs utilisateurs.
+     * 
+     * @param avecGeometrie true pour lire aussi le tracé de chaque trajet
+     * @return Liste de tous les trajets
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public List<Trajet> findAll(boolean avecGeometrie) throws SQLException {
         List<Trajet> trajets = new ArrayList<>();
-        String sql = "SELECT * FROM trajets ORDER BY id DESC";
+        String sql = "SELECT " + colonnes(avecGeometrie) + " FROM trajets ORDER BY id DESC";
         
         try (Connection conn = dbManager.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
             while (rs.next()) {
-                Trajet trajet = mapResultSetToTrajet(rs);
+                Trajet trajet = mapResultSetToTrajet(rs, avecGeometrie);
                 chargerUtilisateurs(trajet);
                 trajets.add(trajet);
             }
@@ -148,15 +191,27 @@ public class TrajetDAO {
     }
     
     /**
-     * Récupère les trajets par véhicule.
+     * Récupère les trajets par véhicule, sans leur tracé.
      * 
      * @param vehiculeId L'ID du véhicule
      * @return Liste des trajets du véhicule
      * @throws SQLException En cas d'erreur SQL
      */
     public List<Trajet> findByVehicule(Long vehiculeId) throws SQLException {
+        return findByVehicule(vehiculeId, false);
+    }
+    
+    /**
+     * Récupère les trajets par véhicule.
+     * 
+     * @param vehiculeId L'ID du véhicule
+     * @param avecGeometrie true pour lire aussi le tracé de chaque trajet
+     * @return Liste des trajets du véhicule
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public List<Trajet> findByVehicule(Long vehiculeId, boolean avecGeometrie) throws SQLException {
         List<Trajet> trajets = new ArrayList<>();
-        String sql = "SELECT * FROM trajets WHERE vehicule_id = ? ORDER BY id DESC";
+        String sql = "SELECT " + colonnes(avecGeometrie) + " FROM trajets WHERE vehicule_id = ? ORDER BY id DESC";
         
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -165,7 +220,7 @@ public class TrajetDAO {
             
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    Trajet trajet = mapResultSetToTrajet(rs);
+                    Trajet trajet = mapResultSetToTrajet(rs, avecGeometrie);
                     chargerUtilisateurs(trajet);
                     trajets.add(trajet);
                 }
@@ -175,6 +230,146 @@ public class TrajetDAO {
         return trajets;
     }
     
+    /**
+     * Récupère les trajets d'une région, sans leur tracé.
+     * 
+     * @param region La région recherchée
+     * @return Liste des trajets de la région
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public List<Trajet> findByRegion(Region region) throws SQLException {
+        return findByRegion(region, false);
+    }
+    
+    /**
+     * Récupère les trajets d'une région.
+     * 
+     * @param region La région recherchée
+     * @param avecGeometrie true pour lire aussi le tracé de chaque trajet
+     * @return Liste des trajets de la région
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public List<Trajet> findByRegion(Region region, boolean avecGeometrie) throws SQLException {
+        List<Trajet> trajets = new ArrayList<>();
+        String sql = "SELECT " + colonnes(avecGeometrie) + " FROM trajets WHERE region = ? ORDER BY id DESC";
+        
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, region.name());
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Trajet trajet = mapResultSetToTrajet(rs, avecGeometrie);
+                    chargerUtilisateurs(trajet);
+                    trajets.add(trajet);
+                }
+            }
+        }
+        
+        logger.info("Récupération de {} trajets de la région {}", trajets.size(), region);
+        return trajets;
+    }
+    
+    /**
+     * Compte les trajets et cumule leurs distances par région, en une requête
+     * groupée sur l'index de la région.
+     * 
+     * @return Par nom de région (HORS_ZONE pour les trajets sans région):
+     *         {trajets, distanceTotale}
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public Map<String, Map<String, Object>> compterParRegion() throws SQLException {
+        Map<String, Map<String, Object>> parRegion = new LinkedHashMap<>();
+        String sql = "SELECT region, COUNT(*) AS nombre, COALESCE(SUM(distance_totale), 0) AS distance " +
+                     "FROM trajets GROUP BY region ORDER BY region";
+        
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                String region = rs.getString("region");
+                Map<String, Object> compteurs = new LinkedHashMap<>();
+                compteurs.put("trajets", rs.getLong("nombre"));
+                compteurs.put("distanceTotale", rs.getDouble("distance"));
+                parRegion.put(region != null ? region : "HORS_ZONE", compteurs);
+            }
+        }
+        
+        return parRegion;
+    }
+    
+    /**
+     * Récupère le dernier trajet (le plus récent) d'un véhicule, sans son tracé.
+     *
+     * @param vehiculeId L'ID du véhicule
+     * @return Optional contenant le trajet si le véhicule en a un
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public Optional<Trajet> findDernierParVehicule(Long vehiculeId) throws SQLException {
+        String sql = "SELECT " + COLONNES_SANS_GEOMETRIE + " FROM trajets WHERE vehicule_id = ? " +
+                     "ORDER BY id DESC LIMIT 1";
+    
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    
+            pstmt.setLong(1, vehiculeId);
+    
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    Trajet trajet = mapResultSetToTrajet(rs, false);
+                    chargerUtilisateurs(trajet);
+                    return Optional.of(trajet);
+                }
+            }
+        }
+    
+        return Optional.empty();
+    }
+    
+    /**
+     * Récupère le dernier trajet de chaque véhicule, sans tracé, en deux
+     * requêtes (trajets puis utilisateurs) quel que soit le nombre de véhicules.
+     *
+     * @return Par ID de véhicule, son trajet le plus récent avec ses utilisateurs
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public Map<Long, Trajet> findDerniersParVehicule() throws SQLException {
+        String derniers = "SELECT MAX(id) FROM trajets GROUP BY vehicule_id";
+        String sqlTrajets = "SELECT " + COLONNES_SANS_GEOMETRIE + " FROM trajets WHERE id IN (" + derniers + ")";
+        String sqlUtilisateurs = "SELECT tu.trajet_id, u.* FROM trajet_utilisateurs tu " +
+                                 "JOIN utilisateurs u ON u.id = tu.utilisateur_id " +
+                                 "WHERE tu.trajet_id IN (" + derniers + ") " +
+                                 "ORDER BY tu.trajet_id, tu.ordre_prise_en_charge";
+        Map<Long, Trajet> parVehicule = new LinkedHashMap<>();
+        Map<Long, Trajet> parId = new HashMap<>();
+    
+        try (Connection conn = dbManager.getConnection()) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sqlTrajets)) {
+                while (rs.next()) {
+                    Trajet trajet = mapResultSetToTrajet(rs, false);
+                    trajet.setUtilisateurs(new ArrayList<>());
+                    parVehicule.put(trajet.getVehiculeId(), trajet);
+                    parId.put(trajet.getId(), trajet);
+                }
+            }
+    
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sqlUtilisateurs)) {
+                while (rs.next()) {
+                    Trajet trajet = parId.get(rs.getLong("trajet_id"));
+                    if (trajet != null) {
+                        trajet.getUtilisateurs().add(mapResultSetToUtilisateur(rs));
+                    }
+                }
+            }
+        }
+    
+        return parVehicule;
+    }
+    
     /**
      * Met à jour un trajet existant.
      * 
@@ -184,7 +379,8 @@ public class TrajetDAO {
      */
     public boolean update(Trajet trajet) throws SQLException {
         String sql = "UPDATE trajets SET vehicule_id = ?, distance_totale = ?, " +
-                     "temps_total_minutes = ?, route_polyline = ?, optimise = ? WHERE id = ?";
+                     "temps_total_minutes = ?, route_geometrie = ?, optimise = ?, " +
+                     "region = COALESCE(?, (SELECT region FROM vehicules WHERE id = ?)) WHERE id = ?";
         
         Connection conn = null;
         try {
@@ -195,9 +391,11 @@ public class TrajetDAO {
                 pstmt.setLong(1, trajet.getVehiculeId());
                 pstmt.setDouble(2, trajet.getDistanceTotale());
                 pstmt.setDouble(3, trajet.getTempsTotalMinutes());
-                pstmt.setString(4, trajet.getRoutePolyline());
+                definirGeometrie(pstmt, 4, trajet);
                 pstmt.setBoolean(5, trajet.isOptimise());
-                pstmt.setLong(6, trajet.getId());
+                UtilisateurDAO.definirRegion(pstmt, 6, trajet.getRegion());
+                pstmt.setLong(7, trajet.getVehiculeId());
+                pstmt.setLong(8, trajet.getId());
                 
                 int affectedRows = pstmt.executeUpdate();
                 
@@ -211,6 +409,9 @@ public class TrajetDAO {
                 
                 conn.commit();
                 logger.info("Trajet {} mis à jour", trajet.getId());
+                // L'ancien véhicule du trajet, s'il a changé, et le nouveau
+                IndexAppariement.getInstance().marquerTrajet(trajet.getId());
+                IndexAppariement.getInstance().marquer(trajet.getVehiculeId());
                 return affectedRows > 0;
             }
         } catch (SQLException e) {
@@ -252,6 +453,7 @@ public class TrajetDAO {
             
             if (affectedRows > 0) {
                 logger.info("Trajet {} supprimé", id);
+                IndexAppariement.getInstance().marquerTrajet(id);
                 return true;
             }
             
@@ -324,21 +526,44 @@ public class TrajetDAO {
         }
     }
     
+    /**
+     * Liste des colonnes à lire selon que le tracé est demandé ou non.
+     */
+    private static String colonnes(boolean avecGeometrie) {
+        return avecGeometrie ? COLONNES_SANS_GEOMETRIE + ", route_geometrie" : COLONNES_SANS_GEOMETRIE;
+    }
+    
+    /**
+     * Renseigne le paramètre du tracé binaire d'un trajet (NULL s'il n'en a pas).
+     */
+    private void definirGeometrie(PreparedStatement pstmt, int index, Trajet trajet) throws SQLException {
+        if (trajet.getRouteGeometrie() != null) {
+            pstmt.setBytes(index, trajet.getRouteGeometrie());
+        } else {
+            pstmt.setNull(index, Types.BLOB);
+        }
+    }
+    
     /**
      * Mappe un ResultSet vers un objet Trajet.
      * 
      * @param rs Le ResultSet
+     * @param avecGeometrie true si la colonne route_geometrie a été sélectionnée
      * @return Le trajet créé depuis le ResultSet
      * @throws SQLException En cas d'erreur SQL
      */
-    private Trajet mapResultSetToTrajet(ResultSet rs) throws SQLException {
+    private Trajet mapResultSetToTrajet(ResultSet rs, boolean avecGeometrie) throws SQLException {
         Trajet trajet = new Trajet();
         trajet.setId(rs.getLong("id"));
         trajet.setVehiculeId(rs.getLong("vehicule_id"));
         trajet.setDistanceTotale(rs.getDouble("distance_totale"));
         trajet.setTempsTotalMinutes(rs.getDouble("temps_total_minutes"));
-        trajet.setRoutePolyline(rs.getString("route_polyline"));
+        if (avecGeometrie) {
+            // Octets bruts: le décodage n'a lieu que si le tracé est demandé
+            trajet.setRouteGeometrie(rs.getBytes("route_geometrie"));
+        }
         trajet.setOptimise(rs.getBoolean("optimise"));
+        trajet.setRegion(Region.depuisCode(rs.getString("region")));
         
         return trajet;
     }
@@ -370,6 +595,18 @@ public class TrajetDAO {
         utilisateur.setPreferences(rs.getString("preferences"));
         utilisateur.setGroupe(rs.getString("groupe"));
         
+        Double latitude = rs.getDouble("latitude");
+        if (!rs.wasNull()) {
+            utilisateur.setLatitude(latitude);
+        }
+        
+        Double longitude = rs.getDouble("longitude");
+        if (!rs.wasNull()) {
+            utilisateur.setLongitude(longitude);
+        }
+        
+        utilisateur.setRegion(Region.depuisCode(rs.getString("region")));
+        
         return utilisateur;
     }
 }
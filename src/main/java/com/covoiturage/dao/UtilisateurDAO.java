@@ -9,24 +9,58 @@ import java.sql.Time;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.covoiturage.models.Region;
 import com.covoiturage.models.Utilisateur;
+import com.covoiturage.models.Vehicule;
+import com.covoiturage.optimization.MagasinDistances;
+import com.covoiturage.routage.CacheDistancesPaires;
+import com.covoiturage.spatial.IndexAppariement;
+import com.covoiturage.spatial.IndexDisponibilites;
+import com.covoiturage.spatial.IndexGrappes;
+import com.covoiturage.spatial.IndexUtilisateurs;
 import com.covoiturage.utils.DatabaseManager;
+import com.covoiturage.utils.GeoUtils;
 
 /**
  * DAO (Data Access Object) pour l'entité Utilisateur.
  * 
  * Gère toutes les opérations CRUD sur la table utilisateurs.
+ * Chaque écriture est répercutée sur les index spatiaux en mémoire
+ * (IndexUtilisateurs, IndexGrappes) et sur la colonne spatiale position,
+ * sur laquelle reposent findWithinRadius et findNearest.
+ * 
+ * La région (models.Region) est dérivée des coordonnées à chaque écriture et
+ * recopiée sur les véhicules dont l'utilisateur est le conducteur.
  */
 public class UtilisateurDAO {
     
     private static final Logger logger = LoggerFactory.getLogger(UtilisateurDAO.class);
     private final DatabaseManager dbManager;
     
+    /** SRID WGS 84 de la colonne position. */
+    private static final int SRID_WGS84 = 4326;
+    
+    /**
+     * Valeur de la colonne position à partir de (longitude, latitude).
+     * Un utilisateur non géocodé reçoit le point (0, 0): la colonne est NOT NULL
+     * (exigé par l'index spatial) et les recherches filtrent sur latitude IS NOT NULL.
+     */
+    private static final String POSITION_SQL =
+        "ST_SRID(POINT(COALESCE(?, 0), COALESCE(?, 0)), " + SRID_WGS84 + ")";
+    
+    /** Premier rayon essayé par findNearest, multiplié à chaque tentative. */
+    static final double RAYON_INITIAL_KM = 1.0;
+    private static final double FACTEUR_RAYON = 4.0;
+    /** Au-delà, findNearest trie la table entière (données très clairsemées). */
+    static final double RAYON_MAX_KM = 256.0;
+    
     public UtilisateurDAO() {
         this.dbManager = DatabaseManager.getInstance();
     }
@@ -40,8 +74,8 @@ public class UtilisateurDAO {
      */
     public Utilisateur create(Utilisateur utilisateur) throws SQLException {
         String sql = "INSERT INTO utilisateurs (nom, adresse_depart, adresse_arrivee, " +
-                     "heure_depart, heure_arrivee, preferences, groupe, latitude, longitude) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                     "heure_depart, heure_arrivee, preferences, groupe, latitude, longitude, position, region) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, " + POSITION_SQL + ", ?)";
         
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
@@ -54,17 +88,12 @@ public class UtilisateurDAO {
             pstmt.setString(6, utilisateur.getPreferences());
             pstmt.setString(7, utilisateur.getGroupe());
             
-            if (utilisateur.getLatitude() != null) {
-                pstmt.setDouble(8, utilisateur.getLatitude());
-            } else {
-                pstmt.setNull(8, Types.DECIMAL);
-            }
-            
-            if (utilisateur.getLongitude() != null) {
-                pstmt.setDouble(9, utilisateur.getLongitude());
-            } else {
-                pstmt.setNull(9, Types.DECIMAL);
-            }
+            definirCoordonnee(pstmt, 8, utilisateur.getLatitude());
+            definirCoordonnee(pstmt, 9, utilisateur.getLongitude());
+            definirCoordonnee(pstmt, 10, utilisateur.getLongitude());
+            definirCoordonnee(pstmt, 11, utilisateur.getLatitude());
+            utilisateur.setRegion(Region.deCoordonnees(utilisateur.getLatitude(), utilisateur.getLongitude()));
+            definirRegion(pstmt, 12, utilisateur.getRegion());
             
             int affectedRows = pstmt.executeUpdate();
             
@@ -79,6 +108,10 @@ public class UtilisateurDAO {
                 }
             }
             
+            IndexUtilisateurs.getInstance().enregistrer(utilisateur);
+            IndexGrappes.getInstance().placer(utilisateur.getId(), utilisateur.getLatitude(),
+                                              utilisateur.getLongitude());
+            
             return utilisateur;
         }
     }
@@ -157,6 +190,90 @@ public class UtilisateurDAO {
         return utilisateurs;
     }
     
+    /**
+     * Récupère les utilisateurs d'une région (index idx_utilisateurs_region).
+     * 
+     * @param region La région recherchée
+     * @return Liste des utilisateurs de la région
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public List<Utilisateur> findByRegion(Region region) throws SQLException {
+        List<Utilisateur> utilisateurs = new ArrayList<>();
+        String sql = "SELECT * FROM utilisateurs WHERE region = ? ORDER BY nom";
+        
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, region.name());
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    utilisateurs.add(mapResultSetToUtilisateur(rs));
+                }
+            }
+        }
+        
+        return utilisateurs;
+    }
+    
+    /**
+     * Récupère une page d'utilisateurs, triés par nom (index idx_utilisateurs_nom).
+     * 
+     * @param decalage Nombre d'utilisateurs à sauter
+     * @param limite Nombre maximal d'utilisateurs renvoyés
+     * @return Les utilisateurs de la page
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public List<Utilisateur> findPage(int decalage, int limite) throws SQLException {
+        List<Utilisateur> utilisateurs = new ArrayList<>();
+        String sql = "SELECT * FROM utilisateurs ORDER BY nom, id LIMIT ? OFFSET ?";
+        
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setInt(1, limite);
+            pstmt.setInt(2, decalage);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    utilisateurs.add(mapResultSetToUtilisateur(rs));
+                }
+            }
+        }
+        
+        return utilisateurs;
+    }
+    
+    /**
+     * Recherche les utilisateurs dont le nom commence par un préfixe
+     * (index idx_utilisateurs_nom).
+     * 
+     * @param prefixe Début du nom, sans caractères génériques
+     * @param limite Nombre maximal d'utilisateurs renvoyés
+     * @return Les utilisateurs trouvés, triés par nom
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public List<Utilisateur> findByNomPrefixe(String prefixe, int limite) throws SQLException {
+        List<Utilisateur> utilisateurs = new ArrayList<>();
+        String sql = "SELECT * FROM utilisateurs WHERE nom LIKE ? ORDER BY nom, id LIMIT ?";
+        
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            String echappe = prefixe.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+            pstmt.setString(1, echappe + "%");
+            pstmt.setInt(2, limite);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    utilisateurs.add(mapResultSetToUtilisateur(rs));
+                }
+            }
+        }
+        
+        return utilisateurs;
+    }
+    
     /**
      * Met à jour un utilisateur existant.
      * 
@@ -167,11 +284,15 @@ public class UtilisateurDAO {
     public boolean update(Utilisateur utilisateur) throws SQLException {
         String sql = "UPDATE utilisateurs SET nom = ?, adresse_depart = ?, adresse_arrivee = ?, " +
                      "heure_depart = ?, heure_arrivee = ?, preferences = ?, groupe = ?, " +
-                     "latitude = ?, longitude = ? WHERE id = ?";
+                     "latitude = ?, longitude = ?, position = " + POSITION_SQL + ", region = ? WHERE id = ?";
+        int affectedRows;
+        boolean deplace = false;
         
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
+            Double[] anciennes = lireCoordonnees(conn, utilisateur.getId());
+            
             pstmt.setString(1, utilisateur.getNom());
             pstmt.setString(2, utilisateur.getAdresseDepart());
             pstmt.setString(3, utilisateur.getAdresseArrivee());
@@ -180,23 +301,413 @@ public class UtilisateurDAO {
             pstmt.setString(6, utilisateur.getPreferences());
             pstmt.setString(7, utilisateur.getGroupe());
             
-            if (utilisateur.getLatitude() != null) {
-                pstmt.setDouble(8, utilisateur.getLatitude());
-            } else {
-                pstmt.setNull(8, Types.DECIMAL);
+            definirCoordonnee(pstmt, 8, utilisateur.getLatitude());
+            definirCoordonnee(pstmt, 9, utilisateur.getLongitude());
+            definirCoordonnee(pstmt, 10, utilisateur.getLongitude());
+            definirCoordonnee(pstmt, 11, utilisateur.getLatitude());
+            utilisateur.setRegion(Region.deCoordonnees(utilisateur.getLatitude(), utilisateur.getLongitude()));
+            definirRegion(pstmt, 12, utilisateur.getRegion());
+            
+            pstmt.setLong(13, utilisateur.getId());
+            
+            conn.setAutoCommit(false); // Début de transaction: utilisateur, véhicules et trajets
+            try {
+                affectedRows = pstmt.executeUpdate();
+                if (affectedRows > 0) {
+                    propagerRegion(conn, utilisateur.getId(), utilisateur.getRegion());
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
+            logger.info("Utilisateur {} mis à jour", utilisateur.getId());
             
-            if (utilisateur.getLongitude() != null) {
-                pstmt.setDouble(9, utilisateur.getLongitude());
-            } else {
-                pstmt.setNull(9, Types.DECIMAL);
+            if (affectedRows > 0) {
+                // Les distances en cache ne sont plus fiables si l'utilisateur a bougé
+                deplace = anciennes == null || !Objects.equals(anciennes[0], utilisateur.getLatitude())
+                    || !Objects.equals(anciennes[1], utilisateur.getLongitude());
+                if (deplace) {
+                    CacheDistancesPaires.getInstance().invalider(utilisateur.getId());
+                }
+                IndexUtilisateurs.getInstance().enregistrer(utilisateur);
+                IndexGrappes.getInstance().placer(utilisateur.getId(), utilisateur.getLatitude(),
+                                                  utilisateur.getLongitude());
+                IndexAppariement.getInstance().marquerUtilisateur(utilisateur.getId());
             }
+        }
+        
+        // Hors de la connexion précédente: la région de ses véhicules a pu changer
+        if (deplace) {
+            rafraichirVehicules(utilisateur.getId());
+        }
+        return affectedRows > 0;
+    }
+    
+    /**
+     * Lit les coordonnées enregistrées d'un utilisateur.
+     * 
+     * @return {latitude, longitude}, éléments null si absents; null si l'utilisateur n'existe pas
+     */
+    private static Double[] lireCoordonnees(Connection conn, Long id) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT latitude, longitude FROM utilisateurs WHERE id = ?")) {
+            pstmt.setLong(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                double latitude = rs.getDouble("latitude");
+                Double lat = rs.wasNull() ? null : latitude;
+                double longitude = rs.getDouble("longitude");
+                Double lon = rs.wasNull() ? null : longitude;
+                return new Double[] {lat, lon};
+            }
+        }
+    }
+    
+    /**
+     * Enregistre les coordonnées obtenues par géocodage de l'adresse de départ.
+     * 
+     * La mise à jour n'a lieu que si l'adresse n'a pas changé entre-temps.
+     * 
+     * @param id L'ID de l'utilisateur
+     * @param adresseDepart Adresse qui a été géocodée
+     * @param latitude Latitude trouvée
+     * @param longitude Longitude trouvée
+     * @return true si les coordonnées ont été enregistrées, false sinon
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public boolean updateCoordonnees(Long id, String adresseDepart, double latitude, double longitude)
+            throws SQLException {
+        String sql = "UPDATE utilisateurs SET latitude = ?, longitude = ?, position = " + POSITION_SQL +
+                     ", region = ? WHERE id = ? AND adresse_depart = ?";
+        Region region = Region.deCoordonnees(latitude, longitude);
+        int affectedRows;
+        
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
-            pstmt.setLong(10, utilisateur.getId());
+            pstmt.setDouble(1, latitude);
+            pstmt.setDouble(2, longitude);
+            pstmt.setDouble(3, longitude);
+            pstmt.setDouble(4, latitude);
+            definirRegion(pstmt, 5, region);
+            pstmt.setLong(6, id);
+            pstmt.setString(7, adresseDepart);
             
-            int affectedRows = pstmt.executeUpdate();
-            logger.info("Utilisateur {} mis à jour", utilisateur.getId());
-            return affectedRows > 0;
+            conn.setAutoCommit(false); // Début de transaction: utilisateur, véhicules et trajets
+            try {
+                affectedRows = pstmt.executeUpdate();
+                if (affectedRows > 0) {
+                    propagerRegion(conn, id, region);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        
+        if (affectedRows == 0) {
+            return false;
+        }
+        CacheDistancesPaires.getInstance().invalider(id);
+        logger.debug("Coordonnées de l'utilisateur {} enregistrées", id);
+        IndexGrappes.getInstance().placer(id, latitude, longitude);
+        IndexAppariement.getInstance().marquerUtilisateur(id);
+        rafraichirVehicules(id);
+        
+        // Hors de la connexion précédente: findById en ouvre une autre
+        if (!IndexUtilisateurs.getInstance().deplacer(id, latitude, longitude)) {
+            findById(id).ifPresent(IndexUtilisateurs.getInstance()::enregistrer);
+        }
+        return true;
+    }
+    
+    /**
+     * Récupère les utilisateurs dont le point de départ n'est pas géocodé.
+     * 
+     * @return Liste des utilisateurs sans latitude ou longitude
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public List<Utilisateur> findSansCoordonnees() throws SQLException {
+        List<Utilisateur> utilisateurs = new ArrayList<>();
+        String sql = "SELECT * FROM utilisateurs WHERE latitude IS NULL OR longitude IS NULL ORDER BY id";
+        
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                utilisateurs.add(mapResultSetToUtilisateur(rs));
+            }
+        }
+        
+        return utilisateurs;
+    }
+    
+    /**
+     * Récupère les utilisateurs géocodés dont le point de départ est à moins
+     * d'un rayon donné, du plus proche au plus éloigné.
+     * 
+     * Le rectangle englobant le disque (MBRContains) sélectionne les lignes par
+     * l'index spatial; la distance sphérique ne départage que ces candidats.
+     * 
+     * @param latitude Latitude du centre
+     * @param longitude Longitude du centre
+     * @param rayonKm Rayon en kilomètres
+     * @return Les utilisateurs trouvés, par distance croissante
+     * @throws SQLException En cas d'erreur SQL
+     * @throws IllegalArgumentException Si les coordonnées ou le rayon sont invalides
+     */
+    public List<Utilisateur> findWithinRadius(double latitude, double longitude, double rayonKm)
+            throws SQLException {
+        return findWithinRadius(latitude, longitude, rayonKm, null);
+    }
+    
+    /**
+     * Comme {@link #findWithinRadius(double, double, double)}, restreint à une région.
+     * 
+     * @param latitude Latitude du centre
+     * @param longitude Longitude du centre
+     * @param rayonKm Rayon en kilomètres
+     * @param region Région des utilisateurs, ou null pour toutes
+     * @return Les utilisateurs trouvés, par distance croissante
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public List<Utilisateur> findWithinRadius(double latitude, double longitude, double rayonKm,
+                                              Region region) throws SQLException {
+        verifierCentre(latitude, longitude);
+        if (!(rayonKm > 0) || Double.isInfinite(rayonKm)) {
+            throw new IllegalArgumentException("Rayon invalide: " + rayonKm);
+        }
+        return findDansRayon(latitude, longitude, rayonKm, Integer.MAX_VALUE, region);
+    }
+    
+    /**
+     * Récupère les k utilisateurs géocodés les plus proches d'un point.
+     * 
+     * MySQL n'a pas d'opérateur k plus proches voisins sur un index spatial: on
+     * interroge des disques de rayon croissant (RAYON_INITIAL_KM, ×FACTEUR_RAYON)
+     * jusqu'à en trouver k. Tout utilisateur hors du disque étant plus loin que
+     * ceux qu'il contient, les k premiers par distance sont exacts. Au-delà de
+     * RAYON_MAX_KM, la table entière est triée par distance.
+     * 
+     * @param latitude Latitude du centre
+     * @param longitude Longitude du centre
+     * @param k Nombre d'utilisateurs voulus
+     * @return Au plus k utilisateurs, par distance croissante
+     * @throws SQLException En cas d'erreur SQL
+     * @throws IllegalArgumentException Si les coordonnées ou k sont invalides
+     */
+    public List<Utilisateur> findNearest(double latitude, double longitude, int k) throws SQLException {
+        return findNearest(latitude, longitude, k, null);
+    }
+    
+    /**
+     * Comme {@link #findNearest(double, double, int)}, restreint à une région.
+     * 
+     * @param latitude Latitude du centre
+     * @param longitude Longitude du centre
+     * @param k Nombre d'utilisateurs voulus
+     * @param region Région des utilisateurs, ou null pour toutes
+     * @return Au plus k utilisateurs, par distance croissante
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public List<Utilisateur> findNearest(double latitude, double longitude, int k, Region region)
+            throws SQLException {
+        verifierCentre(latitude, longitude);
+        if (k <= 0) {
+            throw new IllegalArgumentException("Nombre de voisins invalide: " + k);
+        }
+        
+        for (double rayonKm = RAYON_INITIAL_KM; rayonKm <= RAYON_MAX_KM; rayonKm *= FACTEUR_RAYON) {
+            List<Utilisateur> voisins = findDansRayon(latitude, longitude, rayonKm, k, region);
+            if (voisins.size() >= k) {
+                return voisins;
+            }
+        }
+        
+        List<Utilisateur> utilisateurs = new ArrayList<>();
+        String sql = "SELECT * FROM utilisateurs " +
+                     "WHERE latitude IS NOT NULL AND longitude IS NOT NULL " +
+                     (region != null ? "AND region = ? " : "") +
+                     "ORDER BY ST_Distance_Sphere(position, " + POSITION_SQL + ", ?) LIMIT ?";
+        
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            int index = 1;
+            if (region != null) {
+                pstmt.setString(index++, region.name());
+            }
+            pstmt.setDouble(index++, longitude);
+            pstmt.setDouble(index++, latitude);
+            pstmt.setDouble(index++, GeoUtils.RAYON_TERRE_KM * 1000.0);
+            pstmt.setInt(index, k);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    utilisateurs.add(mapResultSetToUtilisateur(rs));
+                }
+            }
+        }
+        
+        return utilisateurs;
+    }
+    
+    /**
+     * Recherche par disque: pré-filtre MBRContains (index spatial), puis
+     * distance sphérique, avec le rayon terrestre de GeoUtils pour que les
+     * distances concordent avec haversine.
+     */
+    private List<Utilisateur> findDansRayon(double latitude, double longitude, double rayonKm, int limite,
+                                            Region region) throws SQLException {
+        List<Utilisateur> utilisateurs = new ArrayList<>();
+        String sql = "SELECT u.*, ST_Distance_Sphere(u.position, " + POSITION_SQL + ", ?) AS distance_m " +
+                     "FROM utilisateurs u " +
+                     "WHERE MBRContains(ST_GeomFromText(?, " + SRID_WGS84 + ", 'axis-order=long-lat'), u.position) " +
+                     "AND u.latitude IS NOT NULL AND u.longitude IS NOT NULL " +
+                     (region != null ? "AND u.region = ? " : "") +
+                     "HAVING distance_m <= ? ORDER BY distance_m LIMIT ?";
+        
+        double[] emprise = GeoUtils.empriseAutour(latitude, longitude, rayonKm);
+        String rectangle = String.format(Locale.ROOT, "POLYGON((%1$.8f %2$.8f, %3$.8f %2$.8f, " +
+                                         "%3$.8f %4$.8f, %1$.8f %4$.8f, %1$.8f %2$.8f))",
+                                         emprise[0], emprise[1], emprise[2], emprise[3]);
+        
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setDouble(1, longitude);
+            pstmt.setDouble(2, latitude);
+            pstmt.setDouble(3, GeoUtils.RAYON_TERRE_KM * 1000.0);
+            pstmt.setString(4, rectangle);
+            int index = 5;
+            if (region != null) {
+                pstmt.setString(index++, region.name());
+            }
+            pstmt.setDouble(index++, rayonKm * 1000.0);
+            pstmt.setInt(index, limite);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    utilisateurs.add(mapResultSetToUtilisateur(rs));
+                }
+            }
+        }
+        
+        logger.debug("{} utilisateurs à moins de {} km de ({}, {})", utilisateurs.size(), rayonKm,
+                     latitude, longitude);
+        return utilisateurs;
+    }
+    
+    /**
+     * Renseigne la région des lignes qui n'en ont pas encore (base migrée,
+     * utilisateurs géocodés avant l'introduction des régions), puis celle des
+     * véhicules et trajets qui en dépendent.
+     * 
+     * @return Nombre d'utilisateurs dont la région a été renseignée
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public int completerRegions() throws SQLException {
+        String selection = "SELECT id, latitude, longitude FROM utilisateurs " +
+                           "WHERE region IS NULL AND latitude IS NOT NULL AND longitude IS NOT NULL";
+        String miseAJour = "UPDATE utilisateurs SET region = ? WHERE id = ?";
+        int completes = 0;
+        
+        try (Connection conn = dbManager.getConnection()) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(selection);
+                 PreparedStatement pstmt = conn.prepareStatement(miseAJour)) {
+                
+                while (rs.next()) {
+                    Region region = Region.deCoordonnees(rs.getDouble("latitude"), rs.getDouble("longitude"));
+                    if (region != null) {
+                        pstmt.setString(1, region.name());
+                        pstmt.setLong(2, rs.getLong("id"));
+                        pstmt.addBatch();
+                        completes++;
+                    }
+                }
+                if (completes > 0) {
+                    pstmt.executeBatch();
+                }
+            }
+            
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("UPDATE vehicules v JOIN utilisateurs u ON v.conducteur_id = u.id " +
+                                   "SET v.region = u.region WHERE v.region IS NULL");
+                stmt.executeUpdate("UPDATE trajets t JOIN vehicules v ON t.vehicule_id = v.id " +
+                                   "SET t.region = v.region WHERE t.region IS NULL");
+            }
+        }
+        
+        if (completes > 0) {
+            logger.info("Région renseignée pour {} utilisateurs", completes);
+        }
+        return completes;
+    }
+    
+    /**
+     * Recopie la région d'un utilisateur sur les véhicules qu'il conduit et
+     * sur leurs trajets, dans la transaction de l'appelant.
+     */
+    private void propagerRegion(Connection conn, Long conducteurId, Region region) throws SQLException {
+        try (PreparedStatement vehicules = conn.prepareStatement(
+                 "UPDATE vehicules SET region = ? WHERE conducteur_id = ?");
+             PreparedStatement trajets = conn.prepareStatement(
+                 "UPDATE trajets t JOIN vehicules v ON t.vehicule_id = v.id " +
+                 "SET t.region = ? WHERE v.conducteur_id = ?")) {
+            definirRegion(vehicules, 1, region);
+            vehicules.setLong(2, conducteurId);
+            vehicules.executeUpdate();
+            
+            definirRegion(trajets, 1, region);
+            trajets.setLong(2, conducteurId);
+            trajets.executeUpdate();
+        }
+    }
+    
+    /**
+     * Relit les véhicules d'un conducteur dans IndexDisponibilites, qui en garde
+     * des copies: leur région suit celle du conducteur (voir propagerRegion).
+     */
+    private void rafraichirVehicules(Long conducteurId) throws SQLException {
+        IndexDisponibilites index = IndexDisponibilites.getInstance();
+        if (!index.estCharge()) {
+            return;
+        }
+        for (Vehicule vehicule : new VehiculeDAO().findByConducteur(conducteurId)) {
+            index.enregistrer(vehicule);
+        }
+    }
+    
+    /**
+     * Liste les ids des véhicules d'un conducteur.
+     */
+    private static List<Long> idsVehicules(Connection conn, Long conducteurId) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT id FROM vehicules WHERE conducteur_id = ?")) {
+            pstmt.setLong(1, conducteurId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong("id"));
+                }
+            }
+        }
+        return ids;
+    }
+    
+    private static void verifierCentre(double latitude, double longitude) {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Coordonnées invalides: " + latitude + ", " + longitude);
         }
     }
     
@@ -213,11 +724,22 @@ public class UtilisateurDAO {
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
+            // Ses véhicules disparaissent avec lui (ON DELETE CASCADE)
+            List<Long> vehicules = idsVehicules(conn, id);
+            
             pstmt.setLong(1, id);
             int affectedRows = pstmt.executeUpdate();
             
             if (affectedRows > 0) {
                 logger.info("Utilisateur {} supprimé", id);
+                CacheDistancesPaires.getInstance().invalider(id);
+                IndexUtilisateurs.getInstance().retirer(id);
+                IndexGrappes.getInstance().retirer(id);
+                IndexAppariement.getInstance().marquerUtilisateur(id);
+                MagasinDistances.getInstance().retirer(id);
+                for (Long vehiculeId : vehicules) {
+                    IndexDisponibilites.getInstance().retirer(vehiculeId);
+                }
                 return true;
             }
             
@@ -246,6 +768,29 @@ public class UtilisateurDAO {
         return 0;
     }
     
+    /**
+     * Lie une latitude ou une longitude, NULL si absente.
+     */
+    private static void definirCoordonnee(PreparedStatement pstmt, int index, Double valeur)
+            throws SQLException {
+        if (valeur != null) {
+            pstmt.setDouble(index, valeur);
+        } else {
+            pstmt.setNull(index, Types.DECIMAL);
+        }
+    }
+    
+    /**
+     * Lie une région, NULL si hors zone.
+     */
+    static void definirRegion(PreparedStatement pstmt, int index, Region region) throws SQLException {
+        if (region != null) {
+            pstmt.setString(index, region.name());
+        } else {
+            pstmt.setNull(index, Types.VARCHAR);
+        }
+    }
+    
     /**
      * Mappe un ResultSet vers un objet Utilisateur.
      * 
@@ -283,6 +828,8 @@ public class UtilisateurDAO {
             utilisateur.setLongitude(longitude);
         }
         
+        utilisateur.setRegion(Region.depuisCode(rs.getString("region")));
+        
         return utilisateur;
     }
 }
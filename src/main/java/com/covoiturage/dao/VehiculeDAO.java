@@ -13,13 +13,20 @@ import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.covoiturage.models.Region;
 import com.covoiturage.models.Vehicule;
+import com.covoiturage.spatial.IndexAppariement;
+import com.covoiturage.spatial.IndexDisponibilites;
 import com.covoiturage.utils.DatabaseManager;
 
 /**
  * DAO (Data Access Object) pour l'entité Véhicule.
  * 
  * Gère toutes les opérations CRUD sur la table vehicules.
+ * La région d'un véhicule est celle de son conducteur, relue à chaque écriture
+ * (UtilisateurDAO la met à jour quand le conducteur change de région).
+ * Chaque écriture est signalée à IndexAppariement, qui relit le véhicule, et
+ * reportée dans IndexDisponibilites (plages horaires des véhicules disponibles).
  */
 public class VehiculeDAO {
     
@@ -39,8 +46,8 @@ public class VehiculeDAO {
      */
     public Vehicule create(Vehicule vehicule) throws SQLException {
         String sql = "INSERT INTO vehicules (conducteur_id, immatriculation, capacite, " +
-                     "heure_debut_disponibilite, heure_fin_disponibilite, disponible) " +
-                     "VALUES (?, ?, ?, ?, ?, ?)";
+                     "heure_debut_disponibilite, heure_fin_disponibilite, disponible, region) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?)";
         
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
@@ -51,6 +58,8 @@ public class VehiculeDAO {
             pstmt.setObject(4, vehicule.getHeureDebutDisponibilite());
             pstmt.setObject(5, vehicule.getHeureFinDisponibilite());
             pstmt.setBoolean(6, vehicule.isDisponible());
+            vehicule.setRegion(regionConducteur(conn, vehicule.getConducteurId()));
+            UtilisateurDAO.definirRegion(pstmt, 7, vehicule.getRegion());
             
             int affectedRows = pstmt.executeUpdate();
             
@@ -65,6 +74,8 @@ public class VehiculeDAO {
                 }
             }
             
+            IndexAppariement.getInstance().marquer(vehicule.getId());
+            IndexDisponibilites.getInstance().enregistrer(vehicule);
             return vehicule;
         }
     }
@@ -139,6 +150,34 @@ public class VehiculeDAO {
         return vehicules;
     }
     
+    /**
+     * Récupère les véhicules d'une région (index idx_vehicules_region).
+     * 
+     * @param region La région recherchée
+     * @param disponiblesSeulement true pour ne garder que les véhicules disponibles
+     * @return Liste des véhicules de la région
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public List<Vehicule> findByRegion(Region region, boolean disponiblesSeulement) throws SQLException {
+        List<Vehicule> vehicules = new ArrayList<>();
+        String sql = "SELECT * FROM vehicules WHERE region = ?" +
+                     (disponiblesSeulement ? " AND disponible = TRUE" : "") + " ORDER BY id";
+        
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, region.name());
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    vehicules.add(mapResultSetToVehicule(rs));
+                }
+            }
+        }
+        
+        return vehicules;
+    }
+    
     /**
      * Récupère les véhicules d'un conducteur.
      * 
@@ -174,8 +213,8 @@ public class VehiculeDAO {
      */
     public boolean update(Vehicule vehicule) throws SQLException {
         String sql = "UPDATE vehicules SET conducteur_id = ?, immatriculation = ?, capacite = ?, " +
-                     "heure_debut_disponibilite = ?, heure_fin_disponibilite = ?, disponible = ? " +
-                     "WHERE id = ?";
+                     "heure_debut_disponibilite = ?, heure_fin_disponibilite = ?, disponible = ?, " +
+                     "region = ? WHERE id = ?";
         
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -186,10 +225,16 @@ public class VehiculeDAO {
             pstmt.setObject(4, vehicule.getHeureDebutDisponibilite());
             pstmt.setObject(5, vehicule.getHeureFinDisponibilite());
             pstmt.setBoolean(6, vehicule.isDisponible());
-            pstmt.setLong(7, vehicule.getId());
+            vehicule.setRegion(regionConducteur(conn, vehicule.getConducteurId()));
+            UtilisateurDAO.definirRegion(pstmt, 7, vehicule.getRegion());
+            pstmt.setLong(8, vehicule.getId());
             
             int affectedRows = pstmt.executeUpdate();
             logger.info("Véhicule {} mis à jour", vehicule.getId());
+            IndexAppariement.getInstance().marquer(vehicule.getId());
+            if (affectedRows > 0) {
+                IndexDisponibilites.getInstance().enregistrer(vehicule);
+            }
             return affectedRows > 0;
         }
     }
@@ -212,6 +257,8 @@ public class VehiculeDAO {
             
             if (affectedRows > 0) {
                 logger.info("Véhicule {} supprimé", id);
+                IndexAppariement.getInstance().marquer(id);
+                IndexDisponibilites.getInstance().retirer(id);
                 return true;
             }
             
@@ -240,6 +287,18 @@ public class VehiculeDAO {
         return 0;
     }
     
+    /**
+     * Lit la région du conducteur d'un véhicule.
+     */
+    private Region regionConducteur(Connection conn, Long conducteurId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT region FROM utilisateurs WHERE id = ?")) {
+            pstmt.setLong(1, conducteurId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? Region.depuisCode(rs.getString(1)) : null;
+            }
+        }
+    }
+    
     /**
      * Mappe un ResultSet vers un objet Vehicule.
      * 
@@ -265,6 +324,7 @@ public class VehiculeDAO {
         }
         
         vehicule.setDisponible(rs.getBoolean("disponible"));
+        vehicule.setRegion(Region.depuisCode(rs.getString("region")));
         
         return vehicule;
     }
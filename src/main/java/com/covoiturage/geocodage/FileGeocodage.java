@@ -0,0 +1,427 @@
+package com.covoiturage.geocodage;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.dao.GeocodageDAO;
+import com.covoiturage.dao.UtilisateurDAO;
+import com.covoiturage.models.ResultatGeocodage;
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.utils.ConfigurationManager;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * File de géocodage côté serveur des adresses de départ des utilisateurs.
+ *
+ * Utilise le pattern Singleton.
+ *
+ * PRINCIPE:
+ * 1. À la création ou à la mise à jour d'un utilisateur sans coordonnées, son
+ *    adresse est cherchée dans le cache (mémoire puis table geocodage_cache);
+ *    si elle y est, les coordonnées sont renseignées immédiatement
+ * 2. Sinon l'utilisateur est mis en file. Les demandes sont regroupées par
+ *    adresse normalisée: N utilisateurs à la même adresse, en file ou en cours
+ *    de traitement, ne coûtent qu'un appel au service amont
+ * 3. Un unique fil de travail dépile les adresses, respecte un intervalle
+ *    minimal entre deux appels amont (1 requête/s pour Nominatim), met le
+ *    résultat en cache et écrit latitude/longitude dans la table utilisateurs
+ *
+ * Seules les adresses trouvées sont gardées en mémoire; une adresse introuvable
+ * n'est mise en cache que dans la table, qui l'oublie après
+ * GeocodageDAO.DUREE_VIE_INTROUVABLE_JOURS jours.
+ *
+ * Les échecs du service amont (réseau, quota) ne sont pas mis en cache:
+ * l'adresse est remise en file jusqu'à TENTATIVES_MAX fois, et n'est reprise
+ * qu'après un délai qui double à chaque échec (DELAI_REESSAI_MS, puis 2×, ...);
+ * les autres adresses passent avant elle entre-temps. Les utilisateurs
+ * restés sans coordonnées sont replanifiés au démarrage suivant
+ * ({@link #planifierManquants()}).
+ *
+ * CONCURRENCE: sûr; planifier() ne bloque jamais sur le service amont.
+ */
+public class FileGeocodage {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileGeocodage.class);
+    private static FileGeocodage instance;
+
+    /** Nombre d'essais d'une adresse quand le service amont échoue. */
+    private static final int TENTATIVES_MAX = 3;
+
+    /** Délai avant le premier nouvel essai d'une adresse en échec, doublé ensuite. */
+    private static final long DELAI_REESSAI_MS = 5000;
+
+    /** Nombre maximal d'adresses gardées en mémoire (la table reste la référence). */
+    private static final int CAPACITE_MEMOIRE = 10000;
+
+    private final Geocodeur geocodeur;
+    private final GeocodageDAO geocodageDAO;
+    private final UtilisateurDAO utilisateurDAO;
+    private final long intervalleNanos;
+
+    private final Map<String, ResultatGeocodage> memoire = new ConcurrentHashMap<>();
+
+    // File des demandes, protégée par verrou
+    private final Object verrou = new Object();
+    private final Map<String, Demande> enAttente = new LinkedHashMap<>();
+    private Demande enCours;
+
+    private final Thread travailleur;
+    private volatile boolean actif = true;
+    private long dernierAppelNanos;
+
+    // Statistiques
+    private final LongAdder demandes = new LongAdder();
+    private final LongAdder regroupees = new LongAdder();
+    private final LongAdder succesCache = new LongAdder();
+    private final LongAdder appelsAmont = new LongAdder();
+    private final LongAdder echecsAmont = new LongAdder();
+    private final LongAdder introuvables = new LongAdder();
+
+    /**
+     * Adresse à géocoder et utilisateurs qui l'attendent.
+     */
+    private static final class Demande {
+        final String cle;
+        final String adresse;
+        final Set<Long> utilisateurs = new LinkedHashSet<>();
+        int tentatives;
+        /** Instant (System.nanoTime) avant lequel la demande n'est pas reprise. */
+        long prochainEssaiNanos = System.nanoTime();
+
+        Demande(String cle, String adresse) {
+            this.cle = cle;
+            this.adresse = adresse;
+        }
+    }
+
+    /**
+     * Constructeur privé (pattern Singleton).
+     */
+    private FileGeocodage() {
+        this(creerGeocodeur(ConfigurationManager.getInstance()), new GeocodageDAO(), new UtilisateurDAO(),
+             ConfigurationManager.getInstance().getDouble("geocoding.maxRequestsPerSecond", 1.0));
+    }
+
+    FileGeocodage(Geocodeur geocodeur, GeocodageDAO geocodageDAO, UtilisateurDAO utilisateurDAO,
+                  double requetesParSeconde) {
+        if (requetesParSeconde <= 0) {
+            throw new IllegalArgumentException("Le débit de géocodage doit être positif");
+        }
+        this.geocodeur = geocodeur;
+        this.geocodageDAO = geocodageDAO;
+        this.utilisateurDAO = utilisateurDAO;
+        this.intervalleNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requetesParSeconde);
+        this.dernierAppelNanos = System.nanoTime() - intervalleNanos;
+
+        this.travailleur = new Thread(this::boucle, "geocodage");
+        this.travailleur.setDaemon(true);
+        this.travailleur.start();
+        logger.info("File de géocodage démarrée ({}, {} requête(s)/s)", geocodeur.getNom(), requetesParSeconde);
+    }
+
+    /**
+     * Obtient l'instance unique de la file.
+     *
+     * @return Instance de la FileGeocodage
+     */
+    public static synchronized FileGeocodage getInstance() {
+        if (instance == null) {
+            instance = new FileGeocodage();
+        }
+        return instance;
+    }
+
+    private static Geocodeur creerGeocodeur(ConfigurationManager configuration) {
+        String nom = configuration.getString("geocoding.provider", "nominatim").trim();
+        switch (nom) {
+            case "nominatim":
+                return new GeocodeurNominatim(
+                    configuration.getString("geocoding.nominatim.url", "https://nominatim.openstreetmap.org"),
+                    configuration.getString("geocoding.userAgent", "Covoiturage-Optimisation-App/1.0"),
+                    configuration.getString("geocoding.countryCodes", "").trim());
+            case "local":
+                return new GeocodeurLocal();
+            default:
+                throw new IllegalArgumentException("Géocodeur inconnu: " + nom);
+        }
+    }
+
+    /**
+     * Renseigne les coordonnées d'un utilisateur si son adresse est déjà en cache.
+     * Aucun appel au service amont n'est fait.
+     *
+     * @param utilisateur Utilisateur sans coordonnées
+     * @return true si les coordonnées ont été renseignées
+     */
+    public boolean completerDepuisCache(Utilisateur utilisateur) {
+        String cle = GeoUtils.normaliserAdresse(utilisateur.getAdresseDepart());
+        if (cle == null) {
+            return false;
+        }
+        ResultatGeocodage resultat = chercherEnCache(cle);
+        if (resultat == null || !resultat.estTrouve()) {
+            return false;
+        }
+        utilisateur.setLatitude(resultat.getLatitude());
+        utilisateur.setLongitude(resultat.getLongitude());
+        return true;
+    }
+
+    /**
+     * Met en file le géocodage de l'adresse de départ d'un utilisateur enregistré.
+     * Sans effet s'il a déjà des coordonnées ou pas d'adresse.
+     *
+     * @param utilisateur Utilisateur enregistré (id renseigné)
+     */
+    public void planifier(Utilisateur utilisateur) {
+        String cle = GeoUtils.normaliserAdresse(utilisateur.getAdresseDepart());
+        if (cle == null || utilisateur.getId() == null || GeoUtils.aCoordonnees(utilisateur)) {
+            return;
+        }
+        demandes.increment();
+
+        synchronized (verrou) {
+            if (enCours != null && enCours.cle.equals(cle) && enCours.adresse.equals(utilisateur.getAdresseDepart())) {
+                enCours.utilisateurs.add(utilisateur.getId());
+                regroupees.increment();
+                return;
+            }
+            // La clé de file inclut l'adresse exacte: updateCoordonnees vérifie l'adresse saisie
+            String cleFile = cle + '\n' + utilisateur.getAdresseDepart();
+            Demande demande = enAttente.get(cleFile);
+            if (demande == null) {
+                demande = new Demande(cle, utilisateur.getAdresseDepart());
+                enAttente.put(cleFile, demande);
+                verrou.notifyAll();
+            } else {
+                regroupees.increment();
+            }
+            demande.utilisateurs.add(utilisateur.getId());
+        }
+    }
+
+    /**
+     * Met en file tous les utilisateurs enregistrés sans coordonnées.
+     *
+     * @return Le nombre d'utilisateurs planifiés
+     * @throws SQLException En cas d'erreur d'accès aux données
+     */
+    public int planifierManquants() throws SQLException {
+        List<Utilisateur> manquants = utilisateurDAO.findSansCoordonnees();
+        for (Utilisateur utilisateur : manquants) {
+            planifier(utilisateur);
+        }
+        if (!manquants.isEmpty()) {
+            logger.info("{} utilisateur(s) sans coordonnées mis en file de géocodage", manquants.size());
+        }
+        return manquants.size();
+    }
+
+    /**
+     * Arrête le fil de travail (les demandes en file sont abandonnées).
+     */
+    public void arreter() {
+        actif = false;
+        travailleur.interrupt();
+    }
+
+    private void boucle() {
+        while (actif) {
+            Demande demande;
+            synchronized (verrou) {
+                while ((demande = retirerPrete()) == null && actif) {
+                    try {
+                        verrou.wait(attenteMillis());
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!actif) {
+                    return;
+                }
+                enCours = demande;
+            }
+
+            ResultatGeocodage resultat = null;
+            try {
+                resultat = resoudre(demande);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Géocodage de '{}' en échec", demande.adresse, e);
+            }
+
+            List<Long> utilisateurs;
+            synchronized (verrou) {
+                utilisateurs = new ArrayList<>(demande.utilisateurs);
+                enCours = null;
+                if (resultat == null && ++demande.tentatives < TENTATIVES_MAX) {
+                    // Échec amont: l'adresse repasse en file, reprise après un délai croissant
+                    demande.prochainEssaiNanos = System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(DELAI_REESSAI_MS << (demande.tentatives - 1));
+                    String cleFile = demande.cle + '\n' + demande.adresse;
+                    Demande existante = enAttente.put(cleFile, demande);
+                    if (existante != null) {
+                        demande.utilisateurs.addAll(existante.utilisateurs);
+                    }
+                    continue;
+                }
+            }
+
+            if (resultat != null && resultat.estTrouve()) {
+                enregistrerCoordonnees(demande.adresse, resultat, utilisateurs);
+            }
+        }
+    }
+
+    /**
+     * Retire de la file la première demande dont le délai de nouvel essai est écoulé.
+     * Appelé sous verrou.
+     *
+     * @return La demande, ou null si aucune n'est prête
+     */
+    private Demande retirerPrete() {
+        long maintenant = System.nanoTime();
+        Iterator<Demande> demandesEnAttente = enAttente.values().iterator();
+        while (demandesEnAttente.hasNext()) {
+            Demande demande = demandesEnAttente.next();
+            if (demande.prochainEssaiNanos - maintenant <= 0) {
+                demandesEnAttente.remove();
+                return demande;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Attente jusqu'à la prochaine demande prête. Appelé sous verrou.
+     *
+     * @return Délai en millisecondes, 0 (attente sans limite) si la file est vide
+     */
+    private long attenteMillis() {
+        long maintenant = System.nanoTime();
+        long attente = Long.MAX_VALUE;
+        for (Demande demande : enAttente.values()) {
+            attente = Math.min(attente, demande.prochainEssaiNanos - maintenant);
+        }
+        if (attente == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(attente) + 1);
+    }
+
+    /**
+     * Résout une adresse: cache mémoire, table, puis service amont au débit autorisé.
+     *
+     * @return Le résultat, ou null si le service amont a échoué
+     */
+    private ResultatGeocodage resoudre(Demande demande) throws InterruptedException {
+        ResultatGeocodage resultat = chercherEnCache(demande.cle);
+        if (resultat != null) {
+            return resultat;
+        }
+
+        long attente = dernierAppelNanos + intervalleNanos - System.nanoTime();
+        if (attente > 0) {
+            TimeUnit.NANOSECONDS.sleep(attente);
+        }
+        dernierAppelNanos = System.nanoTime();
+        appelsAmont.increment();
+
+        try {
+            resultat = geocodeur.geocoder(demande.adresse);
+        } catch (IOException e) {
+            echecsAmont.increment();
+            logger.warn("Géocodage de '{}' impossible: {}", demande.adresse, e.getMessage());
+            return null;
+        }
+
+        resultat.setAdresseNormalisee(demande.cle);
+        if (!resultat.estTrouve()) {
+            introuvables.increment();
+            logger.info("Adresse introuvable: {}", demande.adresse);
+        }
+        memoriser(resultat);
+        try {
+            geocodageDAO.save(resultat);
+        } catch (SQLException e) {
+            logger.warn("Mise en cache du géocodage de '{}' impossible", demande.adresse, e);
+        }
+        return resultat;
+    }
+
+    private ResultatGeocodage chercherEnCache(String cle) {
+        ResultatGeocodage resultat = memoire.get(cle);
+        if (resultat != null) {
+            succesCache.increment();
+            return resultat;
+        }
+        try {
+            Optional<ResultatGeocodage> enTable = geocodageDAO.findByAdresse(cle);
+            if (enTable.isPresent()) {
+                succesCache.increment();
+                memoriser(enTable.get());
+                return enTable.get();
+            }
+        } catch (SQLException e) {
+            logger.warn("Lecture du cache de géocodage impossible", e);
+        }
+        return null;
+    }
+
+    private void memoriser(ResultatGeocodage resultat) {
+        if (!resultat.estTrouve()) {
+            return; // Relu dans la table, qui applique la durée de vie des introuvables
+        }
+        if (memoire.size() >= CAPACITE_MEMOIRE) {
+            memoire.clear();
+        }
+        memoire.put(resultat.getAdresseNormalisee(), resultat);
+    }
+
+    private void enregistrerCoordonnees(String adresse, ResultatGeocodage resultat, List<Long> utilisateurs) {
+        for (Long id : utilisateurs) {
+            try {
+                utilisateurDAO.updateCoordonnees(id, adresse, resultat.getLatitude(), resultat.getLongitude());
+            } catch (SQLException e) {
+                logger.warn("Enregistrement des coordonnées de l'utilisateur {} impossible", id, e);
+            }
+        }
+    }
+
+    /**
+     * @return Compteurs de la file (demandes, regroupements, cache, appels amont)
+     */
+    public Map<String, Object> getStatistiques() {
+        int enFile;
+        synchronized (verrou) {
+            enFile = enAttente.size() + (enCours != null ? 1 : 0);
+        }
+        long consultees = demandes.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("geocodeur", geocodeur.getNom());
+        stats.put("demandes", consultees);
+        stats.put("regroupees", regroupees.sum());
+        stats.put("succesCache", succesCache.sum());
+        stats.put("appelsAmont", appelsAmont.sum());
+        stats.put("echecsAmont", echecsAmont.sum());
+        stats.put("introuvables", introuvables.sum());
+        stats.put("adressesEnFile", enFile);
+        return stats;
+    }
+}
@@ -0,0 +1,31 @@
+package com.covoiturage.geocodage;
+
+import java.io.IOException;
+
+import com.covoiturage.models.ResultatGeocodage;
+
+/**
+ * Service amont de géocodage: adresse → coordonnées.
+ *
+ * Appelé uniquement par la {@link FileGeocodage}, qui se charge du cache, du
+ * regroupement des adresses identiques et de la limitation de débit.
+ */
+public interface Geocodeur {
+
+    /**
+     * Géocode une adresse.
+     *
+     * @param adresse Adresse telle que saisie
+     * @return Le résultat, sans coordonnées si l'adresse est introuvable
+     * @throws IOException Si le service est injoignable ou refuse la requête
+     *                     (le résultat ne doit alors pas être mis en cache)
+     */
+    ResultatGeocodage geocoder(String adresse) throws IOException;
+
+    /**
+     * Obtient le nom du service.
+     *
+     * @return Nom du service
+     */
+    String getNom();
+}
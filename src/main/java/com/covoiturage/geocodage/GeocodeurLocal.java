@@ -0,0 +1,57 @@
+package com.covoiturage.geocodage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.covoiturage.models.ResultatGeocodage;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Géocodeur local de substitution, sans réseau.
+ *
+ * Place chaque adresse en un point déterministe du Grand Tunis, dérivé d'un
+ * hachage de l'adresse normalisée: deux saisies équivalentes (casse, espaces)
+ * donnent le même point. Les adresses contenant "introuvable" ne sont pas
+ * localisées, pour exercer ce cas. Destiné au développement et aux essais.
+ */
+public class GeocodeurLocal implements Geocodeur {
+
+    private static final double LAT_MIN = 36.75;
+    private static final double LAT_MAX = 36.90;
+    private static final double LON_MIN = 10.10;
+    private static final double LON_MAX = 10.30;
+
+    private final AtomicLong appels = new AtomicLong();
+
+    @Override
+    public ResultatGeocodage geocoder(String adresse) {
+        appels.incrementAndGet();
+        String cle = GeoUtils.normaliserAdresse(adresse);
+        if (cle == null || cle.contains("introuvable")) {
+            return new ResultatGeocodage(cle, adresse, null, null, getNom());
+        }
+
+        // FNV-1a 64 bits: 32 bits pour la latitude, 32 pour la longitude
+        long h = 0xcbf29ce484222325L;
+        for (byte b : cle.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        double u = (h >>> 32) / (double) (1L << 32);
+        double v = (h & 0xffffffffL) / (double) (1L << 32);
+        return new ResultatGeocodage(cle, adresse, LAT_MIN + u * (LAT_MAX - LAT_MIN),
+                                     LON_MIN + v * (LON_MAX - LON_MIN), getNom());
+    }
+
+    /**
+     * @return Le nombre d'adresses reçues
+     */
+    public long getNombreAppels() {
+        return appels.get();
+    }
+
+    @Override
+    public String getNom() {
+        return "local";
+    }
+}
@@ -0,0 +1,93 @@
+package com.covoiturage.geocodage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import com.covoiturage.models.ResultatGeocodage;
+import com.covoiturage.utils.GeoUtils;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Géocodeur OpenStreetMap (API de recherche Nominatim).
+ *
+ * La politique d'usage du service public impose un User-Agent identifiant
+ * l'application et au plus une requête par seconde: la limitation est faite
+ * par la {@link FileGeocodage}.
+ */
+public class GeocodeurNominatim implements Geocodeur {
+
+    private final HttpClient client;
+    private final String urlBase;
+    private final String userAgent;
+    private final String codesPays;
+
+    /**
+     * @param urlBase URL du service (ex. https://nominatim.openstreetmap.org)
+     * @param userAgent User-Agent envoyé avec chaque requête
+     * @param codesPays Codes pays ISO séparés par des virgules pour restreindre la recherche
+     *                  (vide: aucune restriction)
+     */
+    public GeocodeurNominatim(String urlBase, String userAgent, String codesPays) {
+        this.client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+        this.urlBase = urlBase.endsWith("/") ? urlBase.substring(0, urlBase.length() - 1) : urlBase;
+        this.userAgent = userAgent;
+        this.codesPays = codesPays;
+    }
+
+    @Override
+    public ResultatGeocodage geocoder(String adresse) throws IOException {
+        StringBuilder url = new StringBuilder(urlBase)
+            .append("/search?format=jsonv2&limit=1&q=")
+            .append(URLEncoder.encode(adresse, StandardCharsets.UTF_8));
+        if (!codesPays.isEmpty()) {
+            url.append("&countrycodes=").append(URLEncoder.encode(codesPays, StandardCharsets.UTF_8));
+        }
+
+        HttpRequest requete = HttpRequest.newBuilder(URI.create(url.toString()))
+            .timeout(Duration.ofSeconds(10))
+            .header("User-Agent", userAgent)
+            .header("Accept-Language", "fr")
+            .GET()
+            .build();
+
+        HttpResponse<String> reponse;
+        try {
+            reponse = client.send(requete, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Géocodage interrompu", e);
+        }
+        if (reponse.statusCode() != 200) {
+            throw new IOException("Nominatim a répondu " + reponse.statusCode());
+        }
+
+        String cle = GeoUtils.normaliserAdresse(adresse);
+        try {
+            JsonArray resultats = JsonParser.parseString(reponse.body()).getAsJsonArray();
+            if (resultats.size() == 0) {
+                return new ResultatGeocodage(cle, adresse, null, null, getNom());
+            }
+            JsonObject premier = resultats.get(0).getAsJsonObject();
+            return new ResultatGeocodage(cle, adresse, premier.get("lat").getAsDouble(),
+                                         premier.get("lon").getAsDouble(), getNom());
+        } catch (JsonParseException | IllegalStateException | NullPointerException | NumberFormatException e) {
+            throw new IOException("Réponse Nominatim illisible", e);
+        }
+    }
+
+    @Override
+    public String getNom() {
+        return "nominatim";
+    }
+}
@@ -0,0 +1,83 @@
+package com.covoiturage.models;
+
+import java.util.Locale;
+
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Régions desservies. Aucun trajet ne traverse deux régions: les données,
+ * caches, optimisations et statistiques sont partitionnés par région.
+ *
+ * La région d'un utilisateur est dérivée de son point de départ (centre le
+ * plus proche, à moins de RAYON_MAX_KM); celle d'un véhicule est la région de
+ * son conducteur, celle d'un trajet la région de son véhicule.
+ */
+public enum Region {
+
+    TUNIS(36.8065, 10.1815),
+    SFAX(34.7406, 10.7603),
+    SOUSSE(35.8256, 10.6370),
+    BIZERTE(37.2744, 9.8739);
+
+    /** Au-delà de cette distance de tout centre, un point n'appartient à aucune région. */
+    public static final double RAYON_MAX_KM = 60.0;
+
+    private final double latitude;
+    private final double longitude;
+
+    Region(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Détermine la région d'un point.
+     *
+     * @param latitude Latitude, ou null
+     * @param longitude Longitude, ou null
+     * @return La région du centre le plus proche, ou null si le point est
+     *         inconnu ou hors de toute région
+     */
+    public static Region deCoordonnees(Double latitude, Double longitude) {
+        if (latitude == null || longitude == null) {
+            return null;
+        }
+        Region plusProche = null;
+        double distanceMin = RAYON_MAX_KM;
+        for (Region region : values()) {
+            double distance = GeoUtils.haversine(latitude, longitude, region.latitude, region.longitude);
+            if (distance <= distanceMin) {
+                distanceMin = distance;
+                plusProche = region;
+            }
+        }
+        return plusProche;
+    }
+
+    /**
+     * Lit une région depuis son nom (colonne region, paramètre de requête),
+     * sans tenir compte de la casse.
+     *
+     * @param code Nom de la région, ou null
+     * @return La région, ou null si code est null ou vide
+     * @throws IllegalArgumentException Si la région est inconnue
+     */
+    public static Region depuisCode(String code) {
+        if (code == null || code.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return valueOf(code.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Région inconnue: " + code);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.covoiturage.models;
+
+/**
+ * Modèle représentant le résultat du géocodage d'une adresse.
+ *
+ * Correspond à une ligne de la table geocodage_cache :
+ * - Adresse normalisée (clé du cache) et adresse d'origine
+ * - Coordonnées trouvées, ou aucune si l'adresse est introuvable
+ * - Fournisseur qui a répondu (nominatim, local...)
+ */
+public class ResultatGeocodage {
+
+    private String adresseNormalisee;
+    private String adresse;
+    private Double latitude;
+    private Double longitude;
+    private String fournisseur;
+
+    // Constructeurs
+    public ResultatGeocodage() {
+    }
+
+    public ResultatGeocodage(String adresseNormalisee, String adresse, Double latitude, Double longitude,
+                             String fournisseur) {
+        this.adresseNormalisee = adresseNormalisee;
+        this.adresse = adresse;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.fournisseur = fournisseur;
+    }
+
+    /**
+     * @return true si l'adresse a été localisée
+     */
+    public boolean estTrouve() {
+        return latitude != null && longitude != null;
+    }
+
+    // Getters et Setters
+    public String getAdresseNormalisee() {
+        return adresseNormalisee;
+    }
+
+    public void setAdresseNormalisee(String adresseNormalisee) {
+        this.adresseNormalisee = adresseNormalisee;
+    }
+
+    public String getAdresse() {
+        return adresse;
+    }
+
+    public void setAdresse(String adresse) {
+        this.adresse = adresse;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    public String getFournisseur() {
+        return fournisseur;
+    }
+
+    public void setFournisseur(String fournisseur) {
+        this.fournisseur = fournisseur;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultatGeocodage{" +
+                "adresse='" + adresse + '\'' +
+                ", latitude=" + latitude +
+                ", longitude=" + longitude +
+                ", fournisseur='" + fournisseur + '\'' +
+                '}';
+    }
+}
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+import com.covoiturage.routage.GeometrieCompacte;
+
 /**
  * Modèle représentant un trajet optimisé de covoiturage.
  * 
@@ -12,6 +14,9 @@ import java.util.Objects;
  * - Une liste ordonnée d'utilisateurs (ordre de prise en charge)
  * - Métriques : distance totale, temps total
  * - Coordonnées de route pour affichage sur carte
+ * 
+ * Le tracé est conservé sous sa forme binaire compacte (routeGeometrie, non
+ * sérialisée en JSON) et n'est décodé en polylignes qu'à la demande.
  */
 public class Trajet {
     
@@ -19,8 +24,11 @@ public class Trajet {
     private Long vehiculeId;
     private double distanceTotale; // En kilomètres
     private double tempsTotalMinutes; // En minutes
-    private String routePolyline; // Encoded polyline pour Google Maps
+    private String routePolyline; // Document JSON de polylignes encodées, décodé à la demande
+    private transient byte[] routeGeometrie; // Tracé binaire compact (colonne route_geometrie)
     private boolean optimise;
+    private Region region; // Région du véhicule: un trajet ne traverse jamais deux régions
+    private Double ecartOptimalite; // Non persisté: écart à la borne inférieure (%) de la dernière optimisation
     
     // Relations
     private Vehicule vehicule;
@@ -80,7 +88,14 @@ public class Trajet {
         this.tempsTotalMinutes = tempsTotalMinutes;
     }
     
+    /**
+     * Obtient le document de polylignes du tracé, décodé au premier appel depuis
+     * la géométrie compacte.
+     * 
+     * @return Le document JSON, ou null si le trajet n'a pas de tracé
+     */
     public String getRoutePolyline() {
+        decoderRoute();
         return routePolyline;
     }
     
@@ -88,6 +103,37 @@ public class Trajet {
         this.routePolyline = routePolyline;
     }
     
+    public byte[] getRouteGeometrie() {
+        return routeGeometrie;
+    }
+    
+    public void setRouteGeometrie(byte[] routeGeometrie) {
+        this.routeGeometrie = routeGeometrie;
+        this.routePolyline = null;
+    }
+    
+    /**
+     * Décode la géométrie compacte dans routePolyline si ce n'est pas déjà fait.
+     * À appeler avant une sérialisation Gson, qui lit les champs et non les getters.
+     */
+    public void decoderRoute() {
+        if (routePolyline == null && routeGeometrie != null) {
+            routePolyline = GeometrieCompacte.versDocument(routeGeometrie);
+        }
+    }
+    
+    /**
+     * @return L'écart d'optimalité (%) calculé à l'optimisation, null s'il est
+     *         inconnu ou si le trajet a été relu en base
+     */
+    public Double getEcartOptimalite() {
+        return ecartOptimalite;
+    }
+    
+    public void setEcartOptimalite(Double ecartOptimalite) {
+        this.ecartOptimalite = ecartOptimalite;
+    }
+    
     public boolean isOptimise() {
         return optimise;
     }
@@ -96,6 +142,14 @@ public class Trajet {
         this.optimise = optimise;
     }
     
+    public Region getRegion() {
+        return region;
+    }
+    
+    public void setRegion(Region region) {
+        this.region = region;
+    }
+    
     public Vehicule getVehicule() {
         return vehicule;
     }
@@ -24,6 +24,7 @@ public class Utilisateur {
     private String groupe; // Groupe de l'utilisateur (même entreprise, même école, etc.)
     private Double latitude;  // Latitude du point de départ
     private Double longitude; // Longitude du point de départ
+    private Region region;    // Dérivée des coordonnées par UtilisateurDAO (null hors zone)
     
     // Constructeurs
     public Utilisateur() {}
@@ -130,6 +131,14 @@ public class Utilisateur {
         this.longitude = longitude;
     }
     
+    public Region getRegion() {
+        return region;
+    }
+    
+    public void setRegion(Region region) {
+        this.region = region;
+    }
+    
     /**
      * Vérifie si les horaires de cet utilisateur sont compatibles avec un autre utilisateur.
      * 
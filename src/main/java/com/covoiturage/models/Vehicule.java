@@ -21,6 +21,7 @@ public class Vehicule {
     private LocalTime heureDebutDisponibilite;
     private LocalTime heureFinDisponibilite;
     private boolean disponible;
+    private Region region; // Région du conducteur, renseignée par VehiculeDAO
     
     // Pour jointure avec la table Utilisateur
     private Utilisateur conducteur;
@@ -105,6 +106,14 @@ public class Vehicule {
         this.disponible = disponible;
     }
     
+    public Region getRegion() {
+        return region;
+    }
+    
+    public void setRegion(Region region) {
+        this.region = region;
+    }
+    
     public Utilisateur getConducteur() {
         return conducteur;
     }
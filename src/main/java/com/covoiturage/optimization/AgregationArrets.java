@@ -0,0 +1,225 @@
+package com.covoiturage.optimization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Pré-traitement qui regroupe les utilisateurs situés au même endroit.
+ *
+ * PRINCIPE:
+ * 1. Deux utilisateurs sont co-localisés si leurs points de départ sont à moins
+ *    de {@link #RAYON_FUSION_KM}, ou si leur adresse de départ est identique
+ *    (sans coordonnées, ou avec des coordonnées à moins de {@link #RAYON_ADRESSE_KM})
+ * 2. Chaque groupe devient un arrêt unique pondéré par son nombre d'utilisateurs
+ * 3. L'algorithme optimise l'instance réduite
+ * 4. {@link #developper(Solution)} ré-insère chaque utilisateur à la place de son arrêt
+ *
+ * La capacité du véhicule reste vérifiée sur le nombre total d'utilisateurs
+ * ({@link #getNombreUtilisateurs()}), pas sur le nombre d'arrêts.
+ *
+ * COMPLEXITÉ: O(n) grâce à une grille de hachage de la taille du rayon de fusion
+ */
+public class AgregationArrets {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgregationArrets.class);
+
+    /** Rayon sous lequel deux points de départ sont considérés identiques (15 m). */
+    public static final double RAYON_FUSION_KM = 0.015;
+
+    /** Écart toléré entre deux utilisateurs déclarant la même adresse (200 m). */
+    public static final double RAYON_ADRESSE_KM = 0.2;
+
+    // Taille d'une cellule de la grille en degrés (≥ rayon de fusion). En longitude,
+    // la largeur est doublée pour couvrir le rayon jusqu'à 60° de latitude (cos = 0.5).
+    private static final double CELLULE_LAT_DEGRES = RAYON_FUSION_KM / 111.0;
+    private static final double CELLULE_LON_DEGRES = CELLULE_LAT_DEGRES / 0.5;
+
+    private final List<Utilisateur> arrets;
+    private final Map<Utilisateur, List<Utilisateur>> membres;
+    private final int nombreUtilisateurs;
+
+    private AgregationArrets(List<Utilisateur> arrets, Map<Utilisateur, List<Utilisateur>> membres,
+                             int nombreUtilisateurs) {
+        this.arrets = arrets;
+        this.membres = membres;
+        this.nombreUtilisateurs = nombreUtilisateurs;
+    }
+
+    /**
+     * Regroupe les utilisateurs co-localisés.
+     *
+     * @param utilisateurs Liste des utilisateurs à transporter
+     * @return L'instance réduite
+     */
+    public static AgregationArrets agreger(List<Utilisateur> utilisateurs) {
+        List<Utilisateur> arrets = new ArrayList<>();
+        Map<Utilisateur, List<Utilisateur>> membres = new IdentityHashMap<>();
+        Map<String, Utilisateur> arretParAdresse = new HashMap<>();
+        Map<Long, List<Utilisateur>> grille = new HashMap<>();
+
+        for (Utilisateur utilisateur : utilisateurs) {
+            Utilisateur arret = chercherArret(utilisateur, arretParAdresse, grille);
+
+            if (arret != null) {
+                membres.get(arret).add(utilisateur);
+                continue;
+            }
+
+            // Nouvel arrêt représenté par cet utilisateur
+            List<Utilisateur> groupe = new ArrayList<>();
+            groupe.add(utilisateur);
+            membres.put(utilisateur, groupe);
+            arrets.add(utilisateur);
+
+            String cle = GeoUtils.normaliserAdresse(utilisateur.getAdresseDepart());
+            if (cle != null) {
+                arretParAdresse.putIfAbsent(cle, utilisateur);
+            }
+            if (GeoUtils.aCoordonnees(utilisateur)) {
+                grille.computeIfAbsent(cellule(utilisateur, 0, 0), k -> new ArrayList<>()).add(utilisateur);
+            }
+        }
+
+        if (arrets.size() < utilisateurs.size()) {
+            logger.info("Agrégation: {} utilisateurs regroupés en {} arrêts",
+                        utilisateurs.size(), arrets.size());
+        }
+
+        return new AgregationArrets(arrets, membres, utilisateurs.size());
+    }
+
+    /**
+     * Cherche un arrêt existant auquel rattacher un utilisateur.
+     */
+    private static Utilisateur chercherArret(Utilisateur utilisateur, Map<String, Utilisateur> arretParAdresse,
+                                             Map<Long, List<Utilisateur>> grille) {
+        // 1. Même adresse de départ
+        String cle = GeoUtils.normaliserAdresse(utilisateur.getAdresseDepart());
+        Utilisateur memeAdresse = cle != null ? arretParAdresse.get(cle) : null;
+        if (memeAdresse != null) {
+            if (!GeoUtils.aCoordonnees(utilisateur) || !GeoUtils.aCoordonnees(memeAdresse) ||
+                GeoUtils.haversine(utilisateur, memeAdresse) <= RAYON_ADRESSE_KM) {
+                return memeAdresse;
+            }
+        }
+
+        // 2. Coordonnées à quelques mètres: parcourir les 9 cellules voisines
+        if (GeoUtils.aCoordonnees(utilisateur)) {
+            for (int dLat = -1; dLat <= 1; dLat++) {
+                for (int dLon = -1; dLon <= 1; dLon++) {
+                    List<Utilisateur> candidats = grille.get(cellule(utilisateur, dLat, dLon));
+                    if (candidats == null) {
+                        continue;
+                    }
+                    for (Utilisateur candidat : candidats) {
+                        if (GeoUtils.haversine(utilisateur, candidat) <= RAYON_FUSION_KM) {
+                            return candidat;
+                        }
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Clé de la cellule de grille contenant un utilisateur, décalée de (dLat, dLon) cellules.
+     */
+    private static long cellule(Utilisateur utilisateur, int dLat, int dLon) {
+        long i = (long) Math.floor(utilisateur.getLatitude() / CELLULE_LAT_DEGRES) + dLat;
+        long j = (long) Math.floor(utilisateur.getLongitude() / CELLULE_LON_DEGRES) + dLon;
+        return (i << 32) ^ (j & 0xffffffffL);
+    }
+
+    /**
+     * Reconstruit la solution par utilisateur à partir de la solution sur les arrêts.
+     *
+     * Les membres d'un arrêt sont pris en charge consécutivement, dans l'ordre
+     * de la liste d'entrée. Distance et temps sont ceux de la solution réduite,
+     * augmentés des déplacements entre membres d'un même arrêt.
+     *
+     * @param solutionReduite Solution sur les arrêts
+     * @return Solution équivalente sur les utilisateurs
+     */
+    public Solution developper(Solution solutionReduite) {
+        if (!estReduite()) {
+            return solutionReduite;
+        }
+
+        List<Utilisateur> ordre = new ArrayList<>(nombreUtilisateurs);
+        double distanceInterne = 0.0;
+        for (Utilisateur arret : solutionReduite.getOrdreUtilisateurs()) {
+            List<Utilisateur> groupe = membres.get(arret);
+            if (groupe != null) {
+                ordre.addAll(groupe);
+                distanceInterne += distanceInterne(groupe);
+            } else {
+                ordre.add(arret);
+            }
+        }
+
+        // Les trajets entre arrêts viennent de la solution réduite (distances routières
+        // comprises); seuls les quelques mètres entre membres d'un même arrêt s'y ajoutent
+        Solution solution = new Solution(ordre);
+        double distance = solutionReduite.getDistanceTotale() + distanceInterne;
+        double temps = solutionReduite.getTempsTotalMinutes() + Solution.estimerTempsMinutes(distanceInterne);
+
+        solution.setDistanceTotale(distance);
+        solution.setTempsTotalMinutes(temps);
+        solution.calculerCout();
+        return solution;
+    }
+
+    /**
+     * Distance parcourue entre les membres successifs d'un arrêt.
+     */
+    private static double distanceInterne(List<Utilisateur> groupe) {
+        double distance = 0.0;
+        for (int i = 0; i < groupe.size() - 1; i++) {
+            if (GeoUtils.aCoordonnees(groupe.get(i)) && GeoUtils.aCoordonnees(groupe.get(i + 1))) {
+                distance += GeoUtils.haversine(groupe.get(i), groupe.get(i + 1));
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * @return true si au moins deux utilisateurs ont été regroupés
+     */
+    public boolean estReduite() {
+        return arrets.size() < nombreUtilisateurs;
+    }
+
+    /**
+     * @return Les arrêts de l'instance réduite (un utilisateur représentant par arrêt)
+     */
+    public List<Utilisateur> getArrets() {
+        return arrets;
+    }
+
+    /**
+     * @param arret Un arrêt de l'instance réduite
+     * @return Le nombre d'utilisateurs pris en charge à cet arrêt
+     */
+    public int getPoids(Utilisateur arret) {
+        List<Utilisateur> groupe = membres.get(arret);
+        return groupe == null ? 0 : groupe.size();
+    }
+
+    /**
+     * @return Le nombre total d'utilisateurs, à comparer à la capacité du véhicule
+     */
+    public int getNombreUtilisateurs() {
+        return nombreUtilisateurs;
+    }
+}
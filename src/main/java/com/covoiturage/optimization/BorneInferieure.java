@@ -0,0 +1,126 @@
+package com.covoiturage.optimization;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Borne inférieure de la distance optimale d'une instance.
+ *
+ * PRINCIPE:
+ * Un ordre de prise en charge est un chemin hamiltonien ouvert (pas de retour
+ * au point de départ). Tout chemin hamiltonien est un arbre couvrant, donc le
+ * poids de l'arbre couvrant minimal (MST) est une borne inférieure de la distance
+ * optimale. Le 1-arbre de Held-Karp ne s'applique qu'aux tournées fermées et
+ * n'apporte rien de plus ici.
+ *
+ * ÉCART D'OPTIMALITÉ:
+ * écart = (distance - borne) / borne
+ * Un écart de 0 prouve que la solution est optimale.
+ *
+ * DISTANCES APPROCHÉES:
+ * Si la matrice fournit des distances de criblage d'erreur relative ≤ e, le poids
+ * exact de l'arbre vérifie MST ≥ MST_approché / (1 + e): la borne est réduite
+ * d'autant pour rester valide.
+ *
+ * COMPLEXITÉ: O(n²) (algorithme de Prim sur graphe complet)
+ */
+public final class BorneInferieure {
+
+    private BorneInferieure() {}
+
+    /**
+     * Calcule le poids de l'arbre couvrant minimal des points de départ.
+     *
+     * @param utilisateurs Liste des utilisateurs de l'instance
+     * @return La borne en kilomètres, ou 0 si elle ne peut pas être calculée
+     *         (moins de deux utilisateurs ou coordonnées manquantes)
+     */
+    public static double calculer(List<Utilisateur> utilisateurs) {
+        int n = utilisateurs == null ? 0 : utilisateurs.size();
+        if (n < 2) {
+            return 0.0;
+        }
+
+        for (Utilisateur utilisateur : utilisateurs) {
+            if (!GeoUtils.aCoordonnees(utilisateur)) {
+                return 0.0;
+            }
+        }
+
+        return calculer(MatriceDistances.construire(utilisateurs));
+    }
+
+    /**
+     * Calcule le poids de l'arbre couvrant minimal sur une matrice déjà construite.
+     *
+     * @param matrice Distances entre les points de l'instance
+     * @return La borne en kilomètres, ou 0 si elle ne peut pas être calculée
+     *         (moins de deux points ou distances simulées)
+     */
+    public static double calculer(MatriceDistances matrice) {
+        int n = matrice.taille();
+        if (n < 2 || !matrice.estComplete()) {
+            return 0.0;
+        }
+
+        // Algorithme de Prim: coutMin[i] = arête la plus légère reliant i à l'arbre
+        double[] coutMin = new double[n];
+        boolean[] dansArbre = new boolean[n];
+        Arrays.fill(coutMin, Double.MAX_VALUE);
+        coutMin[0] = 0.0;
+
+        double poids = 0.0;
+        for (int etape = 0; etape < n; etape++) {
+            int u = -1;
+            for (int i = 0; i < n; i++) {
+                if (!dansArbre[i] && (u == -1 || coutMin[i] < coutMin[u])) {
+                    u = i;
+                }
+            }
+
+            dansArbre[u] = true;
+            poids += coutMin[u];
+
+            for (int v = 0; v < n; v++) {
+                if (!dansArbre[v]) {
+                    // Distances routières asymétriques: l'arête peut être parcourue dans les deux sens
+                    double d = Math.min(matrice.distance(u, v), matrice.distance(v, u));
+                    if (d < coutMin[v]) {
+                        coutMin[v] = d;
+                    }
+                }
+            }
+        }
+
+        return poids / (1.0 + matrice.erreurRelativeMax());
+    }
+
+    /**
+     * Calcule l'écart relatif entre une distance et la borne inférieure.
+     *
+     * @param distance Distance de la solution en kilomètres
+     * @param borne Borne inférieure en kilomètres
+     * @return L'écart relatif (0.05 = 5%), ou NaN si la borne est inconnue
+     */
+    public static double ecart(double distance, double borne) {
+        if (borne <= 0.0) {
+            return Double.NaN;
+        }
+        return Math.max(0.0, (distance - borne) / borne);
+    }
+
+    /**
+     * Calcule l'écart d'optimalité en pourcentage, tel que rapporté aux clients.
+     *
+     * @param distance Distance de la solution en kilomètres
+     * @param borne Borne inférieure en kilomètres
+     * @return L'écart en pourcentage (5.0 = 5%), ou null si la borne est inconnue
+     */
+    public static Double ecartPourcent(double distance, double borne) {
+        double ecart = ecart(distance, borne);
+        return Double.isNaN(ecart) ? null : ecart * 100;
+    }
+}
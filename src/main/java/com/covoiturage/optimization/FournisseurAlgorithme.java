@@ -0,0 +1,31 @@
+package com.covoiturage.optimization;
+
+import java.util.Properties;
+
+/**
+ * Point d'extension pour déclarer un algorithme d'optimisation.
+ *
+ * Les fournisseurs sont découverts par {@link java.util.ServiceLoader} via le fichier
+ * META-INF/services/com.covoiturage.optimization.FournisseurAlgorithme. Ajouter un
+ * algorithme ne demande donc aucune modification de {@code OptimisationService}.
+ *
+ * Les paramètres d'un algorithme de type "simulated_annealing" sont lus sous le
+ * préfixe "optimization.simulated.annealing." de db.properties.
+ */
+public interface FournisseurAlgorithme {
+
+    /**
+     * Obtient l'identifiant utilisé par l'API (ex: "nearest_neighbor").
+     *
+     * @return Type de l'algorithme, en minuscules avec des '_'
+     */
+    String getType();
+
+    /**
+     * Crée l'instance partagée de l'algorithme.
+     *
+     * @param configuration Paramètres de l'algorithme, préfixe retiré
+     * @return Un algorithme immuable et ré-entrant
+     */
+    OptimisationAlgorithme creer(Properties configuration);
+}
@@ -0,0 +1,300 @@
+package com.covoiturage.optimization;
+
+import java.util.Arrays;
+
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Graphe creux des k plus proches voisins, pour les instances trop grandes
+ * pour une matrice complète.
+ *
+ * PRINCIPE:
+ * Seules les k plus courtes arêtes de chaque point sont conservées, triées par
+ * distance croissante, dans des tableaux primitifs au format CSR:
+ *   voisins[debuts[i] .. debuts[i+1]-1]   et   distances[...] correspondantes
+ * Aucune autre distance n'est stockée: {@link #distance(int, int)} la calcule à la
+ * volée sur l'instantané des coordonnées (quelques multiplications et une racine),
+ * ce qui coûte moins qu'une recherche dans la liste de voisins.
+ *
+ * CONSTRUCTION:
+ * Les points sont projetés sur une grille plane (x = λ·cos φmin, y = φ) dont les
+ * cellules contiennent en moyenne k points. Pour chaque point, on parcourt les
+ * anneaux de cellules 0, 1, 2... autour du sien et on s'arrête dès que le k-ième
+ * voisin trouvé est plus proche que le bord de l'anneau: aucun point plus loin ne
+ * peut alors l'évincer. cos φmin sous-estime les écarts est-ouest, ce qui rend le
+ * critère d'arrêt conservateur.
+ *
+ * COMPLEXITÉ: construction O(n·k·log k) en moyenne, accès à un voisin O(1),
+ * mémoire 8·n·k octets (linéaire en n)
+ *
+ * Les points sans coordonnées n'ont pas de voisins; leurs distances restent
+ * simulées comme dans les autres matrices.
+ */
+public final class GrapheVoisinsProches implements MatriceDistances {
+
+    /** Nombre de points à partir duquel cette représentation est choisie automatiquement. */
+    public static final int SEUIL_AUTOMATIQUE = 10000;
+
+    /** Nombre de voisins conservés par point par défaut. */
+    public static final int K_DEFAUT = 16;
+
+    /** Marge de sécurité sur le rayon des anneaux (écart projection / distance réelle). */
+    private static final double MARGE_ANNEAU = 0.99;
+
+    private final InstanceCoordonnees instance;
+    private final int[] debuts;
+    private final int[] voisins;
+    private final float[] distances;
+
+    private GrapheVoisinsProches(InstanceCoordonnees instance, int[] debuts, int[] voisins, float[] distances) {
+        this.instance = instance;
+        this.debuts = debuts;
+        this.voisins = voisins;
+        this.distances = distances;
+    }
+
+    /**
+     * Construit le graphe des k plus proches voisins.
+     *
+     * @param instance Instantané des coordonnées
+     * @param k Nombre de voisins par point (strictement positif)
+     * @return Le graphe
+     */
+    public static GrapheVoisinsProches construire(InstanceCoordonnees instance, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Le nombre de voisins doit être positif");
+        }
+
+        int n = instance.taille();
+        int[] points = new int[n];
+        int nombrePoints = 0;
+        double yMin = Double.MAX_VALUE, yMax = -Double.MAX_VALUE;
+        double lonMin = Double.MAX_VALUE, lonMax = -Double.MAX_VALUE;
+        double cosMin = 1.0;
+
+        for (int i = 0; i < n; i++) {
+            if (instance.aCoordonnees(i)) {
+                points[nombrePoints++] = i;
+                yMin = Math.min(yMin, instance.latitudeRad(i));
+                yMax = Math.max(yMax, instance.latitudeRad(i));
+                lonMin = Math.min(lonMin, instance.longitudeRad(i));
+                lonMax = Math.max(lonMax, instance.longitudeRad(i));
+                cosMin = Math.min(cosMin, instance.cosLatitude(i));
+            }
+        }
+
+        int[] debuts = new int[n + 1];
+        if (nombrePoints < 2) {
+            return new GrapheVoisinsProches(instance, debuts, new int[0], new float[0]);
+        }
+
+        // Grille plane en km, environ k points par cellule
+        double facteurX = cosMin * GeoUtils.RAYON_TERRE_KM;
+        double facteurY = GeoUtils.RAYON_TERRE_KM;
+        double largeur = Math.max((lonMax - lonMin) * facteurX, 1e-6);
+        double hauteur = Math.max((yMax - yMin) * facteurY, 1e-6);
+        double cellule = Math.max(Math.sqrt(largeur * hauteur * k / nombrePoints), 1e-6);
+        int colonnes = (int) Math.min(Math.ceil(largeur / cellule) + 1, 1 << 15);
+        int lignes = (int) Math.min(Math.ceil(hauteur / cellule) + 1, 1 << 15);
+        cellule = Math.max(largeur / (colonnes - 1), hauteur / (lignes - 1));
+        cellule = Math.max(cellule, 1e-6);
+
+        // Répartition des points par cellule (tri par comptage, lui aussi en CSR)
+        int[] celluleDe = new int[n];
+        int[] debutsCellules = new int[colonnes * lignes + 1];
+        for (int p = 0; p < nombrePoints; p++) {
+            int i = points[p];
+            int cx = (int) ((instance.longitudeRad(i) - lonMin) * facteurX / cellule);
+            int cy = (int) ((instance.latitudeRad(i) - yMin) * facteurY / cellule);
+            celluleDe[i] = Math.min(cy, lignes - 1) * colonnes + Math.min(cx, colonnes - 1);
+            debutsCellules[celluleDe[i] + 1]++;
+        }
+        for (int c = 0; c < colonnes * lignes; c++) {
+            debutsCellules[c + 1] += debutsCellules[c];
+        }
+        int[] contenu = new int[nombrePoints];
+        int[] remplissage = Arrays.copyOf(debutsCellules, debutsCellules.length - 1);
+        for (int p = 0; p < nombrePoints; p++) {
+            int i = points[p];
+            contenu[remplissage[celluleDe[i]]++] = i;
+        }
+
+        int kEffectif = Math.min(k, nombrePoints - 1);
+        int[] voisins = new int[nombrePoints * kEffectif];
+        float[] distances = new float[nombrePoints * kEffectif];
+
+        // Tas max des k meilleurs candidats du point courant
+        int[] tasIndex = new int[kEffectif];
+        double[] tasDistance = new double[kEffectif];
+
+        int position = 0;
+        for (int i = 0; i < n; i++) {
+            debuts[i] = position;
+            if (!instance.aCoordonnees(i)) {
+                continue;
+            }
+
+            int cx = celluleDe[i] % colonnes;
+            int cy = celluleDe[i] / colonnes;
+            int taille = 0;
+
+            for (int anneau = 0; ; anneau++) {
+                for (int y = cy - anneau; y <= cy + anneau; y++) {
+                    if (y < 0 || y >= lignes) {
+                        continue;
+                    }
+                    boolean bord = y == cy - anneau || y == cy + anneau;
+                    for (int x = cx - anneau; x <= cx + anneau; x += bord ? 1 : 2 * anneau) {
+                        if (x >= 0 && x < colonnes) {
+                            int c = y * colonnes + x;
+                            for (int q = debutsCellules[c]; q < debutsCellules[c + 1]; q++) {
+                                int j = contenu[q];
+                                if (j != i) {
+                                    taille = insererTas(tasIndex, tasDistance, taille,
+                                                        j, instance.distanceCriblage(i, j));
+                                }
+                            }
+                        }
+                        if (anneau == 0) {
+                            break;
+                        }
+                    }
+                }
+
+                boolean grilleCouverte = cx - anneau <= 0 && cy - anneau <= 0
+                    && cx + anneau >= colonnes - 1 && cy + anneau >= lignes - 1;
+                if (grilleCouverte
+                        || (taille == kEffectif && tasDistance[0] <= anneau * cellule * MARGE_ANNEAU)) {
+                    break;
+                }
+            }
+
+            // Vidage du tas max: du plus loin au plus proche
+            for (int r = taille - 1; r >= 0; r--) {
+                voisins[position + r] = tasIndex[0];
+                distances[position + r] = (float) tasDistance[0];
+                taille = extraireTas(tasIndex, tasDistance, taille);
+            }
+            position += kEffectif;
+        }
+        debuts[n] = position;
+
+        return new GrapheVoisinsProches(instance, debuts, voisins, distances);
+    }
+
+    /**
+     * Insère un candidat dans le tas max borné à tasIndex.length éléments.
+     *
+     * @return La nouvelle taille du tas
+     */
+    private static int insererTas(int[] tasIndex, double[] tasDistance, int taille, int j, double d) {
+        if (taille == tasIndex.length) {
+            if (d >= tasDistance[0]) {
+                return taille;
+            }
+            // Remplacer la racine et descendre
+            tasIndex[0] = j;
+            tasDistance[0] = d;
+            descendre(tasIndex, tasDistance, taille);
+            return taille;
+        }
+
+        int e = taille;
+        tasIndex[e] = j;
+        tasDistance[e] = d;
+        while (e > 0) {
+            int parent = (e - 1) / 2;
+            if (tasDistance[parent] >= tasDistance[e]) {
+                break;
+            }
+            echanger(tasIndex, tasDistance, parent, e);
+            e = parent;
+        }
+        return taille + 1;
+    }
+
+    /**
+     * Retire la racine (le plus éloigné) du tas max.
+     *
+     * @return La nouvelle taille du tas
+     */
+    private static int extraireTas(int[] tasIndex, double[] tasDistance, int taille) {
+        taille--;
+        tasIndex[0] = tasIndex[taille];
+        tasDistance[0] = tasDistance[taille];
+        descendre(tasIndex, tasDistance, taille);
+        return taille;
+    }
+
+    private static void descendre(int[] tasIndex, double[] tasDistance, int taille) {
+        int e = 0;
+        while (true) {
+            int gauche = 2 * e + 1;
+            int plusGrand = e;
+            if (gauche < taille && tasDistance[gauche] > tasDistance[plusGrand]) {
+                plusGrand = gauche;
+            }
+            if (gauche + 1 < taille && tasDistance[gauche + 1] > tasDistance[plusGrand]) {
+                plusGrand = gauche + 1;
+            }
+            if (plusGrand == e) {
+                return;
+            }
+            echanger(tasIndex, tasDistance, e, plusGrand);
+            e = plusGrand;
+        }
+    }
+
+    private static void echanger(int[] tasIndex, double[] tasDistance, int a, int b) {
+        int index = tasIndex[a];
+        tasIndex[a] = tasIndex[b];
+        tasIndex[b] = index;
+        double distance = tasDistance[a];
+        tasDistance[a] = tasDistance[b];
+        tasDistance[b] = distance;
+    }
+
+    @Override
+    public int taille() {
+        return instance.taille();
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        return instance.distanceCriblage(i, j);
+    }
+
+    @Override
+    public double distanceExacte(int i, int j) {
+        return instance.haversine(i, j);
+    }
+
+    @Override
+    public double erreurRelativeMax() {
+        return instance.erreurRelativeCriblage();
+    }
+
+    @Override
+    public boolean estComplete() {
+        return instance.estComplete();
+    }
+
+    @Override
+    public int nombreVoisinsProches(int i) {
+        return debuts[i + 1] - debuts[i];
+    }
+
+    @Override
+    public int voisinProche(int i, int rang) {
+        return voisins[debuts[i] + rang];
+    }
+
+    /**
+     * @param i Index du point
+     * @param rang Rang du voisin (0 = le plus proche)
+     * @return Distance de criblage vers ce voisin, en kilomètres
+     */
+    public double distanceVoisinProche(int i, int rang) {
+        return distances[debuts[i] + rang];
+    }
+}
@@ -0,0 +1,174 @@
+package com.covoiturage.optimization;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.routage.FournisseurDistances;
+import com.covoiturage.routage.TableauTrajets;
+
+/**
+ * Insertion d'un passager au moindre détour dans un parcours existant, sans
+ * relancer d'optimisation.
+ *
+ * PRINCIPE:
+ * Le parcours p0 → p1 → ... → pn-1 est ouvert, comme les solutions des
+ * algorithmes. Le détour d'une insertion du passager r vaut:
+ * - en tête: t(r, p0)
+ * - entre pi et pi+1: t(pi, r) + t(r, pi+1) - t(pi, pi+1)
+ * - en queue: t(pn-1, r)
+ * Avec les temps vers et depuis r (n + n paires) et les tronçons du parcours
+ * (n - 1 paires), chaque position s'évalue en O(1).
+ *
+ * Le critère est le temps (détour en minutes); la distance départage les ex æquo.
+ * Quand le premier arrêt est fixe (départ du conducteur), la tête est exclue:
+ * le passager est inséré en position 1 à n.
+ *
+ * COMPLEXITÉ: O(n) paires demandées au fournisseur, O(n) calcul.
+ */
+public final class Insertion {
+
+    /** Index du passager dans le nouvel ordre (0 = en tête). */
+    private final int position;
+    private final double detourKm;
+    private final double detourMinutes;
+    /** true si une des valeurs retenues est une estimation du fournisseur. */
+    private final boolean estimee;
+
+    private Insertion(int position, double detourKm, double detourMinutes, boolean estimee) {
+        this.position = position;
+        this.detourKm = detourKm;
+        this.detourMinutes = detourMinutes;
+        this.estimee = estimee;
+    }
+
+    /**
+     * Cherche la meilleure position d'un passager dans un parcours.
+     *
+     * @param parcours Utilisateurs dans l'ordre de passage (non modifié)
+     * @param passager Passager à insérer
+     * @param fournisseur Source des distances et temps
+     * @return L'insertion la moins coûteuse (position 0 et détour nul si le parcours est vide)
+     */
+    public static Insertion calculer(List<Utilisateur> parcours, Utilisateur passager,
+                                     FournisseurDistances fournisseur) {
+        return calculer(parcours, passager, fournisseur, false);
+    }
+
+    /**
+     * Cherche la meilleure position d'un passager dans un parcours.
+     *
+     * @param parcours Utilisateurs dans l'ordre de passage (non modifié)
+     * @param passager Passager à insérer
+     * @param fournisseur Source des distances et temps
+     * @param premierFixe true si le premier arrêt doit rester en tête (départ du conducteur)
+     * @return L'insertion la moins coûteuse (position 0 et détour nul si le parcours est vide)
+     */
+    public static Insertion calculer(List<Utilisateur> parcours, Utilisateur passager,
+                                     FournisseurDistances fournisseur, boolean premierFixe) {
+        if (parcours.isEmpty()) {
+            return new Insertion(0, 0.0, 0.0, false);
+        }
+        List<Utilisateur> seul = Collections.singletonList(passager);
+        return meilleure(fournisseur.calculer(parcours, seul),
+                         fournisseur.calculer(seul, parcours),
+                         fournisseur.calculerTroncons(parcours), premierFixe);
+    }
+
+    /**
+     * Cherche la meilleure position à partir des tableaux déjà calculés.
+     *
+     * @param versPassager Tableau n × 1: de chaque arrêt vers le passager
+     * @param depuisPassager Tableau 1 × n: du passager vers chaque arrêt
+     * @param troncons Tableau 1 × (n - 1): tronçons successifs du parcours
+     * @return L'insertion la moins coûteuse
+     */
+    public static Insertion meilleure(TableauTrajets versPassager, TableauTrajets depuisPassager,
+                                      TableauTrajets troncons) {
+        return meilleure(versPassager, depuisPassager, troncons, false);
+    }
+
+    /**
+     * Cherche la meilleure position à partir des tableaux déjà calculés.
+     *
+     * @param versPassager Tableau n × 1: de chaque arrêt vers le passager
+     * @param depuisPassager Tableau 1 × n: du passager vers chaque arrêt
+     * @param troncons Tableau 1 × (n - 1): tronçons successifs du parcours
+     * @param premierFixe true si le premier arrêt doit rester en tête (position ≥ 1)
+     * @return L'insertion la moins coûteuse
+     */
+    public static Insertion meilleure(TableauTrajets versPassager, TableauTrajets depuisPassager,
+                                      TableauTrajets troncons, boolean premierFixe) {
+        int n = versPassager.getLignes();
+        if (n == 0) {
+            return new Insertion(0, 0.0, 0.0, false);
+        }
+
+        // En tête, sauf si le premier arrêt est fixe (la queue est toujours évaluée)
+        int meilleurePosition = 0;
+        double meilleurTemps = Double.POSITIVE_INFINITY;
+        double meilleureDistance = Double.POSITIVE_INFINITY;
+        boolean estimee = false;
+        if (!premierFixe) {
+            meilleurTemps = depuisPassager.tempsMinutes(0, 0);
+            meilleureDistance = depuisPassager.distanceKm(0, 0);
+            estimee = depuisPassager.estEstimee(0, 0);
+        }
+
+        // Entre deux arrêts
+        for (int i = 0; i + 1 < n; i++) {
+            double temps = versPassager.tempsMinutes(i, 0) + depuisPassager.tempsMinutes(0, i + 1)
+                - troncons.tempsMinutes(0, i);
+            double distance = versPassager.distanceKm(i, 0) + depuisPassager.distanceKm(0, i + 1)
+                - troncons.distanceKm(0, i);
+            if (meilleur(temps, distance, meilleurTemps, meilleureDistance)) {
+                meilleurePosition = i + 1;
+                meilleurTemps = temps;
+                meilleureDistance = distance;
+                estimee = versPassager.estEstimee(i, 0) || depuisPassager.estEstimee(0, i + 1)
+                    || troncons.estEstimee(0, i);
+            }
+        }
+
+        // En queue
+        double temps = versPassager.tempsMinutes(n - 1, 0);
+        double distance = versPassager.distanceKm(n - 1, 0);
+        if (meilleur(temps, distance, meilleurTemps, meilleureDistance)) {
+            meilleurePosition = n;
+            meilleurTemps = temps;
+            meilleureDistance = distance;
+            estimee = versPassager.estEstimee(n - 1, 0);
+        }
+
+        // L'inégalité triangulaire peut être légèrement violée par un réseau réel
+        return new Insertion(meilleurePosition, Math.max(0.0, meilleureDistance),
+                             Math.max(0.0, meilleurTemps), estimee);
+    }
+
+    private static boolean meilleur(double temps, double distance, double tempsRef, double distanceRef) {
+        return temps < tempsRef || (temps == tempsRef && distance < distanceRef);
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public double getDetourKm() {
+        return detourKm;
+    }
+
+    public double getDetourMinutes() {
+        return detourMinutes;
+    }
+
+    /**
+     * @return Le détour en millisecondes, arrondi
+     */
+    public long getDetourMillis() {
+        return Math.round(detourMinutes * 60_000);
+    }
+
+    public boolean isEstimee() {
+        return estimee;
+    }
+}
@@ -0,0 +1,313 @@
+package com.covoiturage.optimization;
+
+import java.util.List;
+import java.util.Random;
+
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Instantané immuable des coordonnées d'une instance, en structure de tableaux.
+ *
+ * PRINCIPE:
+ * Chaque appel de distance sur des {@link Utilisateur} déboxe quatre {@code Double}
+ * et recalcule toRadians et cos(latitude) pour chaque extrémité. Ici, ces valeurs
+ * sont calculées une seule fois par point et rangées dans des tableaux primitifs
+ * contigus (latRad, lonRad, cosLat), indexés comme la liste d'utilisateurs.
+ *
+ * Le noyau {@link #remplirLigneHaversine(int, double[])} calcule une ligne entière
+ * de distances en une boucle sans branche ni allocation, que le JIT peut dérouler.
+ *
+ * PRÉCISION À DEUX NIVEAUX:
+ * Pour le criblage (plus proche non visité, voisinages, comparaisons), on utilise
+ * l'approximation équirectangulaire
+ *   d ≈ R·√((Δλ·cos φm)² + Δφ²), avec cos φm ≈ (cos φ1 + cos φ2) / 2
+ * qui ne demande ni sinus ni arcsinus: une racine carrée et quelques multiplications.
+ * Mesurée contre Haversine sur des paires aléatoires, son erreur relative reste
+ * sous {@link #ERREUR_RELATIVE_EQUIRECTANGULAIRE} (1e-4) tant que l'instance tient
+ * dans {@link #PORTEE_EQUIRECTANGULAIRE_KM} km et sous {@link #LATITUDE_MAX_EQUIRECTANGULAIRE}°
+ * de latitude (en pratique 1e-6 à l'échelle d'une ville). Au-delà, le criblage
+ * retombe sur Haversine. Les totaux rapportés utilisent toujours Haversine.
+ *
+ * Les utilisateurs sans coordonnées reçoivent une distance simulée (1 à 11 km, comme
+ * auparavant), tirée une seule fois par paire pour que l'instance reste cohérente
+ * d'une évaluation à l'autre.
+ */
+public final class InstanceCoordonnees {
+
+    private static final double DEUX_RAYONS_KM = 2 * GeoUtils.RAYON_TERRE_KM;
+
+    /** Étendue maximale (diagonale de l'emprise) pour le criblage équirectangulaire. */
+    public static final double PORTEE_EQUIRECTANGULAIRE_KM = 100.0;
+
+    /** Latitude absolue maximale pour le criblage équirectangulaire, en degrés. */
+    public static final double LATITUDE_MAX_EQUIRECTANGULAIRE = 70.0;
+
+    /** Borne de l'erreur relative de l'approximation équirectangulaire dans son domaine. */
+    public static final double ERREUR_RELATIVE_EQUIRECTANGULAIRE = 1e-4;
+
+    private final double[] latRad;
+    private final double[] lonRad;
+    private final double[] cosLat;
+    private final boolean[] presentes;
+    private final int manquantes;
+    private final long graineSimulation;
+    private final boolean approximable;
+
+    private InstanceCoordonnees(double[] latRad, double[] lonRad, double[] cosLat,
+                                boolean[] presentes, int manquantes, long graineSimulation,
+                                boolean approximable) {
+        this.latRad = latRad;
+        this.lonRad = lonRad;
+        this.cosLat = cosLat;
+        this.presentes = presentes;
+        this.manquantes = manquantes;
+        this.graineSimulation = graineSimulation;
+        this.approximable = approximable;
+    }
+
+    /**
+     * Construit l'instantané à partir d'une liste d'utilisateurs.
+     *
+     * @param utilisateurs Liste des utilisateurs (l'index i correspond à utilisateurs.get(i))
+     * @return L'instantané des coordonnées
+     */
+    public static InstanceCoordonnees depuis(List<Utilisateur> utilisateurs) {
+        int n = utilisateurs.size();
+        double[] latRad = new double[n];
+        double[] lonRad = new double[n];
+        double[] cosLat = new double[n];
+        boolean[] presentes = new boolean[n];
+        int manquantes = 0;
+        double latMin = Double.MAX_VALUE, latMax = -Double.MAX_VALUE;
+        double lonMin = Double.MAX_VALUE, lonMax = -Double.MAX_VALUE;
+
+        for (int i = 0; i < n; i++) {
+            Utilisateur utilisateur = utilisateurs.get(i);
+            if (GeoUtils.aCoordonnees(utilisateur)) {
+                double lat = utilisateur.getLatitude();
+                double lon = utilisateur.getLongitude();
+                latRad[i] = Math.toRadians(lat);
+                lonRad[i] = Math.toRadians(lon);
+                cosLat[i] = Math.cos(latRad[i]);
+                presentes[i] = true;
+                latMin = Math.min(latMin, lat);
+                latMax = Math.max(latMax, lat);
+                lonMin = Math.min(lonMin, lon);
+                lonMax = Math.max(lonMax, lon);
+            } else {
+                manquantes++;
+            }
+        }
+
+        // Le criblage équirectangulaire n'est sûr que dans son domaine de validité
+        boolean approximable = manquantes == n
+            || (Math.max(Math.abs(latMin), Math.abs(latMax)) <= LATITUDE_MAX_EQUIRECTANGULAIRE
+                && GeoUtils.haversine(latMin, lonMin, latMax, lonMax) <= PORTEE_EQUIRECTANGULAIRE_KM);
+
+        return new InstanceCoordonnees(latRad, lonRad, cosLat, presentes, manquantes,
+                                       System.nanoTime(), approximable);
+    }
+
+    /**
+     * @return Le nombre de points de l'instance
+     */
+    public int taille() {
+        return latRad.length;
+    }
+
+    /**
+     * @return true si tous les points ont des coordonnées réelles
+     */
+    public boolean estComplete() {
+        return manquantes == 0;
+    }
+
+    /**
+     * @return Borne de l'erreur relative des distances de criblage
+     *         (0 si le criblage utilise Haversine)
+     */
+    public double erreurRelativeCriblage() {
+        return approximable ? ERREUR_RELATIVE_EQUIRECTANGULAIRE : 0.0;
+    }
+
+    /**
+     * @param i Index du point
+     * @return true si le point i a des coordonnées réelles
+     */
+    public boolean aCoordonnees(int i) {
+        return presentes[i];
+    }
+
+    public double latitudeRad(int i) {
+        return latRad[i];
+    }
+
+    public double longitudeRad(int i) {
+        return lonRad[i];
+    }
+
+    public double cosLatitude(int i) {
+        return cosLat[i];
+    }
+
+    /**
+     * Calcule la distance de Haversine entre deux points de l'instance.
+     *
+     * @param i Index du premier point
+     * @param j Index du second point
+     * @return Distance en kilomètres
+     */
+    public double haversine(int i, int j) {
+        if (!presentes[i] || !presentes[j]) {
+            return distanceSimulee(i, j);
+        }
+        double sinDLat = Math.sin((latRad[j] - latRad[i]) * 0.5);
+        double sinDLon = Math.sin((lonRad[j] - lonRad[i]) * 0.5);
+        double a = sinDLat * sinDLat + cosLat[i] * cosLat[j] * sinDLon * sinDLon;
+        return DEUX_RAYONS_KM * Math.asin(Math.sqrt(Math.min(1.0, a)));
+    }
+
+    /**
+     * Calcule la distance de criblage entre deux points: équirectangulaire dans le
+     * domaine de validité, Haversine sinon.
+     *
+     * @param i Index du premier point
+     * @param j Index du second point
+     * @return Distance en kilomètres
+     */
+    public double distanceCriblage(int i, int j) {
+        if (!approximable || !presentes[i] || !presentes[j]) {
+            return haversine(i, j);
+        }
+        double x = (lonRad[j] - lonRad[i]) * (cosLat[i] + cosLat[j]) * 0.5;
+        double y = latRad[j] - latRad[i];
+        return GeoUtils.RAYON_TERRE_KM * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Noyau par lot: calcule les distances de Haversine du point i vers tous les points.
+     *
+     * Les invariants de la ligne (latitude, longitude, cosinus du point i) sont sortis
+     * de la boucle; le corps ne lit que des tableaux primitifs contigus.
+     *
+     * @param i Index du point d'origine
+     * @param ligne Tableau de sortie de longueur ≥ taille(); ligne[j] = distance(i, j) en km
+     */
+    public void remplirLigneHaversine(int i, double[] ligne) {
+        remplirLigneHaversine(i, 0, ligne);
+    }
+
+    /**
+     * Variante du noyau de Haversine limitée aux colonnes j ≥ debut
+     * (demi-ligne d'une matrice symétrique).
+     *
+     * @param i Index du point d'origine
+     * @param debut Première colonne calculée
+     * @param ligne Tableau de sortie; seules les cases debut..taille()-1 sont écrites
+     */
+    public void remplirLigneHaversine(int i, int debut, double[] ligne) {
+        final int n = latRad.length;
+        final double lat = latRad[i];
+        final double lon = lonRad[i];
+        final double c = cosLat[i];
+
+        for (int j = debut; j < n; j++) {
+            double sinDLat = Math.sin((latRad[j] - lat) * 0.5);
+            double sinDLon = Math.sin((lonRad[j] - lon) * 0.5);
+            double a = sinDLat * sinDLat + c * cosLat[j] * sinDLon * sinDLon;
+            ligne[j] = DEUX_RAYONS_KM * Math.asin(Math.sqrt(Math.min(1.0, a)));
+        }
+
+        if (manquantes > 0) {
+            corrigerManquantes(i, debut, ligne);
+        }
+    }
+
+    /**
+     * Noyau par lot approché: distances équirectangulaires du point i vers tous les points.
+     *
+     * Sans fonction trigonométrique dans la boucle; à n'utiliser que si
+     * {@link #erreurRelativeCriblage()} est non nul (domaine de validité vérifié).
+     *
+     * @param i Index du point d'origine
+     * @param ligne Tableau de sortie de longueur ≥ taille(); ligne[j] ≈ distance(i, j) en km
+     */
+    public void remplirLigneEquirectangulaire(int i, double[] ligne) {
+        remplirLigneEquirectangulaire(i, 0, ligne);
+    }
+
+    /**
+     * Variante du noyau équirectangulaire limitée aux colonnes j ≥ debut.
+     *
+     * @param i Index du point d'origine
+     * @param debut Première colonne calculée
+     * @param ligne Tableau de sortie; seules les cases debut..taille()-1 sont écrites
+     */
+    public void remplirLigneEquirectangulaire(int i, int debut, double[] ligne) {
+        final int n = latRad.length;
+        final double lat = latRad[i];
+        final double lon = lonRad[i];
+        final double c = cosLat[i];
+
+        for (int j = debut; j < n; j++) {
+            double x = (lonRad[j] - lon) * (c + cosLat[j]) * 0.5;
+            double y = latRad[j] - lat;
+            ligne[j] = GeoUtils.RAYON_TERRE_KM * Math.sqrt(x * x + y * y);
+        }
+
+        if (manquantes > 0) {
+            corrigerManquantes(i, debut, ligne);
+        }
+    }
+
+    /**
+     * Remplit une ligne de distances de criblage: équirectangulaires si l'instance
+     * est dans le domaine de validité, Haversine sinon.
+     *
+     * @param i Index du point d'origine
+     * @param ligne Tableau de sortie de longueur ≥ taille()
+     */
+    public void remplirLigneCriblage(int i, double[] ligne) {
+        remplirLigneCriblage(i, 0, ligne);
+    }
+
+    /**
+     * Variante de {@link #remplirLigneCriblage(int, double[])} limitée aux colonnes j ≥ debut.
+     *
+     * @param i Index du point d'origine
+     * @param debut Première colonne calculée
+     * @param ligne Tableau de sortie; seules les cases debut..taille()-1 sont écrites
+     */
+    public void remplirLigneCriblage(int i, int debut, double[] ligne) {
+        if (approximable) {
+            remplirLigneEquirectangulaire(i, debut, ligne);
+        } else {
+            remplirLigneHaversine(i, debut, ligne);
+        }
+    }
+
+    /**
+     * Remplace, dans une ligne, les distances impliquant un point sans coordonnées.
+     */
+    private void corrigerManquantes(int i, int debut, double[] ligne) {
+        for (int j = debut; j < latRad.length; j++) {
+            if (!presentes[i] || !presentes[j]) {
+                ligne[j] = distanceSimulee(i, j);
+            }
+        }
+    }
+
+    /**
+     * Distance simulée (1 à 11 km) pour une paire sans coordonnées, stable et symétrique.
+     */
+    private double distanceSimulee(int i, int j) {
+        if (i == j) {
+            return 0.0;
+        }
+        int a = Math.min(i, j);
+        int b = Math.max(i, j);
+        long graine = graineSimulation ^ (((long) a << 32) | (b & 0xffffffffL));
+        return new Random(graine).nextDouble() * 10 + 1;
+    }
+}
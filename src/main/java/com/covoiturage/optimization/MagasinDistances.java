@@ -0,0 +1,578 @@
+package com.covoiturage.optimization;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.utils.ConfigurationManager;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Magasin persistant des distances et temps entre tous les utilisateurs connus.
+ *
+ * PRINCIPE:
+ * Chaque utilisateur (clé: utilisateurs.id) occupe un emplacement k. Les paires (k, j),
+ * j < k, sont rangées en triangle inférieur dans un fichier projeté en mémoire:
+ *   offset(k, j) = (k·(k-1)/2 + j) · 8 octets   →   [distance km (float), temps min (float)]
+ * Écrire un emplacement, c'est écrire sa ligne (paires (k, j), j < k) et sa colonne
+ * (paires (m, k), m > k). Un nouvel utilisateur prend un emplacement libre, ou à
+ * défaut un nouvel emplacement en fin de fichier.
+ *
+ * DÉPLACEMENTS ET SUPPRESSIONS:
+ * Chaque emplacement compte les vues vivantes qui le lisent; une vue est décomptée
+ * quand le ramasse-miettes la récupère ({@link Cleaner}).
+ * - Un utilisateur déplacé dont l'emplacement n'est lu par aucune vue est réécrit
+ *   sur place
+ * - Sinon il reçoit un autre emplacement (copie sur écriture) et l'ancien est abandonné
+ * - Un utilisateur supprimé ({@link #retirer(Long)}) abandonne son emplacement
+ * Un emplacement abandonné rejoint la liste des emplacements libres dès qu'aucune
+ * vue ne le lit plus: la taille du magasin suit le nombre d'utilisateurs, pas le
+ * nombre de déplacements.
+ *
+ * Un fichier d'index à part garde, par emplacement, l'id et les coordonnées qui ont
+ * servi au calcul (id ≤ 0: emplacement libre). Ordre des écritures: emplacements à
+ * réécrire marqués libres dans l'index (forcé), paires forcées, enregistrements
+ * d'index forcés, puis compteur d'emplacements dans l'en-tête. Un arrêt brutal
+ * laisse au pire des emplacements libres, réutilisés au redémarrage.
+ *
+ * LECTURE:
+ * {@link #matricePour(List)} renvoie une vue sur le sous-ensemble demandé qui lit
+ * directement le fichier projeté (aucune copie, aucun calcul au démarrage à chaud).
+ * Les emplacements d'une vue ne sont pas réécrits tant qu'elle est vivante: elle lit
+ * un instantané stable, même quand des utilisateurs sont ajoutés ou déplacés après
+ * sa création. Le fichier ne fait que grandir: une vue garde la projection en cours
+ * à sa création et reste valide quand une projection plus grande la remplace.
+ *
+ * CONCURRENCE: verrou lecture/écriture. Une requête dont tous les utilisateurs sont
+ * connus et immobiles ne prend que le verrou de lecture; seules les requêtes qui
+ * ajoutent ou déplacent des utilisateurs, et les suppressions, prennent le verrou
+ * d'écriture.
+ *
+ * COMPLEXITÉ:
+ * - Écriture d'un emplacement: O(N) où N = nombre d'emplacements
+ * - Vue sur k utilisateurs: O(k), accès O(1)
+ * - Disque: 4·N² octets (pairs) + 24·N octets (index)
+ *
+ * CONFIGURATION:
+ * Désactivé par défaut. distance.store.enabled=true l'active, avec un répertoire
+ * explicite (distance.store.directory) et au plus distance.store.maxUsers
+ * emplacements (5000 par défaut, soit environ 100 Mo; plafond {@link #TAILLE_MAX}).
+ * Quand le magasin est désactivé, ou plein le temps que les vues anciennes soient
+ * récupérées, {@link #matricePour(List)} renvoie vide et l'appelant construit la
+ * matrice en mémoire.
+ */
+public class MagasinDistances {
+
+    private static final Logger logger = LoggerFactory.getLogger(MagasinDistances.class);
+    private static MagasinDistances instance;
+
+    /** Nombre maximal d'emplacements (triangle de moins de 2^31 octets). */
+    public static final int TAILLE_MAX = 23000;
+
+    /** Nombre d'emplacements par défaut (environ 100 Mo de paires). */
+    private static final int EMPLACEMENTS_DEFAUT = 5000;
+
+    private static final int MAGIC = 0x43564449; // "CVDI"
+    private static final int VERSION = 1;
+    private static final int TAILLE_ENTETE = 16;
+    private static final int TAILLE_ENREGISTREMENT = 24;
+    private static final int OCTETS_PAR_PAIRE = 8;
+    private static final long ID_LIBRE = -1L;
+    private static final double TOLERANCE_DEPLACEMENT_DEGRES = 1e-7;
+    private static final double ERREUR_ARRONDI_FLOAT = 0x1.0p-24;
+
+    /** Désinscrit les vues récupérées par le ramasse-miettes. */
+    private static final Cleaner NETTOYEUR = Cleaner.create();
+
+    private final boolean actif;
+    private final int emplacementsMax;
+    private final ReadWriteLock verrou = new ReentrantReadWriteLock();
+    private RandomAccessFile fichierIndex;
+    private RandomAccessFile fichierPaires;
+    private MappedByteBuffer paires;
+
+    private final Map<Long, Integer> emplacements = new HashMap<>();
+    private long[] ids = new long[0];
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    private int nombre; // Emplacements occupés ou libres en tête du fichier
+    private final Deque<Integer> libres = new ArrayDeque<>();
+    private final List<Integer> abandonnes = new ArrayList<>();
+
+    // Nombre de vues vivantes par emplacement, aussi décompté par le thread du Cleaner
+    private final Object verrouLecteurs = new Object();
+    private int[] lecteurs = new int[0];
+
+    /**
+     * Constructeur privé (pattern Singleton).
+     */
+    private MagasinDistances() {
+        ConfigurationManager configuration = ConfigurationManager.getInstance();
+        boolean active = configuration.getBoolean("distance.store.enabled", false);
+        String repertoire = configuration.getString("distance.store.directory", "").trim();
+        this.emplacementsMax = Math.min(TAILLE_MAX,
+            configuration.getInt("distance.store.maxUsers", EMPLACEMENTS_DEFAUT));
+
+        if (active && repertoire.isEmpty()) {
+            logger.warn("Magasin de distances activé sans distance.store.directory, calcul en mémoire");
+            active = false;
+        }
+        if (active) {
+            try {
+                ouvrir(new File(repertoire));
+                logger.info("Magasin de distances ouvert: {} ({} utilisateurs, {} emplacements libres)",
+                            repertoire, emplacements.size(), libres.size());
+            } catch (IOException | RuntimeException e) {
+                logger.error("Impossible d'ouvrir le magasin de distances " + repertoire
+                             + ", calcul en mémoire", e);
+                active = false;
+            }
+        }
+        this.actif = active;
+    }
+
+    /**
+     * Obtient l'instance unique du magasin.
+     *
+     * @return Instance du MagasinDistances
+     */
+    public static synchronized MagasinDistances getInstance() {
+        if (instance == null) {
+            instance = new MagasinDistances();
+        }
+        return instance;
+    }
+
+    /**
+     * Ouvre (ou crée) les fichiers du magasin et recharge l'index en mémoire.
+     */
+    private void ouvrir(File repertoire) throws IOException {
+        if (!repertoire.isDirectory() && !repertoire.mkdirs()) {
+            throw new IOException("Répertoire inaccessible: " + repertoire);
+        }
+
+        fichierIndex = new RandomAccessFile(new File(repertoire, "utilisateurs.idx"), "rw");
+        fichierPaires = new RandomAccessFile(new File(repertoire, "paires.dat"), "rw");
+
+        if (fichierIndex.length() < TAILLE_ENTETE
+                || fichierIndex.readInt() != MAGIC || fichierIndex.readInt() != VERSION) {
+            // Magasin absent ou d'un autre format: repartir de zéro
+            fichierIndex.setLength(0);
+            fichierPaires.setLength(0);
+            ecrireEntete(0);
+        }
+
+        fichierIndex.seek(8);
+        int enregistres = fichierIndex.readInt();
+        agrandirIndex(enregistres);
+        fichierIndex.seek(TAILLE_ENTETE);
+        List<Integer> doublons = new ArrayList<>();
+        for (int k = 0; k < enregistres; k++) {
+            ids[k] = fichierIndex.readLong();
+            latitudes[k] = fichierIndex.readDouble();
+            longitudes[k] = fichierIndex.readDouble();
+            if (ids[k] <= 0) {
+                libres.add(k);
+                continue;
+            }
+            // Le dernier emplacement d'un id l'emporte (écriture interrompue)
+            Integer ancien = emplacements.put(ids[k], k);
+            if (ancien != null) {
+                doublons.add(ancien);
+            }
+        }
+        nombre = enregistres;
+
+        for (int k : doublons) {
+            ecrireLibre(k);
+            libres.add(k);
+        }
+        if (!doublons.isEmpty()) {
+            fichierIndex.getChannel().force(false);
+        }
+
+        projeter(nombre);
+    }
+
+    /**
+     * Renvoie une matrice lue directement dans le magasin pour une liste d'utilisateurs,
+     * après y avoir ajouté les nouveaux et ceux qui ont bougé.
+     *
+     * @param utilisateurs Liste des utilisateurs (l'index i correspond à utilisateurs.get(i))
+     * @return La vue, ou vide si le magasin est inactif, plein, ou si un utilisateur
+     *         n'a pas d'id ou de coordonnées
+     */
+    public Optional<MatriceDistances> matricePour(List<Utilisateur> utilisateurs) {
+        if (!actif) {
+            return Optional.empty();
+        }
+
+        for (Utilisateur utilisateur : utilisateurs) {
+            if (utilisateur.getId() == null || !GeoUtils.aCoordonnees(utilisateur)) {
+                return Optional.empty();
+            }
+        }
+
+        // Cas courant: tout est déjà à jour, lecture seule
+        verrou.readLock().lock();
+        try {
+            if (aJour(utilisateurs)) {
+                return Optional.of(vue(utilisateurs));
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+
+        verrou.writeLock().lock();
+        try {
+            synchroniser(utilisateurs);
+            return Optional.of(vue(utilisateurs));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Magasin de distances indisponible pour cette requête: {}", e.getMessage());
+            return Optional.empty();
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Abandonne l'emplacement d'un utilisateur supprimé; il redevient libre dès
+     * qu'aucune vue ne peut plus le lire.
+     *
+     * @param id L'ID de l'utilisateur
+     */
+    public void retirer(Long id) {
+        if (!actif) {
+            return;
+        }
+        verrou.writeLock().lock();
+        try {
+            Integer slot = emplacements.remove(id);
+            if (slot != null) {
+                abandonner(slot);
+                fichierIndex.getChannel().force(false);
+            }
+        } catch (IOException e) {
+            logger.warn("Impossible de libérer l'emplacement de l'utilisateur {}: {}", id, e.getMessage());
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true si tous les utilisateurs ont un emplacement à leurs coordonnées actuelles
+     */
+    private boolean aJour(List<Utilisateur> utilisateurs) {
+        for (Utilisateur utilisateur : utilisateurs) {
+            Integer slot = emplacements.get(utilisateur.getId());
+            if (slot == null || aBouge(slot, utilisateur)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean aBouge(int slot, Utilisateur utilisateur) {
+        return Math.abs(latitudes[slot] - utilisateur.getLatitude()) > TOLERANCE_DEPLACEMENT_DEGRES
+               || Math.abs(longitudes[slot] - utilisateur.getLongitude()) > TOLERANCE_DEPLACEMENT_DEGRES;
+    }
+
+    /**
+     * Vue sur les emplacements actuels des utilisateurs, comptée comme lectrice de
+     * ses emplacements jusqu'à sa récupération. Appelé sous verrou.
+     */
+    private Vue vue(List<Utilisateur> utilisateurs) {
+        int[] slots = new int[utilisateurs.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = emplacements.get(utilisateurs.get(i).getId());
+        }
+        Vue vue = new Vue(slots, paires.duplicate().order(ByteOrder.nativeOrder()));
+
+        compterLecteurs(slots, 1);
+        // L'action de nettoyage ne doit pas retenir la vue
+        NETTOYEUR.register(vue, () -> compterLecteurs(slots, -1));
+        return vue;
+    }
+
+    private void compterLecteurs(int[] slots, int delta) {
+        synchronized (verrouLecteurs) {
+            for (int slot : slots) {
+                lecteurs[slot] += delta;
+            }
+        }
+    }
+
+    private boolean estLu(int slot) {
+        synchronized (verrouLecteurs) {
+            return lecteurs[slot] > 0;
+        }
+    }
+
+    /**
+     * Écrit les utilisateurs inconnus et ceux dont les coordonnées ont changé, puis
+     * rend les écritures durables. Appelé sous le verrou d'écriture.
+     *
+     * @param utilisateurs Utilisateurs avec id et coordonnées
+     * @throws IOException En cas d'erreur d'écriture
+     * @throws IllegalArgumentException Si le magasin est plein
+     */
+    private void synchroniser(List<Utilisateur> utilisateurs) throws IOException {
+        // Les emplacements abandonnés qu'aucune vue ne lit plus redeviennent libres
+        abandonnes.removeIf(slot -> {
+            if (estLu(slot)) {
+                return false;
+            }
+            libres.add(slot);
+            return true;
+        });
+
+        List<Integer> ecrits = new ArrayList<>();
+        int surPlace = 0;
+        int copies = 0;
+        try {
+            for (Utilisateur utilisateur : utilisateurs) {
+                Integer slot = emplacements.get(utilisateur.getId());
+                if (slot != null && !aBouge(slot, utilisateur)) {
+                    continue;
+                }
+                int k;
+                if (slot != null && !estLu(slot)) {
+                    // Aucune vue ne lit l'ancienne ligne: réécriture sur place
+                    k = slot;
+                    ecrireLibre(k);
+                    surPlace++;
+                } else {
+                    k = allouer();
+                    if (slot != null) {
+                        abandonner(slot);
+                        copies++;
+                    }
+                }
+                ids[k] = utilisateur.getId();
+                latitudes[k] = utilisateur.getLatitude();
+                longitudes[k] = utilisateur.getLongitude();
+                emplacements.put(ids[k], k);
+                ecrits.add(k);
+            }
+        } finally {
+            // Même après un échec partiel, les emplacements déjà attribués sont écrits
+            if (!ecrits.isEmpty()) {
+                persister(ecrits);
+                logger.debug("Magasin de distances: {} écriture(s) dont {} sur place et {} copie(s), "
+                             + "{} utilisateurs, {} emplacements libres",
+                             ecrits.size(), surPlace, copies, emplacements.size(), libres.size());
+            }
+        }
+    }
+
+    /**
+     * Attribue un emplacement libre, ou à défaut un nouvel emplacement en fin de fichier.
+     *
+     * @throws IllegalArgumentException Si le magasin est plein
+     */
+    private int allouer() throws IOException {
+        if (!libres.isEmpty()) {
+            return libres.pollFirst();
+        }
+        if (nombre >= emplacementsMax) {
+            throw new IllegalArgumentException("Magasin plein (" + emplacementsMax + " emplacements, "
+                                               + abandonnes.size() + " en attente de libération)");
+        }
+        int k = nombre;
+        agrandirIndex(k + 1);
+        projeter(k + 1);
+        nombre = k + 1;
+        return k;
+    }
+
+    /**
+     * Marque un emplacement libre dans l'index; il ne sera réattribué qu'une fois
+     * récupérées les vues qui le lisent.
+     */
+    private void abandonner(int slot) throws IOException {
+        ecrireLibre(slot);
+        abandonnes.add(slot);
+    }
+
+    /**
+     * Rend durables les emplacements écrits: marques libres de l'index, puis paires,
+     * puis enregistrements, puis en-tête, chaque étape forcée sur disque avant la suivante.
+     */
+    private void persister(List<Integer> ecrits) throws IOException {
+        fichierIndex.getChannel().force(false);
+        for (int k : ecrits) {
+            ecrireLigne(k);
+            ecrireColonne(k);
+        }
+        paires.force();
+        for (int k : ecrits) {
+            ecrireEnregistrement(k);
+        }
+        fichierIndex.getChannel().force(false);
+        ecrireEntete(nombre);
+        fichierIndex.getChannel().force(false);
+    }
+
+    /**
+     * Écrit les paires (k, j) pour j < k.
+     */
+    private void ecrireLigne(int k) {
+        for (int j = 0; j < k; j++) {
+            ecrirePaire(k, j);
+        }
+    }
+
+    /**
+     * Écrit les paires (m, k) pour k < m < nombre.
+     */
+    private void ecrireColonne(int k) {
+        for (int m = k + 1; m < nombre; m++) {
+            ecrirePaire(m, k);
+        }
+    }
+
+    private void ecrirePaire(int k, int j) {
+        double distance = GeoUtils.haversine(latitudes[k], longitudes[k], latitudes[j], longitudes[j]);
+        int offset = offset(k, j);
+        paires.putFloat(offset, (float) distance);
+        paires.putFloat(offset + Float.BYTES, (float) Solution.estimerTempsMinutes(distance));
+    }
+
+    private static int offset(int k, int j) {
+        return (int) (((long) k * (k - 1) / 2 + j) * OCTETS_PAR_PAIRE);
+    }
+
+    /**
+     * Projette le fichier des paires pour au moins un nombre d'emplacements donné,
+     * avec une marge pour amortir les agrandissements.
+     */
+    private void projeter(int emplacementsRequis) throws IOException {
+        long requis = (long) emplacementsRequis * (emplacementsRequis - 1) / 2 * OCTETS_PAR_PAIRE;
+        if (paires != null && paires.capacity() >= requis) {
+            return;
+        }
+
+        long capacite = Math.max(requis + requis / 2, 64 * 1024);
+        capacite = Math.max(requis, Math.min(capacite, (long) offset(emplacementsMax, 0)));
+        if (fichierPaires.length() < capacite) {
+            fichierPaires.setLength(capacite);
+        }
+        paires = fichierPaires.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacite);
+        paires.order(ByteOrder.nativeOrder());
+    }
+
+    private void agrandirIndex(int taille) {
+        if (ids.length >= taille) {
+            return;
+        }
+        int capacite = Math.max(taille, ids.length + ids.length / 2 + 16);
+        ids = Arrays.copyOf(ids, capacite);
+        latitudes = Arrays.copyOf(latitudes, capacite);
+        longitudes = Arrays.copyOf(longitudes, capacite);
+        synchronized (verrouLecteurs) {
+            lecteurs = Arrays.copyOf(lecteurs, capacite);
+        }
+    }
+
+    private void ecrireEnregistrement(int k) throws IOException {
+        fichierIndex.seek(TAILLE_ENTETE + (long) k * TAILLE_ENREGISTREMENT);
+        fichierIndex.writeLong(ids[k]);
+        fichierIndex.writeDouble(latitudes[k]);
+        fichierIndex.writeDouble(longitudes[k]);
+    }
+
+    private void ecrireLibre(int k) throws IOException {
+        fichierIndex.seek(TAILLE_ENTETE + (long) k * TAILLE_ENREGISTREMENT);
+        fichierIndex.writeLong(ID_LIBRE);
+    }
+
+    private void ecrireEntete(int enregistres) throws IOException {
+        fichierIndex.seek(0);
+        fichierIndex.writeInt(MAGIC);
+        fichierIndex.writeInt(VERSION);
+        fichierIndex.writeInt(enregistres);
+        fichierIndex.writeInt(0);
+    }
+
+    /**
+     * @return Le nombre d'utilisateurs enregistrés
+     */
+    public int getNombreUtilisateurs() {
+        verrou.readLock().lock();
+        try {
+            return emplacements.size();
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true si le magasin est ouvert et utilisable
+     */
+    public boolean estActif() {
+        return actif;
+    }
+
+    /**
+     * Vue d'un sous-ensemble d'utilisateurs, lue directement dans la projection.
+     */
+    private static final class Vue implements MatriceDistances {
+
+        private final int[] slots;
+        private final ByteBuffer paires;
+
+        Vue(int[] slots, ByteBuffer paires) {
+            this.slots = slots;
+            this.paires = paires;
+        }
+
+        @Override
+        public int taille() {
+            return slots.length;
+        }
+
+        @Override
+        public double distance(int i, int j) {
+            int a = slots[i];
+            int b = slots[j];
+            if (a == b) {
+                return 0.0;
+            }
+            return paires.getFloat(a > b ? offset(a, b) : offset(b, a));
+        }
+
+        @Override
+        public double tempsMinutes(int i, int j) {
+            int a = slots[i];
+            int b = slots[j];
+            if (a == b) {
+                return 0.0;
+            }
+            return paires.getFloat((a > b ? offset(a, b) : offset(b, a)) + Float.BYTES);
+        }
+
+        @Override
+        public double erreurRelativeMax() {
+            return ERREUR_ARRONDI_FLOAT;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.covoiturage.optimization;
+
+import java.util.List;
+
+import com.covoiturage.models.Utilisateur;
+
+/**
+ * Distances entre les points d'une instance, indexés comme la liste d'utilisateurs.
+ *
+ * Les algorithmes ne lisent les distances qu'au travers de cette interface, ce qui
+ * permet de changer de représentation (dense, compacte, calculée à la volée)
+ * sans les modifier.
+ */
+public interface MatriceDistances {
+
+    /**
+     * @return Le nombre de points de l'instance
+     */
+    int taille();
+
+    /**
+     * Obtient la distance de criblage entre deux points, utilisée pour les comparaisons
+     * dans les boucles des algorithmes. Elle peut être approchée, avec une erreur
+     * relative bornée par {@link #erreurRelativeMax()}.
+     *
+     * @param i Index du point de départ
+     * @param j Index du point d'arrivée
+     * @return Distance en kilomètres
+     */
+    double distance(int i, int j);
+
+    /**
+     * Obtient la distance exacte entre deux points, pour les totaux rapportés.
+     *
+     * @param i Index du point de départ
+     * @param j Index du point d'arrivée
+     * @return Distance en kilomètres
+     */
+    default double distanceExacte(int i, int j) {
+        return distance(i, j);
+    }
+
+    /**
+     * Obtient le temps de trajet entre deux points.
+     *
+     * Par défaut, estimé à partir de la distance de criblage et de la vitesse
+     * moyenne en ville; une matrice qui connaît des temps réels les renvoie.
+     *
+     * @param i Index du point de départ
+     * @param j Index du point d'arrivée
+     * @return Temps en minutes
+     */
+    default double tempsMinutes(int i, int j) {
+        return Solution.estimerTempsMinutes(distance(i, j));
+    }
+
+    /**
+     * @return Borne de l'erreur relative de {@link #distance(int, int)}
+     *         par rapport à {@link #distanceExacte(int, int)} (0 si exacte)
+     */
+    default double erreurRelativeMax() {
+        return 0.0;
+    }
+
+    /**
+     * Indique si toutes les distances proviennent de coordonnées réelles.
+     * Une borne inférieure n'a de sens que sur une matrice complète.
+     *
+     * @return true si aucune distance n'est simulée
+     */
+    default boolean estComplete() {
+        return true;
+    }
+
+    /**
+     * Nombre de voisins proches connus d'un point (0 si la matrice n'en tient pas).
+     *
+     * @param i Index du point
+     * @return Le nombre de voisins listés par {@link #voisinProche(int, int)}
+     */
+    default int nombreVoisinsProches(int i) {
+        return 0;
+    }
+
+    /**
+     * Obtient un voisin proche d'un point, par distance croissante. Les voisins
+     * listés sont les plus proches de toute l'instance.
+     *
+     * @param i Index du point
+     * @param rang Rang du voisin (0 = le plus proche), inférieur à {@link #nombreVoisinsProches(int)}
+     * @return Index du voisin
+     */
+    default int voisinProche(int i, int rang) {
+        throw new IndexOutOfBoundsException("Aucun voisin proche pour " + i);
+    }
+
+    /**
+     * Construit la matrice adaptée à une liste d'utilisateurs: dense pour les
+     * petites instances, triangulaire hors tas à partir de
+     * {@link MatriceDistancesTriangulaire#SEUIL_AUTOMATIQUE} points, graphe creux
+     * des k plus proches voisins à partir de {@link GrapheVoisinsProches#SEUIL_AUTOMATIQUE}.
+     *
+     * @param utilisateurs Liste des utilisateurs
+     * @return La matrice des distances
+     */
+    static MatriceDistances construire(List<Utilisateur> utilisateurs) {
+        InstanceCoordonnees instance = InstanceCoordonnees.depuis(utilisateurs);
+        if (instance.taille() >= GrapheVoisinsProches.SEUIL_AUTOMATIQUE) {
+            return GrapheVoisinsProches.construire(instance, GrapheVoisinsProches.K_DEFAUT);
+        }
+        if (instance.taille() >= MatriceDistancesTriangulaire.SEUIL_AUTOMATIQUE) {
+            return MatriceDistancesTriangulaire.construire(instance);
+        }
+        return MatriceDistancesDense.construire(instance);
+    }
+}
@@ -0,0 +1,67 @@
+package com.covoiturage.optimization;
+
+/**
+ * Matrice de distances dense, stockée ligne par ligne dans un tableau unique.
+ *
+ * Un seul {@code double[n*n]} (plutôt que {@code double[n][n]}) garde les lignes
+ * contiguës en mémoire et évite n objets tableaux. Elle stocke les distances de
+ * criblage; les distances exactes sont recalculées à la demande sur l'instantané.
+ *
+ * COMPLEXITÉ: construction O(n²), accès O(1), mémoire 8·n² octets
+ */
+public final class MatriceDistancesDense implements MatriceDistances {
+
+    private final int n;
+    private final double[] distances;
+    private final InstanceCoordonnees instance;
+
+    private MatriceDistancesDense(int n, double[] distances, InstanceCoordonnees instance) {
+        this.n = n;
+        this.distances = distances;
+        this.instance = instance;
+    }
+
+    /**
+     * Construit la matrice ligne par ligne avec le noyau de criblage par lot.
+     *
+     * @param instance Instantané des coordonnées
+     * @return La matrice dense
+     */
+    public static MatriceDistancesDense construire(InstanceCoordonnees instance) {
+        int n = instance.taille();
+        double[] distances = new double[n * n];
+        double[] ligne = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            instance.remplirLigneCriblage(i, ligne);
+            System.arraycopy(ligne, 0, distances, i * n, n);
+        }
+
+        return new MatriceDistancesDense(n, distances, instance);
+    }
+
+    @Override
+    public int taille() {
+        return n;
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        return distances[i * n + j];
+    }
+
+    @Override
+    public double distanceExacte(int i, int j) {
+        return instance.haversine(i, j);
+    }
+
+    @Override
+    public double erreurRelativeMax() {
+        return instance.erreurRelativeCriblage();
+    }
+
+    @Override
+    public boolean estComplete() {
+        return instance.estComplete();
+    }
+}
@@ -0,0 +1,114 @@
+package com.covoiturage.optimization;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Matrice de distances symétrique stockée hors tas, en triangle supérieur compacté.
+ *
+ * PRINCIPE:
+ * Une matrice dense de 10 000 utilisateurs occupe 800 Mo de tas et provoque des
+ * collectes complètes à chaque requête. Ici, seules les paires i < j sont gardées
+ * (la diagonale vaut 0 et d(j, i) = d(i, j)), en float, dans un {@link ByteBuffer}
+ * direct alloué hors du tas Java:
+ *   index(i, j) = i·(2n - i - 1)/2 + (j - i - 1)   pour i < j
+ *
+ * COMPLEXITÉ: construction O(n²), accès O(1), mémoire 2·n² octets (quatre fois
+ * moins que la matrice dense), hors tas
+ *
+ * AVANTAGES:
+ * - Le ramasse-miettes ne parcourt ni ne copie le tampon
+ * - Les float (précision relative 6e-8) suffisent largement pour le criblage
+ *
+ * La mémoire directe est bornée par -XX:MaxDirectMemorySize et libérée quand la
+ * matrice devient inaccessible. Au-delà de {@link #TAILLE_MAX} points, le triangle
+ * dépasserait la capacité d'un ByteBuffer (2 Go).
+ */
+public final class MatriceDistancesTriangulaire implements MatriceDistances {
+
+    /** Nombre de points à partir duquel cette représentation est choisie automatiquement. */
+    public static final int SEUIL_AUTOMATIQUE = 2000;
+
+    /** Nombre maximal de points représentables (triangle de moins de 2^31 octets). */
+    public static final int TAILLE_MAX = 32768;
+
+    /** Erreur relative introduite par l'arrondi en float (2^-24). */
+    private static final double ERREUR_ARRONDI_FLOAT = 0x1.0p-24;
+
+    private final int n;
+    private final FloatBuffer distances;
+    private final InstanceCoordonnees instance;
+
+    private MatriceDistancesTriangulaire(int n, FloatBuffer distances, InstanceCoordonnees instance) {
+        this.n = n;
+        this.distances = distances;
+        this.instance = instance;
+    }
+
+    /**
+     * Construit la matrice demi-ligne par demi-ligne avec le noyau de criblage.
+     *
+     * @param instance Instantané des coordonnées
+     * @return La matrice triangulaire
+     * @throws IllegalArgumentException si l'instance dépasse {@link #TAILLE_MAX} points
+     */
+    public static MatriceDistancesTriangulaire construire(InstanceCoordonnees instance) {
+        int n = instance.taille();
+        if (n > TAILLE_MAX) {
+            throw new IllegalArgumentException(
+                "Instance trop grande pour une matrice triangulaire: " + n + " points (max " + TAILLE_MAX + ")");
+        }
+
+        long paires = (long) n * (n - 1) / 2;
+        FloatBuffer distances = ByteBuffer.allocateDirect((int) (paires * Float.BYTES))
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+
+        double[] ligne = new double[n];
+        int position = 0;
+        for (int i = 0; i < n - 1; i++) {
+            instance.remplirLigneCriblage(i, i + 1, ligne);
+            for (int j = i + 1; j < n; j++) {
+                distances.put(position++, (float) ligne[j]);
+            }
+        }
+
+        return new MatriceDistancesTriangulaire(n, distances, instance);
+    }
+
+    @Override
+    public int taille() {
+        return n;
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        if (i == j) {
+            return 0.0;
+        }
+        if (i > j) {
+            int temp = i;
+            i = j;
+            j = temp;
+        }
+        // i·(2n - i - 1)/2 tient dans un int puisque n ≤ TAILLE_MAX
+        int index = i * (2 * n - i - 1) / 2 + (j - i - 1);
+        return distances.get(index);
+    }
+
+    @Override
+    public double distanceExacte(int i, int j) {
+        return instance.haversine(i, j);
+    }
+
+    @Override
+    public double erreurRelativeMax() {
+        return instance.erreurRelativeCriblage() + ERREUR_ARRONDI_FLOAT;
+    }
+
+    @Override
+    public boolean estComplete() {
+        return instance.estComplete();
+    }
+}
@@ -1,9 +1,6 @@
 package com.covoiturage.optimization;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,7 +16,8 @@ import com.covoiturage.models.Vehicule;
  * 2. À chaque étape, choisir l'utilisateur non visité le plus proche
  * 3. Répéter jusqu'à ce que tous les utilisateurs soient visités
  * 
- * COMPLEXITÉ: O(n²) où n = nombre d'utilisateurs
+ * COMPLEXITÉ: O(n²) où n = nombre d'utilisateurs (proche de O(n·k) sur un graphe
+ * des k plus proches voisins, voir {@link GrapheVoisinsProches})
  * 
  * AVANTAGES:
  * - Rapide et simple
@@ -29,6 +27,9 @@ import com.covoiturage.models.Vehicule;
  * INCONVÉNIENTS:
  * - Peut rester bloqué dans un minimum local
  * - Pas toujours la solution optimale globale
+ * 
+ * CONCURRENCE:
+ * Sans état: une même instance peut être partagée entre requêtes concurrentes.
  */
 public class NearestNeighborAlgorithme implements OptimisationAlgorithme {
     
@@ -39,10 +40,11 @@ public class NearestNeighborAlgorithme implements OptimisationAlgorithme {
      * 
      * @param utilisateurs Liste des utilisateurs à transporter
      * @param vehicule Le véhicule utilisé (pour vérifier la capacité)
+     * @param matrice Distances entre utilisateurs, indexées comme la liste
      * @return La solution optimisée
      */
     @Override
-    public Solution optimiser(List<Utilisateur> utilisateurs, Vehicule vehicule) {
+    public Solution optimiser(List<Utilisateur> utilisateurs, Vehicule vehicule, MatriceDistances matrice) {
         if (utilisateurs == null || utilisateurs.isEmpty()) {
             logger.warn("Liste d'utilisateurs vide");
             return new Solution();
@@ -59,33 +61,25 @@ public class NearestNeighborAlgorithme implements OptimisationAlgorithme {
         
         long startTime = System.currentTimeMillis();
         
-        List<Utilisateur> ordreOptimise = new ArrayList<>();
-        Set<Utilisateur> visites = new HashSet<>();
+        int n = utilisateurs.size();
+        int[] ordre = new int[n];
+        boolean[] visites = new boolean[n];
         
         // Commencer par le premier utilisateur (ou choisir le meilleur point de départ)
-        Utilisateur courant = utilisateurs.get(0);
-        ordreOptimise.add(courant);
-        visites.add(courant);
+        int courant = 0;
+        ordre[0] = courant;
+        visites[courant] = true;
         
         // Parcourir tous les utilisateurs restants
-        while (visites.size() < utilisateurs.size()) {
-            Utilisateur plusProche = trouverPlusProche(courant, utilisateurs, visites);
-            
-            if (plusProche != null) {
-                ordreOptimise.add(plusProche);
-                visites.add(plusProche);
-                courant = plusProche;
-            } else {
-                logger.error("Impossible de trouver le prochain utilisateur");
-                break;
-            }
+        for (int position = 1; position < n; position++) {
+            int plusProche = trouverPlusProche(courant, matrice, visites);
+            ordre[position] = plusProche;
+            visites[plusProche] = true;
+            courant = plusProche;
         }
         
-        // Créer la solution
-        Solution solution = new Solution(ordreOptimise);
-        
-        // Calculer la distance et le temps total
-        calculerMetriques(solution);
+        // Créer la solution avec sa distance et son temps total
+        Solution solution = Solution.depuisOrdre(utilisateurs, ordre, matrice);
         
         long endTime = System.currentTimeMillis();
         logger.info("Optimisation terminée en {} ms. Distance: {:.2f} km, Temps: {:.2f} min", 
@@ -97,23 +91,34 @@ public class NearestNeighborAlgorithme implements OptimisationAlgorithme {
     /**
      * Trouve l'utilisateur non visité le plus proche de l'utilisateur courant.
      * 
-     * @param courant L'utilisateur de référence
-     * @param tousUtilisateurs Liste de tous les utilisateurs
-     * @param visites Ensemble des utilisateurs déjà visités
-     * @return L'utilisateur le plus proche non visité
+     * Si la matrice connaît les voisins proches du courant (triés par distance),
+     * le premier non visité est le plus proche de toute l'instance: le parcours
+     * complet n'est nécessaire que lorsqu'ils sont tous visités.
+     * 
+     * @param courant Index de l'utilisateur de référence
+     * @param matrice Distances entre utilisateurs
+     * @param visites visites[i] vaut true si l'utilisateur i est déjà visité
+     * @return Index de l'utilisateur le plus proche non visité
      */
-    private Utilisateur trouverPlusProche(Utilisateur courant, List<Utilisateur> tousUtilisateurs, 
-                                          Set<Utilisateur> visites) {
-        Utilisateur plusProche = null;
+    private int trouverPlusProche(int courant, MatriceDistances matrice, boolean[] visites) {
+        int nombreVoisins = matrice.nombreVoisinsProches(courant);
+        for (int rang = 0; rang < nombreVoisins; rang++) {
+            int voisin = matrice.voisinProche(courant, rang);
+            if (!visites[voisin]) {
+                return voisin;
+            }
+        }
+        
+        int plusProche = -1;
         double distanceMin = Double.MAX_VALUE;
         
-        for (Utilisateur utilisateur : tousUtilisateurs) {
-            if (!visites.contains(utilisateur)) {
-                double distance = calculerDistance(courant, utilisateur);
+        for (int i = 0; i < visites.length; i++) {
+            if (!visites[i]) {
+                double distance = matrice.distance(courant, i);
                 
-                if (distance < distanceMin) {
+                if (plusProche == -1 || distance < distanceMin) {
                     distanceMin = distance;
-                    plusProche = utilisateur;
+                    plusProche = i;
                 }
             }
         }
@@ -121,89 +126,6 @@ public class NearestNeighborAlgorithme implements OptimisationAlgorithme {
         return plusProche;
     }
     
-    /**
-     * Calcule la distance euclidienne entre deux utilisateurs.
-     * 
-     * Utilise la formule: distance = √((x2-x1)² + (y2-y1)²)
-     * 
-     * Note: Pour une version production, utiliser l'API Google Maps Distance Matrix
-     * pour obtenir les distances réelles.
-     * 
-     * @param u1 Premier utilisateur
-     * @param u2 Second utilisateur
-     * @return Distance en kilomètres (approximation)
-     */
-    private double calculerDistance(Utilisateur u1, Utilisateur u2) {
-        // Si les coordonnées sont disponibles, utiliser la distance euclidienne
-        if (u1.getLatitude() != null && u1.getLongitude() != null &&
-            u2.getLatitude() != null && u2.getLongitude() != null) {
-            
-            double lat1 = u1.getLatitude();
-            double lon1 = u1.getLongitude();
-            double lat2 = u2.getLatitude();
-            double lon2 = u2.getLongitude();
-            
-            // Formule de Haversine pour distance entre deux points GPS
-            return calculerDistanceHaversine(lat1, lon1, lat2, lon2);
-        }
-        
-        // Sinon, utiliser une heuristique basée sur les adresses (simplifiée)
-        // Dans une vraie app, appeler Google Maps Distance Matrix API
-        return Math.random() * 10 + 1; // Distance aléatoire entre 1 et 11 km (pour simulation)
-    }
-    
-    /**
-     * Calcule la distance entre deux points GPS avec la formule de Haversine.
-     * 
-     * @param lat1 Latitude du point 1
-     * @param lon1 Longitude du point 1
-     * @param lat2 Latitude du point 2
-     * @param lon2 Longitude du point 2
-     * @return Distance en kilomètres
-     */
-    private double calculerDistanceHaversine(double lat1, double lon1, double lat2, double lon2) {
-        final int RAYON_TERRE_KM = 6371;
-        
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        
-        return RAYON_TERRE_KM * c;
-    }
-    
-    /**
-     * Calcule les métriques (distance et temps) pour une solution.
-     * 
-     * @param solution La solution à évaluer
-     */
-    private void calculerMetriques(Solution solution) {
-        List<Utilisateur> ordre = solution.getOrdreUtilisateurs();
-        
-        if (ordre.isEmpty()) {
-            return;
-        }
-        
-        double distanceTotale = 0.0;
-        
-        // Calculer la distance totale en parcourant les utilisateurs dans l'ordre
-        for (int i = 0; i < ordre.size() - 1; i++) {
-            distanceTotale += calculerDistance(ordre.get(i), ordre.get(i + 1));
-        }
-        
-        // Estimation du temps : vitesse moyenne de 30 km/h en ville
-        double vitesseMoyenne = 30.0; // km/h
-        double tempsTotalMinutes = (distanceTotale / vitesseMoyenne) * 60;
-        
-        solution.setDistanceTotale(distanceTotale);
-        solution.setTempsTotalMinutes(tempsTotalMinutes);
-        solution.calculerCout();
-    }
-    
     @Override
     public String getNom() {
         return "Nearest Neighbor (Plus Proche Voisin)";
@@ -0,0 +1,19 @@
+package com.covoiturage.optimization;
+
+import java.util.Properties;
+
+/**
+ * Fournisseur de l'algorithme du plus proche voisin (sans paramètre).
+ */
+public class NearestNeighborFournisseur implements FournisseurAlgorithme {
+
+    @Override
+    public String getType() {
+        return "nearest_neighbor";
+    }
+
+    @Override
+    public OptimisationAlgorithme creer(Properties configuration) {
+        return new NearestNeighborAlgorithme();
+    }
+}
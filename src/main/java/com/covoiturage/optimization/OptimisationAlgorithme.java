@@ -9,6 +9,10 @@ import com.covoiturage.models.Vehicule;
  * Interface pour les algorithmes d'optimisation de trajets.
  * 
  * Tous les algorithmes d'optimisation doivent implémenter cette interface.
+ * 
+ * Les implémentations doivent être immuables et ré-entrantes: une instance unique
+ * est partagée par toutes les requêtes, l'état d'une exécution reste donc local
+ * à {@link #optimiser}.
  */
 public interface OptimisationAlgorithme {
     
@@ -19,7 +23,22 @@ public interface OptimisationAlgorithme {
      * @param vehicule Le véhicule utilisé
      * @return La solution optimisée
      */
-    Solution optimiser(List<Utilisateur> utilisateurs, Vehicule vehicule);
+    default Solution optimiser(List<Utilisateur> utilisateurs, Vehicule vehicule) {
+        return optimiser(utilisateurs, vehicule, MatriceDistances.construire(utilisateurs));
+    }
+    
+    /**
+     * Optimise l'ordre de prise en charge à partir d'une matrice de distances déjà construite.
+     * 
+     * Permet de partager une même matrice entre plusieurs algorithmes exécutés
+     * sur la même instance.
+     * 
+     * @param utilisateurs Liste des utilisateurs à transporter
+     * @param vehicule Le véhicule utilisé
+     * @param matrice Distances entre utilisateurs, indexées comme la liste
+     * @return La solution optimisée
+     */
+    Solution optimiser(List<Utilisateur> utilisateurs, Vehicule vehicule, MatriceDistances matrice);
     
     /**
      * Obtient le nom de l'algorithme.
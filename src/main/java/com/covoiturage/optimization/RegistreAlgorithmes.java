@@ -0,0 +1,109 @@
+package com.covoiturage.optimization;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.utils.ConfigurationManager;
+
+/**
+ * Registre des algorithmes d'optimisation disponibles.
+ *
+ * Utilise le pattern Singleton. Au premier accès, les {@link FournisseurAlgorithme}
+ * sont découverts par {@link ServiceLoader} et chaque algorithme est instancié une
+ * seule fois avec ses paramètres lus dans db.properties. Les instances sont ensuite
+ * partagées par toutes les requêtes.
+ */
+public class RegistreAlgorithmes {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistreAlgorithmes.class);
+    private static RegistreAlgorithmes instance;
+
+    /** Type utilisé quand la requête n'en précise pas ou en précise un inconnu. */
+    public static final String TYPE_PAR_DEFAUT = "nearest_neighbor";
+
+    private final Map<String, OptimisationAlgorithme> algorithmes;
+
+    /**
+     * Constructeur privé (pattern Singleton).
+     */
+    private RegistreAlgorithmes() {
+        Map<String, OptimisationAlgorithme> charges = new LinkedHashMap<>();
+        ConfigurationManager configuration = ConfigurationManager.getInstance();
+
+        ServiceLoader<FournisseurAlgorithme> loader = ServiceLoader.load(
+            FournisseurAlgorithme.class, FournisseurAlgorithme.class.getClassLoader());
+
+        try {
+            for (FournisseurAlgorithme fournisseur : loader) {
+                String type = fournisseur.getType().toLowerCase(Locale.ROOT);
+                String prefixe = "optimization." + type.replace('_', '.') + ".";
+
+                OptimisationAlgorithme algorithme = fournisseur.creer(configuration.sousEnsemble(prefixe));
+                if (charges.putIfAbsent(type, algorithme) != null) {
+                    logger.warn("Algorithme '{}' déclaré plusieurs fois, seul le premier est conservé", type);
+                    continue;
+                }
+                logger.info("Algorithme enregistré: {} ({})", type, algorithme.getNom());
+            }
+        } catch (ServiceConfigurationError e) {
+            logger.error("Erreur lors du chargement des fournisseurs d'algorithmes", e);
+        }
+
+        if (!charges.containsKey(TYPE_PAR_DEFAUT)) {
+            logger.warn("Aucun fournisseur pour '{}', enregistrement direct", TYPE_PAR_DEFAUT);
+            charges.put(TYPE_PAR_DEFAUT, new NearestNeighborAlgorithme());
+        }
+
+        this.algorithmes = Collections.unmodifiableMap(charges);
+    }
+
+    /**
+     * Obtient l'instance unique du registre.
+     *
+     * @return Instance du RegistreAlgorithmes
+     */
+    public static synchronized RegistreAlgorithmes getInstance() {
+        if (instance == null) {
+            instance = new RegistreAlgorithmes();
+        }
+        return instance;
+    }
+
+    /**
+     * Recherche un algorithme par son type.
+     *
+     * @param type Type de l'algorithme (insensible à la casse)
+     * @return Optional contenant l'algorithme s'il est enregistré
+     */
+    public Optional<OptimisationAlgorithme> trouver(String type) {
+        if (type == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(algorithmes.get(type.toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * Obtient l'algorithme par défaut.
+     *
+     * @return L'algorithme du plus proche voisin
+     */
+    public OptimisationAlgorithme getParDefaut() {
+        return algorithmes.get(TYPE_PAR_DEFAUT);
+    }
+
+    /**
+     * @return Les types d'algorithmes enregistrés, dans l'ordre de découverte
+     */
+    public Set<String> getTypes() {
+        return algorithmes.keySet();
+    }
+}
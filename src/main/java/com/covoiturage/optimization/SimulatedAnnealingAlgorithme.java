@@ -1,8 +1,8 @@
 package com.covoiturage.optimization;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,14 +24,41 @@ import com.covoiturage.models.Vehicule;
  *    - Générer une solution voisine (petite modification)
  *    - Si meilleure: accepter
  *    - Si moins bonne: accepter avec probabilité P = exp(-ΔE/T)
- *    - Réduire la température: T = T * α (0 < α < 1)
- * 4. Répéter jusqu'à température minimale ou convergence
+ *    - Réduire la température par paliers: T = T * α (0 < α < 1)
+ * 4. Répéter jusqu'à épuisement du budget (itérations ou durée)
+ * 
+ * CALENDRIER AUTO-ADAPTATIF:
+ * Des valeurs fixes (T0=1000, α=0.95) gèlent la chaîne en ~135 itérations
+ * quand les distances ne font que quelques km. Le calendrier s'adapte donc à l'instance:
+ * - Calibrage de T0: on échantillonne des mouvements voisins de la solution initiale
+ *   et on choisit T0 = -ΔE⁺moyen / ln(p0) pour accepter ~p0 des dégradations au départ
+ * - Refroidissement adaptatif: α est déduit du budget pour atteindre la température
+ *   finale (acceptation ~pF) à la fin, puis corrigé à chaque palier selon l'écart entre
+ *   le taux d'acceptation observé et le taux cible (décroissance géométrique p0 → pF)
+ * - Réchauffes: après une stagnation prolongée, la température remonte à une fraction
+ *   de T0 et la recherche repart de la meilleure solution
  * 
  * PARAMÈTRES:
- * - Température initiale (T0): 1000.0
- * - Taux de refroidissement (α): 0.95
+ * - Température initiale (T0): calibrée automatiquement (valeur ≤ 0)
+ * - Taux de refroidissement (α): déduit du budget (valeur ≤ 0)
  * - Nombre d'itérations: 1000
- * - Température minimale: 1.0
+ * - Durée maximale: illimitée (0)
+ * - Température minimale: aucune (0); si positive, la recherche s'arrête dès
+ *   que la température passe en dessous
+ * - Taux d'acceptation initial / final: 0.8 / 0.001
+ * - Écart d'optimalité cible (ε): 0.01
+ * 
+ * ARRÊT SUR ÉCART:
+ * La borne inférieure MST de l'instance (voir {@link BorneInferieure}) est calculée
+ * au démarrage. Dès que la meilleure solution est à moins de ε de cette borne,
+ * aucune itération supplémentaire ne peut l'améliorer de façon significative
+ * et la recherche s'arrête.
+ * 
+ * REPRÉSENTATION:
+ * Les solutions sont des permutations d'index (int[]) évaluées sur une
+ * {@link MatriceDistances}: un voisin est produit dans un tampon réutilisé,
+ * sans allocation ni recalcul de Haversine. L'objet {@link Solution} n'est
+ * construit qu'une fois, pour la meilleure permutation.
  * 
  * COMPLEXITÉ: O(n × iterations) où n = nombre d'utilisateurs
  * 
@@ -43,35 +70,90 @@ import com.covoiturage.models.Vehicule;
  * INCONVÉNIENTS:
  * - Plus lent que les heuristiques simples
  * - Nécessite un réglage des paramètres
+ * 
+ * CONCURRENCE:
+ * Les instances sont immuables et ré-entrantes: tout l'état d'une exécution
+ * (solutions, température, compteurs) est local à {@link #optimiser}, et le
+ * générateur aléatoire est celui du thread courant ({@link ThreadLocalRandom}).
+ * Une même instance peut donc être partagée entre requêtes concurrentes.
  */
 public class SimulatedAnnealingAlgorithme implements OptimisationAlgorithme {
     
     private static final Logger logger = LoggerFactory.getLogger(SimulatedAnnealingAlgorithme.class);
     
-    // Paramètres de l'algorithme
-    private double temperatureInitiale = 1000.0;
-    private double tauxRefroidissement = 0.95;
-    private int nombreIterations = 1000;
-    private double temperatureMin = 1.0;
-    private Random random = new Random();
+    // Paramètres du calibrage
+    private static final double TAUX_ACCEPTATION_INITIAL = 0.8;
+    private static final double TAUX_ACCEPTATION_FINAL = 0.001;
+    private static final int ECHANTILLONS_CALIBRAGE_MIN = 50;
+    private static final double FACTEUR_RECHAUFFE = 0.2;
+    
+    // Valeurs par défaut des paramètres
+    private static final int NOMBRE_ITERATIONS_DEFAUT = 1000;
+    private static final double EPSILON_ECART_DEFAUT = 0.01;
+    
+    // Paramètres de l'algorithme (≤ 0 = calibrage automatique)
+    private final double temperatureInitiale;
+    private final double tauxRefroidissement;
+    private final int nombreIterations;
+    private final long dureeMaxMillis;
+    private final double epsilonEcart;
+    private final double temperatureMin;
     
     /**
-     * Constructeur par défaut.
+     * Constructeur par défaut: calendrier calibré automatiquement.
      */
-    public SimulatedAnnealingAlgorithme() {}
+    public SimulatedAnnealingAlgorithme() {
+        this(0.0, 0.0, NOMBRE_ITERATIONS_DEFAUT);
+    }
     
     /**
      * Constructeur avec paramètres personnalisés.
      * 
-     * @param temperatureInitiale Température de départ
-     * @param tauxRefroidissement Facteur de refroidissement (0 < α < 1)
+     * @param temperatureInitiale Température de départ (≤ 0 pour la calibrer)
+     * @param tauxRefroidissement Facteur de refroidissement de base (0 < α < 1, ≤ 0 pour le déduire)
      * @param nombreIterations Nombre d'itérations
      */
     public SimulatedAnnealingAlgorithme(double temperatureInitiale, double tauxRefroidissement, 
                                        int nombreIterations) {
+        this(temperatureInitiale, tauxRefroidissement, nombreIterations, 0, EPSILON_ECART_DEFAUT);
+    }
+    
+    /**
+     * Constructeur complet.
+     * 
+     * @param temperatureInitiale Température de départ (≤ 0 pour la calibrer)
+     * @param tauxRefroidissement Facteur de refroidissement de base (0 < α < 1, ≤ 0 pour le déduire)
+     * @param nombreIterations Nombre d'itérations
+     * @param dureeMaxMillis Budget de temps en millisecondes (0 = illimité)
+     * @param epsilonEcart Écart d'optimalité sous lequel la recherche s'arrête
+     */
+    public SimulatedAnnealingAlgorithme(double temperatureInitiale, double tauxRefroidissement, 
+                                       int nombreIterations, long dureeMaxMillis, double epsilonEcart) {
+        this(temperatureInitiale, tauxRefroidissement, nombreIterations, dureeMaxMillis, epsilonEcart, 0.0);
+    }
+    
+    /**
+     * Constructeur complet avec température minimale.
+     * 
+     * @param temperatureInitiale Température de départ (≤ 0 pour la calibrer)
+     * @param tauxRefroidissement Facteur de refroidissement de base (0 < α < 1, ≤ 0 pour le déduire)
+     * @param nombreIterations Nombre d'itérations
+     * @param dureeMaxMillis Budget de temps en millisecondes (0 = illimité)
+     * @param epsilonEcart Écart d'optimalité sous lequel la recherche s'arrête
+     * @param temperatureMin Température sous laquelle la recherche s'arrête (≤ 0 = aucune)
+     */
+    public SimulatedAnnealingAlgorithme(double temperatureInitiale, double tauxRefroidissement, 
+                                       int nombreIterations, long dureeMaxMillis, double epsilonEcart,
+                                       double temperatureMin) {
+        if (nombreIterations <= 0) {
+            throw new IllegalArgumentException("Le nombre d'itérations doit être positif");
+        }
         this.temperatureInitiale = temperatureInitiale;
         this.tauxRefroidissement = tauxRefroidissement;
         this.nombreIterations = nombreIterations;
+        this.dureeMaxMillis = dureeMaxMillis;
+        this.epsilonEcart = epsilonEcart;
+        this.temperatureMin = temperatureMin;
     }
     
     /**
@@ -79,10 +161,11 @@ public class SimulatedAnnealingAlgorithme implements OptimisationAlgorithme {
      * 
      * @param utilisateurs Liste des utilisateurs à transporter
      * @param vehicule Le véhicule utilisé
+     * @param matrice Distances entre utilisateurs, indexées comme la liste
      * @return La solution optimisée
      */
     @Override
-    public Solution optimiser(List<Utilisateur> utilisateurs, Vehicule vehicule) {
+    public Solution optimiser(List<Utilisateur> utilisateurs, Vehicule vehicule, MatriceDistances matrice) {
         if (utilisateurs == null || utilisateurs.isEmpty()) {
             logger.warn("Liste d'utilisateurs vide");
             return new Solution();
@@ -95,72 +178,142 @@ public class SimulatedAnnealingAlgorithme implements OptimisationAlgorithme {
         }
         
         logger.info("Démarrage du Recuit Simulé pour {} utilisateurs", utilisateurs.size());
-        logger.info("Paramètres: T0={}, α={}, iterations={}", 
-                    temperatureInitiale, tauxRefroidissement, nombreIterations);
+        logger.info("Paramètres: T0={}, α={}, iterations={}, ε={}", 
+                    temperatureInitiale, tauxRefroidissement, nombreIterations, epsilonEcart);
         
         long startTime = System.currentTimeMillis();
+        Random random = ThreadLocalRandom.current();
+        int n = utilisateurs.size();
+        
+        double borneInferieure = BorneInferieure.calculer(matrice);
         
         // 1. Générer une solution initiale (aléatoire)
-        Solution solutionCourante = genererSolutionInitiale(utilisateurs);
-        calculerMetriques(solutionCourante);
+        int[] courante = genererOrdreInitial(n, random);
+        double coutCourant = evaluerCout(courante, matrice);
+        
+        int[] meilleure = courante.clone();
+        double meilleurCout = coutCourant;
+        int[] voisine = new int[n];
+        
+        if (ecartAtteint(meilleure, matrice, borneInferieure)) {
+            logger.info("Solution initiale déjà à moins de {} de la borne inférieure", epsilonEcart);
+            return Solution.depuisOrdre(utilisateurs, meilleure, matrice);
+        }
+        
+        // 2. Calibrer le calendrier de température sur l'instance
+        double deltaMoyen = echantillonnerDeltas(courante, coutCourant, matrice, voisine, random);
+        double t0 = temperatureInitiale > 0 ? temperatureInitiale
+                  : temperaturePourAcceptation(deltaMoyen, TAUX_ACCEPTATION_INITIAL);
+        double temperatureFinale = Math.min(t0, temperaturePourAcceptation(deltaMoyen, TAUX_ACCEPTATION_FINAL));
+        
+        int longueurPalier = Math.max(10, n);
+        int nombrePaliers = Math.max(1, nombreIterations / longueurPalier);
+        double alphaBase = tauxRefroidissement > 0 ? tauxRefroidissement
+                         : Math.pow(temperatureFinale / t0, 1.0 / nombrePaliers);
+        int limiteStagnation = Math.max(nombreIterations / 10, 50 * n);
         
-        Solution meilleureSolution = solutionCourante.copier();
+        logger.info("Calendrier: T0={}, Tfinale={}, α={}, palier={} itérations", 
+                    t0, temperatureFinale, alphaBase, longueurPalier);
         
-        double temperature = temperatureInitiale;
+        double temperature = t0;
         int iterationsSansAmelioration = 0;
+        int degradationsProposees = 0;
+        int degradationsAcceptees = 0;
+        int rechauffes = 0;
+        long echeance = dureeMaxMillis > 0 ? startTime + dureeMaxMillis : Long.MAX_VALUE;
         
-        // 2. Boucle principale du recuit simulé
-        for (int iteration = 0; iteration < nombreIterations && temperature > temperatureMin; iteration++) {
+        // 3. Boucle principale du recuit simulé (le budget est consommé en entier)
+        for (int iteration = 0; iteration < nombreIterations; iteration++) {
             
             // Générer une solution voisine
-            Solution solutionVoisine = genererSolutionVoisine(solutionCourante);
-            calculerMetriques(solutionVoisine);
+            genererVoisin(courante, voisine, random);
+            double coutVoisin = evaluerCout(voisine, matrice);
             
             // Calculer la différence de coût (ΔE)
-            double deltaE = solutionVoisine.getCout() - solutionCourante.getCout();
+            double deltaE = coutVoisin - coutCourant;
             
             // Décider d'accepter ou non la nouvelle solution
             if (deltaE < 0) {
-                // Meilleure solution -> accepter
-                solutionCourante = solutionVoisine;
-                iterationsSansAmelioration = 0;
+                // Meilleure solution -> accepter (échange des tampons)
+                int[] temp = courante;
+                courante = voisine;
+                voisine = temp;
+                coutCourant = coutVoisin;
                 
                 // Mettre à jour la meilleure solution globale
-                if (solutionCourante.getCout() < meilleureSolution.getCout()) {
-                    meilleureSolution = solutionCourante.copier();
-                    logger.debug("Nouvelle meilleure solution trouvée: {}", meilleureSolution);
+                if (coutCourant < meilleurCout) {
+                    System.arraycopy(courante, 0, meilleure, 0, n);
+                    meilleurCout = coutCourant;
+                    iterationsSansAmelioration = 0;
+                    logger.debug("Nouvelle meilleure solution trouvée: coût={}", meilleurCout);
+                    
+                    // Arrêt si l'écart à la borne inférieure est sous ε
+                    if (ecartAtteint(meilleure, matrice, borneInferieure)) {
+                        logger.info("Arrêt anticipé à l'itération {}: écart d'optimalité ≤ {}", 
+                                    iteration, epsilonEcart);
+                        break;
+                    }
+                } else {
+                    iterationsSansAmelioration++;
                 }
             } else {
                 // Solution moins bonne -> accepter avec probabilité P = exp(-ΔE/T)
                 double probabiliteAcceptation = Math.exp(-deltaE / temperature);
+                degradationsProposees++;
                 
                 if (random.nextDouble() < probabiliteAcceptation) {
-                    solutionCourante = solutionVoisine;
-                    logger.trace("Solution moins bonne acceptée (P={:.4f})", probabiliteAcceptation);
+                    int[] temp = courante;
+                    courante = voisine;
+                    voisine = temp;
+                    coutCourant = coutVoisin;
+                    degradationsAcceptees++;
+                    logger.trace("Solution moins bonne acceptée (P={})", probabiliteAcceptation);
                 }
                 
                 iterationsSansAmelioration++;
             }
             
-            // Refroidir la température
-            temperature *= tauxRefroidissement;
-            
-            // Log périodique
-            if (iteration % 100 == 0) {
-                logger.debug("Iteration {}/{}: T={:.2f}, Coût actuel={:.2f}, Meilleur coût={:.2f}", 
-                            iteration, nombreIterations, temperature, 
-                            solutionCourante.getCout(), meilleureSolution.getCout());
+            // Fin de palier: refroidir en corrigeant α selon le taux d'acceptation observé
+            if ((iteration + 1) % longueurPalier == 0) {
+                double progression = (double) (iteration + 1) / nombreIterations;
+                double tauxCible = TAUX_ACCEPTATION_INITIAL * 
+                    Math.pow(TAUX_ACCEPTATION_FINAL / TAUX_ACCEPTATION_INITIAL, progression);
+                double tauxObserve = degradationsProposees == 0 ? 0.0 
+                                   : (double) degradationsAcceptees / degradationsProposees;
+                
+                temperature *= ajusterRefroidissement(alphaBase, tauxObserve, tauxCible);
+                degradationsProposees = 0;
+                degradationsAcceptees = 0;
+                
+                logger.debug("Iteration {}/{}: T={}, acceptation={} (cible {}), Meilleur coût={}", 
+                            iteration + 1, nombreIterations, temperature, tauxObserve, tauxCible,
+                            meilleurCout);
+                
+                if (System.currentTimeMillis() >= echeance) {
+                    logger.info("Budget de temps de {} ms épuisé à l'itération {}", dureeMaxMillis, iteration + 1);
+                    break;
+                }
+                if (temperature < temperatureMin) {
+                    logger.info("Température minimale {} atteinte à l'itération {}", temperatureMin, iteration + 1);
+                    break;
+                }
             }
             
-            // Critère d'arrêt anticipé si pas d'amélioration
-            if (iterationsSansAmelioration > 200) {
-                logger.info("Arrêt anticipé: pas d'amélioration depuis 200 itérations");
-                break;
+            // Réchauffe sur stagnation: repartir de la meilleure solution avec une température relevée
+            if (iterationsSansAmelioration >= limiteStagnation) {
+                temperature = Math.max(temperature, t0 * FACTEUR_RECHAUFFE);
+                System.arraycopy(meilleure, 0, courante, 0, n);
+                coutCourant = meilleurCout;
+                iterationsSansAmelioration = 0;
+                rechauffes++;
+                logger.debug("Réchauffe n°{} à l'itération {}: T={}", rechauffes, iteration, temperature);
             }
         }
         
+        Solution meilleureSolution = Solution.depuisOrdre(utilisateurs, meilleure, matrice);
+        
         long endTime = System.currentTimeMillis();
-        logger.info("Recuit simulé terminé en {} ms", endTime - startTime);
+        logger.info("Recuit simulé terminé en {} ms ({} réchauffe(s))", endTime - startTime, rechauffes);
         logger.info("Solution finale: Distance={:.2f} km, Temps={:.2f} min, Coût={:.2f}", 
                     meilleureSolution.getDistanceTotale(), 
                     meilleureSolution.getTempsTotalMinutes(),
@@ -170,22 +323,111 @@ public class SimulatedAnnealingAlgorithme implements OptimisationAlgorithme {
     }
     
     /**
-     * Génère une solution initiale aléatoire.
+     * Estime l'amplitude moyenne des dégradations autour d'une solution.
      * 
-     * @param utilisateurs Liste des utilisateurs
-     * @return Une solution initiale
+     * Applique des mouvements voisins aléatoires sans les accepter et
+     * fait la moyenne des ΔE positifs.
+     * 
+     * @param ordre La permutation de référence
+     * @param cout Coût de la permutation de référence
+     * @param matrice Distances entre utilisateurs
+     * @param tampon Tampon de travail de même longueur que l'ordre
+     * @param random Générateur aléatoire de l'exécution
+     * @return ΔE⁺ moyen (0 si aucun mouvement ne dégrade la solution)
      */
-    private Solution genererSolutionInitiale(List<Utilisateur> utilisateurs) {
-        List<Utilisateur> ordre = new ArrayList<>(utilisateurs);
+    private double echantillonnerDeltas(int[] ordre, double cout, MatriceDistances matrice,
+                                        int[] tampon, Random random) {
+        int echantillons = Math.max(ECHANTILLONS_CALIBRAGE_MIN, 2 * ordre.length);
+        double sommeDeltas = 0.0;
+        int degradations = 0;
+        
+        for (int k = 0; k < echantillons; k++) {
+            genererVoisin(ordre, tampon, random);
+            double deltaE = evaluerCout(tampon, matrice) - cout;
+            if (deltaE > 0) {
+                sommeDeltas += deltaE;
+                degradations++;
+            }
+        }
+        
+        return degradations == 0 ? 0.0 : sommeDeltas / degradations;
+    }
+    
+    /**
+     * Température à laquelle une dégradation ΔE est acceptée avec la probabilité p.
+     * 
+     * @param deltaMoyen ΔE⁺ moyen de l'instance
+     * @param probabilite Probabilité d'acceptation visée (0 < p < 1)
+     * @return T = -ΔE / ln(p), avec un plancher pour les instances dégénérées
+     */
+    private double temperaturePourAcceptation(double deltaMoyen, double probabilite) {
+        double temperature = -deltaMoyen / Math.log(probabilite);
+        return Math.max(temperature, 1e-6);
+    }
+    
+    /**
+     * Corrige le facteur de refroidissement d'un palier.
+     * 
+     * Trop d'acceptations: la chaîne est trop chaude, on refroidit deux fois plus vite.
+     * Trop peu: elle gèle, on ralentit le refroidissement.
+     * 
+     * @param alphaBase Facteur de refroidissement nominal
+     * @param tauxObserve Taux d'acceptation des dégradations sur le palier
+     * @param tauxCible Taux d'acceptation visé à ce stade
+     * @return Le facteur à appliquer à la température
+     */
+    private double ajusterRefroidissement(double alphaBase, double tauxObserve, double tauxCible) {
+        if (tauxObserve > tauxCible * 1.5) {
+            return alphaBase * alphaBase;
+        }
+        if (tauxObserve < tauxCible / 1.5) {
+            return Math.sqrt(alphaBase);
+        }
+        return alphaBase;
+    }
+    
+    /**
+     * Vérifie si une solution est à moins de ε de la borne inférieure.
+     * 
+     * Compare la distance exacte (appelé seulement sur amélioration).
+     * 
+     * @param ordre La permutation à tester
+     * @param matrice Distances entre utilisateurs
+     * @param borneInferieure Borne inférieure de l'instance (0 si inconnue)
+     * @return true si l'écart d'optimalité est inférieur ou égal à ε
+     */
+    private boolean ecartAtteint(int[] ordre, MatriceDistances matrice, double borneInferieure) {
+        if (borneInferieure <= 0.0) {
+            return false;
+        }
+        double distance = 0.0;
+        for (int k = 1; k < ordre.length; k++) {
+            distance += matrice.distanceExacte(ordre[k - 1], ordre[k]);
+        }
+        double ecart = BorneInferieure.ecart(distance, borneInferieure);
+        return !Double.isNaN(ecart) && ecart <= epsilonEcart;
+    }
+    
+    /**
+     * Génère un ordre initial aléatoire (mélange de Fisher-Yates).
+     * 
+     * @param n Nombre d'utilisateurs
+     * @param random Générateur aléatoire de l'exécution
+     * @return Une permutation aléatoire de 0..n-1
+     */
+    private int[] genererOrdreInitial(int n, Random random) {
+        int[] ordre = new int[n];
+        for (int i = 0; i < n; i++) {
+            ordre[i] = i;
+        }
         // Mélanger aléatoirement
-        for (int i = ordre.size() - 1; i > 0; i--) {
+        for (int i = n - 1; i > 0; i--) {
             int j = random.nextInt(i + 1);
-            Utilisateur temp = ordre.get(i);
-            ordre.set(i, ordre.get(j));
-            ordre.set(j, temp);
+            int temp = ordre[i];
+            ordre[i] = ordre[j];
+            ordre[j] = temp;
         }
-        
-        return new Solution(ordre);
+        return ordre;
     }
     
     /**
@@ -195,122 +437,69 @@ public class SimulatedAnnealingAlgorithme implements OptimisationAlgorithme {
      * - Swap: Échanger deux utilisateurs
      * - 2-opt: Inverser un segment du trajet
      * 
-     * @param solution La solution de départ
-     * @return Une solution voisine
+     * @param ordre La permutation de départ (non modifiée)
+     * @param voisine Tampon recevant la permutation voisine
+     * @param random Générateur aléatoire de l'exécution
      */
-    private Solution genererSolutionVoisine(Solution solution) {
-        Solution voisine = solution.copier();
-        int n = voisine.getOrdreUtilisateurs().size();
+    private void genererVoisin(int[] ordre, int[] voisine, Random random) {
+        int n = ordre.length;
+        System.arraycopy(ordre, 0, voisine, 0, n);
         
         if (n < 2) {
-            return voisine;
+            return;
         }
         
+        int i = random.nextInt(n);
+        int j = random.nextInt(n);
+        
         // Choisir aléatoirement un opérateur
         if (random.nextBoolean()) {
             // Opérateur Swap: échanger deux utilisateurs
-            int i = random.nextInt(n);
-            int j = random.nextInt(n);
-            voisine.echangerUtilisateurs(i, j);
+            int temp = voisine[i];
+            voisine[i] = voisine[j];
+            voisine[j] = temp;
         } else {
             // Opérateur 2-opt: inverser un segment
-            int i = random.nextInt(n);
-            int j = random.nextInt(n);
-            
             if (i > j) {
                 int temp = i;
                 i = j;
                 j = temp;
             }
-            
-            voisine.inverserSegment(i, j);
+            while (i < j) {
+                int temp = voisine[i];
+                voisine[i] = voisine[j];
+                voisine[j] = temp;
+                i++;
+                j--;
+            }
         }
-        
-        return voisine;
     }
     
     /**
-     * Calcule les métriques (distance et temps) pour une solution.
+     * Calcule le coût de criblage (distance et temps) d'une permutation.
      * 
-     * @param solution La solution à évaluer
-     */
-    private void calculerMetriques(Solution solution) {
-        List<Utilisateur> ordre = solution.getOrdreUtilisateurs();
-        
-        if (ordre.isEmpty()) {
-            return;
-        }
-        
-        double distanceTotale = 0.0;
-        
-        // Calculer la distance totale
-        for (int i = 0; i < ordre.size() - 1; i++) {
-            distanceTotale += calculerDistance(ordre.get(i), ordre.get(i + 1));
-        }
-        
-        // Estimation du temps
-        double vitesseMoyenne = 30.0; // km/h
-        double tempsTotalMinutes = (distanceTotale / vitesseMoyenne) * 60;
-        
-        solution.setDistanceTotale(distanceTotale);
-        solution.setTempsTotalMinutes(tempsTotalMinutes);
-        solution.calculerCout(); // Calculer le coût combiné
-    }
-    
-    /**
-     * Calcule la distance entre deux utilisateurs.
+     * La distance utilisée est celle de criblage de la matrice
+     * ({@link MatriceDistances#distance}, équirectangulaire pour le vol d'oiseau),
+     * alors que {@link Solution#depuisOrdre} rapporte la distance exacte: ce coût
+     * sert à comparer des voisins et peut différer légèrement de
+     * {@link Solution#getCout()} pour le même ordre.
      * 
-     * @param u1 Premier utilisateur
-     * @param u2 Second utilisateur
-     * @return Distance en kilomètres
+     * @param ordre La permutation
+     * @param matrice Distances entre utilisateurs
+     * @return Le coût de criblage
      */
-    private double calculerDistance(Utilisateur u1, Utilisateur u2) {
-        if (u1.getLatitude() != null && u1.getLongitude() != null &&
-            u2.getLatitude() != null && u2.getLongitude() != null) {
-            
-            return calculerDistanceHaversine(
-                u1.getLatitude(), u1.getLongitude(),
-                u2.getLatitude(), u2.getLongitude()
-            );
+    private double evaluerCout(int[] ordre, MatriceDistances matrice) {
+        double distanceTotale = 0.0;
+        double tempsTotalMinutes = 0.0;
+        for (int k = 1; k < ordre.length; k++) {
+            distanceTotale += matrice.distance(ordre[k - 1], ordre[k]);
+            tempsTotalMinutes += matrice.tempsMinutes(ordre[k - 1], ordre[k]);
         }
-        
-        // Fallback: distance aléatoire pour simulation
-        return Math.random() * 10 + 1;
-    }
-    
-    /**
-     * Calcule la distance GPS avec la formule de Haversine.
-     */
-    private double calculerDistanceHaversine(double lat1, double lon1, double lat2, double lon2) {
-        final int RAYON_TERRE_KM = 6371;
-        
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        
-        return RAYON_TERRE_KM * c;
+        return Solution.POIDS_DISTANCE * distanceTotale + Solution.POIDS_TEMPS * tempsTotalMinutes;
     }
     
     @Override
     public String getNom() {
         return "Simulated Annealing (Recuit Simulé)";
     }
-    
-    // Setters pour configurer l'algorithme
-    public void setTemperatureInitiale(double temperatureInitiale) {
-        this.temperatureInitiale = temperatureInitiale;
-    }
-    
-    public void setTauxRefroidissement(double tauxRefroidissement) {
-        this.tauxRefroidissement = tauxRefroidissement;
-    }
-    
-    public void setNombreIterations(int nombreIterations) {
-        this.nombreIterations = nombreIterations;
-    }
 }
@@ -0,0 +1,36 @@
+package com.covoiturage.optimization;
+
+import java.util.Properties;
+
+import com.covoiturage.utils.ConfigurationManager;
+
+/**
+ * Fournisseur du recuit simulé.
+ *
+ * Paramètres lus (préfixe "optimization.simulated.annealing."):
+ * - initialTemperature: T0 (0 = calibrage automatique)
+ * - coolingRate: α de base (0 = déduit du budget)
+ * - iterations: budget d'itérations
+ * - maxDurationMillis: budget de temps (0 = illimité)
+ * - gapEpsilon: écart d'optimalité d'arrêt anticipé
+ * - minTemperature: température d'arrêt (0 = aucune)
+ */
+public class SimulatedAnnealingFournisseur implements FournisseurAlgorithme {
+
+    @Override
+    public String getType() {
+        return "simulated_annealing";
+    }
+
+    @Override
+    public OptimisationAlgorithme creer(Properties configuration) {
+        return new SimulatedAnnealingAlgorithme(
+            ConfigurationManager.lireDouble(configuration, "initialTemperature", 0.0),
+            ConfigurationManager.lireDouble(configuration, "coolingRate", 0.0),
+            ConfigurationManager.lireInt(configuration, "iterations", 1000),
+            ConfigurationManager.lireLong(configuration, "maxDurationMillis", 0),
+            ConfigurationManager.lireDouble(configuration, "gapEpsilon", 0.01),
+            ConfigurationManager.lireDouble(configuration, "minTemperature", 0.0)
+        );
+    }
+}
@@ -12,13 +12,24 @@ import com.covoiturage.models.Utilisateur;
  * - L'ordre de visite des utilisateurs
  * - La distance totale calculée
  * - Le temps total calculé
+ * - L'écart d'optimalité à la borne inférieure, quand elle est connue
  */
 public class Solution {
     
+    /** Vitesse moyenne en ville utilisée pour estimer les temps de trajet. */
+    public static final double VITESSE_MOYENNE_KMH = 30.0;
+    
+    /** Poids de la distance dans la fonction objectif. */
+    public static final double POIDS_DISTANCE = 0.7;
+    
+    /** Poids du temps dans la fonction objectif. */
+    public static final double POIDS_TEMPS = 0.3;
+    
     private List<Utilisateur> ordreUtilisateurs;
     private double distanceTotale;
     private double tempsTotalMinutes;
     private double cout; // Fonction objectif combinée
+    private Double ecartOptimalite; // En pourcentage, null si la borne est inconnue
     
     /**
      * Constructeur.
@@ -42,6 +53,47 @@ public class Solution {
         this.cout = 0.0;
     }
     
+    /**
+     * Construit une solution à partir d'un ordre de visite exprimé en index.
+     * 
+     * La distance totale rapportée utilise les distances exactes de la matrice,
+     * le temps total la somme de ses temps de trajet.
+     * 
+     * @param utilisateurs Liste des utilisateurs de l'instance
+     * @param ordre Permutation des index de la liste
+     * @param matrice Distances entre utilisateurs, indexées comme la liste
+     * @return La solution avec ses métriques calculées
+     */
+    public static Solution depuisOrdre(List<Utilisateur> utilisateurs, int[] ordre, MatriceDistances matrice) {
+        List<Utilisateur> ordreUtilisateurs = new ArrayList<>(ordre.length);
+        double distanceTotale = 0.0;
+        double tempsTotalMinutes = 0.0;
+        
+        for (int k = 0; k < ordre.length; k++) {
+            ordreUtilisateurs.add(utilisateurs.get(ordre[k]));
+            if (k > 0) {
+                distanceTotale += matrice.distanceExacte(ordre[k - 1], ordre[k]);
+                tempsTotalMinutes += matrice.tempsMinutes(ordre[k - 1], ordre[k]);
+            }
+        }
+        
+        Solution solution = new Solution(ordreUtilisateurs);
+        solution.setDistanceTotale(distanceTotale);
+        solution.setTempsTotalMinutes(tempsTotalMinutes);
+        solution.calculerCout();
+        return solution;
+    }
+    
+    /**
+     * Estime le temps de trajet d'une distance à la vitesse moyenne en ville.
+     * 
+     * @param distanceKm Distance en kilomètres
+     * @return Temps en minutes
+     */
+    public static double estimerTempsMinutes(double distanceKm) {
+        return (distanceKm / VITESSE_MOYENNE_KMH) * 60;
+    }
+    
     /**
      * Crée une copie profonde de la solution.
      * 
@@ -53,6 +105,7 @@ public class Solution {
         copie.distanceTotale = this.distanceTotale;
         copie.tempsTotalMinutes = this.tempsTotalMinutes;
         copie.cout = this.cout;
+        copie.ecartOptimalite = this.ecartOptimalite;
         return copie;
     }
     
@@ -100,7 +153,7 @@ public class Solution {
      * Calcule le coût avec des poids par défaut.
      */
     public void calculerCout() {
-        calculerCout(0.7, 0.3); // 70% distance, 30% temps
+        calculerCout(POIDS_DISTANCE, POIDS_TEMPS); // 70% distance, 30% temps
     }
     
     // Getters et Setters
@@ -136,6 +189,17 @@ public class Solution {
         this.cout = cout;
     }
     
+    /**
+     * @return L'écart d'optimalité en pourcentage (voir {@link BorneInferieure}), null si inconnu
+     */
+    public Double getEcartOptimalite() {
+        return ecartOptimalite;
+    }
+    
+    public void setEcartOptimalite(Double ecartOptimalite) {
+        this.ecartOptimalite = ecartOptimalite;
+    }
+    
     @Override
     public String toString() {
         return "Solution{" +
@@ -0,0 +1,351 @@
+package com.covoiturage.routage;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.models.Region;
+import com.covoiturage.utils.ConfigurationManager;
+
+/**
+ * Cache des distances et temps entre paires d'utilisateurs, partagé par toutes
+ * les requêtes du processus.
+ *
+ * Utilise le pattern Singleton.
+ *
+ * PRINCIPE:
+ * - Clé: (id origine, id destination), les deux ids tassés dans un long.
+ *   Les paires sont orientées: un trajet routier n'a pas forcément la même
+ *   longueur dans les deux sens.
+ * - Partitions: une par région (plus une pour les utilisateurs hors zone), la
+ *   paire étant rangée dans la région de son origine. Chaque partition a sa
+ *   propre capacité: l'activité d'une ville n'évince pas les paires des autres.
+ * - Verrous répartis: chaque partition compte SEGMENTS sous-caches LRU
+ *   (LinkedHashMap en ordre d'accès), chacun protégé par son propre verrou;
+ *   deux requêtes ne se bloquent que si elles touchent le même segment au
+ *   même instant.
+ * - Taille bornée: chaque segment évince son entrée la moins récemment utilisée
+ *   au-delà de capacité de la partition / SEGMENTS.
+ * - Invalidation: chaque utilisateur a un numéro de version, incrémenté par
+ *   {@link #invalider(Long)} (appelé par UtilisateurDAO.update et delete). Une
+ *   entrée mémorise les versions de ses deux utilisateurs et n'est plus servie
+ *   dès que l'une a changé; elle est retirée à la lecture suivante ou évincée.
+ *   L'invalidation est ainsi en O(1), sans parcourir le cache.
+ *
+ * CONCURRENCE: sûr.
+ */
+public class CacheDistancesPaires {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheDistancesPaires.class);
+    private static CacheDistancesPaires instance;
+
+    /** Nombre de segments par partition (puissance de deux). */
+    private static final int SEGMENTS = 16;
+
+    /** Nombre de partitions: une par région, la dernière pour les utilisateurs hors zone. */
+    static final int PARTITIONS = Region.values().length + 1;
+
+    /** Capacité totale par défaut, en paires. */
+    public static final int CAPACITE_DEFAUT = 500_000;
+
+    private final Partition[] partitions = new Partition[PARTITIONS];
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Cache d'une région: ses segments et ses compteurs.
+     */
+    private static final class Partition {
+        final Segment[] segments = new Segment[SEGMENTS];
+        final LongAdder succes = new LongAdder();
+        final LongAdder echecs = new LongAdder();
+
+        Partition(int capacite) {
+            for (int s = 0; s < SEGMENTS; s++) {
+                segments[s] = new Segment(capacite / SEGMENTS);
+            }
+        }
+
+        Segment segment(long cle) {
+            long h = cle * 0x9E3779B97F4A7C15L;
+            return segments[(int) (h >>> 60) & (SEGMENTS - 1)];
+        }
+    }
+
+    /**
+     * Valeur d'une paire, avec les versions des deux utilisateurs au moment du calcul.
+     */
+    private static final class Valeur {
+        final double distanceKm;
+        final double tempsMinutes;
+        final long versionOrigine;
+        final long versionDestination;
+
+        Valeur(double distanceKm, double tempsMinutes, long versionOrigine, long versionDestination) {
+            this.distanceKm = distanceKm;
+            this.tempsMinutes = tempsMinutes;
+            this.versionOrigine = versionOrigine;
+            this.versionDestination = versionDestination;
+        }
+    }
+
+    /**
+     * Sous-cache LRU borné. Toujours manipulé sous son propre verrou: même get()
+     * modifie l'ordre d'accès.
+     */
+    private static final class Segment extends LinkedHashMap<Long, Valeur> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacite;
+        private long evictions;
+
+        Segment(int capacite) {
+            super(16, 0.75f, true);
+            this.capacite = capacite;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Valeur> eldest) {
+            if (size() > capacite) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Constructeur privé (pattern Singleton).
+     */
+    private CacheDistancesPaires() {
+        this(lireCapacites(ConfigurationManager.getInstance()));
+    }
+
+    /**
+     * @param capacite Capacité totale, répartie également entre les partitions
+     */
+    CacheDistancesPaires(int capacite) {
+        this(repartir(capacite));
+    }
+
+    /**
+     * @param capacites Capacité de chaque partition (ordre de Region, puis hors zone)
+     */
+    CacheDistancesPaires(int[] capacites) {
+        if (capacites.length != PARTITIONS) {
+            throw new IllegalArgumentException("Une capacité par partition attendue: " + PARTITIONS);
+        }
+        for (int p = 0; p < PARTITIONS; p++) {
+            if (capacites[p] < SEGMENTS) {
+                throw new IllegalArgumentException("Capacité du cache de paires trop faible: " + capacites[p]);
+            }
+            partitions[p] = new Partition(capacites[p]);
+        }
+        logger.info("Cache des paires de distances: {} partitions, capacités {}", PARTITIONS,
+                    Arrays.toString(capacites));
+    }
+
+    private static int[] repartir(int capacite) {
+        int[] capacites = new int[PARTITIONS];
+        Arrays.fill(capacites, capacite / PARTITIONS);
+        return capacites;
+    }
+
+    /**
+     * Capacités configurées: distance.pairCache.maxEntries est répartie entre
+     * les partitions, distance.pairCache.maxEntries.&lt;region&gt; (ex. .tunis)
+     * fixe celle d'une région.
+     */
+    private static int[] lireCapacites(ConfigurationManager configuration) {
+        int[] capacites = repartir(configuration.getInt("distance.pairCache.maxEntries", CAPACITE_DEFAUT));
+        for (Region region : Region.values()) {
+            capacites[region.ordinal()] = configuration.getInt(
+                "distance.pairCache.maxEntries." + region.name().toLowerCase(Locale.ROOT),
+                capacites[region.ordinal()]);
+        }
+        return capacites;
+    }
+
+    /**
+     * Obtient l'instance unique du cache.
+     *
+     * @return Instance du CacheDistancesPaires
+     */
+    public static synchronized CacheDistancesPaires getInstance() {
+        if (instance == null) {
+            instance = new CacheDistancesPaires();
+        }
+        return instance;
+    }
+
+    /**
+     * Tasse deux ids dans une clé; -1 si l'un d'eux ne tient pas sur 31 bits.
+     */
+    private static long cle(Long origine, Long destination) {
+        if (origine == null || destination == null
+                || origine < 0 || origine > Integer.MAX_VALUE
+                || destination < 0 || destination > Integer.MAX_VALUE) {
+            return -1;
+        }
+        return (origine << 32) | destination;
+    }
+
+    private Partition partition(Region region) {
+        return partitions[region != null ? region.ordinal() : PARTITIONS - 1];
+    }
+
+    /**
+     * Version courante d'un utilisateur, à relever avant de calculer une paire
+     * pour la passer ensuite à {@link #enregistrer}.
+     *
+     * @param id Id de l'utilisateur
+     * @return Sa version
+     */
+    public long version(Long id) {
+        return id == null ? 0 : versions.getOrDefault(id, 0L);
+    }
+
+    /**
+     * Cherche une paire et, si elle est connue et à jour, la recopie dans le tableau.
+     *
+     * @param region Région de l'utilisateur de départ (null hors zone)
+     * @param origine Id de l'utilisateur de départ
+     * @param destination Id de l'utilisateur d'arrivée
+     * @param tableau Tableau à renseigner
+     * @param i Ligne de la case
+     * @param j Colonne de la case
+     * @return true si la case a été renseignée depuis le cache
+     */
+    public boolean recopier(Region region, Long origine, Long destination, TableauTrajets tableau,
+                            int i, int j) {
+        Partition partition = partition(region);
+        long cle = cle(origine, destination);
+        if (cle < 0) {
+            partition.echecs.increment();
+            return false;
+        }
+
+        Segment segment = partition.segment(cle);
+        Valeur valeur;
+        synchronized (segment) {
+            valeur = segment.get(cle);
+            if (valeur != null && (valeur.versionOrigine != version(origine)
+                                   || valeur.versionDestination != version(destination))) {
+                segment.remove(cle);
+                valeur = null;
+            }
+        }
+
+        if (valeur == null) {
+            partition.echecs.increment();
+            return false;
+        }
+        partition.succes.increment();
+        tableau.definir(i, j, valeur.distanceKm, valeur.tempsMinutes);
+        return true;
+    }
+
+    /**
+     * Enregistre une paire calculée.
+     *
+     * @param region Région de l'utilisateur de départ (null hors zone)
+     * @param origine Id de l'utilisateur de départ
+     * @param versionOrigine Sa version relevée avant le calcul
+     * @param destination Id de l'utilisateur d'arrivée
+     * @param versionDestination Sa version relevée avant le calcul
+     * @param distanceKm Distance en kilomètres
+     * @param tempsMinutes Temps en minutes
+     */
+    public void enregistrer(Region region, Long origine, long versionOrigine, Long destination,
+                            long versionDestination, double distanceKm, double tempsMinutes) {
+        long cle = cle(origine, destination);
+        if (cle < 0) {
+            return;
+        }
+        Segment segment = partition(region).segment(cle);
+        synchronized (segment) {
+            segment.put(cle, new Valeur(distanceKm, tempsMinutes, versionOrigine, versionDestination));
+        }
+    }
+
+    /**
+     * Rend obsolètes toutes les paires d'un utilisateur (coordonnées modifiées,
+     * utilisateur supprimé).
+     *
+     * @param id Id de l'utilisateur
+     */
+    public void invalider(Long id) {
+        if (id != null) {
+            versions.merge(id, 1L, Long::sum);
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * Vide le cache.
+     */
+    public void vider() {
+        for (Partition partition : partitions) {
+            for (Segment segment : partition.segments) {
+                synchronized (segment) {
+                    segment.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Compteurs du cache (taille, succès, échecs, évictions, invalidations),
+     *         au total et par région
+     */
+    public Map<String, Object> getStatistiques() {
+        Map<String, Object> parRegion = new LinkedHashMap<>();
+        long taille = 0;
+        long succes = 0;
+        long echecs = 0;
+        long evictions = 0;
+        for (int p = 0; p < PARTITIONS; p++) {
+            Map<String, Object> compteurs = compteurs(partitions[p]);
+            parRegion.put(p < PARTITIONS - 1 ? Region.values()[p].name() : "HORS_ZONE", compteurs);
+            taille += (long) compteurs.get("entrees");
+            succes += (long) compteurs.get("succes");
+            echecs += (long) compteurs.get("echecs");
+            evictions += (long) compteurs.get("evictions");
+        }
+        long total = succes + echecs;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entrees", taille);
+        stats.put("succes", succes);
+        stats.put("echecs", echecs);
+        stats.put("tauxSucces", total == 0 ? 0.0 : (double) succes / total);
+        stats.put("evictions", evictions);
+        stats.put("invalidations", invalidations.sum());
+        stats.put("regions", parRegion);
+        return stats;
+    }
+
+    private static Map<String, Object> compteurs(Partition partition) {
+        long taille = 0;
+        long evictions = 0;
+        for (Segment segment : partition.segments) {
+            synchronized (segment) {
+                taille += segment.size();
+                evictions += segment.evictions;
+            }
+        }
+        Map<String, Object> compteurs = new LinkedHashMap<>();
+        compteurs.put("entrees", taille);
+        compteurs.put("succes", partition.succes.sum());
+        compteurs.put("echecs", partition.echecs.sum());
+        compteurs.put("evictions", evictions);
+        return compteurs;
+    }
+}
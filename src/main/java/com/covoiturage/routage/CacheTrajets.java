@@ -0,0 +1,295 @@
+package com.covoiturage.routage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache des trajets origine → destination renvoyés par un service distant,
+ * en mémoire et sur disque, avec durée de vie.
+ *
+ * PRINCIPE:
+ * - En mémoire: une LinkedHashMap en ordre d'accès clé → {@link Entree}, sous
+ *   verrou, bornée à capaciteMax entrées: au-delà, l'entrée la moins récemment
+ *   utilisée est évincée
+ * - Une purge périodique (thread démon) retire les entrées expirées sans attendre
+ *   qu'elles soient relues
+ * - Sur disque: un journal texte en ajout seul, une ligne par réponse
+ *     cle;distance m;durée s;expiration (ms epoch)
+ *   relu au démarrage en ignorant les entrées expirées. La dernière ligne d'une
+ *   clé l'emporte (dans la limite de capaciteMax). Le journal est réécrit avec
+ *   les seules entrées gardées en mémoire quand les autres (périmées,
+ *   remplacées ou évincées) en constituent plus de la moitié.
+ *
+ * Le disque n'est qu'une persistance au mieux: une erreur d'écriture est
+ * journalisée et le cache continue en mémoire.
+ */
+public class CacheTrajets {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheTrajets.class);
+
+    /** Toujours manipulée sous son propre verrou: même get() modifie l'ordre d'accès. */
+    private final Map<String, Entree> entrees;
+    private final Path fichier;
+    private final long dureeVieMillis;
+    private BufferedWriter journal;
+
+    /**
+     * Valeur mise en cache pour une paire origine → destination.
+     */
+    public static final class Entree {
+        private final double distanceMetres;
+        private final double dureeSecondes;
+        private final long expiration;
+
+        Entree(double distanceMetres, double dureeSecondes, long expiration) {
+            this.distanceMetres = distanceMetres;
+            this.dureeSecondes = dureeSecondes;
+            this.expiration = expiration;
+        }
+
+        public double getDistanceMetres() {
+            return distanceMetres;
+        }
+
+        public double getDureeSecondes() {
+            return dureeSecondes;
+        }
+
+        /**
+         * @return true si le service a répondu qu'aucun itinéraire n'existe
+         */
+        public boolean estSansItineraire() {
+            return distanceMetres < 0;
+        }
+
+        boolean estExpiree(long maintenant) {
+            return maintenant >= expiration;
+        }
+    }
+
+    /**
+     * Ouvre le cache, recharge le journal s'il existe et lance la purge périodique.
+     *
+     * @param fichier Journal sur disque (null pour un cache purement en mémoire)
+     * @param dureeVieMillis Durée de vie d'une entrée
+     * @param capaciteMax Nombre maximal d'entrées en mémoire
+     * @param periodePurgeMillis Intervalle entre deux purges des entrées expirées
+     */
+    public CacheTrajets(Path fichier, long dureeVieMillis, int capaciteMax, long periodePurgeMillis) {
+        if (dureeVieMillis <= 0) {
+            throw new IllegalArgumentException("La durée de vie du cache doit être positive");
+        }
+        if (capaciteMax <= 0) {
+            throw new IllegalArgumentException("La capacité du cache doit être positive");
+        }
+        if (periodePurgeMillis <= 0) {
+            throw new IllegalArgumentException("La période de purge du cache doit être positive");
+        }
+        this.fichier = fichier;
+        this.dureeVieMillis = dureeVieMillis;
+        this.entrees = new LinkedHashMap<String, Entree>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entree> eldest) {
+                return size() > capaciteMax;
+            }
+        };
+
+        if (fichier != null) {
+            try {
+                int lignes = charger();
+                if (lignes > 2 * entrees.size() + 1000) {
+                    compacter();
+                }
+                journal = Files.newBufferedWriter(fichier, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                logger.info("Cache des trajets ouvert: {} ({} entrées valides)", fichier, taille());
+            } catch (IOException e) {
+                logger.warn("Cache des trajets sur disque indisponible ({}), cache en mémoire seul", fichier, e);
+                journal = null;
+            }
+        }
+
+        ScheduledExecutorService purge = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cache-trajets-purge");
+            t.setDaemon(true);
+            return t;
+        });
+        purge.scheduleWithFixedDelay(this::purger, periodePurgeMillis, periodePurgeMillis,
+                                     TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Relit le journal en ignorant les entrées expirées ou mal formées.
+     *
+     * @return Le nombre de lignes lues
+     */
+    private int charger() throws IOException {
+        if (!Files.exists(fichier)) {
+            Path dossier = fichier.toAbsolutePath().getParent();
+            if (dossier != null) {
+                Files.createDirectories(dossier);
+            }
+            return 0;
+        }
+
+        long maintenant = System.currentTimeMillis();
+        int lignes = 0;
+        try (BufferedReader lecteur = Files.newBufferedReader(fichier, StandardCharsets.UTF_8)) {
+            String ligne;
+            while ((ligne = lecteur.readLine()) != null) {
+                lignes++;
+                String[] champs = ligne.split(";");
+                if (champs.length != 4) {
+                    continue;
+                }
+                try {
+                    Entree entree = new Entree(Double.parseDouble(champs[1]), Double.parseDouble(champs[2]),
+                                               Long.parseLong(champs[3]));
+                    if (entree.estExpiree(maintenant)) {
+                        entrees.remove(champs[0]);
+                    } else {
+                        entrees.put(champs[0], entree);
+                    }
+                } catch (NumberFormatException e) {
+                    // Ligne tronquée par un arrêt brutal: ignorée
+                }
+            }
+        }
+        return lignes;
+    }
+
+    /**
+     * Réécrit le journal avec les seules entrées valides (remplacement atomique).
+     */
+    private void compacter() throws IOException {
+        Path temporaire = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+        try (BufferedWriter sortie = Files.newBufferedWriter(temporaire, StandardCharsets.UTF_8)) {
+            synchronized (entrees) {
+                for (Map.Entry<String, Entree> e : entrees.entrySet()) {
+                    sortie.write(ligne(e.getKey(), e.getValue()));
+                }
+            }
+        }
+        Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String ligne(String cle, Entree entree) {
+        return String.format(Locale.ROOT, "%s;%.1f;%.1f;%d%n",
+                             cle, entree.distanceMetres, entree.dureeSecondes, entree.expiration);
+    }
+
+    /**
+     * Cherche une entrée valide.
+     *
+     * @param cle Clé de la paire
+     * @return L'entrée, ou null si absente ou expirée
+     */
+    public Entree obtenir(String cle) {
+        synchronized (entrees) {
+            Entree entree = entrees.get(cle);
+            if (entree == null) {
+                return null;
+            }
+            if (entree.estExpiree(System.currentTimeMillis())) {
+                entrees.remove(cle);
+                return null;
+            }
+            return entree;
+        }
+    }
+
+    /**
+     * Enregistre une réponse en mémoire et l'ajoute au journal.
+     *
+     * @param cle Clé de la paire
+     * @param distanceMetres Distance routière en mètres (négative: pas d'itinéraire)
+     * @param dureeSecondes Durée du trajet en secondes
+     * @return L'entrée enregistrée
+     */
+    public Entree enregistrer(String cle, double distanceMetres, double dureeSecondes) {
+        Entree entree = new Entree(distanceMetres, dureeSecondes, System.currentTimeMillis() + dureeVieMillis);
+        synchronized (entrees) {
+            entrees.put(cle, entree);
+        }
+        ecrire(cle, entree);
+        return entree;
+    }
+
+    private synchronized void ecrire(String cle, Entree entree) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.write(ligne(cle, entree));
+        } catch (IOException e) {
+            logger.warn("Écriture du cache des trajets impossible, poursuite en mémoire", e);
+            journal = null;
+        }
+    }
+
+    /**
+     * Force l'écriture sur disque des entrées ajoutées depuis le dernier appel.
+     */
+    public synchronized void vider() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.flush();
+        } catch (IOException e) {
+            logger.warn("Écriture du cache des trajets impossible, poursuite en mémoire", e);
+            journal = null;
+        }
+    }
+
+    /**
+     * Retire de la mémoire les entrées expirées. Le journal les ignorera au
+     * prochain chargement.
+     *
+     * @return Le nombre d'entrées retirées
+     */
+    int purger() {
+        long maintenant = System.currentTimeMillis();
+        int retirees = 0;
+        synchronized (entrees) {
+            Iterator<Entree> it = entrees.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().estExpiree(maintenant)) {
+                    it.remove();
+                    retirees++;
+                }
+            }
+        }
+        if (retirees > 0) {
+            logger.debug("Cache des trajets: {} entrée(s) expirée(s) purgée(s)", retirees);
+        }
+        return retirees;
+    }
+
+    /**
+     * @return Le nombre d'entrées en mémoire (expirées non encore purgées comprises)
+     */
+    public int taille() {
+        synchronized (entrees) {
+            return entrees.size();
+        }
+    }
+}
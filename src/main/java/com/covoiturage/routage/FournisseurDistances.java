@@ -0,0 +1,99 @@
+package com.covoiturage.routage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.optimization.MatriceDistances;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Source des distances et temps de trajet entre utilisateurs.
+ *
+ * Les algorithmes d'optimisation ne voient qu'une {@link MatriceDistances}; un
+ * fournisseur décide d'où viennent les valeurs (vol d'oiseau, réseau routier
+ * local, service distant...). Les implémentations doivent être sûres en
+ * contexte concurrent: une instance est partagée par toutes les requêtes.
+ */
+public interface FournisseurDistances {
+
+    /**
+     * Calcule les distances et temps de chaque origine vers chaque destination.
+     *
+     * @param origines Utilisateurs de départ (lignes du tableau)
+     * @param destinations Utilisateurs d'arrivée (colonnes du tableau)
+     * @return Le tableau origines × destinations
+     */
+    TableauTrajets calculer(List<Utilisateur> origines, List<Utilisateur> destinations);
+
+    /**
+     * Construit la matrice carrée d'une instance.
+     *
+     * @param utilisateurs Liste des utilisateurs (l'index i correspond à utilisateurs.get(i))
+     * @return La matrice des distances
+     */
+    default MatriceDistances matrice(List<Utilisateur> utilisateurs) {
+        return new MatriceDistancesTrajets(calculer(utilisateurs, utilisateurs));
+    }
+
+    /**
+     * Calcule les tronçons successifs d'un parcours: arrets[i] vers arrets[i + 1].
+     *
+     * Par défaut, un appel à {@link #calculer} par tronçon: n - 1 paires au lieu
+     * des n² d'un tableau complet, servies par le cache de paires s'il est actif.
+     *
+     * @param arrets Utilisateurs dans l'ordre de passage
+     * @return Tableau 1 × (n - 1), la colonne i étant le tronçon i → i + 1
+     */
+    default TableauTrajets calculerTroncons(List<Utilisateur> arrets) {
+        int troncons = Math.max(0, arrets.size() - 1);
+        TableauTrajets tableau = new TableauTrajets(1, troncons);
+        for (int i = 0; i < troncons; i++) {
+            TableauTrajets paire = calculer(arrets.subList(i, i + 1), arrets.subList(i + 1, i + 2));
+            if (paire.estEstimee(0, 0)) {
+                tableau.definirEstimation(0, i, paire.distanceKm(0, 0), paire.tempsMinutes(0, 0));
+            } else {
+                tableau.definir(0, i, paire.distanceKm(0, 0), paire.tempsMinutes(0, 0));
+            }
+        }
+        return tableau;
+    }
+
+    /**
+     * Calcule la géométrie d'un parcours qui dessert des utilisateurs dans l'ordre.
+     *
+     * Par défaut, segments droits entre arrêts successifs; un fournisseur qui
+     * connaît le réseau renvoie le tracé réel. Les utilisateurs sans coordonnées
+     * sont ignorés.
+     *
+     * @param arrets Utilisateurs dans l'ordre de passage
+     * @return Les points {latitude, longitude} successifs du parcours
+     */
+    default List<double[]> geometrie(List<Utilisateur> arrets) {
+        List<double[]> points = new ArrayList<>(arrets.size());
+        for (Utilisateur arret : arrets) {
+            if (GeoUtils.aCoordonnees(arret)) {
+                points.add(new double[] {arret.getLatitude(), arret.getLongitude()});
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Obtient les compteurs d'activité du fournisseur (cache, appels distants...).
+     *
+     * @return Map des statistiques, vide si le fournisseur n'en tient pas
+     */
+    default Map<String, Object> getStatistiques() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Obtient le nom du fournisseur.
+     *
+     * @return Nom du fournisseur
+     */
+    String getNom();
+}
@@ -0,0 +1,134 @@
+package com.covoiturage.routage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.covoiturage.models.Utilisateur;
+
+/**
+ * Décorateur qui sert les paires déjà connues depuis le {@link CacheDistancesPaires}
+ * et ne transmet au fournisseur sous-jacent que les autres.
+ *
+ * PRINCIPE:
+ * 1. Chaque case (origine, destination) est cherchée par ids dans la partition
+ *    du cache de la région de l'origine
+ * 2. Les lignes et colonnes qui ont au moins une case manquante forment un
+ *    sous-tableau, calculé en un seul appel au fournisseur décoré
+ * 3. Les cases calculées (et non estimées) alimentent le cache
+ *
+ * Les estimations ne sont jamais mises en cache: une paire estimée faute de
+ * service disponible sera redemandée à la requête suivante.
+ */
+public class FournisseurDistancesEnCache implements FournisseurDistances {
+
+    private final FournisseurDistances delegue;
+    private final CacheDistancesPaires cache;
+
+    /**
+     * @param delegue Fournisseur qui calcule les paires absentes du cache
+     * @param cache Cache partagé des paires
+     */
+    public FournisseurDistancesEnCache(FournisseurDistances delegue, CacheDistancesPaires cache) {
+        this.delegue = delegue;
+        this.cache = cache;
+    }
+
+    @Override
+    public TableauTrajets calculer(List<Utilisateur> origines, List<Utilisateur> destinations) {
+        int lignes = origines.size();
+        int colonnes = destinations.size();
+
+        // Versions relevées avant tout calcul: une mise à jour concurrente rendra
+        // obsolètes les valeurs enregistrées plus bas
+        long[] versionsOrigines = new long[lignes];
+        long[] versionsDestinations = new long[colonnes];
+        for (int i = 0; i < lignes; i++) {
+            versionsOrigines[i] = cache.version(origines.get(i).getId());
+        }
+        for (int j = 0; j < colonnes; j++) {
+            versionsDestinations[j] = cache.version(destinations.get(j).getId());
+        }
+
+        TableauTrajets tableau = new TableauTrajets(lignes, colonnes);
+        boolean[] connues = new boolean[lignes * colonnes];
+        boolean[] ligneIncomplete = new boolean[lignes];
+        boolean[] colonneIncomplete = new boolean[colonnes];
+        for (int i = 0; i < lignes; i++) {
+            Utilisateur origine = origines.get(i);
+            for (int j = 0; j < colonnes; j++) {
+                Utilisateur destination = destinations.get(j);
+                if (origine == destination) {
+                    tableau.definir(i, j, 0.0, 0.0);
+                    connues[i * colonnes + j] = true;
+                } else if (cache.recopier(origine.getRegion(), origine.getId(), destination.getId(),
+                                          tableau, i, j)) {
+                    connues[i * colonnes + j] = true;
+                } else {
+                    ligneIncomplete[i] = true;
+                    colonneIncomplete[j] = true;
+                }
+            }
+        }
+
+        List<Integer> indexLignes = new ArrayList<>();
+        List<Integer> indexColonnes = new ArrayList<>();
+        List<Utilisateur> sousOrigines = new ArrayList<>();
+        List<Utilisateur> sousDestinations = new ArrayList<>();
+        for (int i = 0; i < lignes; i++) {
+            if (ligneIncomplete[i]) {
+                indexLignes.add(i);
+                sousOrigines.add(origines.get(i));
+            }
+        }
+        for (int j = 0; j < colonnes; j++) {
+            if (colonneIncomplete[j]) {
+                indexColonnes.add(j);
+                sousDestinations.add(destinations.get(j));
+            }
+        }
+        if (sousOrigines.isEmpty()) {
+            return tableau;
+        }
+
+        TableauTrajets calcule = delegue.calculer(sousOrigines, sousDestinations);
+        for (int a = 0; a < indexLignes.size(); a++) {
+            int i = indexLignes.get(a);
+            for (int b = 0; b < indexColonnes.size(); b++) {
+                int j = indexColonnes.get(b);
+                if (connues[i * colonnes + j]) {
+                    continue;
+                }
+                double distance = calcule.distanceKm(a, b);
+                double temps = calcule.tempsMinutes(a, b);
+                if (calcule.estEstimee(a, b)) {
+                    tableau.definirEstimation(i, j, distance, temps);
+                } else {
+                    tableau.definir(i, j, distance, temps);
+                    cache.enregistrer(origines.get(i).getRegion(), origines.get(i).getId(), versionsOrigines[i],
+                                      destinations.get(j).getId(), versionsDestinations[j],
+                                      distance, temps);
+                }
+            }
+        }
+        return tableau;
+    }
+
+    @Override
+    public Map<String, Object> getStatistiques() {
+        Map<String, Object> stats = new LinkedHashMap<>(delegue.getStatistiques());
+        stats.put("cachePaires", cache.getStatistiques());
+        return stats;
+    }
+
+    @Override
+    public List<double[]> geometrie(List<Utilisateur> arrets) {
+        return delegue.geometrie(arrets);
+    }
+
+    @Override
+    public String getNom() {
+        return delegue.getNom();
+    }
+}
@@ -0,0 +1,380 @@
+package com.covoiturage.routage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.utils.GeoUtils;
+import com.google.maps.DistanceMatrixApi;
+import com.google.maps.GeoApiContext;
+import com.google.maps.errors.ApiException;
+import com.google.maps.model.DistanceMatrix;
+import com.google.maps.model.DistanceMatrixElement;
+import com.google.maps.model.DistanceMatrixElementStatus;
+import com.google.maps.model.LatLng;
+import com.google.maps.model.TravelMode;
+import com.google.maps.model.Unit;
+
+/**
+ * Fournisseur distant: API Distance Matrix de Google Maps, avec cache et regroupement.
+ *
+ * PRINCIPE:
+ * 1. Chaque paire (origine, destination) distincte est cherchée dans le
+ *    {@link CacheTrajets} (mémoire + disque, avec durée de vie)
+ * 2. Une paire absente du cache mais déjà demandée par une autre requête en cours
+ *    n'est pas redemandée: on attend le résultat de la première (table enVol)
+ * 3. Les paires restantes sont regroupées en tuiles origines × destinations de
+ *    taille maximale (100 éléments, 25 points par côté) et envoyées en aussi peu
+ *    d'appels que possible; toutes les cases d'une tuile alimentent le cache
+ *
+ * Les paires sans coordonnées, sans itinéraire (réponse elle aussi mise en cache)
+ * ou dont l'appel a échoué sont estimées à vol d'oiseau et marquées comme telles
+ * dans le {@link TableauTrajets}.
+ *
+ * Deux points sont identiques pour le cache s'ils coïncident à 5 décimales
+ * (environ un mètre).
+ *
+ * CONCURRENCE: sûr, une instance est partagée par toutes les requêtes.
+ */
+public class FournisseurDistancesGoogle implements FournisseurDistances {
+
+    private static final Logger logger = LoggerFactory.getLogger(FournisseurDistancesGoogle.class);
+
+    /** Nombre maximal d'éléments (origines × destinations) par appel. */
+    public static final int ELEMENTS_MAX_PAR_APPEL = 100;
+
+    /** Nombre maximal d'origines ou de destinations par appel. */
+    public static final int POINTS_MAX_PAR_COTE = 25;
+
+    /** Attente maximale du résultat d'un appel lancé par une autre requête. */
+    private static final long ATTENTE_MAX_SECONDES = 30;
+
+    private final GeoApiContext contexte;
+    private final CacheTrajets cache;
+    private final FournisseurDistances repli = new FournisseurDistancesHaversine();
+    private final Map<String, CompletableFuture<CacheTrajets.Entree>> enVol = new ConcurrentHashMap<>();
+
+    // Statistiques
+    private final LongAdder consultations = new LongAdder();
+    private final LongAdder succesCache = new LongAdder();
+    private final LongAdder attentesPartagees = new LongAdder();
+    private final LongAdder appelsAmont = new LongAdder();
+    private final LongAdder elementsAmont = new LongAdder();
+    private final LongAdder echecsAmont = new LongAdder();
+    private final LongAdder latenceTotaleNanos = new LongAdder();
+    private final AtomicLong latenceMaxNanos = new AtomicLong();
+
+    /**
+     * @param contexte Contexte du client Google Maps (clé, URL, limite de débit)
+     * @param cache Cache des réponses
+     */
+    public FournisseurDistancesGoogle(GeoApiContext contexte, CacheTrajets cache) {
+        this.contexte = contexte;
+        this.cache = cache;
+    }
+
+    @Override
+    public TableauTrajets calculer(List<Utilisateur> origines, List<Utilisateur> destinations) {
+        Map<String, LatLng> points = new HashMap<>();
+        String[] clesOrigines = cles(origines, points);
+        String[] clesDestinations = cles(destinations, points);
+
+        // Résolution de chaque paire distincte: cache, appel en cours ou appel à lancer
+        Map<String, CompletableFuture<CacheTrajets.Entree>> attentes = new HashMap<>();
+        Map<String, CompletableFuture<CacheTrajets.Entree>> aDemander = new LinkedHashMap<>();
+        for (int i = 0; i < origines.size(); i++) {
+            for (int j = 0; j < destinations.size(); j++) {
+                String cle = clePaire(clesOrigines[i], clesDestinations[j]);
+                if (cle == null || attentes.containsKey(cle)) {
+                    continue;
+                }
+                consultations.increment();
+
+                CacheTrajets.Entree entree = cache.obtenir(cle);
+                if (entree != null) {
+                    succesCache.increment();
+                    attentes.put(cle, CompletableFuture.completedFuture(entree));
+                    continue;
+                }
+
+                CompletableFuture<CacheTrajets.Entree> nouvelle = new CompletableFuture<>();
+                CompletableFuture<CacheTrajets.Entree> existante = enVol.putIfAbsent(cle, nouvelle);
+                if (existante != null) {
+                    attentesPartagees.increment();
+                    attentes.put(cle, existante);
+                } else if ((entree = cache.obtenir(cle)) != null) {
+                    // Appel concurrent terminé entre les deux lectures
+                    enVol.remove(cle, nouvelle);
+                    succesCache.increment();
+                    attentes.put(cle, CompletableFuture.completedFuture(entree));
+                } else {
+                    aDemander.put(cle, nouvelle);
+                    attentes.put(cle, nouvelle);
+                }
+            }
+        }
+
+        if (!aDemander.isEmpty()) {
+            try {
+                interroger(aDemander, points);
+            } finally {
+                for (Map.Entry<String, CompletableFuture<CacheTrajets.Entree>> e : aDemander.entrySet()) {
+                    e.getValue().complete(null);
+                    enVol.remove(e.getKey(), e.getValue());
+                }
+                cache.vider();
+            }
+        }
+
+        TableauTrajets tableau = new TableauTrajets(origines.size(), destinations.size());
+        TableauTrajets estimations = null;
+        for (int i = 0; i < origines.size(); i++) {
+            for (int j = 0; j < destinations.size(); j++) {
+                if (origines.get(i) == destinations.get(j)
+                        || (clesOrigines[i] != null && clesOrigines[i].equals(clesDestinations[j]))) {
+                    tableau.definir(i, j, 0.0, 0.0);
+                    continue;
+                }
+
+                String cle = clePaire(clesOrigines[i], clesDestinations[j]);
+                CacheTrajets.Entree entree = cle == null ? null : attendre(attentes.get(cle));
+                if (entree == null || entree.estSansItineraire()) {
+                    if (estimations == null) {
+                        estimations = repli.calculer(origines, destinations);
+                    }
+                    tableau.definirEstimation(i, j, estimations.distanceKm(i, j), estimations.tempsMinutes(i, j));
+                } else {
+                    tableau.definir(i, j, entree.getDistanceMetres() / 1000.0, entree.getDureeSecondes() / 60.0);
+                }
+            }
+        }
+
+        if (tableau.getNombreEstimees() > 0) {
+            logger.debug("{} paire(s) estimée(s) à vol d'oiseau", tableau.getNombreEstimees());
+        }
+        return tableau;
+    }
+
+    /**
+     * Calcule la clé de cache de chaque utilisateur (null sans coordonnées).
+     */
+    private static String[] cles(List<Utilisateur> utilisateurs, Map<String, LatLng> points) {
+        String[] cles = new String[utilisateurs.size()];
+        for (int i = 0; i < utilisateurs.size(); i++) {
+            Utilisateur utilisateur = utilisateurs.get(i);
+            if (GeoUtils.aCoordonnees(utilisateur)) {
+                cles[i] = String.format(Locale.ROOT, "%.5f,%.5f",
+                                        utilisateur.getLatitude(), utilisateur.getLongitude());
+                points.putIfAbsent(cles[i], new LatLng(utilisateur.getLatitude(), utilisateur.getLongitude()));
+            }
+        }
+        return cles;
+    }
+
+    /**
+     * @return La clé de la paire, ou null si elle ne doit pas être demandée
+     */
+    private static String clePaire(String origine, String destination) {
+        if (origine == null || destination == null || origine.equals(destination)) {
+            return null;
+        }
+        return origine + ">" + destination;
+    }
+
+    /**
+     * Envoie les paires demandées en tuiles origines × destinations de taille maximale.
+     *
+     * @param aDemander Paires à demander et promesses à compléter
+     * @param points Coordonnées de chaque clé de point
+     */
+    private void interroger(Map<String, CompletableFuture<CacheTrajets.Entree>> aDemander,
+                            Map<String, LatLng> points) {
+        Map<String, Integer> indexOrigines = new LinkedHashMap<>();
+        Map<String, Integer> indexDestinations = new LinkedHashMap<>();
+        for (String cle : aDemander.keySet()) {
+            int separateur = cle.indexOf('>');
+            indexOrigines.putIfAbsent(cle.substring(0, separateur), indexOrigines.size());
+            indexDestinations.putIfAbsent(cle.substring(separateur + 1), indexDestinations.size());
+        }
+        String[] origines = indexOrigines.keySet().toArray(new String[0]);
+        String[] destinations = indexDestinations.keySet().toArray(new String[0]);
+
+        // Forme de tuile qui minimise le nombre d'appels
+        int lignes = 1;
+        int colonnes = 1;
+        int meilleurNombre = Integer.MAX_VALUE;
+        for (int c = 1; c <= Math.min(destinations.length, POINTS_MAX_PAR_COTE); c++) {
+            int l = Math.min(Math.min(origines.length, ELEMENTS_MAX_PAR_APPEL / c), POINTS_MAX_PAR_COTE);
+            int nombre = ((origines.length + l - 1) / l) * ((destinations.length + c - 1) / c);
+            if (nombre < meilleurNombre) {
+                meilleurNombre = nombre;
+                lignes = l;
+                colonnes = c;
+            }
+        }
+
+        for (int o = 0; o < origines.length; o += lignes) {
+            for (int d = 0; d < destinations.length; d += colonnes) {
+                List<String> tuileOrigines = new ArrayList<>();
+                List<String> tuileDestinations = new ArrayList<>();
+                restreindre(aDemander, origines, o, lignes, destinations, d, colonnes,
+                            tuileOrigines, tuileDestinations);
+                if (!tuileOrigines.isEmpty()) {
+                    appeler(tuileOrigines, tuileDestinations, aDemander, points);
+                }
+            }
+        }
+    }
+
+    /**
+     * Restreint une tuile aux lignes et colonnes qui contiennent au moins une paire demandée.
+     */
+    private static void restreindre(Map<String, CompletableFuture<CacheTrajets.Entree>> aDemander,
+                                    String[] origines, int o, int lignes,
+                                    String[] destinations, int d, int colonnes,
+                                    List<String> tuileOrigines, List<String> tuileDestinations) {
+        int finO = Math.min(o + lignes, origines.length);
+        int finD = Math.min(d + colonnes, destinations.length);
+        boolean[] colonneUtile = new boolean[finD - d];
+        for (int a = o; a < finO; a++) {
+            boolean ligneUtile = false;
+            for (int b = d; b < finD; b++) {
+                if (aDemander.containsKey(origines[a] + ">" + destinations[b])) {
+                    ligneUtile = true;
+                    colonneUtile[b - d] = true;
+                }
+            }
+            if (ligneUtile) {
+                tuileOrigines.add(origines[a]);
+            }
+        }
+        for (int b = d; b < finD; b++) {
+            if (colonneUtile[b - d]) {
+                tuileDestinations.add(destinations[b]);
+            }
+        }
+    }
+
+    /**
+     * Effectue un appel Distance Matrix et range toutes ses cases dans le cache.
+     * En cas d'échec, les promesses de la tuile restent à compléter par l'appelant.
+     */
+    private void appeler(List<String> tuileOrigines, List<String> tuileDestinations,
+                         Map<String, CompletableFuture<CacheTrajets.Entree>> aDemander,
+                         Map<String, LatLng> points) {
+        LatLng[] o = new LatLng[tuileOrigines.size()];
+        LatLng[] d = new LatLng[tuileDestinations.size()];
+        for (int a = 0; a < o.length; a++) {
+            o[a] = points.get(tuileOrigines.get(a));
+        }
+        for (int b = 0; b < d.length; b++) {
+            d[b] = points.get(tuileDestinations.get(b));
+        }
+
+        long debut = System.nanoTime();
+        DistanceMatrix reponse;
+        try {
+            reponse = DistanceMatrixApi.newRequest(contexte)
+                .origins(o)
+                .destinations(d)
+                .mode(TravelMode.DRIVING)
+                .units(Unit.METRIC)
+                .await();
+        } catch (ApiException | IOException e) {
+            echecsAmont.increment();
+            logger.warn("Appel Distance Matrix en échec ({}×{}), repli à vol d'oiseau: {}",
+                        o.length, d.length, e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            echecsAmont.increment();
+            return;
+        } finally {
+            long duree = System.nanoTime() - debut;
+            appelsAmont.increment();
+            elementsAmont.add((long) o.length * d.length);
+            latenceTotaleNanos.add(duree);
+            latenceMaxNanos.accumulateAndGet(duree, Math::max);
+        }
+
+        for (int a = 0; a < o.length && a < reponse.rows.length; a++) {
+            DistanceMatrixElement[] elements = reponse.rows[a].elements;
+            for (int b = 0; b < d.length && b < elements.length; b++) {
+                String origine = tuileOrigines.get(a);
+                String destination = tuileDestinations.get(b);
+                if (origine.equals(destination)) {
+                    continue;
+                }
+                String cle = origine + ">" + destination;
+                DistanceMatrixElement element = elements[b];
+                CacheTrajets.Entree entree = null;
+                if (element.status == DistanceMatrixElementStatus.OK
+                        && element.distance != null && element.duration != null) {
+                    entree = cache.enregistrer(cle, element.distance.inMeters, element.duration.inSeconds);
+                } else if (element.status == DistanceMatrixElementStatus.ZERO_RESULTS
+                        || element.status == DistanceMatrixElementStatus.NOT_FOUND) {
+                    // Réponse définitive: mise en cache pour ne pas la redemander
+                    entree = cache.enregistrer(cle, -1, -1);
+                }
+                CompletableFuture<CacheTrajets.Entree> promesse = aDemander.get(cle);
+                if (promesse != null) {
+                    promesse.complete(entree);
+                }
+            }
+        }
+    }
+
+    /**
+     * Attend le résultat d'une paire; null si l'appel a échoué ou tarde trop.
+     */
+    private static CacheTrajets.Entree attendre(CompletableFuture<CacheTrajets.Entree> promesse) {
+        try {
+            return promesse.get(ATTENTE_MAX_SECONDES, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStatistiques() {
+        long total = consultations.sum();
+        long appels = appelsAmont.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("fournisseur", getNom());
+        stats.put("consultations", total);
+        stats.put("succesCache", succesCache.sum());
+        stats.put("tauxSuccesCache", total == 0 ? 0.0 : (double) succesCache.sum() / total);
+        stats.put("attentesPartagees", attentesPartagees.sum());
+        stats.put("appelsAmont", appels);
+        stats.put("elementsAmont", elementsAmont.sum());
+        stats.put("echecsAmont", echecsAmont.sum());
+        stats.put("latenceMoyenneMs", appels == 0 ? 0.0 : latenceTotaleNanos.sum() / 1e6 / appels);
+        stats.put("latenceMaxMs", latenceMaxNanos.get() / 1e6);
+        stats.put("entreesCache", cache.taille());
+        return stats;
+    }
+
+    @Override
+    public String getNom() {
+        return "google";
+    }
+}
@@ -0,0 +1,88 @@
+package com.covoiturage.routage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.optimization.InstanceCoordonnees;
+import com.covoiturage.optimization.MagasinDistances;
+import com.covoiturage.optimization.MatriceDistances;
+import com.covoiturage.optimization.Solution;
+
+/**
+ * Fournisseur à vol d'oiseau: distance de Haversine et vitesse moyenne en ville.
+ *
+ * C'est le comportement historique de l'application et le repli des autres
+ * fournisseurs. Les matrices d'instance passent par le {@link MagasinDistances}
+ * persistant quand il est utilisable.
+ *
+ * Avec des {@link TablesVitesses}, les temps dépendent de la zone et de l'heure
+ * de départ de l'utilisateur d'origine au lieu de la vitesse moyenne.
+ */
+public class FournisseurDistancesHaversine implements FournisseurDistances {
+
+    private final TablesVitesses tables;
+
+    /**
+     * Fournisseur à vitesse moyenne constante.
+     */
+    public FournisseurDistancesHaversine() {
+        this(null);
+    }
+
+    /**
+     * @param tables Tables des vitesses par zone et par heure (null: vitesse moyenne constante)
+     */
+    public FournisseurDistancesHaversine(TablesVitesses tables) {
+        this.tables = tables;
+    }
+
+    @Override
+    public TableauTrajets calculer(List<Utilisateur> origines, List<Utilisateur> destinations) {
+        List<Utilisateur> tous = new ArrayList<>(origines.size() + destinations.size());
+        tous.addAll(origines);
+        tous.addAll(destinations);
+        InstanceCoordonnees instance = InstanceCoordonnees.depuis(tous);
+
+        int decalage = origines.size();
+        TableauTrajets tableau = new TableauTrajets(origines.size(), destinations.size());
+        int[] zonesDestinations = new int[destinations.size()];
+        if (tables != null) {
+            for (int j = 0; j < destinations.size(); j++) {
+                zonesDestinations[j] = tables.zone(destinations.get(j).getLatitude(),
+                                                   destinations.get(j).getLongitude());
+            }
+        }
+
+        for (int i = 0; i < origines.size(); i++) {
+            Utilisateur origine = origines.get(i);
+            int tranche = tables == null ? -1 : TablesVitesses.tranche(origine.getHeureDepart());
+            int zoneOrigine = tranche < 0 ? 0 : tables.zone(origine.getLatitude(), origine.getLongitude());
+            for (int j = 0; j < destinations.size(); j++) {
+                double distance = origine == destinations.get(j)
+                    ? 0.0 : instance.haversine(i, decalage + j);
+                double temps = tranche < 0
+                    ? Solution.estimerTempsMinutes(distance)
+                    : tables.tempsMinutes(distance, zoneOrigine, zonesDestinations[j], tranche);
+                if (instance.aCoordonnees(i) && instance.aCoordonnees(decalage + j)) {
+                    tableau.definir(i, j, distance, temps);
+                } else {
+                    tableau.definirEstimation(i, j, distance, temps);
+                }
+            }
+        }
+        return tableau;
+    }
+
+    @Override
+    public MatriceDistances matrice(List<Utilisateur> utilisateurs) {
+        MatriceDistances matrice = MagasinDistances.getInstance().matricePour(utilisateurs)
+            .orElseGet(() -> MatriceDistances.construire(utilisateurs));
+        return tables == null ? matrice : new MatriceDistancesHoraires(matrice, utilisateurs, tables);
+    }
+
+    @Override
+    public String getNom() {
+        return "haversine";
+    }
+}
@@ -0,0 +1,160 @@
+package com.covoiturage.routage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.optimization.Solution;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Fournisseur routier local: plus courts chemins sur le réseau routier, sans appel réseau.
+ *
+ * PRINCIPE:
+ * 1. Chaque utilisateur est rattaché au nœud du graphe le plus proche (à moins de
+ *    distanceRattachementKm); le trajet d'accès est compté à vol d'oiseau
+ * 2. Les nœuds distincts sont envoyés en une seule requête plusieurs-à-plusieurs
+ *    à la {@link HierarchieContraction}
+ * 3. distance = accès origine + chemin routier + accès destination
+ *
+ * Les paires hors réseau ou sans chemin sont estimées à vol d'oiseau et marquées
+ * comme telles dans le {@link TableauTrajets}.
+ */
+public class FournisseurDistancesRoutier implements FournisseurDistances {
+
+    private static final Logger logger = LoggerFactory.getLogger(FournisseurDistancesRoutier.class);
+
+    private final HierarchieContraction hierarchie;
+    private final double distanceRattachementKm;
+    private final FournisseurDistances repli = new FournisseurDistancesHaversine();
+
+    /**
+     * @param hierarchie Hiérarchie de contraction du réseau routier
+     * @param distanceRattachementKm Distance maximale entre un utilisateur et son nœud
+     */
+    public FournisseurDistancesRoutier(HierarchieContraction hierarchie, double distanceRattachementKm) {
+        this.hierarchie = hierarchie;
+        this.distanceRattachementKm = distanceRattachementKm;
+    }
+
+    @Override
+    public TableauTrajets calculer(List<Utilisateur> origines, List<Utilisateur> destinations) {
+        GrapheRoutier graphe = hierarchie.getGraphe();
+
+        int[] noeudsOrigines = new int[origines.size()];
+        int[] noeudsDestinations = new int[destinations.size()];
+        Map<Integer, Integer> colonneSource = new HashMap<>();
+        Map<Integer, Integer> colonneCible = new HashMap<>();
+        int[] sources = rattacher(origines, noeudsOrigines, colonneSource, graphe);
+        int[] cibles = rattacher(destinations, noeudsDestinations, colonneCible, graphe);
+
+        double[] tempsSecondes = new double[sources.length * cibles.length];
+        double[] longueursMetres = new double[sources.length * cibles.length];
+        hierarchie.plusieursVersPlusieurs(sources, cibles, tempsSecondes, longueursMetres);
+
+        TableauTrajets tableau = new TableauTrajets(origines.size(), destinations.size());
+        TableauTrajets estimations = null;
+        for (int i = 0; i < origines.size(); i++) {
+            Utilisateur origine = origines.get(i);
+            for (int j = 0; j < destinations.size(); j++) {
+                Utilisateur destination = destinations.get(j);
+                if (origine == destination) {
+                    tableau.definir(i, j, 0.0, 0.0);
+                    continue;
+                }
+
+                int u = noeudsOrigines[i];
+                int v = noeudsDestinations[j];
+                int position = u < 0 || v < 0 ? -1
+                             : colonneSource.get(u) * cibles.length + colonneCible.get(v);
+                if (position < 0 || Double.isInfinite(tempsSecondes[position])) {
+                    if (estimations == null) {
+                        estimations = repli.calculer(origines, destinations);
+                    }
+                    tableau.definirEstimation(i, j, estimations.distanceKm(i, j), estimations.tempsMinutes(i, j));
+                    continue;
+                }
+
+                double acces = GeoUtils.haversine(origine.getLatitude(), origine.getLongitude(),
+                                                  graphe.latitude(u), graphe.longitude(u))
+                             + GeoUtils.haversine(destination.getLatitude(), destination.getLongitude(),
+                                                  graphe.latitude(v), graphe.longitude(v));
+                double distance = acces + longueursMetres[position] / 1000.0;
+                double temps = tempsSecondes[position] / 60.0 + Solution.estimerTempsMinutes(acces);
+                tableau.definir(i, j, distance, temps);
+            }
+        }
+
+        if (tableau.getNombreEstimees() > 0) {
+            logger.debug("{} paire(s) hors réseau routier estimée(s) à vol d'oiseau",
+                         tableau.getNombreEstimees());
+        }
+        return tableau;
+    }
+
+    /**
+     * Tracé routier: pour chaque tronçon, accès au nœud de départ, chemin réel
+     * déroulé par la hiérarchie, puis accès à l'arrêt suivant. Un tronçon hors
+     * réseau ou sans chemin est tracé en ligne droite.
+     */
+    @Override
+    public List<double[]> geometrie(List<Utilisateur> arrets) {
+        GrapheRoutier graphe = hierarchie.getGraphe();
+        List<double[]> points = new ArrayList<>();
+        Utilisateur precedent = null;
+        int noeudPrecedent = -1;
+
+        for (Utilisateur arret : arrets) {
+            if (!GeoUtils.aCoordonnees(arret)) {
+                continue;
+            }
+            int noeud = graphe.noeudLePlusProche(arret.getLatitude(), arret.getLongitude(),
+                                                 distanceRattachementKm);
+            if (precedent != null && noeudPrecedent >= 0 && noeud >= 0) {
+                for (int v : hierarchie.chemin(noeudPrecedent, noeud)) {
+                    points.add(new double[] {graphe.latitude(v), graphe.longitude(v)});
+                }
+            }
+            points.add(new double[] {arret.getLatitude(), arret.getLongitude()});
+            precedent = arret;
+            noeudPrecedent = noeud;
+        }
+        return points;
+    }
+
+    /**
+     * Rattache des utilisateurs au réseau et renvoie les nœuds distincts.
+     *
+     * @param utilisateurs Utilisateurs à rattacher
+     * @param noeuds Sortie: nœud de chaque utilisateur (-1 si hors réseau)
+     * @param colonnes Sortie: position de chaque nœud distinct dans le tableau renvoyé
+     * @return Les nœuds distincts, dans l'ordre de première apparition
+     */
+    private int[] rattacher(List<Utilisateur> utilisateurs, int[] noeuds, Map<Integer, Integer> colonnes,
+                            GrapheRoutier graphe) {
+        int[] distincts = new int[utilisateurs.size()];
+        for (int i = 0; i < utilisateurs.size(); i++) {
+            Utilisateur utilisateur = utilisateurs.get(i);
+            noeuds[i] = GeoUtils.aCoordonnees(utilisateur)
+                ? graphe.noeudLePlusProche(utilisateur.getLatitude(), utilisateur.getLongitude(),
+                                           distanceRattachementKm)
+                : -1;
+            if (noeuds[i] >= 0 && !colonnes.containsKey(noeuds[i])) {
+                distincts[colonnes.size()] = noeuds[i];
+                colonnes.put(noeuds[i], colonnes.size());
+            }
+        }
+        return Arrays.copyOf(distincts, colonnes.size());
+    }
+
+    @Override
+    public String getNom() {
+        return "routage";
+    }
+}
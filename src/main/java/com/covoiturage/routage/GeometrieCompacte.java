@@ -0,0 +1,220 @@
+package com.covoiturage.routage;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodage binaire compact des tracés multi-niveaux, stocké dans trajets.route_geometrie.
+ *
+ * PRINCIPE:
+ * Les niveaux de {@link Polyligne#niveaux} sont emboîtés: chaque point d'un niveau
+ * grossier appartient aussi aux niveaux plus fins. Seul le niveau le plus fin est
+ * donc stocké, chaque point portant l'index du niveau le plus grossier où il apparaît.
+ *
+ * FORMAT:
+ * - octet 0: version du format ({@link #VERSION})
+ * - octet 1: drapeaux (bit 0: corps compressé par Deflate)
+ * - corps: varint nombre de niveaux, varint zoomMax de chaque niveau,
+ *   varint nombre de points, puis pour chaque point: varint niveau minimal,
+ *   varint zigzag du delta de latitude et de longitude (unité 1e-5°)
+ *
+ * Le corps n'est compressé que si Deflate le raccourcit. Un point coûte en
+ * général 3 à 5 octets, contre 4 à 6 caractères par point et par niveau pour
+ * les polylignes texte.
+ */
+public final class GeometrieCompacte {
+
+    static final int VERSION = 1;
+
+    private static final int DRAPEAU_DEFLATE = 1;
+
+    private static final double PRECISION = 1e5;
+
+    private GeometrieCompacte() {
+    }
+
+    /**
+     * Encode des niveaux emboîtés.
+     *
+     * @param niveaux Niveaux du plus grossier au plus fin (voir Polyligne.niveaux)
+     * @return Les octets à enregistrer, null s'il n'y a aucun niveau
+     * @throws IllegalArgumentException Si un point d'un niveau manque au niveau le plus fin
+     */
+    public static byte[] encoder(List<Polyligne.Niveau> niveaux) {
+        if (niveaux.isEmpty()) {
+            return null;
+        }
+
+        List<double[]> fins = niveaux.get(niveaux.size() - 1).getPoints();
+        Map<double[], Integer> niveauMinimal = new IdentityHashMap<>();
+        for (int l = niveaux.size() - 1; l >= 0; l--) {
+            for (double[] point : niveaux.get(l).getPoints()) {
+                niveauMinimal.put(point, l);
+            }
+        }
+        if (niveauMinimal.size() != fins.size()) {
+            throw new IllegalArgumentException("Les niveaux du tracé ne sont pas emboîtés");
+        }
+
+        ByteArrayOutputStream corps = new ByteArrayOutputStream(16 + fins.size() * 5);
+        ecrireVarint(corps, niveaux.size());
+        for (Polyligne.Niveau niveau : niveaux) {
+            ecrireVarint(corps, niveau.getZoomMax());
+        }
+        ecrireVarint(corps, fins.size());
+        long latPrecedente = 0;
+        long lonPrecedente = 0;
+        for (double[] point : fins) {
+            long lat = Math.round(point[0] * PRECISION);
+            long lon = Math.round(point[1] * PRECISION);
+            ecrireVarint(corps, niveauMinimal.get(point));
+            ecrireVarint(corps, zigzag(lat - latPrecedente));
+            ecrireVarint(corps, zigzag(lon - lonPrecedente));
+            latPrecedente = lat;
+            lonPrecedente = lon;
+        }
+
+        byte[] brut = corps.toByteArray();
+        byte[] compresse = compresser(brut);
+        boolean deflate = compresse.length < brut.length;
+        byte[] contenu = deflate ? compresse : brut;
+
+        byte[] resultat = new byte[contenu.length + 2];
+        resultat[0] = VERSION;
+        resultat[1] = (byte) (deflate ? DRAPEAU_DEFLATE : 0);
+        System.arraycopy(contenu, 0, resultat, 2, contenu.length);
+        return resultat;
+    }
+
+    /**
+     * Décode tous les niveaux d'un tracé.
+     *
+     * @param octets Octets produits par {@link #encoder}
+     * @return Les niveaux, du plus grossier au plus fin
+     * @throws IllegalArgumentException Si les octets sont tronqués ou d'une version inconnue
+     */
+    public static List<Polyligne.Niveau> decoder(byte[] octets) {
+        if (octets == null || octets.length < 2 || octets[0] != VERSION) {
+            throw new IllegalArgumentException("Géométrie compacte invalide ou de version inconnue");
+        }
+        byte[] corps = (octets[1] & DRAPEAU_DEFLATE) != 0
+            ? decompresser(octets, 2)
+            : Arrays.copyOfRange(octets, 2, octets.length);
+
+        int[] position = {0};
+        int nombreNiveaux = (int) lireVarint(corps, position);
+        int[] zooms = new int[nombreNiveaux];
+        List<List<double[]>> points = new ArrayList<>(nombreNiveaux);
+        for (int l = 0; l < nombreNiveaux; l++) {
+            zooms[l] = (int) lireVarint(corps, position);
+            points.add(new ArrayList<>());
+        }
+
+        long nombrePoints = lireVarint(corps, position);
+        long lat = 0;
+        long lon = 0;
+        for (long k = 0; k < nombrePoints; k++) {
+            int minimal = (int) lireVarint(corps, position);
+            lat += dezigzag(lireVarint(corps, position));
+            lon += dezigzag(lireVarint(corps, position));
+            if (minimal >= nombreNiveaux) {
+                throw new IllegalArgumentException("Géométrie compacte invalide");
+            }
+            double[] point = {lat / PRECISION, lon / PRECISION};
+            for (int l = minimal; l < nombreNiveaux; l++) {
+                points.get(l).add(point);
+            }
+        }
+
+        List<Polyligne.Niveau> niveaux = new ArrayList<>(nombreNiveaux);
+        for (int l = 0; l < nombreNiveaux; l++) {
+            niveaux.add(new Polyligne.Niveau(zooms[l], points.get(l)));
+        }
+        return niveaux;
+    }
+
+    /**
+     * Décode un tracé directement vers le document JSON de la carte.
+     *
+     * @param octets Octets produits par {@link #encoder}
+     * @return Le document de polylignes (voir Polyligne.document)
+     */
+    public static String versDocument(byte[] octets) {
+        return Polyligne.document(decoder(octets));
+    }
+
+    private static byte[] compresser(byte[] brut) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(brut);
+            deflater.finish();
+            ByteArrayOutputStream sortie = new ByteArrayOutputStream(brut.length);
+            byte[] tampon = new byte[1024];
+            while (!deflater.finished()) {
+                sortie.write(tampon, 0, deflater.deflate(tampon));
+            }
+            return sortie.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompresser(byte[] octets, int debut) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(octets, debut, octets.length - debut);
+            ByteArrayOutputStream sortie = new ByteArrayOutputStream(octets.length * 3);
+            byte[] tampon = new byte[1024];
+            while (!inflater.finished()) {
+                int lus = inflater.inflate(tampon);
+                if (lus == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Géométrie compacte tronquée");
+                }
+                sortie.write(tampon, 0, lus);
+            }
+            return sortie.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Géométrie compacte corrompue", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long dezigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void ecrireVarint(ByteArrayOutputStream sortie, long v) {
+        while ((v & ~0x7fL) != 0) {
+            sortie.write((int) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        sortie.write((int) v);
+    }
+
+    private static long lireVarint(byte[] octets, int[] position) {
+        long resultat = 0;
+        for (int decalage = 0; decalage < 64; decalage += 7) {
+            if (position[0] >= octets.length) {
+                throw new IllegalArgumentException("Géométrie compacte tronquée");
+            }
+            byte octet = octets[position[0]++];
+            resultat |= (long) (octet & 0x7f) << decalage;
+            if ((octet & 0x80) == 0) {
+                return resultat;
+            }
+        }
+        throw new IllegalArgumentException("Géométrie compacte invalide");
+    }
+}
@@ -0,0 +1,294 @@
+package com.covoiturage.routage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Réseau routier orienté, immuable, chargé depuis un fichier de graphe.
+ *
+ * FORMAT DU FICHIER (texte UTF-8, une entrée par ligne, '#' pour les commentaires):
+ *   N <id> <latitude> <longitude>
+ *   A <id origine> <id destination> <longueur m> <vitesse km/h> <sens unique 0|1>
+ * C'est le format produit par l'extraction des ways routières d'OpenStreetMap:
+ * une ligne A par segment entre deux intersections, dans les deux sens sauf
+ * si la voie est à sens unique.
+ *
+ * Les arcs sont rangés en CSR (arcs sortants de chaque nœud contigus). Un index
+ * en grille permet de rattacher un point GPS au nœud le plus proche.
+ *
+ * COMPLEXITÉ: chargement O(N + A), rattachement d'un point O(1) en moyenne
+ */
+public final class GrapheRoutier {
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int[] debutsSortants;
+    private final int[] cibles;
+    private final double[] tempsSecondes;
+    private final double[] longueursMetres;
+
+    // Index en grille pour le rattachement des points
+    private final double latMin;
+    private final double lonMin;
+    private final double pasDegres;
+    private final int colonnes;
+    private final int lignes;
+    private final int[] debutsCellules;
+    private final int[] contenuCellules;
+
+    private GrapheRoutier(double[] latitudes, double[] longitudes, int[] debutsSortants,
+                          int[] cibles, double[] tempsSecondes, double[] longueursMetres) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.debutsSortants = debutsSortants;
+        this.cibles = cibles;
+        this.tempsSecondes = tempsSecondes;
+        this.longueursMetres = longueursMetres;
+
+        int n = latitudes.length;
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (int v = 0; v < n; v++) {
+            minLat = Math.min(minLat, latitudes[v]);
+            maxLat = Math.max(maxLat, latitudes[v]);
+            minLon = Math.min(minLon, longitudes[v]);
+            maxLon = Math.max(maxLon, longitudes[v]);
+        }
+        this.latMin = minLat;
+        this.lonMin = minLon;
+
+        // Environ deux nœuds par cellule
+        double surface = Math.max((maxLat - minLat) * (maxLon - minLon), 1e-12);
+        this.pasDegres = Math.max(Math.sqrt(surface * 2 / Math.max(n, 1)), 1e-5);
+        this.colonnes = (int) ((maxLon - minLon) / pasDegres) + 1;
+        this.lignes = (int) ((maxLat - minLat) / pasDegres) + 1;
+
+        int[] celluleDe = new int[n];
+        this.debutsCellules = new int[colonnes * lignes + 1];
+        for (int v = 0; v < n; v++) {
+            celluleDe[v] = cellule(latitudes[v], longitudes[v]);
+            debutsCellules[celluleDe[v] + 1]++;
+        }
+        for (int c = 0; c < colonnes * lignes; c++) {
+            debutsCellules[c + 1] += debutsCellules[c];
+        }
+        this.contenuCellules = new int[n];
+        int[] remplissage = Arrays.copyOf(debutsCellules, debutsCellules.length - 1);
+        for (int v = 0; v < n; v++) {
+            contenuCellules[remplissage[celluleDe[v]]++] = v;
+        }
+    }
+
+    /**
+     * Charge un graphe depuis un flux au format décrit en tête de classe.
+     *
+     * @param flux Flux du fichier de graphe (non fermé par cette méthode)
+     * @return Le graphe chargé
+     * @throws IOException En cas d'erreur de lecture
+     * @throws IllegalArgumentException Si le fichier est mal formé
+     */
+    public static GrapheRoutier charger(InputStream flux) throws IOException {
+        Map<Long, Integer> indexNoeuds = new HashMap<>();
+        double[] lats = new double[1024];
+        double[] lons = new double[1024];
+        int nombreNoeuds = 0;
+
+        int[] origines = new int[4096];
+        int[] destinations = new int[4096];
+        double[] temps = new double[4096];
+        double[] longueurs = new double[4096];
+        int nombreArcs = 0;
+
+        BufferedReader lecteur = new BufferedReader(new InputStreamReader(flux, StandardCharsets.UTF_8));
+        String ligne;
+        int numero = 0;
+        while ((ligne = lecteur.readLine()) != null) {
+            numero++;
+            ligne = ligne.trim();
+            if (ligne.isEmpty() || ligne.startsWith("#")) {
+                continue;
+            }
+
+            String[] champs = ligne.split("\\s+");
+            try {
+                if ("N".equals(champs[0]) && champs.length >= 4) {
+                    long id = Long.parseLong(champs[1]);
+                    if (indexNoeuds.putIfAbsent(id, nombreNoeuds) != null) {
+                        throw new IllegalArgumentException("Nœud " + id + " déclaré deux fois");
+                    }
+                    if (nombreNoeuds == lats.length) {
+                        lats = Arrays.copyOf(lats, nombreNoeuds * 2);
+                        lons = Arrays.copyOf(lons, nombreNoeuds * 2);
+                    }
+                    lats[nombreNoeuds] = Double.parseDouble(champs[2]);
+                    lons[nombreNoeuds] = Double.parseDouble(champs[3]);
+                    nombreNoeuds++;
+
+                } else if ("A".equals(champs[0]) && champs.length >= 6) {
+                    Integer u = indexNoeuds.get(Long.parseLong(champs[1]));
+                    Integer v = indexNoeuds.get(Long.parseLong(champs[2]));
+                    if (u == null || v == null) {
+                        throw new IllegalArgumentException("Arc vers un nœud non déclaré");
+                    }
+                    double longueur = Double.parseDouble(champs[3]);
+                    double vitesse = Double.parseDouble(champs[4]);
+                    if (longueur < 0 || vitesse <= 0) {
+                        throw new IllegalArgumentException("Longueur ou vitesse invalide");
+                    }
+                    boolean sensUnique = "1".equals(champs[5]);
+                    double duree = longueur / (vitesse / 3.6);
+
+                    int requis = nombreArcs + 2;
+                    if (requis > origines.length) {
+                        int capacite = Math.max(requis, origines.length * 2);
+                        origines = Arrays.copyOf(origines, capacite);
+                        destinations = Arrays.copyOf(destinations, capacite);
+                        temps = Arrays.copyOf(temps, capacite);
+                        longueurs = Arrays.copyOf(longueurs, capacite);
+                    }
+                    origines[nombreArcs] = u;
+                    destinations[nombreArcs] = v;
+                    temps[nombreArcs] = duree;
+                    longueurs[nombreArcs] = longueur;
+                    nombreArcs++;
+                    if (!sensUnique) {
+                        origines[nombreArcs] = v;
+                        destinations[nombreArcs] = u;
+                        temps[nombreArcs] = duree;
+                        longueurs[nombreArcs] = longueur;
+                        nombreArcs++;
+                    }
+                } else {
+                    throw new IllegalArgumentException("Entrée inconnue");
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Graphe routier mal formé, ligne " + numero, e);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Graphe routier mal formé, ligne " + numero + ": "
+                                                   + e.getMessage(), e);
+            }
+        }
+
+        if (nombreNoeuds == 0) {
+            throw new IllegalArgumentException("Graphe routier vide");
+        }
+
+        // Tri par comptage des arcs selon leur origine (CSR)
+        int[] debuts = new int[nombreNoeuds + 1];
+        for (int a = 0; a < nombreArcs; a++) {
+            debuts[origines[a] + 1]++;
+        }
+        for (int v = 0; v < nombreNoeuds; v++) {
+            debuts[v + 1] += debuts[v];
+        }
+        int[] cibles = new int[nombreArcs];
+        double[] tempsTries = new double[nombreArcs];
+        double[] longueursTriees = new double[nombreArcs];
+        int[] remplissage = Arrays.copyOf(debuts, nombreNoeuds);
+        for (int a = 0; a < nombreArcs; a++) {
+            int p = remplissage[origines[a]]++;
+            cibles[p] = destinations[a];
+            tempsTries[p] = temps[a];
+            longueursTriees[p] = longueurs[a];
+        }
+
+        return new GrapheRoutier(Arrays.copyOf(lats, nombreNoeuds), Arrays.copyOf(lons, nombreNoeuds),
+                                 debuts, cibles, tempsTries, longueursTriees);
+    }
+
+    private int cellule(double lat, double lon) {
+        int cx = Math.min(Math.max((int) ((lon - lonMin) / pasDegres), 0), colonnes - 1);
+        int cy = Math.min(Math.max((int) ((lat - latMin) / pasDegres), 0), lignes - 1);
+        return cy * colonnes + cx;
+    }
+
+    /**
+     * Trouve le nœud le plus proche d'un point GPS.
+     *
+     * @param lat Latitude du point
+     * @param lon Longitude du point
+     * @param distanceMaxKm Distance de rattachement maximale
+     * @return Index du nœud, ou -1 si aucun nœud n'est à moins de distanceMaxKm
+     */
+    public int noeudLePlusProche(double lat, double lon, double distanceMaxKm) {
+        int c = cellule(lat, lon);
+        int cx = c % colonnes;
+        int cy = c / colonnes;
+        // Un degré de latitude fait ~111 km; une cellule fait au moins pasDegres·cos(lat)·111 km
+        double kmParCellule = pasDegres * 111.0 * Math.cos(Math.toRadians(Math.abs(lat) + pasDegres));
+
+        int meilleur = -1;
+        double meilleureDistance = distanceMaxKm;
+        int anneauMax = Math.max(colonnes, lignes);
+        for (int anneau = 0; anneau <= anneauMax; anneau++) {
+            if ((anneau - 1) * kmParCellule > meilleureDistance) {
+                break;
+            }
+            for (int y = cy - anneau; y <= cy + anneau; y++) {
+                if (y < 0 || y >= lignes) {
+                    continue;
+                }
+                boolean bord = y == cy - anneau || y == cy + anneau;
+                for (int x = cx - anneau; x <= cx + anneau; x += (bord || anneau == 0) ? 1 : 2 * anneau) {
+                    if (x < 0 || x >= colonnes) {
+                        continue;
+                    }
+                    int cel = y * colonnes + x;
+                    for (int p = debutsCellules[cel]; p < debutsCellules[cel + 1]; p++) {
+                        int v = contenuCellules[p];
+                        double d = GeoUtils.haversine(lat, lon, latitudes[v], longitudes[v]);
+                        if (d <= meilleureDistance) {
+                            meilleureDistance = d;
+                            meilleur = v;
+                        }
+                    }
+                }
+            }
+        }
+        return meilleur;
+    }
+
+    public int getNombreNoeuds() {
+        return latitudes.length;
+    }
+
+    public int getNombreArcs() {
+        return cibles.length;
+    }
+
+    public double latitude(int v) {
+        return latitudes[v];
+    }
+
+    public double longitude(int v) {
+        return longitudes[v];
+    }
+
+    public int debutSortants(int v) {
+        return debutsSortants[v];
+    }
+
+    public int finSortants(int v) {
+        return debutsSortants[v + 1];
+    }
+
+    public int cible(int arc) {
+        return cibles[arc];
+    }
+
+    public double tempsSecondes(int arc) {
+        return tempsSecondes[arc];
+    }
+
+    public double longueurMetres(int arc) {
+        return longueursMetres[arc];
+    }
+}
@@ -0,0 +1,640 @@
+package com.covoiturage.routage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hiérarchie de contraction (Contraction Hierarchies) sur un {@link GrapheRoutier}.
+ *
+ * PRINCIPE:
+ * 1. Prétraitement: les nœuds sont contractés un à un, du moins important au plus
+ *    important (ordre glouton par différence d'arêtes). Contracter v, c'est le retirer
+ *    du graphe en ajoutant un raccourci u → w de poids w(u,v) + w(v,w) pour chaque
+ *    paire de voisins dont le plus court chemin passe par v (sinon un "témoin" existe).
+ * 2. Requête: tout plus court chemin monte puis descend dans l'ordre des rangs. Une
+ *    recherche montante depuis la source et une depuis la cible (arcs inversés) se
+ *    rencontrent au sommet du chemin; chacune ne visite que quelques centaines de nœuds.
+ * 3. Plusieurs-à-plusieurs: on lance une recherche arrière par cible et l'on dépose
+ *    (cible, distance) dans le "seau" de chaque nœud atteint, puis une recherche avant
+ *    par source qui lit les seaux des nœuds qu'elle atteint. Coût: |S| + |T| recherches
+ *    au lieu de |S| × |T|.
+ *
+ * Le poids est le temps de parcours; la longueur du chemin de temps minimal est
+ * propagée à côté. Chaque raccourci garde son nœud milieu pour pouvoir dérouler
+ * le chemin réel ({@link #chemin(int, int)}).
+ *
+ * COMPLEXITÉ: prétraitement quasi linéaire en pratique sur un réseau routier,
+ * requête en microsecondes (espace de recherche de taille O(√N) à O(log N))
+ *
+ * CONCURRENCE:
+ * Immuable après construction; l'état des recherches est propre à chaque thread.
+ */
+public final class HierarchieContraction {
+
+    private static final Logger logger = LoggerFactory.getLogger(HierarchieContraction.class);
+
+    /** Nombre maximal de nœuds fixés par une recherche de témoin. */
+    private static final int LIMITE_TEMOIN = 200;
+
+    private static final double EPSILON = 1e-9;
+
+    private final GrapheRoutier graphe;
+    private final int[] rang;
+
+    // Arcs montants avant: a → b avec rang[a] < rang[b], rangés en a
+    private final int[] debutsHaut;
+    private final int[] ciblesHaut;
+    private final double[] poidsHaut;
+    private final double[] longueursHaut;
+    private final int[] milieuxHaut;
+
+    // Arcs montants arrière: a → b avec rang[a] > rang[b], rangés en b avec cible a
+    private final int[] debutsBas;
+    private final int[] ciblesBas;
+    private final double[] poidsBas;
+    private final double[] longueursBas;
+    private final int[] milieuxBas;
+
+    private final ThreadLocal<EtatRecherche> etats;
+
+    private HierarchieContraction(GrapheRoutier graphe, int[] rang, ListeArcs[] sortants) {
+        this.graphe = graphe;
+        this.rang = rang;
+        int n = rang.length;
+
+        this.debutsHaut = new int[n + 1];
+        this.debutsBas = new int[n + 1];
+        for (int a = 0; a < n; a++) {
+            ListeArcs arcs = sortants[a];
+            for (int k = 0; k < arcs.taille; k++) {
+                int b = arcs.voisin[k];
+                if (rang[a] < rang[b]) {
+                    debutsHaut[a + 1]++;
+                } else {
+                    debutsBas[b + 1]++;
+                }
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            debutsHaut[v + 1] += debutsHaut[v];
+            debutsBas[v + 1] += debutsBas[v];
+        }
+
+        this.ciblesHaut = new int[debutsHaut[n]];
+        this.poidsHaut = new double[debutsHaut[n]];
+        this.longueursHaut = new double[debutsHaut[n]];
+        this.milieuxHaut = new int[debutsHaut[n]];
+        this.ciblesBas = new int[debutsBas[n]];
+        this.poidsBas = new double[debutsBas[n]];
+        this.longueursBas = new double[debutsBas[n]];
+        this.milieuxBas = new int[debutsBas[n]];
+
+        int[] remplissageHaut = Arrays.copyOf(debutsHaut, n);
+        int[] remplissageBas = Arrays.copyOf(debutsBas, n);
+        for (int a = 0; a < n; a++) {
+            ListeArcs arcs = sortants[a];
+            for (int k = 0; k < arcs.taille; k++) {
+                int b = arcs.voisin[k];
+                if (rang[a] < rang[b]) {
+                    int p = remplissageHaut[a]++;
+                    ciblesHaut[p] = b;
+                    poidsHaut[p] = arcs.poids[k];
+                    longueursHaut[p] = arcs.longueur[k];
+                    milieuxHaut[p] = arcs.milieu[k];
+                } else {
+                    int p = remplissageBas[b]++;
+                    ciblesBas[p] = a;
+                    poidsBas[p] = arcs.poids[k];
+                    longueursBas[p] = arcs.longueur[k];
+                    milieuxBas[p] = arcs.milieu[k];
+                }
+            }
+        }
+
+        this.etats = ThreadLocal.withInitial(() -> new EtatRecherche(n));
+    }
+
+    /**
+     * Prétraite un graphe routier.
+     *
+     * @param graphe Le graphe à contracter
+     * @return La hiérarchie prête pour les requêtes
+     */
+    public static HierarchieContraction construire(GrapheRoutier graphe) {
+        long debut = System.currentTimeMillis();
+        int n = graphe.getNombreNoeuds();
+
+        ListeArcs[] sortants = new ListeArcs[n];
+        ListeArcs[] entrants = new ListeArcs[n];
+        for (int v = 0; v < n; v++) {
+            sortants[v] = new ListeArcs();
+            entrants[v] = new ListeArcs();
+        }
+        for (int u = 0; u < n; u++) {
+            for (int arc = graphe.debutSortants(u); arc < graphe.finSortants(u); arc++) {
+                int v = graphe.cible(arc);
+                if (v != u) {
+                    sortants[u].ajouterOuAmeliorer(v, graphe.tempsSecondes(arc), graphe.longueurMetres(arc), -1);
+                    entrants[v].ajouterOuAmeliorer(u, graphe.tempsSecondes(arc), graphe.longueurMetres(arc), -1);
+                }
+            }
+        }
+
+        boolean[] contracte = new boolean[n];
+        int[] voisinsContractes = new int[n];
+        int[] rang = new int[n];
+        RechercheTemoin temoin = new RechercheTemoin(n);
+
+        // File de priorité paresseuse: priorité recalculée au moment de l'extraction
+        PriorityQueue<long[]> file = new PriorityQueue<>((x, y) -> x[0] != y[0]
+            ? Long.compare(x[0], y[0]) : Long.compare(x[1], y[1]));
+        for (int v = 0; v < n; v++) {
+            file.add(new long[] {
+                contracter(v, sortants, entrants, contracte, voisinsContractes, temoin, false), v });
+        }
+
+        int ordre = 0;
+        int raccourcis = 0;
+        while (!file.isEmpty()) {
+            int v = (int) file.poll()[1];
+            long priorite = contracter(v, sortants, entrants, contracte, voisinsContractes, temoin, false);
+            if (!file.isEmpty() && priorite > file.peek()[0]) {
+                file.add(new long[] { priorite, v });
+                continue;
+            }
+
+            raccourcis += contracter(v, sortants, entrants, contracte, voisinsContractes, temoin, true);
+            contracte[v] = true;
+            rang[v] = ordre++;
+            for (int k = 0; k < sortants[v].taille; k++) {
+                voisinsContractes[sortants[v].voisin[k]]++;
+            }
+            for (int k = 0; k < entrants[v].taille; k++) {
+                voisinsContractes[entrants[v].voisin[k]]++;
+            }
+        }
+
+        logger.info("Hiérarchie de contraction: {} nœuds, {} arcs, {} raccourcis en {} ms",
+                    n, graphe.getNombreArcs(), raccourcis, System.currentTimeMillis() - debut);
+        return new HierarchieContraction(graphe, rang, sortants);
+    }
+
+    /**
+     * Simule ou réalise la contraction d'un nœud.
+     *
+     * @param reel false pour seulement évaluer la priorité
+     * @return En simulation, la priorité (différence d'arêtes + voisins déjà contractés);
+     *         sinon, le nombre de raccourcis ajoutés
+     */
+    private static long contracter(int v, ListeArcs[] sortants, ListeArcs[] entrants, boolean[] contracte,
+                                   int[] voisinsContractes, RechercheTemoin temoin, boolean reel) {
+        ListeArcs in = entrants[v];
+        ListeArcs out = sortants[v];
+        int raccourcis = 0;
+        int degre = 0;
+
+        for (int k = 0; k < out.taille; k++) {
+            if (!contracte[out.voisin[k]]) {
+                degre++;
+            }
+        }
+
+        for (int i = 0; i < in.taille; i++) {
+            int u = in.voisin[i];
+            if (contracte[u]) {
+                continue;
+            }
+            degre++;
+
+            double poidsMax = 0.0;
+            for (int k = 0; k < out.taille; k++) {
+                int w = out.voisin[k];
+                if (!contracte[w] && w != u) {
+                    poidsMax = Math.max(poidsMax, in.poids[i] + out.poids[k]);
+                }
+            }
+            if (poidsMax == 0.0) {
+                continue;
+            }
+
+            temoin.lancer(u, v, poidsMax, sortants, contracte);
+
+            for (int k = 0; k < out.taille; k++) {
+                int w = out.voisin[k];
+                if (contracte[w] || w == u) {
+                    continue;
+                }
+                double via = in.poids[i] + out.poids[k];
+                if (temoin.distance(w) > via + EPSILON) {
+                    raccourcis++;
+                    if (reel) {
+                        double longueur = in.longueur[i] + out.longueur[k];
+                        sortants[u].ajouterOuAmeliorer(w, via, longueur, v);
+                        entrants[w].ajouterOuAmeliorer(u, via, longueur, v);
+                    }
+                }
+            }
+        }
+
+        return reel ? raccourcis : (long) raccourcis - degre + voisinsContractes[v];
+    }
+
+    /**
+     * Calcule les temps et longueurs de chemin de chaque source vers chaque cible.
+     *
+     * @param sources Nœuds de départ
+     * @param cibles Nœuds d'arrivée
+     * @param tempsSecondes Sortie: tempsSecondes[i·|cibles| + j] (infini si injoignable)
+     * @param longueursMetres Sortie: longueursMetres[i·|cibles| + j]
+     */
+    public void plusieursVersPlusieurs(int[] sources, int[] cibles,
+                                       double[] tempsSecondes, double[] longueursMetres) {
+        int m = cibles.length;
+        Arrays.fill(tempsSecondes, 0, sources.length * m, Double.POSITIVE_INFINITY);
+        Arrays.fill(longueursMetres, 0, sources.length * m, Double.POSITIVE_INFINITY);
+
+        EtatRecherche etat = etats.get();
+        etat.viderSeaux();
+
+        // Recherches arrière: dépôt dans les seaux
+        for (int j = 0; j < m; j++) {
+            etat.rechercheMontante(cibles[j], debutsBas, ciblesBas, poidsBas, longueursBas);
+            for (int k = 0; k < etat.nombreFixes; k++) {
+                int v = etat.fixes[k];
+                etat.deposer(v, j, etat.distance[v], etat.longueur[v]);
+            }
+        }
+
+        // Recherches avant: lecture des seaux
+        for (int i = 0; i < sources.length; i++) {
+            etat.rechercheMontante(sources[i], debutsHaut, ciblesHaut, poidsHaut, longueursHaut);
+            int ligne = i * m;
+            for (int k = 0; k < etat.nombreFixes; k++) {
+                int v = etat.fixes[k];
+                double d = etat.distance[v];
+                double l = etat.longueur[v];
+                for (int e = etat.teteSeau(v); e >= 0; e = etat.suivantSeau[e]) {
+                    int j = etat.cibleSeau[e];
+                    double total = d + etat.distanceSeau[e];
+                    if (total < tempsSecondes[ligne + j]) {
+                        tempsSecondes[ligne + j] = total;
+                        longueursMetres[ligne + j] = l + etat.longueurSeau[e];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calcule le plus court chemin (en temps) entre deux nœuds, raccourcis déroulés.
+     *
+     * @param source Nœud de départ
+     * @param cible Nœud d'arrivée
+     * @return La suite des nœuds du chemin réel, vide si la cible est injoignable
+     */
+    public List<Integer> chemin(int source, int cible) {
+        if (source == cible) {
+            return Collections.singletonList(source);
+        }
+
+        EtatRecherche etat = etats.get();
+        // Arrière d'abord: on conserve distances et parents de cette recherche
+        etat.rechercheMontante(cible, debutsBas, ciblesBas, poidsBas, longueursBas);
+        int n = rang.length;
+        double[] distanceArriere = new double[n];
+        int[] parentArriere = new int[n];
+        Arrays.fill(distanceArriere, Double.POSITIVE_INFINITY);
+        for (int k = 0; k < etat.nombreFixes; k++) {
+            int v = etat.fixes[k];
+            distanceArriere[v] = etat.distance[v];
+            parentArriere[v] = etat.parent[v];
+        }
+
+        etat.rechercheMontante(source, debutsHaut, ciblesHaut, poidsHaut, longueursHaut);
+        int sommet = -1;
+        double meilleur = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < etat.nombreFixes; k++) {
+            int v = etat.fixes[k];
+            double total = etat.distance[v] + distanceArriere[v];
+            if (total < meilleur) {
+                meilleur = total;
+                sommet = v;
+            }
+        }
+        if (sommet < 0) {
+            return Collections.emptyList();
+        }
+
+        // Remonter source → sommet (arcs montants), puis sommet → cible (arcs descendants)
+        List<Integer> montee = new ArrayList<>();
+        for (int v = sommet; v != source; v = etat.parent[v]) {
+            montee.add(v);
+        }
+        montee.add(source);
+        Collections.reverse(montee);
+
+        List<Integer> resultat = new ArrayList<>();
+        resultat.add(source);
+        for (int k = 1; k < montee.size(); k++) {
+            derouler(montee.get(k - 1), montee.get(k), resultat);
+        }
+        for (int v = sommet; v != cible; v = parentArriere[v]) {
+            derouler(v, parentArriere[v], resultat);
+        }
+        return resultat;
+    }
+
+    /**
+     * Ajoute au chemin les nœuds réels de l'arc a → b (b exclu de a, inclus à la fin).
+     */
+    private void derouler(int a, int b, List<Integer> chemin) {
+        int milieu = milieuArc(a, b);
+        if (milieu < 0) {
+            chemin.add(b);
+            return;
+        }
+        derouler(a, milieu, chemin);
+        derouler(milieu, b, chemin);
+    }
+
+    /**
+     * Retrouve le nœud milieu de l'arc a → b de la hiérarchie (-1 pour un arc original).
+     */
+    private int milieuArc(int a, int b) {
+        if (rang[a] < rang[b]) {
+            for (int p = debutsHaut[a]; p < debutsHaut[a + 1]; p++) {
+                if (ciblesHaut[p] == b) {
+                    return milieuxHaut[p];
+                }
+            }
+        } else {
+            for (int p = debutsBas[b]; p < debutsBas[b + 1]; p++) {
+                if (ciblesBas[p] == a) {
+                    return milieuxBas[p];
+                }
+            }
+        }
+        throw new IllegalStateException("Arc " + a + " → " + b + " absent de la hiérarchie");
+    }
+
+    public GrapheRoutier getGraphe() {
+        return graphe;
+    }
+
+    /**
+     * Liste dynamique d'arcs utilisée pendant la contraction.
+     */
+    private static final class ListeArcs {
+        int[] voisin = new int[4];
+        double[] poids = new double[4];
+        double[] longueur = new double[4];
+        int[] milieu = new int[4];
+        int taille;
+
+        void ajouterOuAmeliorer(int v, double p, double l, int m) {
+            for (int k = 0; k < taille; k++) {
+                if (voisin[k] == v) {
+                    if (p < poids[k]) {
+                        poids[k] = p;
+                        longueur[k] = l;
+                        milieu[k] = m;
+                    }
+                    return;
+                }
+            }
+            if (taille == voisin.length) {
+                voisin = Arrays.copyOf(voisin, taille * 2);
+                poids = Arrays.copyOf(poids, taille * 2);
+                longueur = Arrays.copyOf(longueur, taille * 2);
+                milieu = Arrays.copyOf(milieu, taille * 2);
+            }
+            voisin[taille] = v;
+            poids[taille] = p;
+            longueur[taille] = l;
+            milieu[taille] = m;
+            taille++;
+        }
+    }
+
+    /**
+     * Dijkstra local borné, pour vérifier l'existence d'un chemin témoin.
+     */
+    private static final class RechercheTemoin {
+        private final double[] distance;
+        private final int[] version;
+        private int versionCourante;
+        private final TasBinaire tas = new TasBinaire();
+
+        RechercheTemoin(int n) {
+            this.distance = new double[n];
+            this.version = new int[n];
+        }
+
+        void lancer(int source, int exclu, double poidsMax, ListeArcs[] sortants, boolean[] contracte) {
+            versionCourante++;
+            tas.vider();
+            fixer(source, 0.0);
+            tas.ajouter(0.0, source);
+            int fixes = 0;
+
+            while (!tas.estVide() && fixes < LIMITE_TEMOIN) {
+                double d = tas.cleMin();
+                int u = tas.extraire();
+                if (d > distance(u)) {
+                    continue;
+                }
+                if (d > poidsMax) {
+                    break;
+                }
+                fixes++;
+                ListeArcs arcs = sortants[u];
+                for (int k = 0; k < arcs.taille; k++) {
+                    int w = arcs.voisin[k];
+                    if (w == exclu || contracte[w]) {
+                        continue;
+                    }
+                    double nd = d + arcs.poids[k];
+                    if (nd < distance(w)) {
+                        fixer(w, nd);
+                        tas.ajouter(nd, w);
+                    }
+                }
+            }
+        }
+
+        private void fixer(int v, double d) {
+            version[v] = versionCourante;
+            distance[v] = d;
+        }
+
+        double distance(int v) {
+            return version[v] == versionCourante ? distance[v] : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * État réutilisable d'une recherche montante et des seaux, propre à un thread.
+     */
+    private static final class EtatRecherche {
+        final double[] distance;
+        final double[] longueur;
+        final int[] parent;
+        final int[] version;
+        int versionCourante;
+        final int[] fixes;
+        int nombreFixes;
+        final TasBinaire tas = new TasBinaire();
+
+        // Seaux: listes chaînées par nœud, réinitialisées par version
+        private final int[] tete;
+        private final int[] versionTete;
+        private int versionSeaux;
+        int[] suivantSeau = new int[64];
+        int[] cibleSeau = new int[64];
+        double[] distanceSeau = new double[64];
+        double[] longueurSeau = new double[64];
+        private int nombreEntrees;
+
+        EtatRecherche(int n) {
+            this.distance = new double[n];
+            this.longueur = new double[n];
+            this.parent = new int[n];
+            this.version = new int[n];
+            this.fixes = new int[n];
+            this.tete = new int[n];
+            this.versionTete = new int[n];
+        }
+
+        /**
+         * Dijkstra complet sur un graphe montant (il est acyclique et petit par construction).
+         */
+        void rechercheMontante(int source, int[] debuts, int[] cibles, double[] poids, double[] longueurs) {
+            versionCourante++;
+            nombreFixes = 0;
+            tas.vider();
+            version[source] = versionCourante;
+            distance[source] = 0.0;
+            longueur[source] = 0.0;
+            parent[source] = source;
+            tas.ajouter(0.0, source);
+
+            while (!tas.estVide()) {
+                double d = tas.cleMin();
+                int u = tas.extraire();
+                if (d > distance[u]) {
+                    continue;
+                }
+                fixes[nombreFixes++] = u;
+                for (int p = debuts[u]; p < debuts[u + 1]; p++) {
+                    int w = cibles[p];
+                    double nd = d + poids[p];
+                    if (version[w] != versionCourante || nd < distance[w]) {
+                        version[w] = versionCourante;
+                        distance[w] = nd;
+                        longueur[w] = longueur[u] + longueurs[p];
+                        parent[w] = u;
+                        tas.ajouter(nd, w);
+                    }
+                }
+            }
+        }
+
+        void viderSeaux() {
+            versionSeaux++;
+            nombreEntrees = 0;
+        }
+
+        int teteSeau(int v) {
+            return versionTete[v] == versionSeaux ? tete[v] : -1;
+        }
+
+        void deposer(int v, int cible, double d, double l) {
+            if (nombreEntrees == suivantSeau.length) {
+                int capacite = nombreEntrees * 2;
+                suivantSeau = Arrays.copyOf(suivantSeau, capacite);
+                cibleSeau = Arrays.copyOf(cibleSeau, capacite);
+                distanceSeau = Arrays.copyOf(distanceSeau, capacite);
+                longueurSeau = Arrays.copyOf(longueurSeau, capacite);
+            }
+            int e = nombreEntrees++;
+            suivantSeau[e] = teteSeau(v);
+            cibleSeau[e] = cible;
+            distanceSeau[e] = d;
+            longueurSeau[e] = l;
+            tete[v] = e;
+            versionTete[v] = versionSeaux;
+        }
+    }
+
+    /**
+     * Tas binaire minimal (clé double, valeur int) à entrées paresseuses.
+     */
+    private static final class TasBinaire {
+        private double[] cles = new double[64];
+        private int[] valeurs = new int[64];
+        private int taille;
+
+        void vider() {
+            taille = 0;
+        }
+
+        boolean estVide() {
+            return taille == 0;
+        }
+
+        double cleMin() {
+            return cles[0];
+        }
+
+        void ajouter(double cle, int valeur) {
+            if (taille == cles.length) {
+                cles = Arrays.copyOf(cles, taille * 2);
+                valeurs = Arrays.copyOf(valeurs, taille * 2);
+            }
+            int e = taille++;
+            while (e > 0) {
+                int parent = (e - 1) / 2;
+                if (cles[parent] <= cle) {
+                    break;
+                }
+                cles[e] = cles[parent];
+                valeurs[e] = valeurs[parent];
+                e = parent;
+            }
+            cles[e] = cle;
+            valeurs[e] = valeur;
+        }
+
+        int extraire() {
+            int resultat = valeurs[0];
+            taille--;
+            double cle = cles[taille];
+            int valeur = valeurs[taille];
+            int e = 0;
+            while (true) {
+                int enfant = 2 * e + 1;
+                if (enfant >= taille) {
+                    break;
+                }
+                if (enfant + 1 < taille && cles[enfant + 1] < cles[enfant]) {
+                    enfant++;
+                }
+                if (cle <= cles[enfant]) {
+                    break;
+                }
+                cles[e] = cles[enfant];
+                valeurs[e] = valeurs[enfant];
+                e = enfant;
+            }
+            cles[e] = cle;
+            valeurs[e] = valeur;
+            return resultat;
+        }
+    }
+}
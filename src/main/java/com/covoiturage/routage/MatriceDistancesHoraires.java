@@ -0,0 +1,89 @@
+package com.covoiturage.routage;
+
+import java.util.List;
+
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.optimization.MatriceDistances;
+
+/**
+ * Matrice dont les temps de trajet dépendent de l'heure de départ.
+ *
+ * Enveloppe une matrice de distances et remplace ses temps à vitesse constante
+ * par ceux des {@link TablesVitesses}: le trajet i → j part à l'heure de départ
+ * de l'utilisateur i, entre la zone de i et celle de j. Zones et tranches
+ * horaires sont calculées une fois à la construction, dans des tableaux
+ * primitifs: {@link #tempsMinutes(int, int)} reste O(1) dans les boucles des
+ * algorithmes.
+ *
+ * Un utilisateur sans heure de départ garde le temps de la matrice enveloppée.
+ */
+public final class MatriceDistancesHoraires implements MatriceDistances {
+
+    private final MatriceDistances base;
+    private final TablesVitesses tables;
+    private final int[] zones;
+    private final byte[] tranches;
+
+    /**
+     * @param base Matrice des distances
+     * @param utilisateurs Liste des utilisateurs, indexée comme la matrice
+     * @param tables Tables des vitesses par zone et par heure
+     */
+    public MatriceDistancesHoraires(MatriceDistances base, List<Utilisateur> utilisateurs, TablesVitesses tables) {
+        if (base.taille() != utilisateurs.size()) {
+            throw new IllegalArgumentException("La matrice et la liste d'utilisateurs n'ont pas la même taille");
+        }
+        this.base = base;
+        this.tables = tables;
+        this.zones = new int[utilisateurs.size()];
+        this.tranches = new byte[utilisateurs.size()];
+        for (int i = 0; i < utilisateurs.size(); i++) {
+            Utilisateur utilisateur = utilisateurs.get(i);
+            zones[i] = tables.zone(utilisateur.getLatitude(), utilisateur.getLongitude());
+            tranches[i] = (byte) TablesVitesses.tranche(utilisateur.getHeureDepart());
+        }
+    }
+
+    @Override
+    public int taille() {
+        return base.taille();
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        return base.distance(i, j);
+    }
+
+    @Override
+    public double distanceExacte(int i, int j) {
+        return base.distanceExacte(i, j);
+    }
+
+    @Override
+    public double tempsMinutes(int i, int j) {
+        if (tranches[i] < 0) {
+            return base.tempsMinutes(i, j);
+        }
+        return tables.tempsMinutes(base.distance(i, j), zones[i], zones[j], tranches[i]);
+    }
+
+    @Override
+    public double erreurRelativeMax() {
+        return base.erreurRelativeMax();
+    }
+
+    @Override
+    public boolean estComplete() {
+        return base.estComplete();
+    }
+
+    @Override
+    public int nombreVoisinsProches(int i) {
+        return base.nombreVoisinsProches(i);
+    }
+
+    @Override
+    public int voisinProche(int i, int rang) {
+        return base.voisinProche(i, rang);
+    }
+}
@@ -0,0 +1,44 @@
+package com.covoiturage.routage;
+
+import com.covoiturage.optimization.MatriceDistances;
+
+/**
+ * Matrice de distances adossée à un {@link TableauTrajets} carré.
+ *
+ * Les distances routières ne sont pas symétriques (sens uniques); les temps
+ * viennent du fournisseur au lieu d'être déduits de la vitesse moyenne.
+ */
+public final class MatriceDistancesTrajets implements MatriceDistances {
+
+    private final TableauTrajets tableau;
+
+    /**
+     * @param tableau Tableau carré des trajets d'une instance
+     */
+    public MatriceDistancesTrajets(TableauTrajets tableau) {
+        if (tableau.getLignes() != tableau.getColonnes()) {
+            throw new IllegalArgumentException("Le tableau des trajets doit être carré");
+        }
+        this.tableau = tableau;
+    }
+
+    @Override
+    public int taille() {
+        return tableau.getLignes();
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        return tableau.distanceKm(i, j);
+    }
+
+    @Override
+    public double tempsMinutes(int i, int j) {
+        return tableau.tempsMinutes(i, j);
+    }
+
+    @Override
+    public boolean estComplete() {
+        return tableau.getNombreEstimees() == 0;
+    }
+}
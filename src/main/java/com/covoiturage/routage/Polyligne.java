@@ -0,0 +1,271 @@
+package com.covoiturage.routage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.covoiturage.utils.GeoUtils;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Simplification et encodage des tracés enregistrés sur les trajets.
+ *
+ * PRINCIPE:
+ * 1. Le tracé complet est simplifié par Douglas-Peucker, une fois par niveau de
+ *    zoom, avec une tolérance d'un demi-pixel à ce zoom: aucune différence n'est
+ *    visible à l'écran, mais les zooms éloignés gardent très peu de points
+ * 2. Chaque niveau est encodé au format "encoded polyline" (précision 1e-5°,
+ *    deltas successifs, ~4 caractères par point)
+ * 3. Les niveaux sont servis à la carte dans un petit document JSON:
+ *    {"niveaux":[{"zoomMax":11,"polyline":"..."}, ...]}
+ *    La carte prend le premier niveau dont zoomMax couvre son zoom, le dernier
+ *    au-delà. En base, ils sont stockés sous forme binaire ({@link GeometrieCompacte})
+ *
+ * COMPLEXITÉ: Douglas-Peucker O(n log n) en moyenne, O(n²) au pire; encodage O(n).
+ */
+public final class Polyligne {
+
+    /** Zooms Leaflet maximaux de chaque niveau, du plus grossier au plus fin. */
+    static final int[] ZOOMS_NIVEAUX = {11, 14, 17};
+
+    /** Mètres par pixel à l'équateur au zoom 0 (tuiles de 256 px). */
+    private static final double METRES_PAR_PIXEL_ZOOM_0 = 156543.03;
+
+    private static final double PRECISION = 1e5;
+
+    private Polyligne() {
+    }
+
+    /**
+     * Simplifie un tracé pour chaque niveau de zoom.
+     *
+     * Douglas-Peucker étant déterministe, les points d'un niveau sont un
+     * sous-ensemble de ceux du niveau plus fin; deux niveaux consécutifs de même
+     * taille sont donc identiques et fusionnés.
+     *
+     * @param points Points {latitude, longitude} du tracé complet
+     * @return Les niveaux, du plus grossier au plus fin; vide si le tracé a moins de deux points
+     */
+    public static List<Niveau> niveaux(List<double[]> points) {
+        List<Niveau> niveaux = new ArrayList<>();
+        if (points.size() < 2) {
+            return niveaux;
+        }
+
+        double latitudeMoyenne = 0;
+        for (double[] point : points) {
+            latitudeMoyenne += point[0];
+        }
+        latitudeMoyenne /= points.size();
+
+        for (int zoom : ZOOMS_NIVEAUX) {
+            List<double[]> simplifies = simplifier(points, toleranceMetres(zoom, latitudeMoyenne));
+            Niveau precedent = niveaux.isEmpty() ? null : niveaux.get(niveaux.size() - 1);
+            if (precedent != null && precedent.points.size() == simplifies.size()) {
+                // Identique au niveau plus grossier: on élargit celui-ci
+                niveaux.set(niveaux.size() - 1, new Niveau(zoom, precedent.points));
+            } else {
+                niveaux.add(new Niveau(zoom, simplifies));
+            }
+        }
+        return niveaux;
+    }
+
+    /**
+     * Construit le document JSON servi à la carte.
+     *
+     * @param niveaux Niveaux du plus grossier au plus fin
+     * @return Le document, null s'il n'y a aucun niveau
+     */
+    public static String document(List<Niveau> niveaux) {
+        if (niveaux.isEmpty()) {
+            return null;
+        }
+
+        JsonArray tableau = new JsonArray();
+        for (Niveau niveau : niveaux) {
+            JsonObject objet = new JsonObject();
+            objet.addProperty("zoomMax", niveau.zoomMax);
+            objet.addProperty("polyline", encoder(niveau.points));
+            tableau.add(objet);
+        }
+
+        JsonObject document = new JsonObject();
+        document.add("niveaux", tableau);
+        return document.toString();
+    }
+
+    /**
+     * Tolérance de simplification pour un zoom: un demi-pixel au sol.
+     *
+     * @param zoom Niveau de zoom de la carte
+     * @param latitude Latitude du tracé (l'échelle de la projection en dépend)
+     * @return La tolérance en mètres
+     */
+    static double toleranceMetres(int zoom, double latitude) {
+        return 0.5 * METRES_PAR_PIXEL_ZOOM_0 * Math.cos(Math.toRadians(latitude)) / (1 << zoom);
+    }
+
+    /**
+     * Simplifie un tracé par Douglas-Peucker (version itérative, sans récursion).
+     *
+     * Les extrémités sont toujours conservées; un point intermédiaire l'est s'il
+     * s'écarte de plus de la tolérance du segment qui le court-circuiterait.
+     *
+     * @param points Points {latitude, longitude}
+     * @param toleranceMetres Écart maximal toléré
+     * @return Les points conservés, dans l'ordre
+     */
+    public static List<double[]> simplifier(List<double[]> points, double toleranceMetres) {
+        int n = points.size();
+        if (n < 3) {
+            return new ArrayList<>(points);
+        }
+
+        boolean[] conserves = new boolean[n];
+        conserves[0] = true;
+        conserves[n - 1] = true;
+        int[] pile = new int[2 * n];
+        int sommet = 0;
+        pile[sommet++] = 0;
+        pile[sommet++] = n - 1;
+
+        while (sommet > 0) {
+            int fin = pile[--sommet];
+            int debut = pile[--sommet];
+            double ecartMax = -1;
+            int indexMax = -1;
+            for (int k = debut + 1; k < fin; k++) {
+                double ecart = ecartSegmentMetres(points.get(k), points.get(debut), points.get(fin));
+                if (ecart > ecartMax) {
+                    ecartMax = ecart;
+                    indexMax = k;
+                }
+            }
+            if (indexMax >= 0 && ecartMax > toleranceMetres) {
+                conserves[indexMax] = true;
+                pile[sommet++] = debut;
+                pile[sommet++] = indexMax;
+                pile[sommet++] = indexMax;
+                pile[sommet++] = fin;
+            }
+        }
+
+        List<double[]> resultat = new ArrayList<>();
+        for (int k = 0; k < n; k++) {
+            if (conserves[k]) {
+                resultat.add(points.get(k));
+            }
+        }
+        return resultat;
+    }
+
+    /**
+     * Distance d'un point au segment [a, b], en projection équirectangulaire
+     * locale (suffisante à l'échelle d'une ville).
+     */
+    private static double ecartSegmentMetres(double[] p, double[] a, double[] b) {
+        double metresParDegre = Math.toRadians(1) * GeoUtils.RAYON_TERRE_KM * 1000.0;
+        double echelleLon = Math.cos(Math.toRadians(a[0])) * metresParDegre;
+        double bx = (b[1] - a[1]) * echelleLon;
+        double by = (b[0] - a[0]) * metresParDegre;
+        double px = (p[1] - a[1]) * echelleLon;
+        double py = (p[0] - a[0]) * metresParDegre;
+
+        double longueur2 = bx * bx + by * by;
+        double t = longueur2 == 0 ? 0 : Math.max(0, Math.min(1, (px * bx + py * by) / longueur2));
+        double dx = px - t * bx;
+        double dy = py - t * by;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Encode des points au format "encoded polyline" (précision 1e-5°).
+     *
+     * @param points Points {latitude, longitude}
+     * @return La chaîne encodée
+     */
+    public static String encoder(List<double[]> points) {
+        StringBuilder sortie = new StringBuilder(points.size() * 6);
+        long latPrecedente = 0;
+        long lonPrecedente = 0;
+        for (double[] point : points) {
+            long lat = Math.round(point[0] * PRECISION);
+            long lon = Math.round(point[1] * PRECISION);
+            encoderValeur(lat - latPrecedente, sortie);
+            encoderValeur(lon - lonPrecedente, sortie);
+            latPrecedente = lat;
+            lonPrecedente = lon;
+        }
+        return sortie.toString();
+    }
+
+    private static void encoderValeur(long delta, StringBuilder sortie) {
+        long v = delta < 0 ? ~(delta << 1) : delta << 1;
+        while (v >= 0x20) {
+            sortie.append((char) ((0x20 | (v & 0x1f)) + 63));
+            v >>= 5;
+        }
+        sortie.append((char) (v + 63));
+    }
+
+    /**
+     * Décode une chaîne au format "encoded polyline".
+     *
+     * @param encode La chaîne encodée
+     * @return Les points {latitude, longitude}
+     * @throws IllegalArgumentException Si la chaîne est tronquée ou invalide
+     */
+    public static List<double[]> decoder(String encode) {
+        List<double[]> points = new ArrayList<>();
+        int[] position = {0};
+        long lat = 0;
+        long lon = 0;
+        while (position[0] < encode.length()) {
+            lat += decoderValeur(encode, position);
+            lon += decoderValeur(encode, position);
+            points.add(new double[] {lat / PRECISION, lon / PRECISION});
+        }
+        return points;
+    }
+
+    private static long decoderValeur(String encode, int[] position) {
+        long resultat = 0;
+        int decalage = 0;
+        int octet;
+        do {
+            if (position[0] >= encode.length() || decalage > 60) {
+                throw new IllegalArgumentException("Polyligne encodée invalide");
+            }
+            octet = encode.charAt(position[0]++) - 63;
+            if (octet < 0 || octet > 63) {
+                throw new IllegalArgumentException("Polyligne encodée invalide");
+            }
+            resultat |= (long) (octet & 0x1f) << decalage;
+            decalage += 5;
+        } while (octet >= 0x20);
+        return (resultat & 1) != 0 ? ~(resultat >> 1) : resultat >> 1;
+    }
+
+    /**
+     * Tracé simplifié valable jusqu'à un niveau de zoom.
+     */
+    public static final class Niveau {
+
+        private final int zoomMax;
+        private final List<double[]> points;
+
+        public Niveau(int zoomMax, List<double[]> points) {
+            this.zoomMax = zoomMax;
+            this.points = points;
+        }
+
+        public int getZoomMax() {
+            return zoomMax;
+        }
+
+        public List<double[]> getPoints() {
+            return points;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.covoiturage.routage;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.utils.ConfigurationManager;
+import com.google.maps.GeoApiContext;
+
+/**
+ * Registre du fournisseur de distances configuré.
+ *
+ * Utilise le pattern Singleton. Au premier accès, le fournisseur désigné par
+ * "distance.provider" est construit une seule fois (chargement et prétraitement
+ * du graphe routier compris). En cas d'échec, l'application retombe sur les
+ * distances à vol d'oiseau.
+ *
+ * Les fournisseurs coûteux (routage, google) sont enveloppés dans un
+ * {@link FournisseurDistancesEnCache} partagé par toutes les requêtes. Le
+ * fournisseur haversine ne l'est pas: recalculer une distance à vol d'oiseau
+ * coûte moins qu'une recherche dans le cache, et ses matrices passent déjà par
+ * le magasin persistant.
+ */
+public class RegistreFournisseursDistances {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistreFournisseursDistances.class);
+    private static RegistreFournisseursDistances instance;
+
+    private static final String PREFIXE_CLASSPATH = "classpath:";
+    private static final String CLE_API_EXEMPLE = "YOUR_API_KEY";
+
+    private final FournisseurDistances fournisseur;
+
+    /**
+     * Constructeur privé (pattern Singleton).
+     */
+    private RegistreFournisseursDistances() {
+        ConfigurationManager configuration = ConfigurationManager.getInstance();
+        String nom = configuration.getString("distance.provider", "haversine").trim();
+
+        FournisseurDistances choisi;
+        try {
+            choisi = creer(nom, configuration);
+            if (!(choisi instanceof FournisseurDistancesHaversine)
+                    && configuration.getBoolean("distance.pairCache.enabled", true)) {
+                choisi = new FournisseurDistancesEnCache(choisi, CacheDistancesPaires.getInstance());
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Fournisseur de distances '" + nom + "' indisponible, repli sur haversine", e);
+            choisi = new FournisseurDistancesHaversine();
+        }
+
+        this.fournisseur = choisi;
+        logger.info("Fournisseur de distances: {}", fournisseur.getNom());
+    }
+
+    /**
+     * Obtient l'instance unique du registre.
+     *
+     * @return Instance du RegistreFournisseursDistances
+     */
+    public static synchronized RegistreFournisseursDistances getInstance() {
+        if (instance == null) {
+            instance = new RegistreFournisseursDistances();
+        }
+        return instance;
+    }
+
+    private FournisseurDistances creer(String nom, ConfigurationManager configuration) throws IOException {
+        switch (nom) {
+            case "haversine":
+                return new FournisseurDistancesHaversine(chargerTablesVitesses(configuration));
+            case "routage":
+                HierarchieContraction hierarchie = HierarchieContraction.construire(
+                    chargerGraphe(configuration.getString("routing.graph", "classpath:routage/tunis-centre.graph")));
+                return new FournisseurDistancesRoutier(hierarchie,
+                    configuration.getDouble("routing.snapMaxKm", 1.0));
+            case "google":
+                return creerGoogle(configuration);
+            default:
+                throw new IllegalArgumentException("Fournisseur de distances inconnu: " + nom);
+        }
+    }
+
+    /**
+     * Construit le fournisseur Google Maps, éventuellement dirigé vers la doublure locale.
+     */
+    private FournisseurDistances creerGoogle(ConfigurationManager configuration) throws IOException {
+        String cle = configuration.getString("google.maps.api.key", "").trim();
+        String urlBase = configuration.getString("google.maps.baseUrl", "").trim();
+
+        if (configuration.getBoolean("google.maps.localServer", false)) {
+            ServeurDistanceMatrixLocal local = ServeurDistanceMatrixLocal.demarrer(
+                configuration.getInt("google.maps.localServer.port", 0),
+                configuration.getDouble("google.maps.localServer.maxKm", 300.0));
+            urlBase = local.getUrlBase();
+            // La doublure ignore la clé, mais le client en exige une au format Google
+            cle = "AIza-doublure-locale";
+        } else if (cle.isEmpty() || CLE_API_EXEMPLE.equals(cle)) {
+            throw new IllegalArgumentException("Clé API Google Maps non configurée (google.maps.api.key)");
+        }
+
+        GeoApiContext.Builder builder = new GeoApiContext.Builder()
+            .apiKey(cle)
+            .queryRateLimit(configuration.getInt("google.maps.qps", 10))
+            .connectTimeout(configuration.getInt("google.maps.connectTimeoutMs", 2000), TimeUnit.MILLISECONDS)
+            .readTimeout(configuration.getInt("google.maps.readTimeoutMs", 5000), TimeUnit.MILLISECONDS)
+            .maxRetries(configuration.getInt("google.maps.maxRetries", 2));
+        if (!urlBase.isEmpty()) {
+            builder.baseUrlOverride(urlBase);
+        }
+
+        String fichier = configuration.getString("distance.cache.file", "").trim();
+        Path chemin = fichier.isEmpty()
+            ? Paths.get(System.getProperty("java.io.tmpdir"), "covoiturage-distances", "distancematrix.cache")
+            : Paths.get(fichier);
+        CacheTrajets cache = new CacheTrajets(chemin,
+            TimeUnit.HOURS.toMillis(configuration.getLong("distance.cache.ttlHours", 720)),
+            configuration.getInt("distance.cache.maxEntries", 200_000),
+            TimeUnit.MINUTES.toMillis(configuration.getLong("distance.cache.sweepMinutes", 60)));
+
+        return new FournisseurDistancesGoogle(builder.build(), cache);
+    }
+
+    /**
+     * Charge les tables de vitesses horaires, si elles sont configurées.
+     *
+     * @return Les tables, ou null si "distance.speedTables" est vide
+     */
+    private TablesVitesses chargerTablesVitesses(ConfigurationManager configuration) throws IOException {
+        String emplacement = configuration.getString("distance.speedTables", "").trim();
+        if (emplacement.isEmpty()) {
+            return null;
+        }
+        try (InputStream entree = ouvrir(emplacement)) {
+            TablesVitesses tables = TablesVitesses.charger(entree);
+            logger.info("Tables de vitesses horaires chargées: {} ({} zones)",
+                        emplacement, tables.getNombreZones());
+            return tables;
+        }
+    }
+
+    /**
+     * Ouvre une ressource du classpath ("classpath:chemin") ou un fichier.
+     */
+    private InputStream ouvrir(String emplacement) throws IOException {
+        if (emplacement.startsWith(PREFIXE_CLASSPATH)) {
+            InputStream flux = getClass().getClassLoader()
+                .getResourceAsStream(emplacement.substring(PREFIXE_CLASSPATH.length()));
+            if (flux == null) {
+                throw new IOException("Ressource introuvable: " + emplacement);
+            }
+            return flux;
+        }
+        return new FileInputStream(emplacement);
+    }
+
+    /**
+     * Charge un graphe routier depuis le classpath ("classpath:chemin") ou le disque.
+     */
+    private GrapheRoutier chargerGraphe(String emplacement) throws IOException {
+        try (InputStream entree = ouvrir(emplacement)) {
+            GrapheRoutier graphe = GrapheRoutier.charger(entree);
+            logger.info("Graphe routier chargé: {} ({} nœuds, {} arcs)",
+                        emplacement, graphe.getNombreNoeuds(), graphe.getNombreArcs());
+            return graphe;
+        }
+    }
+
+    /**
+     * @return Le fournisseur de distances actif
+     */
+    public FournisseurDistances getFournisseur() {
+        return fournisseur;
+    }
+}
@@ -0,0 +1,214 @@
+package com.covoiturage.routage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.optimization.Solution;
+import com.covoiturage.utils.GeoUtils;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Doublure locale de l'API Distance Matrix de Google Maps.
+ *
+ * Sert /maps/api/distancematrix/json au même format que le service réel, avec des
+ * valeurs déterministes: distance = vol d'oiseau × FACTEUR_DETOUR, durée à la
+ * vitesse moyenne de {@link Solution}. Permet de faire tourner
+ * {@link FournisseurDistancesGoogle} sans clé ni réseau (développement, essais
+ * de charge, tests): le client y est dirigé par baseUrlOverride.
+ *
+ * Les paires dont un point est à plus de distanceMaxKm de l'autre répondent
+ * ZERO_RESULTS, pour exercer le repli.
+ */
+public class ServeurDistanceMatrixLocal {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServeurDistanceMatrixLocal.class);
+
+    /** Rapport moyen entre distance routière et distance à vol d'oiseau en ville. */
+    public static final double FACTEUR_DETOUR = 1.3;
+
+    private static final String CHEMIN = "/maps/api/distancematrix/json";
+
+    private final HttpServer serveur;
+    private final double distanceMaxKm;
+    private final AtomicLong requetes = new AtomicLong();
+    private final AtomicLong elements = new AtomicLong();
+
+    private ServeurDistanceMatrixLocal(HttpServer serveur, double distanceMaxKm) {
+        this.serveur = serveur;
+        this.distanceMaxKm = distanceMaxKm;
+    }
+
+    /**
+     * Démarre le serveur sur l'interface locale.
+     *
+     * @param port Port d'écoute (0 pour un port libre quelconque)
+     * @param distanceMaxKm Distance au-delà de laquelle aucun itinéraire n'est renvoyé
+     * @return Le serveur démarré
+     * @throws IOException Si le port ne peut pas être ouvert
+     */
+    public static ServeurDistanceMatrixLocal demarrer(int port, double distanceMaxKm) throws IOException {
+        HttpServer serveur = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        ServeurDistanceMatrixLocal local = new ServeurDistanceMatrixLocal(serveur, distanceMaxKm);
+        serveur.createContext(CHEMIN, local::traiter);
+        serveur.setExecutor(Executors.newFixedThreadPool(4, r -> {
+            Thread t = new Thread(r, "distancematrix-local");
+            t.setDaemon(true);
+            return t;
+        }));
+        serveur.start();
+        logger.info("Doublure Distance Matrix démarrée sur {}", local.getUrlBase());
+        return local;
+    }
+
+    private void traiter(HttpExchange echange) throws IOException {
+        requetes.incrementAndGet();
+        Map<String, String> parametres = parametres(echange.getRequestURI().getRawQuery());
+
+        JsonObject reponse = new JsonObject();
+        int code = 200;
+        try {
+            double[][] origines = points(parametres.get("origins"));
+            double[][] destinations = points(parametres.get("destinations"));
+            reponse.add("origin_addresses", adresses(origines));
+            reponse.add("destination_addresses", adresses(destinations));
+
+            JsonArray lignes = new JsonArray();
+            for (double[] o : origines) {
+                JsonArray cases = new JsonArray();
+                for (double[] d : destinations) {
+                    cases.add(element(o, d));
+                }
+                JsonObject ligne = new JsonObject();
+                ligne.add("elements", cases);
+                lignes.add(ligne);
+            }
+            elements.addAndGet((long) origines.length * destinations.length);
+            reponse.add("rows", lignes);
+            reponse.addProperty("status", "OK");
+        } catch (IllegalArgumentException e) {
+            code = 400;
+            reponse = new JsonObject();
+            reponse.addProperty("status", "INVALID_REQUEST");
+            reponse.addProperty("error_message", e.getMessage());
+        }
+
+        byte[] corps = reponse.toString().getBytes(StandardCharsets.UTF_8);
+        echange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        echange.sendResponseHeaders(code, corps.length);
+        try (OutputStream sortie = echange.getResponseBody()) {
+            sortie.write(corps);
+        }
+    }
+
+    private JsonObject element(double[] o, double[] d) {
+        JsonObject element = new JsonObject();
+        double km = GeoUtils.haversine(o[0], o[1], d[0], d[1]);
+        if (km > distanceMaxKm) {
+            element.addProperty("status", "ZERO_RESULTS");
+            return element;
+        }
+
+        double routeKm = km * FACTEUR_DETOUR;
+        long metres = Math.round(routeKm * 1000);
+        long secondes = Math.round(Solution.estimerTempsMinutes(routeKm) * 60);
+
+        JsonObject distance = new JsonObject();
+        distance.addProperty("value", metres);
+        distance.addProperty("text", String.format(Locale.ROOT, "%.1f km", routeKm));
+        JsonObject duree = new JsonObject();
+        duree.addProperty("value", secondes);
+        duree.addProperty("text", (secondes + 59) / 60 + " mins");
+
+        element.addProperty("status", "OK");
+        element.add("distance", distance);
+        element.add("duration", duree);
+        return element;
+    }
+
+    private static Map<String, String> parametres(String requete) {
+        Map<String, String> parametres = new HashMap<>();
+        if (requete == null) {
+            return parametres;
+        }
+        for (String paire : requete.split("&")) {
+            int egal = paire.indexOf('=');
+            if (egal > 0) {
+                parametres.put(URLDecoder.decode(paire.substring(0, egal), StandardCharsets.UTF_8),
+                               URLDecoder.decode(paire.substring(egal + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parametres;
+    }
+
+    /**
+     * Décode une liste "lat,lon|lat,lon|..." (seul format de point accepté ici).
+     */
+    private static double[][] points(String valeur) {
+        if (valeur == null || valeur.isEmpty()) {
+            throw new IllegalArgumentException("origins et destinations sont obligatoires");
+        }
+        String[] morceaux = valeur.split("\\|");
+        double[][] points = new double[morceaux.length][];
+        for (int i = 0; i < morceaux.length; i++) {
+            String[] coordonnees = morceaux[i].split(",");
+            try {
+                points[i] = new double[] {
+                    Double.parseDouble(coordonnees[0].trim()), Double.parseDouble(coordonnees[1].trim())
+                };
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Point non géocodé non supporté: " + morceaux[i]);
+            }
+        }
+        return points;
+    }
+
+    private static JsonArray adresses(double[][] points) {
+        JsonArray adresses = new JsonArray();
+        for (double[] p : points) {
+            adresses.add(String.format(Locale.ROOT, "%.5f,%.5f", p[0], p[1]));
+        }
+        return adresses;
+    }
+
+    /**
+     * @return L'URL à passer à GeoApiContext.Builder#baseUrlOverride
+     */
+    public String getUrlBase() {
+        return "http://127.0.0.1:" + serveur.getAddress().getPort();
+    }
+
+    /**
+     * @return Le nombre de requêtes HTTP reçues
+     */
+    public long getNombreRequetes() {
+        return requetes.get();
+    }
+
+    /**
+     * @return Le nombre total d'éléments origine × destination servis
+     */
+    public long getNombreElements() {
+        return elements.get();
+    }
+
+    /**
+     * Arrête le serveur.
+     */
+    public void arreter() {
+        serveur.stop(0);
+    }
+}
@@ -0,0 +1,88 @@
+package com.covoiturage.routage;
+
+/**
+ * Tableau origines × destinations des distances (km) et temps (min) de trajet.
+ *
+ * Rangé ligne par ligne dans deux tableaux plats. Une case peut être marquée
+ * "estimée" quand le fournisseur n'a pas pu la calculer (point hors réseau,
+ * service indisponible) et y a mis une estimation à vol d'oiseau.
+ */
+public final class TableauTrajets {
+
+    private final int lignes;
+    private final int colonnes;
+    private final double[] distancesKm;
+    private final double[] tempsMinutes;
+    private boolean[] casesEstimees;
+    private int estimees;
+
+    /**
+     * Crée un tableau vide.
+     *
+     * @param lignes Nombre d'origines
+     * @param colonnes Nombre de destinations
+     */
+    public TableauTrajets(int lignes, int colonnes) {
+        this.lignes = lignes;
+        this.colonnes = colonnes;
+        this.distancesKm = new double[lignes * colonnes];
+        this.tempsMinutes = new double[lignes * colonnes];
+    }
+
+    /**
+     * Renseigne une case.
+     *
+     * @param i Index de l'origine
+     * @param j Index de la destination
+     * @param distanceKm Distance en kilomètres
+     * @param temps Temps en minutes
+     */
+    public void definir(int i, int j, double distanceKm, double temps) {
+        distancesKm[i * colonnes + j] = distanceKm;
+        tempsMinutes[i * colonnes + j] = temps;
+    }
+
+    /**
+     * Renseigne une case par une estimation faute de valeur calculée.
+     */
+    public void definirEstimation(int i, int j, double distanceKm, double temps) {
+        definir(i, j, distanceKm, temps);
+        if (casesEstimees == null) {
+            casesEstimees = new boolean[lignes * colonnes];
+        }
+        if (!casesEstimees[i * colonnes + j]) {
+            casesEstimees[i * colonnes + j] = true;
+            estimees++;
+        }
+    }
+
+    /**
+     * @return true si la case contient une estimation plutôt qu'une valeur calculée
+     */
+    public boolean estEstimee(int i, int j) {
+        return casesEstimees != null && casesEstimees[i * colonnes + j];
+    }
+
+    public double distanceKm(int i, int j) {
+        return distancesKm[i * colonnes + j];
+    }
+
+    public double tempsMinutes(int i, int j) {
+        return tempsMinutes[i * colonnes + j];
+    }
+
+    public int getLignes() {
+        return lignes;
+    }
+
+    public int getColonnes() {
+        return colonnes;
+    }
+
+    /**
+     * @return Le nombre de cases estimées plutôt que calculées
+     */
+    public int getNombreEstimees() {
+        return estimees;
+    }
+}
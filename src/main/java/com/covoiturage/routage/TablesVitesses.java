@@ -0,0 +1,223 @@
+package com.covoiturage.routage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Vitesses moyennes de circulation par paire de zones et par heure de la journée.
+ *
+ * PRINCIPE:
+ * Le territoire est découpé en une grille de lignes × colonnes zones, plus une
+ * zone "hors grille". Pour chaque paire (zone de départ, zone d'arrivée) et chaque
+ * heure, la table donne le nombre de minutes nécessaires pour parcourir un
+ * kilomètre. Elle est rangée dans un seul float[] indexé par
+ *   (zoneDepart · Z + zoneArrivee) · 24 + heure
+ * ce qui rend chaque estimation de temps O(1): une multiplication par la distance.
+ *
+ * FORMAT DU FICHIER (texte UTF-8, '#' pour les commentaires, vitesses en km/h):
+ *   GRILLE <lat min> <lon min> <lat max> <lon max> <lignes> <colonnes>
+ *   DEFAUT <v0> ... <v23>              profil des zones sans ligne ZONE
+ *   ZONE <z> <v0> ... <v23>            profil d'une zone (z = ligne · colonnes + colonne,
+ *                                      Z-1 = hors grille)
+ *   PAIRE <z départ> <z arrivée> <v0> ... <v23>   valeurs relevées pour une paire
+ * Une paire sans ligne PAIRE prend la moyenne harmonique des profils de ses deux
+ * zones (moitié du trajet dans chacune).
+ *
+ * COMPLEXITÉ: mémoire Z²·24 floats (10 zones: 9,6 Ko), recherche O(1)
+ */
+public final class TablesVitesses {
+
+    /** Nombre de tranches horaires. */
+    public static final int HEURES = 24;
+
+    private final double latMin;
+    private final double lonMin;
+    private final double latMax;
+    private final double lonMax;
+    private final int lignes;
+    private final int colonnes;
+    private final int zones;
+    private final float[] minutesParKm;
+
+    private TablesVitesses(double latMin, double lonMin, double latMax, double lonMax,
+                           int lignes, int colonnes, float[] minutesParKm) {
+        this.latMin = latMin;
+        this.lonMin = lonMin;
+        this.latMax = latMax;
+        this.lonMax = lonMax;
+        this.lignes = lignes;
+        this.colonnes = colonnes;
+        this.zones = lignes * colonnes + 1;
+        this.minutesParKm = minutesParKm;
+    }
+
+    /**
+     * Charge des tables depuis un flux au format décrit en tête de classe.
+     *
+     * @param flux Flux du fichier (non fermé par cette méthode)
+     * @return Les tables
+     * @throws IOException En cas d'erreur de lecture
+     * @throws IllegalArgumentException Si le fichier est mal formé
+     */
+    public static TablesVitesses charger(InputStream flux) throws IOException {
+        double[] grille = null;
+        double[] defaut = null;
+        Map<Integer, double[]> profilsZones = new HashMap<>();
+        Map<Long, double[]> profilsPaires = new HashMap<>();
+
+        BufferedReader lecteur = new BufferedReader(new InputStreamReader(flux, StandardCharsets.UTF_8));
+        String ligne;
+        int numero = 0;
+        while ((ligne = lecteur.readLine()) != null) {
+            numero++;
+            ligne = ligne.trim();
+            if (ligne.isEmpty() || ligne.startsWith("#")) {
+                continue;
+            }
+
+            String[] champs = ligne.split("\\s+");
+            try {
+                switch (champs[0]) {
+                    case "GRILLE":
+                        grille = nombres(champs, 1, 6);
+                        break;
+                    case "DEFAUT":
+                        defaut = vitesses(champs, 1);
+                        break;
+                    case "ZONE":
+                        profilsZones.put(Integer.parseInt(champs[1]), vitesses(champs, 2));
+                        break;
+                    case "PAIRE":
+                        long cle = ((long) Integer.parseInt(champs[1]) << 32) | Integer.parseInt(champs[2]);
+                        profilsPaires.put(cle, vitesses(champs, 3));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Entrée inconnue");
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Tables de vitesses mal formées, ligne " + numero, e);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Tables de vitesses mal formées, ligne " + numero + ": "
+                                                   + e.getMessage(), e);
+            }
+        }
+
+        if (grille == null || defaut == null) {
+            throw new IllegalArgumentException("Tables de vitesses sans GRILLE ou sans DEFAUT");
+        }
+        int lignes = (int) grille[4];
+        int colonnes = (int) grille[5];
+        if (lignes <= 0 || colonnes <= 0 || grille[2] <= grille[0] || grille[3] <= grille[1]) {
+            throw new IllegalArgumentException("Grille de zones invalide");
+        }
+
+        int zones = lignes * colonnes + 1;
+        for (int z : profilsZones.keySet()) {
+            if (z < 0 || z >= zones) {
+                throw new IllegalArgumentException("Zone hors grille: " + z);
+            }
+        }
+        float[] minutesParKm = new float[zones * zones * HEURES];
+        for (int a = 0; a < zones; a++) {
+            double[] profilA = profilsZones.getOrDefault(a, defaut);
+            for (int b = 0; b < zones; b++) {
+                double[] profilB = profilsZones.getOrDefault(b, defaut);
+                double[] paire = profilsPaires.get(((long) a << 32) | b);
+                int base = (a * zones + b) * HEURES;
+                for (int h = 0; h < HEURES; h++) {
+                    // Temps par km = moyenne des deux zones (moyenne harmonique des vitesses)
+                    double minutes = paire != null
+                        ? 60.0 / paire[h]
+                        : 30.0 / profilA[h] + 30.0 / profilB[h];
+                    minutesParKm[base + h] = (float) minutes;
+                }
+            }
+        }
+        return new TablesVitesses(grille[0], grille[1], grille[2], grille[3], lignes, colonnes, minutesParKm);
+    }
+
+    private static double[] nombres(String[] champs, int debut, int nombre) {
+        if (champs.length != debut + nombre) {
+            throw new IllegalArgumentException(nombre + " valeurs attendues");
+        }
+        double[] valeurs = new double[nombre];
+        for (int k = 0; k < nombre; k++) {
+            valeurs[k] = Double.parseDouble(champs[debut + k]);
+        }
+        return valeurs;
+    }
+
+    private static double[] vitesses(String[] champs, int debut) {
+        double[] vitesses = nombres(champs, debut, HEURES);
+        for (double v : vitesses) {
+            if (v <= 0) {
+                throw new IllegalArgumentException("Vitesse invalide: " + v);
+            }
+        }
+        return vitesses;
+    }
+
+    /**
+     * Zone d'un point.
+     *
+     * @param lat Latitude (null si inconnue)
+     * @param lon Longitude (null si inconnue)
+     * @return Index de la zone, {@link #getNombreZones()} - 1 hors grille ou sans coordonnées
+     */
+    public int zone(Double lat, Double lon) {
+        if (lat == null || lon == null || lat < latMin || lat >= latMax || lon < lonMin || lon >= lonMax) {
+            return zones - 1;
+        }
+        int ligne = Math.min((int) ((lat - latMin) / (latMax - latMin) * lignes), lignes - 1);
+        int colonne = Math.min((int) ((lon - lonMin) / (lonMax - lonMin) * colonnes), colonnes - 1);
+        return ligne * colonnes + colonne;
+    }
+
+    /**
+     * Tranche horaire d'une heure de départ.
+     *
+     * @param heure Heure de départ (null si inconnue)
+     * @return La tranche 0..23, ou -1 si l'heure est inconnue
+     */
+    public static int tranche(LocalTime heure) {
+        return heure == null ? -1 : heure.getHour();
+    }
+
+    /**
+     * Minutes nécessaires pour parcourir un kilomètre.
+     *
+     * @param zoneDepart Zone de départ
+     * @param zoneArrivee Zone d'arrivée
+     * @param tranche Tranche horaire 0..23
+     * @return Minutes par kilomètre
+     */
+    public double minutesParKm(int zoneDepart, int zoneArrivee, int tranche) {
+        return minutesParKm[(zoneDepart * zones + zoneArrivee) * HEURES + tranche];
+    }
+
+    /**
+     * Estime un temps de trajet.
+     *
+     * @param distanceKm Distance en kilomètres
+     * @param zoneDepart Zone de départ
+     * @param zoneArrivee Zone d'arrivée
+     * @param tranche Tranche horaire 0..23
+     * @return Temps en minutes
+     */
+    public double tempsMinutes(double distanceKm, int zoneDepart, int zoneArrivee, int tranche) {
+        return distanceKm * minutesParKm(zoneDepart, zoneArrivee, tranche);
+    }
+
+    /**
+     * @return Le nombre de zones, hors grille comprise
+     */
+    public int getNombreZones() {
+        return zones;
+    }
+}
@@ -0,0 +1,254 @@
+package com.covoiturage.services;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.dao.TrajetDAO;
+import com.covoiturage.dao.UtilisateurDAO;
+import com.covoiturage.dao.VehiculeDAO;
+import com.covoiturage.models.Trajet;
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.models.Vehicule;
+import com.covoiturage.optimization.Insertion;
+import com.covoiturage.routage.FournisseurDistances;
+import com.covoiturage.routage.RegistreFournisseursDistances;
+import com.covoiturage.spatial.IndexAppariement;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Service d'appariement passager → véhicule.
+ *
+ * Pour un passager, IndexAppariement présélectionne les véhicules dont le
+ * couloir recouvre son point de départ et qui sont disponibles à son heure;
+ * chaque candidat est ensuite évalué par la meilleure insertion du passager
+ * dans son parcours actuel (O(n) paires de distances, en cache le plus
+ * souvent). Les k détours les plus courts sont proposés.
+ *
+ * Il cote aussi l'ajout d'un passager à un trajet précis: meilleure position
+ * dans l'ordre de prise en charge enregistré, km et minutes supplémentaires.
+ * 
+ * Le service ne modifie aucun trajet et ne relance aucune optimisation:
+ * l'affectation reste une décision de l'appelant (OptimisationService).
+ */
+public class AppariementService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AppariementService.class);
+    
+    private final UtilisateurDAO utilisateurDAO;
+    private final TrajetDAO trajetDAO;
+    private final VehiculeDAO vehiculeDAO;
+    private final IndexAppariement index;
+    private final FournisseurDistances fournisseurDistances;
+    
+    public AppariementService() {
+        this.utilisateurDAO = new UtilisateurDAO();
+        this.trajetDAO = new TrajetDAO();
+        this.vehiculeDAO = new VehiculeDAO();
+        this.index = IndexAppariement.getInstance();
+        this.fournisseurDistances = RegistreFournisseursDistances.getInstance().getFournisseur();
+    }
+    
+    /**
+     * Proposition d'un véhicule pour un passager (sérialisée en JSON).
+     */
+    public static final class Proposition {
+        private final Long vehiculeId;
+        private final String immatriculation;
+        private final Long trajetId;
+        private final int position;
+        private final long detourMillis;
+        private final double detourKm;
+        private final int placesRestantes;
+        private final boolean estimee;
+        
+        Proposition(IndexAppariement.Candidat candidat, Insertion insertion) {
+            this.vehiculeId = candidat.getVehicule().getId();
+            this.immatriculation = candidat.getVehicule().getImmatriculation();
+            this.trajetId = candidat.getTrajetId();
+            this.position = insertion.getPosition();
+            this.detourMillis = insertion.getDetourMillis();
+            this.detourKm = insertion.getDetourKm();
+            this.placesRestantes = candidat.getPlacesRestantes();
+            this.estimee = insertion.isEstimee();
+        }
+        
+        public Long getVehiculeId() {
+            return vehiculeId;
+        }
+        
+        public String getImmatriculation() {
+            return immatriculation;
+        }
+        
+        public Long getTrajetId() {
+            return trajetId;
+        }
+        
+        /** @return Index du passager dans le parcours du véhicule après insertion */
+        public int getPosition() {
+            return position;
+        }
+        
+        public long getDetourMillis() {
+            return detourMillis;
+        }
+        
+        public double getDetourKm() {
+            return detourKm;
+        }
+        
+        public int getPlacesRestantes() {
+            return placesRestantes;
+        }
+        
+        public boolean isEstimee() {
+            return estimee;
+        }
+    }
+    
+    /**
+     * Cotation de l'ajout d'un passager à un trajet existant (sérialisée en JSON).
+     */
+    public static final class Cotation {
+        private final Long trajetId;
+        private final Long utilisateurId;
+        private final int ordrePriseEnCharge;
+        private final Long precedentId;
+        private final Long suivantId;
+        private final double detourKm;
+        private final double detourMinutes;
+        private final int placesRestantes;
+        private final boolean estimee;
+        
+        Cotation(Trajet trajet, Utilisateur passager, Insertion insertion, int placesRestantes) {
+            List<Utilisateur> arrets = trajet.getUtilisateurs();
+            int position = insertion.getPosition();
+            this.trajetId = trajet.getId();
+            this.utilisateurId = passager.getId();
+            this.ordrePriseEnCharge = position + 1;
+            this.precedentId = position > 0 ? arrets.get(position - 1).getId() : null;
+            this.suivantId = position < arrets.size() ? arrets.get(position).getId() : null;
+            this.detourKm = insertion.getDetourKm();
+            this.detourMinutes = insertion.getDetourMinutes();
+            this.placesRestantes = placesRestantes;
+            this.estimee = insertion.isEstimee();
+        }
+        
+        public Long getTrajetId() {
+            return trajetId;
+        }
+        
+        public Long getUtilisateurId() {
+            return utilisateurId;
+        }
+        
+        /** @return Rang de prise en charge du passager après ajout (1 = premier) */
+        public int getOrdrePriseEnCharge() {
+            return ordrePriseEnCharge;
+        }
+        
+        /** @return L'arrêt pris en charge juste avant le passager, ou null s'il serait le premier */
+        public Long getPrecedentId() {
+            return precedentId;
+        }
+        
+        /** @return L'arrêt pris en charge juste après le passager, ou null s'il serait le dernier */
+        public Long getSuivantId() {
+            return suivantId;
+        }
+        
+        public double getDetourKm() {
+            return detourKm;
+        }
+        
+        public double getDetourMinutes() {
+            return detourMinutes;
+        }
+        
+        /** @return Places libres avant l'ajout du passager */
+        public int getPlacesRestantes() {
+            return placesRestantes;
+        }
+        
+        public boolean isEstimee() {
+            return estimee;
+        }
+    }
+    
+    /**
+     * Cote l'ajout d'un passager à un trajet, dans l'ordre de prise en charge
+     * enregistré: O(n) paires de distances, sans optimisation ni écriture.
+     * 
+     * @param trajetId ID du trajet
+     * @param utilisateurId ID du passager candidat
+     * @return La meilleure position et le détour qu'elle coûte
+     * @throws SQLException En cas d'erreur d'accès aux données
+     */
+    public Cotation coter(Long trajetId, Long utilisateurId) throws SQLException {
+        Trajet trajet = trajetDAO.findById(trajetId, false)
+            .orElseThrow(() -> new IllegalArgumentException("Trajet introuvable: " + trajetId));
+        Utilisateur passager = utilisateurDAO.findById(utilisateurId)
+            .orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable: " + utilisateurId));
+        if (!GeoUtils.aCoordonnees(passager)) {
+            throw new IllegalArgumentException("L'utilisateur " + utilisateurId + " n'a pas de coordonnées");
+        }
+        
+        List<Utilisateur> arrets = trajet.getUtilisateurs();
+        for (Utilisateur arret : arrets) {
+            if (arret.getId().equals(utilisateurId)) {
+                throw new IllegalArgumentException("L'utilisateur " + utilisateurId + " fait déjà partie du trajet");
+            }
+            if (!GeoUtils.aCoordonnees(arret)) {
+                throw new IllegalArgumentException("L'arrêt " + arret.getId() + " du trajet n'a pas de coordonnées");
+            }
+        }
+        
+        Vehicule vehicule = vehiculeDAO.findById(trajet.getVehiculeId())
+            .orElseThrow(() -> new IllegalArgumentException("Véhicule introuvable: " + trajet.getVehiculeId()));
+        int placesRestantes = vehicule.placesRestantes(arrets.size());
+        if (placesRestantes == 0) {
+            throw new IllegalArgumentException("Le véhicule du trajet " + trajetId + " est complet");
+        }
+        
+        // Si le conducteur figure en tête du trajet, il y reste
+        boolean departConducteur = !arrets.isEmpty() && arrets.get(0).getId().equals(vehicule.getConducteurId());
+        Insertion insertion = Insertion.calculer(arrets, passager, fournisseurDistances, departConducteur);
+        return new Cotation(trajet, passager, insertion, placesRestantes);
+    }
+    
+    /**
+     * Propose les k véhicules qui prendraient un passager au moindre détour.
+     *
+     * @param utilisateurId ID du passager
+     * @param k Nombre maximal de propositions
+     * @return Les propositions, par détour croissant
+     * @throws SQLException En cas d'erreur d'accès aux données
+     */
+    public List<Proposition> proposer(Long utilisateurId, int k) throws SQLException {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Le nombre de propositions doit être positif");
+        }
+        Utilisateur passager = utilisateurDAO.findById(utilisateurId)
+            .orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable: " + utilisateurId));
+        
+        index.charger();
+        List<IndexAppariement.Candidat> candidats = index.rechercher(passager);
+        
+        List<Proposition> propositions = new ArrayList<>(candidats.size());
+        for (IndexAppariement.Candidat candidat : candidats) {
+            Insertion insertion = Insertion.calculer(candidat.getParcours(), passager, fournisseurDistances,
+                                                     candidat.isDepartConducteur());
+            propositions.add(new Proposition(candidat, insertion));
+        }
+        propositions.sort(Comparator.comparingLong(Proposition::getDetourMillis)
+                                    .thenComparingDouble(Proposition::getDetourKm));
+        
+        logger.debug("Appariement de l'utilisateur {}: {} candidats évalués", utilisateurId, candidats.size());
+        return propositions.size() > k ? new ArrayList<>(propositions.subList(0, k)) : propositions;
+    }
+}
@@ -1,5 +1,6 @@
 package com.covoiturage.services;
 
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -10,6 +11,7 @@ import com.covoiturage.models.Conflit;
 import com.covoiturage.models.Trajet;
 import com.covoiturage.models.Utilisateur;
 import com.covoiturage.models.Vehicule;
+import com.covoiturage.spatial.IndexDisponibilites;
 
 /**
  * Service de détection des conflits dans les trajets de covoiturage.
@@ -18,12 +20,16 @@ import com.covoiturage.models.Vehicule;
  * - Dépassement de capacité des véhicules
  * - Conflits d'horaires entre utilisateurs
  * - Incompatibilités de préférences
- * - Disponibilité des véhicules
+ * - Disponibilité des véhicules (avec, si l'index des disponibilités est
+ *   chargé, des véhicules de remplacement libres sur la plage des départs)
  */
 public class ConflitService {
     
     private static final Logger logger = LoggerFactory.getLogger(ConflitService.class);
     
+    /** Nombre maximal de véhicules de remplacement proposés pour un conflit de disponibilité. */
+    private static final int MAX_REMPLACANTS = 3;
+    
     /**
      * Détecte tous les conflits possibles pour un trajet donné.
      * 
@@ -125,25 +131,42 @@ public class ConflitService {
             vehicule.getHeureFinDisponibilite() != null &&
             !trajet.getUtilisateurs().isEmpty()) {
             
-            // Vérifier si tous les utilisateurs peuvent être pris en charge dans la plage horaire
+            // Tous les utilisateurs sont pris en charge dans la plage horaire si
+            // elle couvre le premier et le dernier départ
+            Utilisateur premier = null;
+            Utilisateur dernier = null;
             for (Utilisateur utilisateur : trajet.getUtilisateurs()) {
-                if (utilisateur.getHeureDepart() != null) {
-                    if (!vehicule.disponibleA(utilisateur.getHeureDepart())) {
-                        Conflit conflit = new Conflit();
-                        conflit.setType(Conflit.TypeConflit.DISPONIBILITE);
-                        conflit.setMessage(String.format(
-                            "Le véhicule %s n'est pas disponible à %s pour l'utilisateur %s",
-                            vehicule.getImmatriculation(), 
-                            utilisateur.getHeureDepart(),
-                            utilisateur.getNom()
-                        ));
-                        conflit.setTrajetId(trajet.getId());
-                        conflit.setVehiculeId(vehicule.getId());
-                        conflit.setUtilisateurId(utilisateur.getId());
-                        
-                        logger.warn("Conflit de disponibilité horaire: {}", conflit.getMessage());
-                        return conflit;
+                LocalTime depart = utilisateur.getHeureDepart();
+                if (depart != null) {
+                    if (premier == null || depart.isBefore(premier.getHeureDepart())) {
+                        premier = utilisateur;
                     }
+                    if (dernier == null || depart.isAfter(dernier.getHeureDepart())) {
+                        dernier = utilisateur;
+                    }
+                }
+            }
+            
+            if (premier != null) {
+                Utilisateur horsPlage = !vehicule.disponibleA(premier.getHeureDepart()) ? premier
+                    : !vehicule.disponibleA(dernier.getHeureDepart()) ? dernier : null;
+                if (horsPlage != null) {
+                    Conflit conflit = new Conflit();
+                    conflit.setType(Conflit.TypeConflit.DISPONIBILITE);
+                    conflit.setMessage(String.format(
+                        "Le véhicule %s n'est pas disponible à %s pour l'utilisateur %s",
+                        vehicule.getImmatriculation(), 
+                        horsPlage.getHeureDepart(),
+                        horsPlage.getNom()
+                    ));
+                    conflit.setTrajetId(trajet.getId());
+                    conflit.setVehiculeId(vehicule.getId());
+                    conflit.setUtilisateurId(horsPlage.getId());
+                    conflit.setDetails(proposerRemplacants(trajet, premier.getHeureDepart(),
+                                                           dernier.getHeureDepart()));
+                    
+                    logger.warn("Conflit de disponibilité horaire: {}", conflit.getMessage());
+                    return conflit;
                 }
             }
         }
@@ -151,6 +174,39 @@ public class ConflitService {
         return null;
     }
     
+    /**
+     * Cherche, dans l'index des disponibilités s'il est chargé, des véhicules
+     * de la même région libres sur toute la plage des départs et assez grands.
+     * 
+     * @param trajet Le trajet en conflit
+     * @param debut Premier départ
+     * @param fin Dernier départ
+     * @return Les immatriculations proposées, ou null si aucune
+     */
+    private String proposerRemplacants(Trajet trajet, LocalTime debut, LocalTime fin) {
+        IndexDisponibilites index = IndexDisponibilites.getInstance();
+        if (!index.estCharge()) {
+            return null;
+        }
+        
+        Vehicule vehicule = trajet.getVehicule();
+        List<String> remplacants = new ArrayList<>();
+        for (Vehicule candidat : index.disponiblesSur(debut, fin)) {
+            if (!candidat.getId().equals(vehicule.getId())
+                    && candidat.getRegion() == vehicule.getRegion()
+                    && candidat.peutAccueillir(trajet.getUtilisateurs().size())) {
+                remplacants.add(candidat.getImmatriculation());
+                if (remplacants.size() == MAX_REMPLACANTS) {
+                    break;
+                }
+            }
+        }
+        if (remplacants.isEmpty()) {
+            return null;
+        }
+        return String.format("Véhicules disponibles de %s à %s: %s", debut, fin, String.join(", ", remplacants));
+    }
+    
     /**
      * Vérifie les conflits d'horaires entre utilisateurs.
      * 
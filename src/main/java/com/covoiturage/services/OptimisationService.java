@@ -1,7 +1,10 @@
 package com.covoiturage.services;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,18 +12,34 @@ import org.slf4j.LoggerFactory;
 import com.covoiturage.dao.TrajetDAO;
 import com.covoiturage.dao.UtilisateurDAO;
 import com.covoiturage.dao.VehiculeDAO;
+import com.covoiturage.models.Conflit;
 import com.covoiturage.models.Trajet;
 import com.covoiturage.models.Utilisateur;
 import com.covoiturage.models.Vehicule;
-import com.covoiturage.optimization.NearestNeighborAlgorithme;
+import com.covoiturage.optimization.AgregationArrets;
+import com.covoiturage.optimization.BorneInferieure;
+import com.covoiturage.optimization.MatriceDistances;
 import com.covoiturage.optimization.OptimisationAlgorithme;
-import com.covoiturage.optimization.SimulatedAnnealingAlgorithme;
+import com.covoiturage.optimization.RegistreAlgorithmes;
 import com.covoiturage.optimization.Solution;
+import com.covoiturage.routage.FournisseurDistances;
+import com.covoiturage.routage.GeometrieCompacte;
+import com.covoiturage.routage.Polyligne;
+import com.covoiturage.routage.RegistreFournisseursDistances;
+import com.covoiturage.spatial.IndexDisponibilites;
+import com.covoiturage.utils.ConfigurationManager;
 
 /**
  * Service principal d'optimisation des trajets de covoiturage.
  * 
  * Coordonne les algorithmes d'optimisation avec les données de la base.
+ * 
+ * Une optimisation ne porte que sur une région: celle du véhicule. Les
+ * passagers d'une autre région sont refusés, et le trajet est rangé dans la
+ * région du véhicule (partition des listes, statistiques et caches).
+ * 
+ * evaluerOrdres note en lecture seule des ordres de passage proposés à la
+ * main, sur une seule matrice de distances, sans rien enregistrer.
  */
 public class OptimisationService {
     
@@ -30,12 +49,19 @@ public class OptimisationService {
     private final UtilisateurDAO utilisateurDAO;
     private final VehiculeDAO vehiculeDAO;
     private final ConflitService conflitService;
+    private final RegistreAlgorithmes registre;
+    private final FournisseurDistances fournisseurDistances;
+    /** Nombre maximal d'ordres notés par evaluerOrdres. */
+    private final int maxOrdresEvalues;
     
     public OptimisationService() {
         this.trajetDAO = new TrajetDAO();
         this.utilisateurDAO = new UtilisateurDAO();
         this.vehiculeDAO = new VehiculeDAO();
         this.conflitService = new ConflitService();
+        this.registre = RegistreAlgorithmes.getInstance();
+        this.fournisseurDistances = RegistreFournisseursDistances.getInstance().getFournisseur();
+        this.maxOrdresEvalues = ConfigurationManager.getInstance().getInt("optimization.evaluation.maxOrdres", 1000);
     }
     
     /**
@@ -73,11 +99,13 @@ public class OptimisationService {
             );
         }
         
+        verifierRegion(vehicule, utilisateurs);
+        
         // 4. Sélectionner l'algorithme d'optimisation
         OptimisationAlgorithme algorithme = selectionnerAlgorithme(typeAlgorithme);
         
-        // 5. Exécuter l'optimisation
-        Solution solution = algorithme.optimiser(utilisateurs, vehicule);
+        // 5. Exécuter l'optimisation sur les arrêts co-localisés regroupés
+        Solution solution = executer(algorithme, AgregationArrets.agreger(utilisateurs), vehicule);
         
         // 6. Créer le trajet à partir de la solution
         Trajet trajet = new Trajet();
@@ -86,9 +114,13 @@ public class OptimisationService {
         trajet.setUtilisateurs(solution.getOrdreUtilisateurs());
         trajet.setDistanceTotale(solution.getDistanceTotale());
         trajet.setTempsTotalMinutes(solution.getTempsTotalMinutes());
+        trajet.setRouteGeometrie(tracerRoute(solution.getOrdreUtilisateurs()));
         trajet.setOptimise(true);
+        trajet.setRegion(vehicule.getRegion());
+        trajet.setEcartOptimalite(solution.getEcartOptimalite());
         
-        // 7. Vérifier les conflits
+        // 7. Vérifier les conflits (l'index des disponibilités propose des remplaçants)
+        IndexDisponibilites.getInstance().charger(vehiculeDAO);
         if (!conflitService.estValide(trajet)) {
             logger.warn("Le trajet optimisé contient des conflits bloquants");
             throw new IllegalStateException("Le trajet contient des conflits bloquants");
@@ -128,13 +160,16 @@ public class OptimisationService {
         
         // Optimiser
         OptimisationAlgorithme algorithme = selectionnerAlgorithme(typeAlgorithme);
-        Solution solution = algorithme.optimiser(utilisateurs, vehicule);
+        Solution solution = executer(algorithme, AgregationArrets.agreger(utilisateurs), vehicule);
         
         // Mettre à jour le trajet
         trajetExistant.setUtilisateurs(solution.getOrdreUtilisateurs());
         trajetExistant.setDistanceTotale(solution.getDistanceTotale());
         trajetExistant.setTempsTotalMinutes(solution.getTempsTotalMinutes());
+        trajetExistant.setRouteGeometrie(tracerRoute(solution.getOrdreUtilisateurs()));
         trajetExistant.setOptimise(true);
+        trajetExistant.setRegion(vehicule.getRegion());
+        trajetExistant.setEcartOptimalite(solution.getEcartOptimalite());
         
         // Sauvegarder
         trajetDAO.update(trajetExistant);
@@ -166,32 +201,42 @@ public class OptimisationService {
                 .orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable")));
         }
         
+        verifierRegion(vehicule, utilisateurs);
+        
         ComparisonResult result = new ComparisonResult();
         
+        // Regroupement, matrice de distances et borne inférieure communs aux deux algorithmes
+        AgregationArrets agregation = AgregationArrets.agreger(utilisateurs);
+        MatriceDistances matrice = construireMatrice(agregation.getArrets());
+        double borne = BorneInferieure.calculer(matrice);
+        result.borneInferieure = borne;
+        
         // Tester Nearest Neighbor
         long startNN = System.currentTimeMillis();
-        NearestNeighborAlgorithme nn = new NearestNeighborAlgorithme();
-        Solution solutionNN = nn.optimiser(utilisateurs, vehicule);
+        Solution solutionNN = executer(selectionnerAlgorithme("nearest_neighbor"), agregation, vehicule, 
+                                       matrice, borne);
         long timeNN = System.currentTimeMillis() - startNN;
         
         result.nearestNeighbor = new AlgorithmResult(
             "Nearest Neighbor",
             solutionNN.getDistanceTotale(),
             solutionNN.getTempsTotalMinutes(),
-            timeNN
+            timeNN,
+            solutionNN.getEcartOptimalite()
         );
         
         // Tester Simulated Annealing
         long startSA = System.currentTimeMillis();
-        SimulatedAnnealingAlgorithme sa = new SimulatedAnnealingAlgorithme();
-        Solution solutionSA = sa.optimiser(utilisateurs, vehicule);
+        Solution solutionSA = executer(selectionnerAlgorithme("simulated_annealing"), agregation, vehicule, 
+                                       matrice, borne);
         long timeSA = System.currentTimeMillis() - startSA;
         
         result.simulatedAnnealing = new AlgorithmResult(
             "Simulated Annealing",
             solutionSA.getDistanceTotale(),
             solutionSA.getTempsTotalMinutes(),
-            timeSA
+            timeSA,
+            solutionSA.getEcartOptimalite()
         );
         
         // Déterminer le meilleur
@@ -210,12 +255,14 @@ public class OptimisationService {
         trajetNN.setUtilisateurs(solutionNN.getOrdreUtilisateurs());
         trajetNN.setDistanceTotale(solutionNN.getDistanceTotale());
         trajetNN.setTempsTotalMinutes(solutionNN.getTempsTotalMinutes());
+        trajetNN.setEcartOptimalite(solutionNN.getEcartOptimalite());
         
         Trajet trajetSA = new Trajet();
         trajetSA.setVehicule(vehicule);
         trajetSA.setUtilisateurs(solutionSA.getOrdreUtilisateurs());
         trajetSA.setDistanceTotale(solutionSA.getDistanceTotale());
         trajetSA.setTempsTotalMinutes(solutionSA.getTempsTotalMinutes());
+        trajetSA.setEcartOptimalite(solutionSA.getEcartOptimalite());
         
         result.nearestNeighborTrajet = trajetNN;
         result.simulatedAnnealingTrajet = trajetSA;
@@ -227,17 +274,233 @@ public class OptimisationService {
     }
     
     /**
-     * Sélectionne l'algorithme d'optimisation approprié.
+     * Note plusieurs ordres de passage d'un même véhicule et d'un même ensemble
+     * de passagers, sans optimiser ni enregistrer de trajet.
+     * 
+     * Véhicule, passagers et matrice de distances (fournisseur configuré, donc
+     * cache des paires) sont chargés une seule fois; chaque ordre coûte ensuite
+     * O(n) pour les totaux plus la détection de conflits. Un ordre qui n'est pas
+     * une permutation des passagers est signalé par son erreur, sans faire
+     * échouer les autres.
+     * 
+     * @param vehiculeId ID du véhicule
+     * @param utilisateurIds IDs des passagers (ou null: ceux du premier ordre)
+     * @param ordres Ordres de passage candidats, en IDs d'utilisateurs
+     * @return Distance, temps, coût et conflits de chaque ordre, et le meilleur valide
+     * @throws SQLException En cas d'erreur d'accès aux données
+     */
+    public EvaluationResult evaluerOrdres(Long vehiculeId, List<Long> utilisateurIds, List<List<Long>> ordres)
+            throws SQLException {
+        
+        if (ordres == null || ordres.isEmpty()) {
+            throw new IllegalArgumentException("Aucun ordre à évaluer");
+        }
+        if (ordres.size() > maxOrdresEvalues) {
+            throw new IllegalArgumentException(String.format(
+                "Trop d'ordres à évaluer (%d, maximum %d)", ordres.size(), maxOrdresEvalues));
+        }
+        List<Long> ids = utilisateurIds != null ? utilisateurIds : ordres.get(0);
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("Aucun passager à évaluer");
+        }
+        
+        long debut = System.currentTimeMillis();
+        
+        // Données communes à tous les ordres
+        Vehicule vehicule = vehiculeDAO.findById(vehiculeId)
+            .orElseThrow(() -> new IllegalArgumentException("Véhicule introuvable: " + vehiculeId));
+        
+        List<Utilisateur> utilisateurs = new ArrayList<>(ids.size());
+        Map<Long, Integer> indexParId = new HashMap<>();
+        for (Long userId : ids) {
+            Utilisateur utilisateur = utilisateurDAO.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("Utilisateur introuvable: " + userId));
+            if (indexParId.putIfAbsent(userId, utilisateurs.size()) != null) {
+                throw new IllegalArgumentException("Utilisateur en double: " + userId);
+            }
+            utilisateurs.add(utilisateur);
+        }
+        
+        verifierRegion(vehicule, utilisateurs);
+        IndexDisponibilites.getInstance().charger(vehiculeDAO);
+        MatriceDistances matrice = construireMatrice(utilisateurs);
+        double borne = BorneInferieure.calculer(matrice);
+        
+        EvaluationResult result = new EvaluationResult();
+        result.vehiculeId = vehiculeId;
+        result.borneInferieure = borne;
+        result.ordres = new ArrayList<>(ordres.size());
+        
+        double meilleurCout = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < ordres.size(); k++) {
+            EvaluationOrdre evaluation = new EvaluationOrdre();
+            evaluation.index = k;
+            evaluation.ordre = ordres.get(k);
+            result.ordres.add(evaluation);
+            
+            int[] ordre;
+            try {
+                ordre = permutation(evaluation.ordre, indexParId);
+            } catch (IllegalArgumentException e) {
+                evaluation.erreur = e.getMessage();
+                continue;
+            }
+            
+            Solution solution = Solution.depuisOrdre(utilisateurs, ordre, matrice);
+            evaluation.distanceTotale = solution.getDistanceTotale();
+            evaluation.tempsTotalMinutes = solution.getTempsTotalMinutes();
+            evaluation.cout = solution.getCout();
+            evaluation.ecartOptimalite = BorneInferieure.ecartPourcent(solution.getDistanceTotale(), borne);
+            
+            Trajet trajet = new Trajet();
+            trajet.setVehiculeId(vehiculeId);
+            trajet.setVehicule(vehicule);
+            trajet.setUtilisateurs(solution.getOrdreUtilisateurs());
+            trajet.setDistanceTotale(solution.getDistanceTotale());
+            trajet.setTempsTotalMinutes(solution.getTempsTotalMinutes());
+            trajet.setRegion(vehicule.getRegion());
+            evaluation.conflits = conflitService.detecterConflits(trajet);
+            evaluation.valide = evaluation.conflits.stream().noneMatch(
+                c -> c.getType() == Conflit.TypeConflit.CAPACITE || c.getType() == Conflit.TypeConflit.DISPONIBILITE);
+            
+            if (evaluation.valide && solution.getCout() < meilleurCout) {
+                meilleurCout = solution.getCout();
+                result.meilleur = k;
+            }
+        }
+        
+        result.tempsCalculMillis = System.currentTimeMillis() - debut;
+        logger.info("{} ordres évalués pour le véhicule {} en {} ms", ordres.size(), vehiculeId,
+                    result.tempsCalculMillis);
+        return result;
+    }
+    
+    /**
+     * Traduit un ordre en IDs d'utilisateurs en permutation des index de l'instance.
+     * 
+     * @throws IllegalArgumentException Si l'ordre n'est pas une permutation des passagers
+     */
+    private static int[] permutation(List<Long> ordreIds, Map<Long, Integer> indexParId) {
+        if (ordreIds == null || ordreIds.size() != indexParId.size()) {
+            throw new IllegalArgumentException(String.format(
+                "L'ordre doit contenir les %d passagers une fois chacun", indexParId.size()));
+        }
+        int[] ordre = new int[ordreIds.size()];
+        boolean[] vus = new boolean[ordreIds.size()];
+        for (int k = 0; k < ordre.length; k++) {
+            Integer index = indexParId.get(ordreIds.get(k));
+            if (index == null) {
+                throw new IllegalArgumentException("Utilisateur hors de l'ensemble évalué: " + ordreIds.get(k));
+            }
+            if (vus[index]) {
+                throw new IllegalArgumentException("Utilisateur en double dans l'ordre: " + ordreIds.get(k));
+            }
+            vus[index] = true;
+            ordre[k] = index;
+        }
+        return ordre;
+    }
+    
+    /**
+     * Exécute un algorithme sur l'instance réduite aux arrêts, puis ré-développe
+     * la solution par utilisateur.
+     * 
+     * @param algorithme L'algorithme à exécuter
+     * @param agregation Les utilisateurs regroupés par arrêt
+     * @param vehicule Le véhicule utilisé
+     * @return La solution sur l'ensemble des utilisateurs
+     */
+    private Solution executer(OptimisationAlgorithme algorithme, AgregationArrets agregation, 
+                              Vehicule vehicule) {
+        MatriceDistances matrice = construireMatrice(agregation.getArrets());
+        return executer(algorithme, agregation, vehicule, matrice, BorneInferieure.calculer(matrice));
+    }
+    
+    /**
+     * Calcule une fois pour toutes le tracé d'un trajet, simplifié par niveau de
+     * zoom et stocké en binaire compact, pour que la carte n'ait aucun itinéraire
+     * à recalculer.
+     * Un échec n'empêche pas l'enregistrement du trajet: la carte se rabat alors
+     * sur son propre routage.
+     * 
+     * @param ordre Les utilisateurs dans l'ordre de passage
+     * @return La géométrie compacte, ou null
+     */
+    private byte[] tracerRoute(List<Utilisateur> ordre) {
+        try {
+            return GeometrieCompacte.encoder(Polyligne.niveaux(fournisseurDistances.geometrie(ordre)));
+        } catch (RuntimeException e) {
+            logger.warn("Tracé du trajet impossible: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Obtient la matrice de distances d'une liste d'arrêts auprès du fournisseur
+     * de distances configuré (vol d'oiseau ou réseau routier).
+     * 
+     * @param arrets Les arrêts de l'instance
+     * @return La matrice des distances
+     */
+    private MatriceDistances construireMatrice(List<Utilisateur> arrets) {
+        return fournisseurDistances.matrice(arrets);
+    }
+    
+    /**
+     * Exécute un algorithme sur une matrice de distances des arrêts déjà construite.
+     * 
+     * @param algorithme L'algorithme à exécuter
+     * @param agregation Les utilisateurs regroupés par arrêt
+     * @param vehicule Le véhicule utilisé
+     * @param matrice Distances entre les arrêts de l'agrégation
+     * @param borne Borne inférieure MST des arrêts (0 si inconnue)
+     * @return La solution développée sur tous les utilisateurs, avec son écart d'optimalité
+     */
+    private Solution executer(OptimisationAlgorithme algorithme, AgregationArrets agregation, 
+                              Vehicule vehicule, MatriceDistances matrice, double borne) {
+        // Chaque utilisateur compte dans la capacité, même regroupé avec d'autres
+        if (!vehicule.peutAccueillir(agregation.getNombreUtilisateurs())) {
+            throw new IllegalArgumentException("Capacité du véhicule dépassée");
+        }
+        
+        Solution solutionReduite = algorithme.optimiser(agregation.getArrets(), vehicule, matrice);
+        Solution solution = agregation.developper(solutionReduite);
+        solution.setEcartOptimalite(BorneInferieure.ecartPourcent(solution.getDistanceTotale(), borne));
+        return solution;
+    }
+    
+    /**
+     * Vérifie que tous les passagers sont dans la région du véhicule: aucun
+     * trajet ne traverse deux régions. Un véhicule ou un utilisateur hors zone
+     * (région inconnue) n'est pas contrôlé.
+     * 
+     * @throws IllegalArgumentException Si un passager est d'une autre région
+     */
+    private void verifierRegion(Vehicule vehicule, List<Utilisateur> utilisateurs) {
+        if (vehicule.getRegion() == null) {
+            return;
+        }
+        for (Utilisateur utilisateur : utilisateurs) {
+            if (utilisateur.getRegion() != null && utilisateur.getRegion() != vehicule.getRegion()) {
+                throw new IllegalArgumentException(String.format(
+                    "L'utilisateur %d (%s) n'est pas dans la région du véhicule (%s)",
+                    utilisateur.getId(), utilisateur.getRegion(), vehicule.getRegion()));
+            }
+        }
+    }
+    
+    /**
+     * Sélectionne l'algorithme d'optimisation approprié dans le registre.
      */
     private OptimisationAlgorithme selectionnerAlgorithme(String type) {
-        if (type == null || type.equalsIgnoreCase("nearest_neighbor")) {
-            return new NearestNeighborAlgorithme();
-        } else if (type.equalsIgnoreCase("simulated_annealing")) {
-            return new SimulatedAnnealingAlgorithme();
-        } else {
-            logger.warn("Type d'algorithme inconnu: {}. Utilisation de Nearest Neighbor.", type);
-            return new NearestNeighborAlgorithme();
+        if (type == null) {
+            return registre.getParDefaut();
         }
+        
+        return registre.trouver(type).orElseGet(() -> {
+            logger.warn("Type d'algorithme inconnu: {}. Utilisation de Nearest Neighbor.", type);
+            return registre.getParDefaut();
+        });
     }
     
     /**
@@ -250,6 +513,33 @@ public class OptimisationService {
         public Trajet simulatedAnnealingTrajet;
         public String meilleur;
         public double amelioration; // En pourcentage
+        public double borneInferieure; // En kilomètres (0 si inconnue)
+    }
+    
+    /**
+     * Classe pour les résultats d'une évaluation d'ordres.
+     */
+    public static class EvaluationResult {
+        public Long vehiculeId;
+        public List<EvaluationOrdre> ordres;
+        public Integer meilleur; // Index du meilleur ordre sans conflit bloquant, null si aucun
+        public long tempsCalculMillis;
+        public double borneInferieure; // En kilomètres (0 si inconnue)
+    }
+    
+    /**
+     * Classe pour la note d'un ordre de passage.
+     */
+    public static class EvaluationOrdre {
+        public int index;
+        public List<Long> ordre;
+        public Double distanceTotale; // En kilomètres, null si l'ordre est en erreur
+        public Double tempsTotalMinutes;
+        public Double cout;
+        public Double ecartOptimalite; // En pourcentage, null si la borne est inconnue
+        public List<Conflit> conflits;
+        public boolean valide; // Aucun conflit bloquant (capacité, disponibilité)
+        public String erreur;
     }
     
     /**
@@ -260,6 +550,7 @@ public class OptimisationService {
         public double distanceTotale;
         public double tempsTotalMinutes;
         public long tempsCalculMillis;
+        public Double ecartOptimalite; // En pourcentage, null si la borne est inconnue
         
         public AlgorithmResult(String nom, double distance, double temps, long executionMs) {
             this.nom = nom;
@@ -267,5 +558,11 @@ public class OptimisationService {
             this.tempsTotalMinutes = temps;
             this.tempsCalculMillis = executionMs;
         }
+        
+        public AlgorithmResult(String nom, double distance, double temps, long executionMs,
+                               Double ecartOptimalite) {
+            this(nom, distance, temps, executionMs);
+            this.ecartOptimalite = ecartOptimalite;
+        }
     }
 }
@@ -9,7 +9,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.covoiturage.dao.TrajetDAO;
+import com.covoiturage.geocodage.FileGeocodage;
+import com.covoiturage.models.Region;
 import com.covoiturage.models.Trajet;
+import com.covoiturage.routage.RegistreFournisseursDistances;
+import com.covoiturage.spatial.IndexAppariement;
+import com.covoiturage.spatial.IndexDisponibilites;
+import com.covoiturage.spatial.IndexGrappes;
+import com.covoiturage.spatial.IndexUtilisateurs;
 
 /**
  * Service de calcul et génération de statistiques sur les trajets.
@@ -20,6 +27,11 @@ import com.covoiturage.models.Trajet;
  * - Taux de remplissage des véhicules
  * - Nombre de conflits détectés
  * - Métriques d'optimisation
+ * - Activité du fournisseur de distances (taux de succès du cache, latence amont)
+ * - Activité de la file de géocodage
+ * 
+ * Les statistiques peuvent être restreintes à une région: seuls les trajets de
+ * cette région sont alors lus.
  */
 public class StatistiqueService {
     
@@ -39,11 +51,36 @@ public class StatistiqueService {
      * @throws SQLException En cas d'erreur d'accès aux données
      */
     public Map<String, Object> calculerStatistiquesGlobales() throws SQLException {
-        logger.info("Calcul des statistiques globales");
+        return calculerStatistiques(null);
+    }
+    
+    /**
+     * Calcule les statistiques d'une région, ou de tout le système.
+     * 
+     * @param region La région, ou null pour toutes (avec alors le détail par région)
+     * @return Map contenant toutes les statistiques
+     * @throws SQLException En cas d'erreur d'accès aux données
+     */
+    public Map<String, Object> calculerStatistiques(Region region) throws SQLException {
+        logger.info("Calcul des statistiques {}", region != null ? "de la région " + region : "globales");
         
         Map<String, Object> stats = new HashMap<>();
+        stats.put("fournisseurDistances",
+                  RegistreFournisseursDistances.getInstance().getFournisseur().getStatistiques());
+        stats.put("geocodage", FileGeocodage.getInstance().getStatistiques());
+        stats.put("indexSpatial", IndexUtilisateurs.getInstance().getStatistiques());
+        stats.put("grappes", IndexGrappes.getInstance().getStatistiques());
+        stats.put("appariement", IndexAppariement.getInstance().getStatistiques());
+        stats.put("disponibilites", IndexDisponibilites.getInstance().getStatistiques());
         
-        List<Trajet> tousTrajets = trajetDAO.findAll();
+        List<Trajet> tousTrajets;
+        if (region != null) {
+            stats.put("region", region);
+            tousTrajets = trajetDAO.findByRegion(region);
+        } else {
+            stats.put("parRegion", trajetDAO.compterParRegion());
+            tousTrajets = trajetDAO.findAll();
+        }
         
         if (tousTrajets.isEmpty()) {
             logger.warn("Aucun trajet trouvé pour les statistiques");
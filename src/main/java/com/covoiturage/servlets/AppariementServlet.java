@@ -0,0 +1,81 @@
+package com.covoiturage.servlets;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.covoiturage.services.AppariementService;
+import com.google.gson.Gson;
+
+/**
+ * Servlet d'appariement passager → véhicule.
+ *
+ * Endpoints:
+ * - GET /api/appariement?utilisateurId=X[&k=N] : Les N véhicules (5 par défaut)
+ *   qui prendraient l'utilisateur au moindre détour, par détour croissant
+ * - GET /api/appariement?utilisateurId=X&trajetId=T : Cotation de l'ajout de
+ *   l'utilisateur au trajet T (position, km et minutes supplémentaires), sans
+ *   rien modifier
+ */
+@WebServlet("/api/appariement")
+public class AppariementServlet extends HttpServlet {
+    
+    private static final int K_DEFAUT = 5;
+    
+    private AppariementService appariementService;
+    private Gson gson;
+    
+    @Override
+    public void init() throws ServletException {
+        appariementService = new AppariementService();
+        gson = new Gson();
+    }
+    
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        
+        String utilisateurParam = request.getParameter("utilisateurId");
+        if (utilisateurParam == null) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"Paramètre utilisateurId requis\"}");
+            return;
+        }
+        
+        try {
+            Long utilisateurId = Long.parseLong(utilisateurParam);
+            String trajetParam = request.getParameter("trajetId");
+            if (trajetParam != null) {
+                AppariementService.Cotation cotation =
+                    appariementService.coter(Long.parseLong(trajetParam), utilisateurId);
+                response.getWriter().write(gson.toJson(cotation));
+                return;
+            }
+            
+            String kParam = request.getParameter("k");
+            int k = kParam != null ? Integer.parseInt(kParam) : K_DEFAUT;
+            
+            List<AppariementService.Proposition> propositions = appariementService.proposer(utilisateurId, k);
+            response.getWriter().write(gson.toJson(propositions));
+            
+        } catch (SQLException e) {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
+        } catch (NumberFormatException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"Paramètre numérique invalide\"}");
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.covoiturage.servlets;
+
+import java.sql.SQLException;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.geocodage.FileGeocodage;
+
+/**
+ * Démarre la file de géocodage avec l'application et l'arrête avec elle.
+ *
+ * Au démarrage, les utilisateurs encore sans coordonnées (créés avant le
+ * géocodage côté serveur, ou dont le géocodage avait échoué) sont remis en file.
+ */
+@WebListener
+public class GeocodageListener implements ServletContextListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeocodageListener.class);
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        try {
+            FileGeocodage.getInstance().planifierManquants();
+        } catch (SQLException | RuntimeException e) {
+            logger.error("Reprise du géocodage des utilisateurs impossible", e);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        FileGeocodage.getInstance().arreter();
+    }
+}
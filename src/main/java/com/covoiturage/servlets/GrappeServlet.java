@@ -0,0 +1,71 @@
+package com.covoiturage.servlets;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.covoiturage.dao.UtilisateurDAO;
+import com.covoiturage.spatial.IndexGrappes;
+import com.covoiturage.utils.GeoUtils;
+import com.google.gson.Gson;
+
+/**
+ * Servlet des grappes d'utilisateurs pour l'affichage de la carte.
+ * 
+ * Endpoints:
+ * - GET /api/utilisateurs/grappes?bbox=ouest,sud,est,nord&zoom=Z : Grappes
+ *   (centroïde, nombre, id si un seul utilisateur) des cellules qui touchent
+ *   l'emprise au zoom Z; ouest > est désigne une emprise à cheval sur l'antiméridien
+ */
+@WebServlet("/api/utilisateurs/grappes")
+public class GrappeServlet extends HttpServlet {
+    
+    private UtilisateurDAO utilisateurDAO;
+    private IndexGrappes indexGrappes;
+    private Gson gson;
+    
+    @Override
+    public void init() throws ServletException {
+        utilisateurDAO = new UtilisateurDAO();
+        indexGrappes = IndexGrappes.getInstance();
+        gson = new Gson();
+    }
+    
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) 
+            throws ServletException, IOException {
+        
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        
+        String bboxParam = request.getParameter("bbox");
+        String zoomParam = request.getParameter("zoom");
+        double[] emprise = bboxParam != null ? GeoUtils.lireEmprise(bboxParam, true) : null;
+        if (emprise == null || zoomParam == null) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"Paramètres bbox (ouest,sud,est,nord) et zoom requis\"}");
+            return;
+        }
+        
+        try {
+            int zoom = Integer.parseInt(zoomParam);
+            indexGrappes.charger(utilisateurDAO);
+            List<IndexGrappes.Grappe> grappes = indexGrappes.rechercher(
+                emprise[1], emprise[0], emprise[3], emprise[2], zoom);
+            response.getWriter().write(gson.toJson(grappes));
+            
+        } catch (SQLException e) {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
+        } catch (NumberFormatException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"Zoom invalide\"}");
+        }
+    }
+}
@@ -3,8 +3,10 @@ package com.covoiturage.servlets;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.time.LocalTime;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -16,6 +18,7 @@ import com.covoiturage.models.Trajet;
 import com.covoiturage.services.OptimisationService;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 
 /**
@@ -24,6 +27,8 @@ import com.google.gson.reflect.TypeToken;
  * Endpoints:
  * - POST /api/optimiser : Optimise un nouveau trajet
  * - POST /api/optimiser/comparer : Compare les algorithmes
+ * - POST /api/optimiser?action=evaluer : Note des ordres de passage candidats
+ *   {vehiculeId, utilisateurIds?, ordres: [[id, ...], ...]} sans rien enregistrer
  */
 @WebServlet("/api/optimiser")
 public class OptimisationServlet extends HttpServlet {
@@ -51,12 +56,17 @@ public class OptimisationServlet extends HttpServlet {
         try {
             if ("comparer".equals(action)) {
                 comparerAlgorithmes(request, response);
+            } else if ("evaluer".equals(action)) {
+                evaluerOrdres(request, response);
             } else {
                 optimiserTrajet(request, response);
             }
         } catch (SQLException e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
         }
     }
     
@@ -90,6 +100,7 @@ public class OptimisationServlet extends HttpServlet {
         );
         
         response.setStatus(HttpServletResponse.SC_OK);
+        trajet.decoderRoute();
         String json = gson.toJson(trajet);
         response.getWriter().write(json);
     }
@@ -120,6 +131,79 @@ public class OptimisationServlet extends HttpServlet {
         response.getWriter().write(json);
     }
     
+    /**
+     * Note des ordres de passage candidats (lecture seule).
+     */
+    private void evaluerOrdres(HttpServletRequest request, HttpServletResponse response) 
+            throws IOException, SQLException {
+        
+        RequeteEvaluation requete;
+        try {
+            requete = gson.fromJson(request.getReader(), RequeteEvaluation.class);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Corps JSON invalide");
+        }
+        if (requete == null) {
+            throw new IllegalArgumentException("Paramètres vehiculeId et ordres requis");
+        }
+        requete.valider();
+        
+        OptimisationService.EvaluationResult result = 
+            optimisationService.evaluerOrdres(requete.vehiculeId, requete.utilisateurIds, requete.ordres);
+        
+        String json = gson.toJson(result);
+        response.getWriter().write(json);
+    }
+    
+    /**
+     * Corps de POST /api/optimiser?action=evaluer.
+     */
+    private static class RequeteEvaluation {
+        private Long vehiculeId;
+        private List<Long> utilisateurIds;
+        private List<List<Long>> ordres;
+        
+        /**
+         * Vérifie la requête: au moins un ordre, et tous les ordres (ainsi
+         * qu'utilisateurIds s'il est fourni) sont des permutations d'un même
+         * ensemble de passagers.
+         * 
+         * @throws IllegalArgumentException Si la requête est incomplète ou incohérente
+         */
+        void valider() {
+            if (vehiculeId == null || ordres == null || ordres.isEmpty()) {
+                throw new IllegalArgumentException("Paramètres vehiculeId et ordres requis");
+            }
+            Set<Long> reference = utilisateurIds != null ? ensemble(utilisateurIds, "utilisateurIds") : null;
+            for (int k = 0; k < ordres.size(); k++) {
+                List<Long> ordre = ordres.get(k);
+                if (ordre == null || ordre.isEmpty()) {
+                    throw new IllegalArgumentException("L'ordre " + k + " est vide");
+                }
+                Set<Long> ids = ensemble(ordre, "l'ordre " + k);
+                if (reference == null) {
+                    reference = ids;
+                } else if (!ids.equals(reference)) {
+                    throw new IllegalArgumentException(
+                        "L'ordre " + k + " n'est pas une permutation des mêmes passagers");
+                }
+            }
+        }
+        
+        private static Set<Long> ensemble(List<Long> ids, String nom) {
+            Set<Long> ensemble = new HashSet<>();
+            for (Long id : ids) {
+                if (id == null) {
+                    throw new IllegalArgumentException("ID manquant dans " + nom);
+                }
+                if (!ensemble.add(id)) {
+                    throw new IllegalArgumentException("ID en double dans " + nom + ": " + id);
+                }
+            }
+            return ensemble;
+        }
+    }
+    
     /**
      * Adaptateur pour LocalTime.
      */
@@ -0,0 +1,36 @@
+package com.covoiturage.servlets;
+
+import java.sql.SQLException;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.dao.UtilisateurDAO;
+
+/**
+ * Renseigne au démarrage la région des utilisateurs, véhicules et trajets qui
+ * n'en ont pas encore (base migrée vers les régions). Les écritures suivantes
+ * la tiennent à jour.
+ */
+@WebListener
+public class RegionListener implements ServletContextListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegionListener.class);
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        try {
+            new UtilisateurDAO().completerRegions();
+        } catch (SQLException | RuntimeException e) {
+            logger.error("Attribution des régions impossible", e);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+    }
+}
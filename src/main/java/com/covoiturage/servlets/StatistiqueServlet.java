@@ -10,6 +10,7 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.covoiturage.models.Region;
 import com.covoiturage.services.StatistiqueService;
 import com.google.gson.Gson;
 
@@ -18,6 +19,7 @@ import com.google.gson.Gson;
  * 
  * Endpoints:
  * - GET /api/stats : Récupère toutes les statistiques
+ * - GET /api/stats?region=R : Statistiques des seuls trajets d'une région
  */
 @WebServlet("/api/stats")
 public class StatistiqueServlet extends HttpServlet {
@@ -39,13 +41,17 @@ public class StatistiqueServlet extends HttpServlet {
         response.setCharacterEncoding("UTF-8");
         
         try {
-            Map<String, Object> stats = statistiqueService.calculerStatistiquesGlobales();
+            Region region = Region.depuisCode(request.getParameter("region"));
+            Map<String, Object> stats = statistiqueService.calculerStatistiques(region);
             String json = gson.toJson(stats);
             response.getWriter().write(json);
             
         } catch (SQLException e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
         }
     }
 }
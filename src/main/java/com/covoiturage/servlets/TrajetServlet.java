@@ -12,12 +12,16 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.covoiturage.dao.TrajetDAO;
+import com.covoiturage.models.Region;
 import com.covoiturage.models.Trajet;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 /**
  * Servlet pour gérer les trajets.
+ * 
+ * GET ?id=X renvoie le trajet avec son tracé; les listes (tous, ?vehiculeId=X,
+ * ?region=R) ne le renvoient qu'avec ?geometrie=true.
  */
 @WebServlet("/api/trajets")
 public class TrajetServlet extends HttpServlet {
@@ -42,6 +46,8 @@ public class TrajetServlet extends HttpServlet {
         
         String idParam = request.getParameter("id");
         String vehiculeParam = request.getParameter("vehiculeId");
+        String regionParam = request.getParameter("region");
+        boolean avecGeometrie = Boolean.parseBoolean(request.getParameter("geometrie"));
         
         try {
             if (idParam != null) {
@@ -49,15 +55,23 @@ public class TrajetServlet extends HttpServlet {
                 Trajet trajet = trajetDAO.findById(id)
                     .orElseThrow(() -> new IllegalArgumentException("Trajet introuvable"));
                 
+                trajet.decoderRoute();
                 response.getWriter().write(gson.toJson(trajet));
                 
             } else if (vehiculeParam != null) {
                 Long vehiculeId = Long.parseLong(vehiculeParam);
-                List<Trajet> trajets = trajetDAO.findByVehicule(vehiculeId);
+                List<Trajet> trajets = trajetDAO.findByVehicule(vehiculeId, avecGeometrie);
+                decoderRoutes(trajets);
+                response.getWriter().write(gson.toJson(trajets));
+                
+            } else if (regionParam != null) {
+                List<Trajet> trajets = trajetDAO.findByRegion(Region.depuisCode(regionParam), avecGeometrie);
+                decoderRoutes(trajets);
                 response.getWriter().write(gson.toJson(trajets));
                 
             } else {
-                List<Trajet> trajets = trajetDAO.findAll();
+                List<Trajet> trajets = trajetDAO.findAll(avecGeometrie);
+                decoderRoutes(trajets);
                 response.getWriter().write(gson.toJson(trajets));
             }
             
@@ -67,6 +81,18 @@ public class TrajetServlet extends HttpServlet {
         } catch (NumberFormatException e) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             response.getWriter().write("{\"error\": \"ID invalide\"}");
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
+        }
+    }
+    
+    /**
+     * Décode le tracé des trajets qui l'ont chargé (Gson lit les champs).
+     */
+    private void decoderRoutes(List<Trajet> trajets) {
+        for (Trajet trajet : trajets) {
+            trajet.decoderRoute();
         }
     }
     
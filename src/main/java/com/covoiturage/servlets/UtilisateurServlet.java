@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.time.LocalTime;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -12,7 +14,14 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.covoiturage.dao.UtilisateurDAO;
+import com.covoiturage.dao.VehiculeDAO;
+import com.covoiturage.geocodage.FileGeocodage;
+import com.covoiturage.models.Region;
 import com.covoiturage.models.Utilisateur;
+import com.covoiturage.models.Vehicule;
+import com.covoiturage.spatial.IndexUtilisateurs;
+import com.covoiturage.utils.ConfigurationManager;
+import com.covoiturage.utils.GeoUtils;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -21,20 +30,51 @@ import com.google.gson.GsonBuilder;
  * 
  * Endpoints:
  * - GET /api/utilisateurs : Liste tous les utilisateurs
+ * - GET /api/utilisateurs?page=N[&taille=M] : Page N (à partir de 0) de M utilisateurs
+ *   triés par nom (50 par défaut, 200 au plus); le total est dans l'en-tête X-Total-Count
+ * - GET /api/utilisateurs?nom=P[&limite=M] : Utilisateurs dont le nom commence par P
+ *   (20 par défaut, 200 au plus)
  * - GET /api/utilisateurs?id=X : Récupère un utilisateur par ID
+ * - GET /api/utilisateurs?bbox=ouest,sud,est,nord : Utilisateurs dont le départ est
+ *   dans l'emprise (ordre de L.LatLngBounds.toBBoxString), servis par l'index spatial
+ * - GET /api/utilisateurs?vehiculeId=X[&k=N|&rayonKm=R] : Passagers candidats d'un
+ *   véhicule, les plus proches du départ de son conducteur (k voisins, 20 par défaut,
+ *   ou tous ceux du rayon), dans la région du véhicule, sélectionnés en base par
+ *   l'index spatial
+ * - GET /api/utilisateurs?region=R : Utilisateurs d'une région
  * - POST /api/utilisateurs : Crée un utilisateur
  * - PUT /api/utilisateurs : Met à jour un utilisateur
  * - DELETE /api/utilisateurs?id=X : Supprime un utilisateur
+ * 
+ * Un utilisateur enregistré sans coordonnées est géocodé côté serveur: tout de
+ * suite si son adresse est en cache, sinon en arrière-plan par la FileGeocodage.
  */
 @WebServlet("/api/utilisateurs")
 public class UtilisateurServlet extends HttpServlet {
     
+    /** Nombre de passagers candidats proposés par défaut pour un véhicule. */
+    private static final int CANDIDATS_PAR_DEFAUT = 20;
+    
+    /** Taille d'une page de la liste des utilisateurs par défaut. */
+    private static final int TAILLE_PAGE_DEFAUT = 50;
+    
+    /** Nombre maximal d'utilisateurs renvoyés par une page ou une recherche par nom. */
+    private static final int LIMITE_MAX = 200;
+    
     private UtilisateurDAO utilisateurDAO;
+    private VehiculeDAO vehiculeDAO;
+    private FileGeocodage fileGeocodage;
+    private IndexUtilisateurs indexUtilisateurs;
+    private int maxResultatsEmprise;
     private Gson gson;
     
     @Override
     public void init() throws ServletException {
         utilisateurDAO = new UtilisateurDAO();
+        vehiculeDAO = new VehiculeDAO();
+        fileGeocodage = FileGeocodage.getInstance();
+        indexUtilisateurs = IndexUtilisateurs.getInstance();
+        maxResultatsEmprise = ConfigurationManager.getInstance().getInt("spatial.bbox.maxResults", 2000);
         gson = new GsonBuilder()
             .registerTypeAdapter(LocalTime.class, new LocalTimeAdapter())
             .create();
@@ -49,9 +89,61 @@ public class UtilisateurServlet extends HttpServlet {
         
         String idParam = request.getParameter("id");
         String groupeParam = request.getParameter("groupe");
+        String bboxParam = request.getParameter("bbox");
+        String vehiculeParam = request.getParameter("vehiculeId");
+        String regionParam = request.getParameter("region");
+        String pageParam = request.getParameter("page");
+        String nomParam = request.getParameter("nom");
         
         try {
-            if (idParam != null) {
+            if (bboxParam != null) {
+                // Utilisateurs visibles dans l'emprise de la carte
+                double[] emprise = GeoUtils.lireEmprise(bboxParam);
+                if (emprise == null) {
+                    response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    response.getWriter().write("{\"error\": \"bbox invalide (ouest,sud,est,nord attendu)\"}");
+                    return;
+                }
+                
+                indexUtilisateurs.charger(utilisateurDAO);
+                List<Utilisateur> utilisateurs = indexUtilisateurs.rechercher(
+                    emprise[1], emprise[0], emprise[3], emprise[2], maxResultatsEmprise);
+                if (utilisateurs.size() >= maxResultatsEmprise) {
+                    response.setHeader("X-Resultats-Tronques", "true");
+                }
+                response.getWriter().write(gson.toJson(utilisateurs));
+                
+            } else if (vehiculeParam != null) {
+                // Passagers candidats autour du départ du conducteur
+                String rayonParam = request.getParameter("rayonKm");
+                String kParam = request.getParameter("k");
+                Vehicule vehicule = vehiculeDAO.findById(Long.parseLong(vehiculeParam)).orElse(null);
+                Utilisateur conducteur = vehicule == null || vehicule.getConducteurId() == null
+                    ? null : utilisateurDAO.findById(vehicule.getConducteurId()).orElse(null);
+                if (conducteur == null || !GeoUtils.aCoordonnees(conducteur)) {
+                    response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                    response.getWriter().write("{\"error\": \"Véhicule introuvable ou conducteur non géocodé\"}");
+                    return;
+                }
+                
+                List<Utilisateur> candidats;
+                if (rayonParam != null) {
+                    candidats = utilisateurDAO.findWithinRadius(conducteur.getLatitude(),
+                        conducteur.getLongitude(), Double.parseDouble(rayonParam), vehicule.getRegion());
+                } else {
+                    // Un de plus: le conducteur est son propre plus proche voisin
+                    int k = kParam != null ? Integer.parseInt(kParam) : CANDIDATS_PAR_DEFAUT;
+                    candidats = utilisateurDAO.findNearest(conducteur.getLatitude(),
+                        conducteur.getLongitude(), k + 1, vehicule.getRegion());
+                    if (candidats.stream().noneMatch(u -> u.getId().equals(conducteur.getId()))
+                            && candidats.size() > k) {
+                        candidats = candidats.subList(0, k);
+                    }
+                }
+                candidats.removeIf(u -> u.getId().equals(conducteur.getId()));
+                response.getWriter().write(gson.toJson(candidats));
+                
+            } else if (idParam != null) {
                 // Récupérer un utilisateur par ID
                 Long id = Long.parseLong(idParam);
                 Utilisateur utilisateur = utilisateurDAO.findById(id)
@@ -60,6 +152,28 @@ public class UtilisateurServlet extends HttpServlet {
                 String json = gson.toJson(utilisateur);
                 response.getWriter().write(json);
                 
+            } else if (regionParam != null) {
+                // Utilisateurs d'une région
+                List<Utilisateur> utilisateurs = utilisateurDAO.findByRegion(Region.depuisCode(regionParam));
+                response.getWriter().write(gson.toJson(utilisateurs));
+                
+            } else if (pageParam != null) {
+                // Une page de la liste, pour l'affichage tabulaire
+                int page = Integer.parseInt(pageParam);
+                int taille = lireLimite(request.getParameter("taille"), TAILLE_PAGE_DEFAUT);
+                if (page < 0 || page > Integer.MAX_VALUE / taille) {
+                    throw new IllegalArgumentException("page invalide");
+                }
+                List<Utilisateur> utilisateurs = utilisateurDAO.findPage(page * taille, taille);
+                response.setHeader("X-Total-Count", String.valueOf(utilisateurDAO.count()));
+                response.getWriter().write(gson.toJson(utilisateurs));
+                
+            } else if (nomParam != null) {
+                // Recherche par début de nom (choix d'un conducteur)
+                int limite = lireLimite(request.getParameter("limite"), CANDIDATS_PAR_DEFAUT);
+                List<Utilisateur> utilisateurs = utilisateurDAO.findByNomPrefixe(nomParam.trim(), limite);
+                response.getWriter().write(gson.toJson(utilisateurs));
+                
             } else if (groupeParam != null) {
                 // Récupérer les utilisateurs d'un groupe
                 List<Utilisateur> utilisateurs = utilisateurDAO.findByGroupe(groupeParam);
@@ -78,7 +192,10 @@ public class UtilisateurServlet extends HttpServlet {
             response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
         } catch (NumberFormatException e) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            response.getWriter().write("{\"error\": \"ID invalide\"}");
+            response.getWriter().write("{\"error\": \"Paramètre numérique invalide\"}");
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
         }
     }
     
@@ -93,8 +210,13 @@ public class UtilisateurServlet extends HttpServlet {
             // Lire le JSON du corps de la requête
             Utilisateur utilisateur = gson.fromJson(request.getReader(), Utilisateur.class);
             
+            if (!GeoUtils.aCoordonnees(utilisateur)) {
+                fileGeocodage.completerDepuisCache(utilisateur);
+            }
+            
             // Créer l'utilisateur
             Utilisateur created = utilisateurDAO.create(utilisateur);
+            fileGeocodage.planifier(created);
             
             response.setStatus(HttpServletResponse.SC_CREATED);
             String json = gson.toJson(created);
@@ -122,9 +244,23 @@ public class UtilisateurServlet extends HttpServlet {
                 return;
             }
             
+            // Adresse modifiée sans nouvelles coordonnées: les anciennes ne valent plus
+            Optional<Utilisateur> avant = utilisateurDAO.findById(utilisateur.getId());
+            if (avant.isPresent()
+                    && !Objects.equals(avant.get().getAdresseDepart(), utilisateur.getAdresseDepart())
+                    && Objects.equals(avant.get().getLatitude(), utilisateur.getLatitude())
+                    && Objects.equals(avant.get().getLongitude(), utilisateur.getLongitude())) {
+                utilisateur.setLatitude(null);
+                utilisateur.setLongitude(null);
+            }
+            if (!GeoUtils.aCoordonnees(utilisateur)) {
+                fileGeocodage.completerDepuisCache(utilisateur);
+            }
+            
             boolean updated = utilisateurDAO.update(utilisateur);
             
             if (updated) {
+                fileGeocodage.planifier(utilisateur);
                 String json = gson.toJson(utilisateur);
                 response.getWriter().write(json);
             } else {
@@ -173,6 +309,25 @@ public class UtilisateurServlet extends HttpServlet {
         }
     }
     
+    /**
+     * Lit un nombre de résultats demandé, borné à LIMITE_MAX.
+     * 
+     * @param valeur Paramètre de la requête (null: valeur par défaut)
+     * @param defaut Valeur par défaut
+     * @return Le nombre de résultats
+     * @throws IllegalArgumentException Si la valeur n'est pas strictement positive
+     */
+    private static int lireLimite(String valeur, int defaut) {
+        if (valeur == null) {
+            return defaut;
+        }
+        int limite = Integer.parseInt(valeur);
+        if (limite <= 0) {
+            throw new IllegalArgumentException("Le nombre de résultats doit être strictement positif");
+        }
+        return Math.min(limite, LIMITE_MAX);
+    }
+    
     /**
      * Adaptateur Gson pour LocalTime.
      */
@@ -3,6 +3,8 @@ package com.covoiturage.servlets;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.servlet.ServletException;
@@ -12,12 +14,19 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.covoiturage.dao.VehiculeDAO;
+import com.covoiturage.models.Region;
 import com.covoiturage.models.Vehicule;
+import com.covoiturage.spatial.IndexDisponibilites;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 /**
  * Servlet pour gérer les opérations CRUD sur les véhicules.
+ * 
+ * GET ?region=R[&disponible=true] ne lit que les véhicules d'une région.
+ * GET ?debut=HH:mm[&fin=HH:mm][&region=R] renvoie les véhicules disponibles
+ * sur toute la plage (à l'instant debut si fin est absent), servis par
+ * IndexDisponibilites sans parcourir la table.
  */
 @WebServlet("/api/vehicules")
 public class VehiculeServlet extends HttpServlet {
@@ -44,6 +53,8 @@ public class VehiculeServlet extends HttpServlet {
         
         String idParam = request.getParameter("id");
         String disponibleParam = request.getParameter("disponible");
+        String regionParam = request.getParameter("region");
+        String debutParam = request.getParameter("debut");
         
         try {
             if (idParam != null) {
@@ -53,6 +64,27 @@ public class VehiculeServlet extends HttpServlet {
                 
                 response.getWriter().write(gson.toJson(vehicule));
                 
+            } else if (debutParam != null) {
+                LocalTime debut = LocalTime.parse(debutParam);
+                String finParam = request.getParameter("fin");
+                LocalTime fin = finParam != null ? LocalTime.parse(finParam) : debut;
+                Region region = Region.depuisCode(regionParam);
+                
+                IndexDisponibilites index = IndexDisponibilites.getInstance();
+                index.charger(vehiculeDAO);
+                List<Vehicule> vehicules = new ArrayList<>();
+                for (Vehicule vehicule : index.disponiblesSur(debut, fin)) {
+                    if (region == null || region == vehicule.getRegion()) {
+                        vehicules.add(vehicule);
+                    }
+                }
+                response.getWriter().write(gson.toJson(vehicules));
+                
+            } else if (regionParam != null) {
+                List<Vehicule> vehicules = vehiculeDAO.findByRegion(Region.depuisCode(regionParam),
+                                                                    "true".equals(disponibleParam));
+                response.getWriter().write(gson.toJson(vehicules));
+                
             } else if ("true".equals(disponibleParam)) {
                 List<Vehicule> vehicules = vehiculeDAO.findDisponibles();
                 response.getWriter().write(gson.toJson(vehicules));
@@ -68,6 +100,12 @@ public class VehiculeServlet extends HttpServlet {
         } catch (NumberFormatException e) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             response.getWriter().write("{\"error\": \"ID invalide\"}");
+        } catch (DateTimeParseException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"Heure invalide (HH:mm attendu)\"}");
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
         }
     }
     
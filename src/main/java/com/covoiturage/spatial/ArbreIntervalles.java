@@ -0,0 +1,148 @@
+package com.covoiturage.spatial;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Arbre statique d'intervalles [debut, fin] entiers, qui répond à « quels
+ * intervalles couvrent [t1, t2] ? », c'est-à-dire debut ≤ t1 et fin ≥ t2.
+ *
+ * PRINCIPE (arbre de recherche à priorité, McCreight):
+ * - Chaque nœud garde l'intervalle de plus grande fin de son sous-ensemble
+ *   (tas sur fin), puis partage les autres en deux moitiés selon debut
+ *   (arbre de recherche sur debut, clé de partage = plus grand debut à gauche)
+ * - Recherche: un nœud dont la fin est < t2 élimine tout son sous-arbre; le
+ *   sous-arbre droit n'est visité que si sa clé de partage est ≤ t1
+ * Seuls les nœuds du chemin de t1 et les enfants des nœuds retenus sont
+ * visités sans être retenus: O(log n + k) pour k résultats.
+ *
+ * STRUCTURE: tableaux plats (intervalle, clé de partage, enfants) indexés par
+ * numéro de nœud. L'arbre est immuable: les mises à jour passent par une
+ * reconstruction (voir {@link IndexDisponibilites}).
+ *
+ * COMPLEXITÉ: construction O(n log n), mémoire O(n).
+ * CONCURRENCE: sûr en lecture après construction.
+ */
+public final class ArbreIntervalles {
+
+    private final int[] debuts;
+    private final int[] fins;
+
+    // Nœuds: intervalle porté, plus grand debut du sous-arbre gauche, enfants (-1 si absent)
+    private final int[] intervalles;
+    private final int[] clesPartage;
+    private final int[] gauches;
+    private final int[] droites;
+    private final int racine;
+
+    private int nombreNoeuds;
+
+    private ArbreIntervalles(int[] debuts, int[] fins) {
+        int n = debuts.length;
+        this.debuts = debuts;
+        this.fins = fins;
+        this.intervalles = new int[n];
+        this.clesPartage = new int[n];
+        this.gauches = new int[n];
+        this.droites = new int[n];
+
+        Integer[] tri = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            tri[i] = i;
+        }
+        Arrays.sort(tri, (a, b) -> debuts[a] != debuts[b] ? Integer.compare(debuts[a], debuts[b])
+                                                          : Integer.compare(a, b));
+        int[] ordre = new int[n];
+        for (int i = 0; i < n; i++) {
+            ordre[i] = tri[i];
+        }
+        this.racine = construire(ordre);
+    }
+
+    /**
+     * Construit l'arbre de n intervalles.
+     *
+     * @param debuts Début de chaque intervalle
+     * @param fins Fin de chaque intervalle (même longueur, fin ≥ debut)
+     * @return L'arbre; les recherches renvoient les positions dans ces tableaux
+     */
+    public static ArbreIntervalles construire(int[] debuts, int[] fins) {
+        if (debuts.length != fins.length) {
+            throw new IllegalArgumentException("Débuts et fins de tailles différentes");
+        }
+        for (int i = 0; i < debuts.length; i++) {
+            if (fins[i] < debuts[i]) {
+                throw new IllegalArgumentException("Intervalle " + i + " vide: [" + debuts[i] + ", " + fins[i] + "]");
+            }
+        }
+        return new ArbreIntervalles(debuts.clone(), fins.clone());
+    }
+
+    /**
+     * Construit le sous-arbre des intervalles donnés, triés par debut.
+     *
+     * @return Le numéro du nœud racine, -1 si la liste est vide
+     */
+    private int construire(int[] ordre) {
+        if (ordre.length == 0) {
+            return -1;
+        }
+        int plusGrandeFin = 0;
+        for (int i = 1; i < ordre.length; i++) {
+            if (fins[ordre[i]] > fins[ordre[plusGrandeFin]]) {
+                plusGrandeFin = i;
+            }
+        }
+
+        int noeud = nombreNoeuds++;
+        intervalles[noeud] = ordre[plusGrandeFin];
+
+        // Les autres, toujours triés par debut, partagés en deux moitiés
+        int[] reste = new int[ordre.length - 1];
+        System.arraycopy(ordre, 0, reste, 0, plusGrandeFin);
+        System.arraycopy(ordre, plusGrandeFin + 1, reste, plusGrandeFin, reste.length - plusGrandeFin);
+        int milieu = (reste.length + 1) / 2;
+        clesPartage[noeud] = milieu > 0 ? debuts[reste[milieu - 1]] : Integer.MIN_VALUE;
+        gauches[noeud] = construire(Arrays.copyOfRange(reste, 0, milieu));
+        droites[noeud] = construire(Arrays.copyOfRange(reste, milieu, reste.length));
+        return noeud;
+    }
+
+    /**
+     * Visite les intervalles qui couvrent [t1, t2] (debut ≤ t1 et fin ≥ t2),
+     * dans un ordre quelconque.
+     *
+     * @param t1 Début de la plage à couvrir
+     * @param t2 Fin de la plage à couvrir
+     * @param visiteur Reçoit la position de chaque intervalle trouvé
+     */
+    public void couvrant(int t1, int t2, IntConsumer visiteur) {
+        if (racine >= 0) {
+            couvrant(racine, t1, t2, visiteur);
+        }
+    }
+
+    private void couvrant(int noeud, int t1, int t2, IntConsumer visiteur) {
+        int intervalle = intervalles[noeud];
+        if (fins[intervalle] < t2) {
+            return; // Tas: aucune fin du sous-arbre n'atteint t2
+        }
+        if (debuts[intervalle] <= t1) {
+            visiteur.accept(intervalle);
+        }
+        if (gauches[noeud] >= 0) {
+            couvrant(gauches[noeud], t1, t2, visiteur);
+        }
+        // À droite, les debuts sont ≥ la clé de partage
+        if (droites[noeud] >= 0 && clesPartage[noeud] <= t1) {
+            couvrant(droites[noeud], t1, t2, visiteur);
+        }
+    }
+
+    /**
+     * @return Nombre d'intervalles indexés
+     */
+    public int taille() {
+        return debuts.length;
+    }
+}
@@ -0,0 +1,245 @@
+package com.covoiturage.spatial;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * R-tree statique de points, construit en une passe par Sort-Tile-Recursive (STR).
+ *
+ * PRINCIPE (STR):
+ * 1. Les n points sont triés par longitude puis découpés en S = ⌈√(n/M)⌉ tranches
+ *    verticales; chaque tranche est triée par latitude et coupée en feuilles de M points
+ * 2. On recommence sur les centres des feuilles pour former le niveau au-dessus,
+ *    et ainsi de suite jusqu'à une racine unique
+ * Les nœuds sont pleins et se recouvrent peu: une recherche par rectangle visite
+ * O(√(n/M) + k/M) nœuds pour k résultats.
+ *
+ * STRUCTURE: tableaux plats (boîtes, plages d'enfants), points recopiés dans
+ * l'ordre des feuilles pour que les feuilles soient contiguës en mémoire.
+ * L'arbre est immuable: les mises à jour passent par une reconstruction
+ * (voir {@link IndexUtilisateurs}).
+ *
+ * COMPLEXITÉ: construction O(n log n), mémoire O(n).
+ * CONCURRENCE: sûr en lecture après construction.
+ */
+public final class ArbreR {
+
+    /** Nombre maximal d'enfants par nœud. */
+    static final int CAPACITE_NOEUD = 16;
+
+    // Points, dans l'ordre des feuilles
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int[] index;
+
+    // Nœuds: boîte englobante et plage [debut, fin) d'enfants
+    private final double[] sud;
+    private final double[] ouest;
+    private final double[] nord;
+    private final double[] est;
+    private final int[] debuts;
+    private final int[] fins;
+    private final boolean[] feuilles;
+    /** Enfants des nœuds internes (numéros de nœuds), plages référencées par debuts/fins. */
+    private final int[] enfants;
+    private final int racine;
+
+    private ArbreR(double[] latitudes, double[] longitudes, int[] index, double[] sud, double[] ouest,
+                   double[] nord, double[] est, int[] debuts, int[] fins, boolean[] feuilles,
+                   int[] enfants, int racine) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.index = index;
+        this.sud = sud;
+        this.ouest = ouest;
+        this.nord = nord;
+        this.est = est;
+        this.debuts = debuts;
+        this.fins = fins;
+        this.feuilles = feuilles;
+        this.enfants = enfants;
+        this.racine = racine;
+    }
+
+    /**
+     * Construit l'arbre de n points.
+     *
+     * @param latitudes Latitude de chaque point
+     * @param longitudes Longitude de chaque point (même longueur)
+     * @return L'arbre; les recherches renvoient les positions dans ces tableaux
+     */
+    public static ArbreR construire(double[] latitudes, double[] longitudes) {
+        int n = latitudes.length;
+        if (longitudes.length != n) {
+            throw new IllegalArgumentException("Latitudes et longitudes de tailles différentes");
+        }
+
+        int[] ordre = new int[n];
+        for (int i = 0; i < n; i++) {
+            ordre[i] = i;
+        }
+        trierSTR(ordre, latitudes, longitudes);
+
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int k = 0; k < n; k++) {
+            lats[k] = latitudes[ordre[k]];
+            lons[k] = longitudes[ordre[k]];
+        }
+
+        // Au plus n/M feuilles + n/M² + ... < 2n/M + 2 nœuds
+        int maxNoeuds = 2 * (n / CAPACITE_NOEUD) + 2 + (int) Math.ceil(Math.log(Math.max(n, 2)));
+        double[] sud = new double[maxNoeuds];
+        double[] ouest = new double[maxNoeuds];
+        double[] nord = new double[maxNoeuds];
+        double[] est = new double[maxNoeuds];
+        int[] debuts = new int[maxNoeuds];
+        int[] fins = new int[maxNoeuds];
+        boolean[] feuilles = new boolean[maxNoeuds];
+        int[] enfants = new int[maxNoeuds];
+        int nombreNoeuds = 0;
+
+        // Feuilles: tranches consécutives de M points
+        int[] niveau = new int[Math.max(1, (n + CAPACITE_NOEUD - 1) / CAPACITE_NOEUD)];
+        int tailleNiveau = 0;
+        for (int debut = 0; debut < n || tailleNiveau == 0; debut += CAPACITE_NOEUD) {
+            int fin = Math.min(n, debut + CAPACITE_NOEUD);
+            int noeud = nombreNoeuds++;
+            feuilles[noeud] = true;
+            debuts[noeud] = debut;
+            fins[noeud] = fin;
+            sud[noeud] = Double.POSITIVE_INFINITY;
+            ouest[noeud] = Double.POSITIVE_INFINITY;
+            nord[noeud] = Double.NEGATIVE_INFINITY;
+            est[noeud] = Double.NEGATIVE_INFINITY;
+            for (int k = debut; k < fin; k++) {
+                sud[noeud] = Math.min(sud[noeud], lats[k]);
+                nord[noeud] = Math.max(nord[noeud], lats[k]);
+                ouest[noeud] = Math.min(ouest[noeud], lons[k]);
+                est[noeud] = Math.max(est[noeud], lons[k]);
+            }
+            niveau[tailleNiveau++] = noeud;
+        }
+
+        // Niveaux supérieurs: STR sur les centres des nœuds du niveau précédent
+        int nombreEnfants = 0;
+        while (tailleNiveau > 1) {
+            int[] courant = Arrays.copyOf(niveau, tailleNiveau);
+            double[] centresLat = new double[nombreNoeuds];
+            double[] centresLon = new double[nombreNoeuds];
+            for (int noeud : courant) {
+                centresLat[noeud] = (sud[noeud] + nord[noeud]) / 2;
+                centresLon[noeud] = (ouest[noeud] + est[noeud]) / 2;
+            }
+            trierSTR(courant, centresLat, centresLon);
+
+            tailleNiveau = 0;
+            for (int debut = 0; debut < courant.length; debut += CAPACITE_NOEUD) {
+                int fin = Math.min(courant.length, debut + CAPACITE_NOEUD);
+                int noeud = nombreNoeuds++;
+                debuts[noeud] = nombreEnfants;
+                sud[noeud] = Double.POSITIVE_INFINITY;
+                ouest[noeud] = Double.POSITIVE_INFINITY;
+                nord[noeud] = Double.NEGATIVE_INFINITY;
+                est[noeud] = Double.NEGATIVE_INFINITY;
+                for (int k = debut; k < fin; k++) {
+                    int enfant = courant[k];
+                    enfants[nombreEnfants++] = enfant;
+                    sud[noeud] = Math.min(sud[noeud], sud[enfant]);
+                    nord[noeud] = Math.max(nord[noeud], nord[enfant]);
+                    ouest[noeud] = Math.min(ouest[noeud], ouest[enfant]);
+                    est[noeud] = Math.max(est[noeud], est[enfant]);
+                }
+                fins[noeud] = nombreEnfants;
+                niveau[tailleNiveau++] = noeud;
+            }
+        }
+
+        return new ArbreR(lats, lons, ordre, sud, ouest, nord, est, debuts, fins, feuilles,
+                          enfants, niveau[0]);
+    }
+
+    /**
+     * Tri Sort-Tile-Recursive d'éléments repérés par leurs coordonnées.
+     *
+     * @param elements Éléments à réordonner (indices dans latitudes/longitudes)
+     */
+    private static void trierSTR(int[] elements, double[] latitudes, double[] longitudes) {
+        int n = elements.length;
+        int paquets = (n + CAPACITE_NOEUD - 1) / CAPACITE_NOEUD;
+        int tranches = (int) Math.ceil(Math.sqrt(paquets));
+        int parTranche = tranches * CAPACITE_NOEUD;
+
+        trier(elements, 0, n, longitudes);
+        for (int debut = 0; debut < n; debut += parTranche) {
+            trier(elements, debut, Math.min(n, debut + parTranche), latitudes);
+        }
+    }
+
+    /**
+     * Trie une plage d'indices selon une clé, sans boxing: la clé, réduite en
+     * float et convertie en entier de même ordre, est tassée avec l'indice dans
+     * un long. La perte de précision ne touche que la qualité du découpage.
+     */
+    private static void trier(int[] elements, int debut, int fin, double[] cles) {
+        int n = fin - debut;
+        long[] tasses = new long[n];
+        for (int k = 0; k < n; k++) {
+            int element = elements[debut + k];
+            int bits = Float.floatToIntBits((float) cles[element]);
+            int ordonne = bits ^ ((bits >> 31) & 0x7fffffff);
+            tasses[k] = ((long) ordonne << 32) | (element & 0xffffffffL);
+        }
+        Arrays.sort(tasses);
+        for (int k = 0; k < n; k++) {
+            elements[debut + k] = (int) tasses[k];
+        }
+    }
+
+    /**
+     * Parcourt les points situés dans un rectangle (bords inclus).
+     *
+     * @param latMin Latitude sud
+     * @param lonMin Longitude ouest
+     * @param latMax Latitude nord
+     * @param lonMax Longitude est
+     * @param visiteur Reçoit la position d'origine de chaque point trouvé
+     */
+    public void rechercher(double latMin, double lonMin, double latMax, double lonMax, IntConsumer visiteur) {
+        if (latitudes.length == 0) {
+            return;
+        }
+
+        int[] pile = new int[64];
+        int sommet = 0;
+        pile[sommet++] = racine;
+        while (sommet > 0) {
+            int noeud = pile[--sommet];
+            if (sud[noeud] > latMax || nord[noeud] < latMin || ouest[noeud] > lonMax || est[noeud] < lonMin) {
+                continue;
+            }
+            if (feuilles[noeud]) {
+                for (int k = debuts[noeud]; k < fins[noeud]; k++) {
+                    if (latitudes[k] >= latMin && latitudes[k] <= latMax
+                            && longitudes[k] >= lonMin && longitudes[k] <= lonMax) {
+                        visiteur.accept(index[k]);
+                    }
+                }
+            } else {
+                for (int k = debuts[noeud]; k < fins[noeud]; k++) {
+                    if (sommet == pile.length) {
+                        pile = Arrays.copyOf(pile, pile.length * 2);
+                    }
+                    pile[sommet++] = enfants[k];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Le nombre de points indexés
+     */
+    public int taille() {
+        return latitudes.length;
+    }
+}
@@ -0,0 +1,520 @@
+package com.covoiturage.spatial;
+
+import java.sql.SQLException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.dao.TrajetDAO;
+import com.covoiturage.dao.UtilisateurDAO;
+import com.covoiturage.dao.VehiculeDAO;
+import com.covoiturage.models.Region;
+import com.covoiturage.models.Trajet;
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.models.Vehicule;
+import com.covoiturage.utils.ConfigurationManager;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Index spatio-temporel des véhicules disponibles, pour proposer à un passager
+ * les véhicules qui peuvent le prendre sans parcourir toute la flotte.
+ *
+ * Utilise le pattern Singleton.
+ *
+ * PRINCIPE:
+ * - Parcours d'un véhicule: les utilisateurs de son dernier trajet dans l'ordre
+ *   de prise en charge, ou son conducteur s'il n'a pas encore de trajet
+ * - Couloir: l'emprise du parcours élargie de matching.corridorKm; le véhicule
+ *   est inscrit dans chaque cellule (PAS_GRILLE degrés) de la grille que son
+ *   couloir recouvre
+ * - Fenêtre: le véhicule est inscrit dans chaque tranche horaire que sa plage
+ *   de disponibilité recouvre (toutes si elle n'est pas définie)
+ * - Recherche: la cellule du point de départ du passager et la tranche de son
+ *   heure de départ donnent deux ensembles; on parcourt le plus petit en
+ *   vérifiant l'appartenance à l'autre, puis la fenêtre exacte, la région,
+ *   les places restantes
+ * - Mises à jour: les écritures des DAO marquent les véhicules concernés; ils
+ *   sont relus depuis la base juste avant la recherche suivante
+ *
+ * Le coût exact (détour) des candidats est calculé par AppariementService.
+ *
+ * CONCURRENCE: verrou lecture/écriture; les relectures de la base ont lieu
+ * hors verrou, seule leur application le prend en écriture.
+ */
+public class IndexAppariement {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexAppariement.class);
+    private static IndexAppariement instance;
+
+    /** Côté d'une cellule de la grille des couloirs, en degrés (~2 km). */
+    static final double PAS_GRILLE = 0.02;
+
+    /** Nombre de tranches horaires (une par heure). */
+    static final int TRANCHES = 24;
+
+    private final double couloirKm;
+
+    private final VehiculeDAO vehiculeDAO;
+    private final TrajetDAO trajetDAO;
+    private final UtilisateurDAO utilisateurDAO;
+
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+
+    private final Map<Long, Entree> entrees = new HashMap<>();
+    /** Véhicules par cellule de la grille, clé (ligne << 32 | colonne). */
+    private final Map<Long, Set<Long>> grille = new HashMap<>();
+    /** Véhicules par tranche horaire. */
+    private final List<Set<Long>> tranches = new ArrayList<>(TRANCHES);
+    /** Véhicules dont le parcours passe par un utilisateur (conducteur compris). */
+    private final Map<Long, Set<Long>> parUtilisateur = new HashMap<>();
+    /** Véhicule de chaque trajet indexé. */
+    private final Map<Long, Long> vehiculeParTrajet = new HashMap<>();
+
+    /** Véhicules à relire avant la prochaine recherche. */
+    private final Set<Long> aRelire = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean charge;
+
+    private final LongAdder recherches = new LongAdder();
+    private final LongAdder candidatsExamines = new LongAdder();
+    private final LongAdder relectures = new LongAdder();
+
+    /**
+     * Véhicule indexé. Le parcours n'est plus modifié après construction.
+     */
+    private static final class Entree {
+        final Vehicule vehicule;
+        final Long trajetId;
+        final List<Utilisateur> parcours;
+        final int passagers;
+        final Set<Long> cellules = new HashSet<>();
+        final int premiereTranche;
+        final int derniereTranche;
+
+        Entree(Vehicule vehicule, Long trajetId, List<Utilisateur> parcours, int passagers) {
+            this.vehicule = vehicule;
+            this.trajetId = trajetId;
+            this.parcours = Collections.unmodifiableList(parcours);
+            this.passagers = passagers;
+            LocalTime debut = vehicule.getHeureDebutDisponibilite();
+            LocalTime fin = vehicule.getHeureFinDisponibilite();
+            if (debut == null || fin == null) {
+                premiereTranche = 0;
+                derniereTranche = TRANCHES - 1;
+            } else {
+                premiereTranche = debut.getHour();
+                derniereTranche = fin.getHour();
+            }
+        }
+    }
+
+    /**
+     * Véhicule candidat pour un passager, avant calcul du détour.
+     */
+    public static final class Candidat {
+        private final Vehicule vehicule;
+        private final Long trajetId;
+        private final List<Utilisateur> parcours;
+        private final int placesRestantes;
+        private final boolean departConducteur;
+
+        Candidat(Entree entree) {
+            this.vehicule = entree.vehicule;
+            this.trajetId = entree.trajetId;
+            this.parcours = entree.parcours;
+            this.placesRestantes = entree.vehicule.placesRestantes(entree.passagers);
+            this.departConducteur = parcours.get(0).getId().equals(vehicule.getConducteurId());
+        }
+
+        public Vehicule getVehicule() {
+            return vehicule;
+        }
+
+        /** @return Le dernier trajet du véhicule, ou null s'il n'en a pas */
+        public Long getTrajetId() {
+            return trajetId;
+        }
+
+        /** @return Les arrêts actuels du véhicule dans l'ordre (non modifiable) */
+        public List<Utilisateur> getParcours() {
+            return parcours;
+        }
+
+        public int getPlacesRestantes() {
+            return placesRestantes;
+        }
+
+        /** @return true si le parcours part du conducteur, qui doit rester en tête */
+        public boolean isDepartConducteur() {
+            return departConducteur;
+        }
+    }
+
+    /**
+     * Constructeur privé (pattern Singleton).
+     */
+    private IndexAppariement() {
+        this.couloirKm = ConfigurationManager.getInstance().getDouble("matching.corridorKm", 3.0);
+        if (couloirKm < 0) {
+            throw new IllegalArgumentException("Largeur du couloir d'appariement invalide: " + couloirKm);
+        }
+        this.vehiculeDAO = new VehiculeDAO();
+        this.trajetDAO = new TrajetDAO();
+        this.utilisateurDAO = new UtilisateurDAO();
+        for (int t = 0; t < TRANCHES; t++) {
+            tranches.add(new HashSet<>());
+        }
+    }
+
+    /**
+     * Obtient l'instance unique de l'index.
+     *
+     * @return L'instance
+     */
+    public static synchronized IndexAppariement getInstance() {
+        if (instance == null) {
+            instance = new IndexAppariement();
+        }
+        return instance;
+    }
+
+    /**
+     * Charge l'index depuis la base s'il ne l'est pas encore: véhicules
+     * disponibles et dernier trajet de chacun.
+     *
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public void charger() throws SQLException {
+        if (charge) {
+            return;
+        }
+        verrou.writeLock().lock();
+        try {
+            if (!charge) {
+                long debut = System.nanoTime();
+                Map<Long, Trajet> derniers = trajetDAO.findDerniersParVehicule();
+                for (Vehicule vehicule : vehiculeDAO.findDisponibles()) {
+                    Entree entree = construire(vehicule, derniers.get(vehicule.getId()));
+                    if (entree != null) {
+                        ajouter(entree);
+                    }
+                }
+                aRelire.clear();
+                charge = true;
+                logger.info("Index d'appariement: {} véhicules, {} cellules en {} ms", entrees.size(),
+                            grille.size(), (System.nanoTime() - debut) / 1_000_000);
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Signale qu'un véhicule a changé (création, mise à jour, suppression, nouveau trajet).
+     * Sans effet tant que l'index n'est pas chargé (le chargement lira la base).
+     *
+     * @param vehiculeId L'ID du véhicule
+     */
+    public void marquer(Long vehiculeId) {
+        if (charge && vehiculeId != null) {
+            aRelire.add(vehiculeId);
+        }
+    }
+
+    /**
+     * Signale qu'un trajet a changé ou a été supprimé.
+     *
+     * @param trajetId L'ID du trajet
+     */
+    public void marquerTrajet(Long trajetId) {
+        if (!charge || trajetId == null) {
+            return;
+        }
+        verrou.readLock().lock();
+        try {
+            marquer(vehiculeParTrajet.get(trajetId));
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * Signale qu'un utilisateur a changé (position, horaires, suppression):
+     * les parcours qui passent par lui sont à relire.
+     *
+     * @param utilisateurId L'ID de l'utilisateur
+     */
+    public void marquerUtilisateur(Long utilisateurId) {
+        if (!charge || utilisateurId == null) {
+            return;
+        }
+        verrou.readLock().lock();
+        try {
+            Set<Long> vehicules = parUtilisateur.get(utilisateurId);
+            if (vehicules != null) {
+                aRelire.addAll(vehicules);
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cherche les véhicules qui peuvent prendre un passager: couloir qui
+     * recouvre son point de départ, disponibilité à son heure de départ, même
+     * région, au moins une place libre.
+     *
+     * @param passager Le passager (coordonnées requises)
+     * @return Les candidats, dans un ordre quelconque
+     * @throws SQLException En cas d'erreur SQL lors de la relecture des véhicules modifiés
+     */
+    public List<Candidat> rechercher(Utilisateur passager) throws SQLException {
+        if (!charge) {
+            throw new IllegalStateException("Index d'appariement non chargé");
+        }
+        if (!GeoUtils.aCoordonnees(passager)) {
+            throw new IllegalArgumentException("Le passager n'a pas de coordonnées");
+        }
+        relire();
+        recherches.increment();
+
+        LocalTime heure = passager.getHeureDepart();
+        List<Candidat> candidats = new ArrayList<>();
+        verrou.readLock().lock();
+        try {
+            Set<Long> dansCouloir = grille.get(cle(passager.getLatitude(), passager.getLongitude()));
+            if (dansCouloir == null) {
+                return candidats;
+            }
+            Set<Long> aLHeure = heure != null ? tranches.get(heure.getHour()) : null;
+
+            Set<Long> parcourus = dansCouloir;
+            Set<Long> autre = aLHeure;
+            if (aLHeure != null && aLHeure.size() < dansCouloir.size()) {
+                parcourus = aLHeure;
+                autre = dansCouloir;
+            }
+
+            for (Long id : parcourus) {
+                if (autre != null && !autre.contains(id)) {
+                    continue;
+                }
+                candidatsExamines.increment();
+                Entree entree = entrees.get(id);
+                if (accepte(entree, passager, heure)) {
+                    candidats.add(new Candidat(entree));
+                }
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+        return candidats;
+    }
+
+    /** Vérifications exactes d'un véhicule présélectionné. Appelé sous le verrou de lecture. */
+    private static boolean accepte(Entree entree, Utilisateur passager, LocalTime heure) {
+        Vehicule vehicule = entree.vehicule;
+        if (heure != null && !vehicule.disponibleA(heure)) {
+            return false;
+        }
+        Region region = passager.getRegion();
+        if (region != null && vehicule.getRegion() != null && region != vehicule.getRegion()) {
+            return false;
+        }
+        if (vehicule.placesRestantes(entree.passagers) == 0
+                || passager.getId().equals(vehicule.getConducteurId())) {
+            return false;
+        }
+        for (Utilisateur arret : entree.parcours) {
+            if (passager.getId().equals(arret.getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Relit depuis la base les véhicules marqués depuis la dernière recherche.
+     */
+    private void relire() throws SQLException {
+        if (aRelire.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(aRelire);
+        aRelire.removeAll(ids);
+
+        Map<Long, Entree> relues = new HashMap<>();
+        try {
+            for (Long id : ids) {
+                Optional<Vehicule> vehicule = vehiculeDAO.findById(id);
+                Entree entree = null;
+                if (vehicule.isPresent() && vehicule.get().isDisponible()) {
+                    entree = construire(vehicule.get(), trajetDAO.findDernierParVehicule(id).orElse(null));
+                }
+                relues.put(id, entree);
+            }
+        } catch (SQLException e) {
+            aRelire.addAll(ids); // Nouvelle tentative à la prochaine recherche
+            throw e;
+        }
+
+        verrou.writeLock().lock();
+        try {
+            for (Map.Entry<Long, Entree> relue : relues.entrySet()) {
+                enlever(relue.getKey());
+                if (relue.getValue() != null) {
+                    ajouter(relue.getValue());
+                }
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+        relectures.add(ids.size());
+    }
+
+    /**
+     * Construit l'entrée d'un véhicule, ou null si aucun arrêt n'est géolocalisé.
+     */
+    private Entree construire(Vehicule vehicule, Trajet dernier) throws SQLException {
+        List<Utilisateur> parcours = new ArrayList<>();
+        int passagers = 0;
+        if (dernier != null && dernier.getUtilisateurs() != null && !dernier.getUtilisateurs().isEmpty()) {
+            passagers = dernier.getUtilisateurs().size();
+            for (Utilisateur utilisateur : dernier.getUtilisateurs()) {
+                if (GeoUtils.aCoordonnees(utilisateur)) {
+                    parcours.add(utilisateur);
+                }
+            }
+        } else {
+            utilisateurDAO.findById(vehicule.getConducteurId())
+                .filter(GeoUtils::aCoordonnees)
+                .ifPresent(parcours::add);
+        }
+        if (parcours.isEmpty()) {
+            return null;
+        }
+
+        Entree entree = new Entree(vehicule, dernier != null ? dernier.getId() : null, parcours, passagers);
+        double latMin = Double.POSITIVE_INFINITY, latMax = Double.NEGATIVE_INFINITY;
+        double lonMin = Double.POSITIVE_INFINITY, lonMax = Double.NEGATIVE_INFINITY;
+        for (Utilisateur arret : parcours) {
+            latMin = Math.min(latMin, arret.getLatitude());
+            latMax = Math.max(latMax, arret.getLatitude());
+            lonMin = Math.min(lonMin, arret.getLongitude());
+            lonMax = Math.max(lonMax, arret.getLongitude());
+        }
+        // Élargissement du couloir: 1° de latitude ~ 111 km, la longitude se resserre avec cos(lat)
+        double margeLat = couloirKm / 111.32;
+        double cosLat = Math.cos(Math.toRadians(Math.max(Math.abs(latMin), Math.abs(latMax))));
+        double margeLon = couloirKm / (111.32 * Math.max(cosLat, 0.01));
+        long ligneMin = ligne(latMin - margeLat), ligneMax = ligne(latMax + margeLat);
+        long colonneMin = colonne(lonMin - margeLon), colonneMax = colonne(lonMax + margeLon);
+        for (long l = ligneMin; l <= ligneMax; l++) {
+            for (long c = colonneMin; c <= colonneMax; c++) {
+                entree.cellules.add((l << 32) | (c & 0xFFFFFFFFL));
+            }
+        }
+        return entree;
+    }
+
+    /** Appelé sous le verrou d'écriture. */
+    private void ajouter(Entree entree) {
+        Long id = entree.vehicule.getId();
+        entrees.put(id, entree);
+        for (Long cellule : entree.cellules) {
+            grille.computeIfAbsent(cellule, k -> new HashSet<>()).add(id);
+        }
+        for (int t = entree.premiereTranche; t <= entree.derniereTranche; t++) {
+            tranches.get(t).add(id);
+        }
+        if (entree.trajetId != null) {
+            vehiculeParTrajet.put(entree.trajetId, id);
+        }
+        parUtilisateur.computeIfAbsent(entree.vehicule.getConducteurId(), k -> new HashSet<>()).add(id);
+        for (Utilisateur arret : entree.parcours) {
+            parUtilisateur.computeIfAbsent(arret.getId(), k -> new HashSet<>()).add(id);
+        }
+    }
+
+    /** Appelé sous le verrou d'écriture. */
+    private void enlever(Long id) {
+        Entree entree = entrees.remove(id);
+        if (entree == null) {
+            return;
+        }
+        for (Long cellule : entree.cellules) {
+            Set<Long> vehicules = grille.get(cellule);
+            vehicules.remove(id);
+            if (vehicules.isEmpty()) {
+                grille.remove(cellule);
+            }
+        }
+        for (int t = entree.premiereTranche; t <= entree.derniereTranche; t++) {
+            tranches.get(t).remove(id);
+        }
+        if (entree.trajetId != null) {
+            vehiculeParTrajet.remove(entree.trajetId);
+        }
+        retirerDe(entree.vehicule.getConducteurId(), id);
+        for (Utilisateur arret : entree.parcours) {
+            retirerDe(arret.getId(), id);
+        }
+    }
+
+    private void retirerDe(Long utilisateurId, Long vehiculeId) {
+        Set<Long> vehicules = parUtilisateur.get(utilisateurId);
+        if (vehicules != null) {
+            vehicules.remove(vehiculeId);
+            if (vehicules.isEmpty()) {
+                parUtilisateur.remove(utilisateurId);
+            }
+        }
+    }
+
+    private static long ligne(double latitude) {
+        return (long) Math.floor(latitude / PAS_GRILLE);
+    }
+
+    private static long colonne(double longitude) {
+        return (long) Math.floor(longitude / PAS_GRILLE);
+    }
+
+    private static long cle(double latitude, double longitude) {
+        return (ligne(latitude) << 32) | (colonne(longitude) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Obtient les statistiques de l'index.
+     *
+     * @return Map des statistiques
+     */
+    public Map<String, Object> getStatistiques() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        verrou.readLock().lock();
+        try {
+            stats.put("charge", charge);
+            stats.put("vehicules", entrees.size());
+            stats.put("cellules", grille.size());
+        } finally {
+            verrou.readLock().unlock();
+        }
+        stats.put("aRelire", aRelire.size());
+        stats.put("recherches", recherches.sum());
+        stats.put("candidatsExamines", candidatsExamines.sum());
+        stats.put("relectures", relectures.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,311 @@
+package com.covoiturage.spatial;
+
+import java.sql.SQLException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.dao.VehiculeDAO;
+import com.covoiturage.models.Vehicule;
+import com.covoiturage.utils.ConfigurationManager;
+
+/**
+ * Index en mémoire des plages de disponibilité des véhicules disponibles, pour
+ * trouver les véhicules libres sur toute une plage horaire sans les parcourir.
+ *
+ * Utilise le pattern Singleton.
+ *
+ * PRINCIPE:
+ * - Base: un {@link ArbreIntervalles} immuable sur les plages, en secondes
+ *   depuis minuit (plage non définie = toute la journée), construit au premier
+ *   usage depuis la base
+ * - Tampon: les écritures de VehiculeDAO (création, mise à jour, suppression),
+ *   ainsi que celles d'UtilisateurDAO qui touchent les véhicules d'un conducteur
+ *   (région recopiée, suppression en cascade), vont dans un petit tampon
+ *   d'ajouts et de retraits, consulté en plus de l'arbre: l'index est à jour
+ *   dès la fin de l'écriture
+ * - Reconstruction: quand le tampon dépasse max(TAMPON_MIN, n × fractionTampon),
+ *   l'arbre est reconstruit avec le tampon fusionné, puis le tampon est vidé
+ *
+ * Seuls les véhicules marqués disponibles, dont la plage n'est pas vide, sont
+ * indexés. Les véhicules sont conservés sous forme de copies: les objets
+ * renvoyés par une recherche ne doivent pas être modifiés.
+ *
+ * CONCURRENCE: les recherches lisent un état publié (volatile) sans verrou;
+ * écritures, chargement et reconstructions sont sérialisés par le moniteur de
+ * l'instance.
+ */
+public class IndexDisponibilites {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexDisponibilites.class);
+    private static IndexDisponibilites instance;
+
+    /** Taille minimale du tampon avant reconstruction. */
+    static final int TAMPON_MIN = 64;
+
+    /** Dernière seconde de la journée. */
+    private static final int FIN_JOURNEE = 24 * 3600 - 1;
+
+    private final double fractionTampon;
+
+    private volatile Etat etat;
+
+    private final LongAdder recherches = new LongAdder();
+    private final LongAdder reconstructions = new LongAdder();
+
+    /**
+     * État publié: arbre, véhicules indexés et tampon des écritures depuis sa
+     * construction. L'arbre et ses véhicules ne changent plus; seul le tampon
+     * (concurrent) évolue jusqu'à la reconstruction suivante.
+     */
+    private static final class Etat {
+        final ArbreIntervalles arbre;
+        final Vehicule[] vehicules;
+        final Map<Long, Vehicule> parId;
+        /** Version à jour des véhicules modifiés ou créés depuis la construction. */
+        final Map<Long, Vehicule> ajouts = new ConcurrentHashMap<>();
+        /** Ids dont l'entrée de l'arbre est périmée (modifiés ou supprimés). */
+        final Set<Long> masques = ConcurrentHashMap.newKeySet();
+
+        Etat(List<Vehicule> indexables) {
+            vehicules = indexables.toArray(new Vehicule[0]);
+            int[] debuts = new int[vehicules.length];
+            int[] fins = new int[vehicules.length];
+            parId = new HashMap<>(vehicules.length * 2);
+            for (int i = 0; i < vehicules.length; i++) {
+                debuts[i] = debut(vehicules[i]);
+                fins[i] = fin(vehicules[i]);
+                parId.put(vehicules[i].getId(), vehicules[i]);
+            }
+            arbre = ArbreIntervalles.construire(debuts, fins);
+        }
+
+        int tailleTampon() {
+            return ajouts.size() + masques.size();
+        }
+    }
+
+    /**
+     * Constructeur privé (pattern Singleton).
+     */
+    private IndexDisponibilites() {
+        this(ConfigurationManager.getInstance().getDouble("availability.index.bufferFraction", 0.1));
+    }
+
+    IndexDisponibilites(double fractionTampon) {
+        if (fractionTampon <= 0 || fractionTampon > 1) {
+            throw new IllegalArgumentException("Fraction du tampon de l'index invalide: " + fractionTampon);
+        }
+        this.fractionTampon = fractionTampon;
+    }
+
+    /**
+     * Obtient l'instance unique de l'index.
+     *
+     * @return L'instance
+     */
+    public static synchronized IndexDisponibilites getInstance() {
+        if (instance == null) {
+            instance = new IndexDisponibilites();
+        }
+        return instance;
+    }
+
+    /**
+     * Charge l'index depuis la base s'il ne l'est pas encore.
+     *
+     * @param dao DAO des véhicules
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public void charger(VehiculeDAO dao) throws SQLException {
+        if (etat != null) {
+            return;
+        }
+        synchronized (this) {
+            if (etat == null) {
+                initialiser(dao.findDisponibles());
+            }
+        }
+    }
+
+    /**
+     * Construit l'index à partir d'une liste de véhicules (remplace l'existant).
+     *
+     * @param vehicules Les véhicules; les indisponibles et ceux de plage vide sont ignorés
+     */
+    public synchronized void initialiser(List<Vehicule> vehicules) {
+        List<Vehicule> indexables = new ArrayList<>(vehicules.size());
+        for (Vehicule vehicule : vehicules) {
+            if (vehicule.getId() != null && estIndexable(vehicule)) {
+                indexables.add(copier(vehicule));
+            }
+        }
+        long debut = System.nanoTime();
+        etat = new Etat(indexables);
+        logger.info("Index des disponibilités: {} véhicules en {} ms", indexables.size(),
+                    (System.nanoTime() - debut) / 1_000_000);
+    }
+
+    /**
+     * @return true si l'index a été chargé
+     */
+    public boolean estCharge() {
+        return etat != null;
+    }
+
+    /**
+     * Enregistre la version à jour d'un véhicule créé ou modifié.
+     * Sans effet tant que l'index n'est pas chargé (le chargement lira la base).
+     *
+     * @param vehicule Le véhicule tel qu'enregistré
+     */
+    public synchronized void enregistrer(Vehicule vehicule) {
+        Etat courant = etat;
+        if (courant == null || vehicule.getId() == null) {
+            return;
+        }
+        Long id = vehicule.getId();
+        if (courant.parId.containsKey(id)) {
+            courant.masques.add(id);
+        }
+        if (estIndexable(vehicule)) {
+            courant.ajouts.put(id, copier(vehicule));
+        } else {
+            courant.ajouts.remove(id);
+        }
+        reconstruireSiNecessaire(courant);
+    }
+
+    /**
+     * Retire un véhicule supprimé.
+     *
+     * @param id L'ID du véhicule
+     */
+    public synchronized void retirer(Long id) {
+        Etat courant = etat;
+        if (courant == null) {
+            return;
+        }
+        courant.ajouts.remove(id);
+        if (courant.parId.containsKey(id)) {
+            courant.masques.add(id);
+        }
+        reconstruireSiNecessaire(courant);
+    }
+
+    /**
+     * Reconstruit l'arbre avec le tampon quand celui-ci devient trop grand.
+     * Appelé sous le moniteur de l'instance.
+     */
+    private void reconstruireSiNecessaire(Etat courant) {
+        int seuil = Math.max(TAMPON_MIN, (int) (courant.vehicules.length * fractionTampon));
+        if (courant.tailleTampon() < seuil) {
+            return;
+        }
+
+        List<Vehicule> fusion = new ArrayList<>(courant.vehicules.length + courant.ajouts.size());
+        for (Vehicule vehicule : courant.vehicules) {
+            if (!courant.masques.contains(vehicule.getId())) {
+                fusion.add(vehicule);
+            }
+        }
+        fusion.addAll(courant.ajouts.values());
+        etat = new Etat(fusion);
+        reconstructions.increment();
+        logger.debug("Index des disponibilités reconstruit: {} véhicules", fusion.size());
+    }
+
+    /**
+     * Cherche les véhicules disponibles sur toute une plage horaire.
+     *
+     * @param debut Début de la plage
+     * @param fin Fin de la plage (pas avant debut)
+     * @return Les véhicules dont la plage de disponibilité couvre [debut, fin],
+     *         dans un ordre quelconque
+     */
+    public List<Vehicule> disponiblesSur(LocalTime debut, LocalTime fin) {
+        Etat courant = etat;
+        if (courant == null) {
+            throw new IllegalStateException("Index des disponibilités non chargé");
+        }
+        if (fin.isBefore(debut)) {
+            throw new IllegalArgumentException("Plage horaire invalide: " + debut + " - " + fin);
+        }
+        recherches.increment();
+
+        List<Vehicule> resultats = new ArrayList<>();
+        // Le tampon d'abord: ce sont les plages les plus récentes
+        for (Vehicule vehicule : courant.ajouts.values()) {
+            if (vehicule.disponibleA(debut) && vehicule.disponibleA(fin)) {
+                resultats.add(vehicule);
+            }
+        }
+
+        // Bornes à la seconde: les plages indexées sont arrondies vers l'intérieur
+        int t1 = debut.toSecondOfDay();
+        int t2 = fin.toSecondOfDay() + (fin.getNano() > 0 ? 1 : 0);
+        courant.arbre.couvrant(t1, t2, i -> {
+            Vehicule vehicule = courant.vehicules[i];
+            if (!courant.masques.contains(vehicule.getId())) {
+                resultats.add(vehicule);
+            }
+        });
+        return resultats;
+    }
+
+    /** Un véhicule est indexé s'il est disponible et que sa plage n'est pas vide. */
+    private static boolean estIndexable(Vehicule vehicule) {
+        return vehicule.isDisponible() && debut(vehicule) <= fin(vehicule);
+    }
+
+    /** Début de plage en secondes, arrondi à la seconde suivante. */
+    private static int debut(Vehicule vehicule) {
+        LocalTime heure = vehicule.getHeureDebutDisponibilite();
+        if (heure == null || vehicule.getHeureFinDisponibilite() == null) {
+            return 0;
+        }
+        return heure.toSecondOfDay() + (heure.getNano() > 0 ? 1 : 0);
+    }
+
+    /** Fin de plage en secondes, arrondie à la seconde précédente. */
+    private static int fin(Vehicule vehicule) {
+        LocalTime heure = vehicule.getHeureFinDisponibilite();
+        if (heure == null || vehicule.getHeureDebutDisponibilite() == null) {
+            return FIN_JOURNEE;
+        }
+        return heure.toSecondOfDay();
+    }
+
+    private static Vehicule copier(Vehicule source) {
+        Vehicule copie = new Vehicule(source.getId(), source.getConducteurId(), source.getImmatriculation(),
+                                      source.getCapacite(), source.getHeureDebutDisponibilite(),
+                                      source.getHeureFinDisponibilite(), source.isDisponible());
+        copie.setRegion(source.getRegion());
+        return copie;
+    }
+
+    /**
+     * Obtient les statistiques de l'index.
+     *
+     * @return Map des statistiques
+     */
+    public Map<String, Object> getStatistiques() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Etat courant = etat;
+        stats.put("charge", courant != null);
+        stats.put("vehicules", courant == null ? 0 : courant.arbre.taille());
+        stats.put("tampon", courant == null ? 0 : courant.tailleTampon());
+        stats.put("recherches", recherches.sum());
+        stats.put("reconstructions", reconstructions.sum());
+        return stats;
+    }
+}
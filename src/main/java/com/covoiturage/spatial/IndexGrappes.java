@@ -0,0 +1,392 @@
+package com.covoiturage.spatial;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.dao.UtilisateurDAO;
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Regroupement hiérarchique des utilisateurs par niveau de zoom, pour que la
+ * carte affiche quelques grappes au lieu de milliers de marqueurs.
+ *
+ * Utilise le pattern Singleton.
+ *
+ * PRINCIPE:
+ * - À chaque zoom z (0 à ZOOM_MAX), le monde en projection Web Mercator est
+ *   découpé en cellules de TAILLE_CELLULE_PX pixels à l'écran; une grappe est
+ *   l'ensemble des utilisateurs d'une cellule (nombre, somme des coordonnées
+ *   pour le centroïde, xor des ids pour retrouver l'utilisateur d'une grappe
+ *   de taille 1)
+ * - Les cellules d'un zoom sont exactement les quarts de celles du zoom
+ *   précédent: la hiérarchie est un quadtree, chaque utilisateur appartient à
+ *   une cellule par niveau
+ * - Une écriture (création, déplacement, suppression) met à jour une cellule
+ *   par niveau: O(ZOOM_MAX), sans recalcul global
+ * - Une requête (emprise, zoom) renvoie toutes les cellules non vides qui
+ *   touchent l'emprise à ce zoom, même si leur centroïde est hors de l'écran:
+ *   une grappe ne disparaît pas pendant un déplacement de la carte tant que sa
+ *   cellule reste visible. Une emprise d'écran en contient quelques centaines.
+ *   Une emprise à cheval sur l'antiméridien (ouest > est, ou longitudes hors de
+ *   [-180, 180]) est découpée en deux
+ *
+ * Le regroupement est sur grille plutôt que glouton par distance: il est
+ * moins régulier visuellement mais se met à jour incrémentalement.
+ *
+ * CONCURRENCE: verrou lecture/écriture; les écritures sont rares et courtes.
+ */
+public class IndexGrappes {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexGrappes.class);
+    private static IndexGrappes instance;
+
+    /** Zoom le plus fin regroupé (cellules de ~60 m à la latitude de Tunis). */
+    public static final int ZOOM_MAX = 17;
+
+    /** Côté d'une cellule, en pixels d'écran. */
+    static final int TAILLE_CELLULE_PX = 64;
+
+    /** Latitude limite de la projection Web Mercator. */
+    private static final double LATITUDE_MAX = 85.05112878;
+
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+
+    /** Cellules non vides de chaque zoom, par clé (x << 32 | y). */
+    private final List<Map<Long, Cellule>> niveaux = new ArrayList<>(ZOOM_MAX + 1);
+
+    /** Position indexée de chaque utilisateur, pour le retirer de ses cellules. */
+    private final Map<Long, double[]> positions = new HashMap<>();
+
+    private volatile boolean charge;
+
+    private final LongAdder requetes = new LongAdder();
+    private final LongAdder misesAJour = new LongAdder();
+
+    /**
+     * Accumulateur d'une cellule.
+     */
+    private static final class Cellule {
+        int nombre;
+        double sommeLatitudes;
+        double sommeLongitudes;
+        long xorIds;
+    }
+
+    /**
+     * Grappe renvoyée à la carte (sérialisée en JSON).
+     */
+    public static final class Grappe {
+        private final double latitude;
+        private final double longitude;
+        private final int nombre;
+        /** Renseigné seulement pour une grappe d'un seul utilisateur. */
+        private final Long utilisateurId;
+
+        Grappe(double latitude, double longitude, int nombre, Long utilisateurId) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.nombre = nombre;
+            this.utilisateurId = utilisateurId;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public int getNombre() {
+            return nombre;
+        }
+
+        public Long getUtilisateurId() {
+            return utilisateurId;
+        }
+    }
+
+    /**
+     * Constructeur privé (pattern Singleton).
+     */
+    private IndexGrappes() {
+        for (int z = 0; z <= ZOOM_MAX; z++) {
+            niveaux.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Obtient l'instance unique de l'index.
+     *
+     * @return L'instance
+     */
+    public static synchronized IndexGrappes getInstance() {
+        if (instance == null) {
+            instance = new IndexGrappes();
+        }
+        return instance;
+    }
+
+    /**
+     * Charge l'index depuis la base s'il ne l'est pas encore.
+     *
+     * @param dao DAO des utilisateurs
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public void charger(UtilisateurDAO dao) throws SQLException {
+        if (charge) {
+            return;
+        }
+        verrou.writeLock().lock();
+        try {
+            if (!charge) {
+                initialiser(dao.findAll());
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Construit l'index à partir d'une liste d'utilisateurs (remplace l'existant).
+     *
+     * @param utilisateurs Tous les utilisateurs; ceux sans coordonnées sont ignorés
+     */
+    public void initialiser(List<Utilisateur> utilisateurs) {
+        verrou.writeLock().lock();
+        try {
+            long debut = System.nanoTime();
+            positions.clear();
+            for (Map<Long, Cellule> niveau : niveaux) {
+                niveau.clear();
+            }
+            for (Utilisateur utilisateur : utilisateurs) {
+                if (utilisateur.getId() != null && GeoUtils.aCoordonnees(utilisateur)) {
+                    ajouter(utilisateur.getId(), utilisateur.getLatitude(), utilisateur.getLongitude());
+                }
+            }
+            charge = true;
+            logger.info("Grappes d'utilisateurs: {} points sur {} zooms en {} ms", positions.size(),
+                        ZOOM_MAX + 1, (System.nanoTime() - debut) / 1_000_000);
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Place (ou déplace) un utilisateur. Sans coordonnées, il est retiré.
+     * Sans effet tant que l'index n'est pas chargé (le chargement lira la base).
+     *
+     * @param id L'ID de l'utilisateur
+     * @param latitude Latitude, ou null
+     * @param longitude Longitude, ou null
+     */
+    public void placer(Long id, Double latitude, Double longitude) {
+        if (id == null) {
+            return;
+        }
+        verrou.writeLock().lock();
+        try {
+            if (!charge) {
+                return;
+            }
+            enlever(id);
+            if (latitude != null && longitude != null) {
+                ajouter(id, latitude, longitude);
+            }
+            misesAJour.increment();
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retire un utilisateur supprimé.
+     *
+     * @param id L'ID de l'utilisateur
+     */
+    public void retirer(Long id) {
+        placer(id, null, null);
+    }
+
+    /** Appelé sous le verrou d'écriture. */
+    private void ajouter(long id, double latitude, double longitude) {
+        positions.put(id, new double[] {latitude, longitude});
+        double x = mercatorX(longitude);
+        double y = mercatorY(latitude);
+        for (int z = 0; z <= ZOOM_MAX; z++) {
+            Cellule cellule = niveaux.get(z).computeIfAbsent(cle(x, y, z), k -> new Cellule());
+            cellule.nombre++;
+            cellule.sommeLatitudes += latitude;
+            cellule.sommeLongitudes += longitude;
+            cellule.xorIds ^= id;
+        }
+    }
+
+    /** Appelé sous le verrou d'écriture. */
+    private void enlever(long id) {
+        double[] position = positions.remove(id);
+        if (position == null) {
+            return;
+        }
+        double x = mercatorX(position[1]);
+        double y = mercatorY(position[0]);
+        for (int z = 0; z <= ZOOM_MAX; z++) {
+            long cle = cle(x, y, z);
+            Cellule cellule = niveaux.get(z).get(cle);
+            if (--cellule.nombre == 0) {
+                niveaux.get(z).remove(cle);
+            } else {
+                cellule.sommeLatitudes -= position[0];
+                cellule.sommeLongitudes -= position[1];
+                cellule.xorIds ^= id;
+            }
+        }
+    }
+
+    /**
+     * Renvoie les grappes d'une emprise à un zoom donné.
+     *
+     * @param latMin Latitude sud
+     * @param lonMin Longitude ouest
+     * @param latMax Latitude nord
+     * @param lonMax Longitude est
+     * @param zoom Zoom de la carte (ramené dans [0, ZOOM_MAX])
+     * @return Les grappes des cellules non vides qui touchent l'emprise
+     */
+    public List<Grappe> rechercher(double latMin, double lonMin, double latMax, double lonMax, int zoom) {
+        if (!charge) {
+            throw new IllegalStateException("Index des grappes non chargé");
+        }
+        int z = Math.max(0, Math.min(ZOOM_MAX, zoom));
+        requetes.increment();
+
+        double echelle = echelle(z);
+        long yMin = (long) Math.floor(mercatorY(latMax) * echelle);
+        long yMax = (long) Math.floor(mercatorY(latMin) * echelle);
+
+        List<Grappe> grappes = new ArrayList<>();
+        verrou.readLock().lock();
+        try {
+            Map<Long, Cellule> niveau = niveaux.get(z);
+            if (lonMax - lonMin >= 360.0) {
+                parcourir(niveau, grappes, 0, (long) echelle - 1, yMin, yMax);
+                return grappes;
+            }
+            // Longitudes ramenées dans [-180, 180): une emprise qui déborde, ou
+            // dont l'ouest est après l'est, traverse l'antiméridien
+            double ouest = longitudeNormalisee(lonMin);
+            double est = longitudeNormalisee(lonMax);
+            long xMin = (long) Math.floor(mercatorX(ouest) * echelle);
+            long xMax = (long) Math.floor(mercatorX(est) * echelle);
+            if (ouest <= est) {
+                parcourir(niveau, grappes, xMin, xMax, yMin, yMax);
+            } else {
+                parcourir(niveau, grappes, xMin, (long) echelle - 1, yMin, yMax);
+                parcourir(niveau, grappes, 0, xMax, yMin, yMax);
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+        return grappes;
+    }
+
+    /**
+     * Ajoute les grappes des cellules non vides d'un rectangle de cellules.
+     * Appelé sous le verrou de lecture.
+     */
+    private void parcourir(Map<Long, Cellule> niveau, List<Grappe> grappes,
+                           long xMin, long xMax, long yMin, long yMax) {
+        long plage = (xMax - xMin + 1) * (yMax - yMin + 1);
+        if (plage <= niveau.size()) {
+            // Emprise d'écran: on interroge ses cellules une à une
+            for (long cx = xMin; cx <= xMax; cx++) {
+                for (long cy = yMin; cy <= yMax; cy++) {
+                    Cellule cellule = niveau.get((cx << 32) | cy);
+                    if (cellule != null) {
+                        grappes.add(grappe(cellule));
+                    }
+                }
+            }
+        } else {
+            // Emprise sans rapport avec le zoom: moins de cellules à parcourir
+            for (Map.Entry<Long, Cellule> e : niveau.entrySet()) {
+                long cx = e.getKey() >>> 32;
+                long cy = e.getKey() & 0xFFFFFFFFL;
+                if (cx >= xMin && cx <= xMax && cy >= yMin && cy <= yMax) {
+                    grappes.add(grappe(e.getValue()));
+                }
+            }
+        }
+    }
+
+    /** Appelé sous le verrou de lecture. */
+    private Grappe grappe(Cellule cellule) {
+        if (cellule.nombre == 1) {
+            // Position exacte, sans les erreurs d'arrondi accumulées par les sommes
+            double[] position = positions.get(cellule.xorIds);
+            return new Grappe(position[0], position[1], 1, cellule.xorIds);
+        }
+        return new Grappe(cellule.sommeLatitudes / cellule.nombre, cellule.sommeLongitudes / cellule.nombre,
+                          cellule.nombre, null);
+    }
+
+    /** Longitude ramenée dans [-180, 180). */
+    private static double longitudeNormalisee(double longitude) {
+        double l = (longitude + 180.0) % 360.0;
+        return (l < 0 ? l + 360.0 : l) - 180.0;
+    }
+
+    /** Nombre de cellules par côté du monde au zoom z. */
+    private static double echelle(int z) {
+        return 256.0 * (1L << z) / TAILLE_CELLULE_PX;
+    }
+
+    private static long cle(double x, double y, int z) {
+        double echelle = echelle(z);
+        return ((long) Math.floor(x * echelle) << 32) | (long) Math.floor(y * echelle);
+    }
+
+    /** Abscisse Web Mercator normalisée dans [0, 1). */
+    private static double mercatorX(double longitude) {
+        double x = (longitude + 180.0) / 360.0;
+        return Math.min(Math.max(x, 0.0), Math.nextDown(1.0));
+    }
+
+    /** Ordonnée Web Mercator normalisée dans [0, 1), 0 au nord. */
+    private static double mercatorY(double latitude) {
+        double phi = Math.toRadians(Math.max(-LATITUDE_MAX, Math.min(LATITUDE_MAX, latitude)));
+        double y = 0.5 - Math.log(Math.tan(Math.PI / 4 + phi / 2)) / (2 * Math.PI);
+        return Math.min(Math.max(y, 0.0), Math.nextDown(1.0));
+    }
+
+    /**
+     * Obtient les statistiques de l'index.
+     *
+     * @return Map des statistiques
+     */
+    public Map<String, Object> getStatistiques() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        verrou.readLock().lock();
+        try {
+            stats.put("charge", charge);
+            stats.put("points", positions.size());
+            stats.put("cellulesZoomMax", niveaux.get(ZOOM_MAX).size());
+        } finally {
+            verrou.readLock().unlock();
+        }
+        stats.put("requetes", requetes.sum());
+        stats.put("misesAJour", misesAJour.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,317 @@
+package com.covoiturage.spatial;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.covoiturage.dao.UtilisateurDAO;
+import com.covoiturage.models.Utilisateur;
+import com.covoiturage.utils.ConfigurationManager;
+import com.covoiturage.utils.GeoUtils;
+
+/**
+ * Index spatial en mémoire des points de départ des utilisateurs, pour servir
+ * les requêtes par emprise de carte sans charger toute la table.
+ *
+ * Utilise le pattern Singleton.
+ *
+ * PRINCIPE:
+ * - Base: un {@link ArbreR} STR immuable sur les utilisateurs géolocalisés,
+ *   construit au premier usage depuis la base
+ * - Tampon: les écritures du DAO (création, mise à jour, coordonnées, suppression)
+ *   vont dans un petit tampon d'ajouts et de retraits, consulté en plus de
+ *   l'arbre: l'index est à jour dès la fin de l'écriture
+ * - Reconstruction: quand le tampon dépasse max(TAMPON_MIN, n × fractionTampon),
+ *   l'arbre est reconstruit avec le tampon fusionné, puis le tampon est vidé
+ *
+ * Les utilisateurs sont conservés sous forme de copies: les objets renvoyés
+ * par une recherche ne doivent pas être modifiés.
+ *
+ * CONCURRENCE: les recherches lisent un état publié (volatile) sans verrou;
+ * écritures, chargement et reconstructions sont sérialisés par le moniteur de
+ * l'instance.
+ */
+public class IndexUtilisateurs {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexUtilisateurs.class);
+    private static IndexUtilisateurs instance;
+
+    /** Taille minimale du tampon avant reconstruction. */
+    static final int TAMPON_MIN = 256;
+
+    private final double fractionTampon;
+
+    private volatile Etat etat;
+
+    private final LongAdder recherches = new LongAdder();
+    private final LongAdder reconstructions = new LongAdder();
+
+    /**
+     * État publié: arbre, utilisateurs indexés et tampon des écritures depuis
+     * sa construction. L'arbre et ses utilisateurs ne changent plus; seul le
+     * tampon (concurrent) évolue jusqu'à la reconstruction suivante.
+     */
+    private static final class Etat {
+        final ArbreR arbre;
+        final Utilisateur[] utilisateurs;
+        final Map<Long, Utilisateur> parId;
+        /** Version à jour des utilisateurs modifiés ou créés depuis la construction. */
+        final Map<Long, Utilisateur> ajouts = new ConcurrentHashMap<>();
+        /** Ids dont l'entrée de l'arbre est périmée (modifiés ou supprimés). */
+        final Set<Long> masques = ConcurrentHashMap.newKeySet();
+
+        Etat(List<Utilisateur> geolocalises) {
+            utilisateurs = geolocalises.toArray(new Utilisateur[0]);
+            double[] latitudes = new double[utilisateurs.length];
+            double[] longitudes = new double[utilisateurs.length];
+            parId = new HashMap<>(utilisateurs.length * 2);
+            for (int i = 0; i < utilisateurs.length; i++) {
+                latitudes[i] = utilisateurs[i].getLatitude();
+                longitudes[i] = utilisateurs[i].getLongitude();
+                parId.put(utilisateurs[i].getId(), utilisateurs[i]);
+            }
+            arbre = ArbreR.construire(latitudes, longitudes);
+        }
+
+        int tailleTampon() {
+            return ajouts.size() + masques.size();
+        }
+    }
+
+    /**
+     * Constructeur privé (pattern Singleton).
+     */
+    private IndexUtilisateurs() {
+        this(ConfigurationManager.getInstance().getDouble("spatial.index.bufferFraction", 0.1));
+    }
+
+    IndexUtilisateurs(double fractionTampon) {
+        if (fractionTampon <= 0 || fractionTampon > 1) {
+            throw new IllegalArgumentException("Fraction du tampon de l'index invalide: " + fractionTampon);
+        }
+        this.fractionTampon = fractionTampon;
+    }
+
+    /**
+     * Obtient l'instance unique de l'index.
+     *
+     * @return L'instance
+     */
+    public static synchronized IndexUtilisateurs getInstance() {
+        if (instance == null) {
+            instance = new IndexUtilisateurs();
+        }
+        return instance;
+    }
+
+    /**
+     * Charge l'index depuis la base s'il ne l'est pas encore.
+     *
+     * @param dao DAO des utilisateurs
+     * @throws SQLException En cas d'erreur SQL
+     */
+    public void charger(UtilisateurDAO dao) throws SQLException {
+        if (etat != null) {
+            return;
+        }
+        synchronized (this) {
+            if (etat == null) {
+                initialiser(dao.findAll());
+            }
+        }
+    }
+
+    /**
+     * Construit l'index à partir d'une liste d'utilisateurs (remplace l'existant).
+     *
+     * @param utilisateurs Tous les utilisateurs; ceux sans coordonnées sont ignorés
+     */
+    public synchronized void initialiser(List<Utilisateur> utilisateurs) {
+        List<Utilisateur> geolocalises = new ArrayList<>(utilisateurs.size());
+        for (Utilisateur utilisateur : utilisateurs) {
+            if (utilisateur.getId() != null && GeoUtils.aCoordonnees(utilisateur)) {
+                geolocalises.add(copier(utilisateur));
+            }
+        }
+        long debut = System.nanoTime();
+        etat = new Etat(geolocalises);
+        logger.info("Index spatial des utilisateurs: {} points en {} ms", geolocalises.size(),
+                    (System.nanoTime() - debut) / 1_000_000);
+    }
+
+    /**
+     * @return true si l'index a été chargé
+     */
+    public boolean estCharge() {
+        return etat != null;
+    }
+
+    /**
+     * Enregistre la version à jour d'un utilisateur créé ou modifié.
+     * Sans effet tant que l'index n'est pas chargé (le chargement lira la base).
+     *
+     * @param utilisateur L'utilisateur tel qu'enregistré
+     */
+    public synchronized void enregistrer(Utilisateur utilisateur) {
+        Etat courant = etat;
+        if (courant == null || utilisateur.getId() == null) {
+            return;
+        }
+        Long id = utilisateur.getId();
+        if (courant.parId.containsKey(id)) {
+            courant.masques.add(id);
+        }
+        if (GeoUtils.aCoordonnees(utilisateur)) {
+            courant.ajouts.put(id, copier(utilisateur));
+        } else {
+            courant.ajouts.remove(id);
+        }
+        reconstruireSiNecessaire(courant);
+    }
+
+    /**
+     * Met à jour la position d'un utilisateur déjà connu (géocodage).
+     *
+     * @param id L'ID de l'utilisateur
+     * @param latitude Nouvelle latitude
+     * @param longitude Nouvelle longitude
+     * @return false si l'utilisateur n'est pas dans l'index (il faut alors
+     *         l'enregistrer en entier)
+     */
+    public synchronized boolean deplacer(Long id, double latitude, double longitude) {
+        Etat courant = etat;
+        if (courant == null) {
+            return true;
+        }
+        Utilisateur connu = courant.ajouts.get(id);
+        if (connu == null && !courant.masques.contains(id)) {
+            connu = courant.parId.get(id);
+        }
+        if (connu == null) {
+            return false;
+        }
+        Utilisateur deplace = copier(connu);
+        deplace.setLatitude(latitude);
+        deplace.setLongitude(longitude);
+        enregistrer(deplace);
+        return true;
+    }
+
+    /**
+     * Retire un utilisateur supprimé.
+     *
+     * @param id L'ID de l'utilisateur
+     */
+    public synchronized void retirer(Long id) {
+        Etat courant = etat;
+        if (courant == null) {
+            return;
+        }
+        courant.ajouts.remove(id);
+        if (courant.parId.containsKey(id)) {
+            courant.masques.add(id);
+        }
+        reconstruireSiNecessaire(courant);
+    }
+
+    /**
+     * Reconstruit l'arbre avec le tampon quand celui-ci devient trop grand.
+     * Appelé sous le moniteur de l'instance.
+     */
+    private void reconstruireSiNecessaire(Etat courant) {
+        int seuil = Math.max(TAMPON_MIN, (int) (courant.utilisateurs.length * fractionTampon));
+        if (courant.tailleTampon() < seuil) {
+            return;
+        }
+
+        List<Utilisateur> fusion = new ArrayList<>(courant.utilisateurs.length + courant.ajouts.size());
+        for (Utilisateur utilisateur : courant.utilisateurs) {
+            if (!courant.masques.contains(utilisateur.getId())) {
+                fusion.add(utilisateur);
+            }
+        }
+        fusion.addAll(courant.ajouts.values());
+        etat = new Etat(fusion);
+        reconstructions.increment();
+        logger.debug("Index spatial reconstruit: {} points", fusion.size());
+    }
+
+    /**
+     * Cherche les utilisateurs dont le point de départ est dans un rectangle.
+     *
+     * @param latMin Latitude sud
+     * @param lonMin Longitude ouest
+     * @param latMax Latitude nord
+     * @param lonMax Longitude est
+     * @param limite Nombre maximal de résultats
+     * @return Les utilisateurs trouvés (au plus limite), dans un ordre quelconque
+     */
+    public List<Utilisateur> rechercher(double latMin, double lonMin, double latMax, double lonMax, int limite) {
+        Etat courant = etat;
+        if (courant == null) {
+            throw new IllegalStateException("Index spatial non chargé");
+        }
+        recherches.increment();
+
+        List<Utilisateur> resultats = new ArrayList<>();
+        // Le tampon d'abord: ce sont les positions les plus récentes
+        for (Utilisateur utilisateur : courant.ajouts.values()) {
+            if (resultats.size() >= limite) {
+                return resultats;
+            }
+            if (dansRectangle(utilisateur, latMin, lonMin, latMax, lonMax)) {
+                resultats.add(utilisateur);
+            }
+        }
+
+        courant.arbre.rechercher(latMin, lonMin, latMax, lonMax, i -> {
+            Utilisateur utilisateur = courant.utilisateurs[i];
+            if (resultats.size() < limite && !courant.masques.contains(utilisateur.getId())) {
+                resultats.add(utilisateur);
+            }
+        });
+        return resultats;
+    }
+
+    private static boolean dansRectangle(Utilisateur utilisateur, double latMin, double lonMin,
+                                         double latMax, double lonMax) {
+        return utilisateur.getLatitude() >= latMin && utilisateur.getLatitude() <= latMax
+            && utilisateur.getLongitude() >= lonMin && utilisateur.getLongitude() <= lonMax;
+    }
+
+    private static Utilisateur copier(Utilisateur source) {
+        Utilisateur copie = new Utilisateur(source.getId(), source.getNom(), source.getAdresseDepart(),
+                                            source.getAdresseArrivee(), source.getHeureDepart(),
+                                            source.getHeureArrivee(), source.getPreferences(),
+                                            source.getGroupe());
+        copie.setLatitude(source.getLatitude());
+        copie.setLongitude(source.getLongitude());
+        copie.setRegion(source.getRegion());
+        return copie;
+    }
+
+    /**
+     * Obtient les statistiques de l'index.
+     *
+     * @return Map des statistiques
+     */
+    public Map<String, Object> getStatistiques() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Etat courant = etat;
+        stats.put("charge", courant != null);
+        stats.put("points", courant == null ? 0 : courant.arbre.taille());
+        stats.put("tampon", courant == null ? 0 : courant.tailleTampon());
+        stats.put("recherches", recherches.sum());
+        stats.put("reconstructions", reconstructions.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,157 @@
+package com.covoiturage.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accès à la configuration applicative (db.properties).
+ *
+ * Utilise le pattern Singleton: le fichier est lu une seule fois au démarrage.
+ * Fournit aussi des lectures typées tolérantes (valeur par défaut si la clé est
+ * absente ou mal formée).
+ */
+public class ConfigurationManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationManager.class);
+    private static final String FICHIER_CONFIGURATION = "db.properties";
+    private static ConfigurationManager instance;
+
+    private final Properties proprietes;
+
+    /**
+     * Constructeur privé (pattern Singleton).
+     */
+    private ConfigurationManager() {
+        this.proprietes = new Properties();
+
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(FICHIER_CONFIGURATION)) {
+            if (input == null) {
+                logger.warn("Fichier {} introuvable, configuration par défaut", FICHIER_CONFIGURATION);
+                return;
+            }
+            proprietes.load(input);
+            logger.info("Configuration applicative chargée ({} clés)", proprietes.size());
+        } catch (IOException e) {
+            logger.error("Erreur lors du chargement de " + FICHIER_CONFIGURATION, e);
+        }
+    }
+
+    /**
+     * Obtient l'instance unique du gestionnaire.
+     *
+     * @return Instance du ConfigurationManager
+     */
+    public static synchronized ConfigurationManager getInstance() {
+        if (instance == null) {
+            instance = new ConfigurationManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Extrait les propriétés commençant par un préfixe, préfixe retiré.
+     *
+     * Exemple: sousEnsemble("optimization.simulated.annealing.") renvoie
+     * {iterations=1000, coolingRate=0, ...}
+     *
+     * @param prefixe Préfixe des clés (point final compris)
+     * @return Nouvelles propriétés, éventuellement vides
+     */
+    public Properties sousEnsemble(String prefixe) {
+        Properties resultat = new Properties();
+        for (String cle : proprietes.stringPropertyNames()) {
+            if (cle.startsWith(prefixe)) {
+                resultat.setProperty(cle.substring(prefixe.length()), proprietes.getProperty(cle));
+            }
+        }
+        return resultat;
+    }
+
+    public String getString(String cle, String defaut) {
+        return proprietes.getProperty(cle, defaut);
+    }
+
+    public int getInt(String cle, int defaut) {
+        return lireInt(proprietes, cle, defaut);
+    }
+
+    public long getLong(String cle, long defaut) {
+        return lireLong(proprietes, cle, defaut);
+    }
+
+    public double getDouble(String cle, double defaut) {
+        return lireDouble(proprietes, cle, defaut);
+    }
+
+    public boolean getBoolean(String cle, boolean defaut) {
+        String valeur = proprietes.getProperty(cle);
+        return valeur == null || valeur.trim().isEmpty() ? defaut : Boolean.parseBoolean(valeur.trim());
+    }
+
+    /**
+     * Lit un entier dans des propriétés.
+     *
+     * @param proprietes Les propriétés
+     * @param cle La clé
+     * @param defaut Valeur si la clé est absente ou invalide
+     * @return La valeur lue
+     */
+    public static int lireInt(Properties proprietes, String cle, int defaut) {
+        String valeur = proprietes.getProperty(cle);
+        if (valeur == null || valeur.trim().isEmpty()) {
+            return defaut;
+        }
+        try {
+            return Integer.parseInt(valeur.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Valeur entière invalide pour {}: '{}', utilisation de {}", cle, valeur, defaut);
+            return defaut;
+        }
+    }
+
+    /**
+     * Lit un entier long dans des propriétés.
+     *
+     * @param proprietes Les propriétés
+     * @param cle La clé
+     * @param defaut Valeur si la clé est absente ou invalide
+     * @return La valeur lue
+     */
+    public static long lireLong(Properties proprietes, String cle, long defaut) {
+        String valeur = proprietes.getProperty(cle);
+        if (valeur == null || valeur.trim().isEmpty()) {
+            return defaut;
+        }
+        try {
+            return Long.parseLong(valeur.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Valeur entière invalide pour {}: '{}', utilisation de {}", cle, valeur, defaut);
+            return defaut;
+        }
+    }
+
+    /**
+     * Lit un réel dans des propriétés.
+     *
+     * @param proprietes Les propriétés
+     * @param cle La clé
+     * @param defaut Valeur si la clé est absente ou invalide
+     * @return La valeur lue
+     */
+    public static double lireDouble(Properties proprietes, String cle, double defaut) {
+        String valeur = proprietes.getProperty(cle);
+        if (valeur == null || valeur.trim().isEmpty()) {
+            return defaut;
+        }
+        try {
+            return Double.parseDouble(valeur.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Valeur réelle invalide pour {}: '{}', utilisation de {}", cle, valeur, defaut);
+            return defaut;
+        }
+    }
+}
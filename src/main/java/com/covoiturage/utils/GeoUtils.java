@@ -0,0 +1,149 @@
+package com.covoiturage.utils;
+
+import java.util.Locale;
+
+import com.covoiturage.models.Utilisateur;
+
+/**
+ * Fonctions géographiques partagées par les algorithmes et les services.
+ *
+ * Centralise la formule de Haversine qui était dupliquée dans chaque algorithme.
+ */
+public final class GeoUtils {
+
+    /** Rayon moyen de la Terre en kilomètres. */
+    public static final double RAYON_TERRE_KM = 6371.0;
+
+    private GeoUtils() {}
+
+    /**
+     * Indique si un utilisateur possède des coordonnées GPS exploitables.
+     *
+     * @param utilisateur L'utilisateur
+     * @return true si latitude et longitude sont renseignées
+     */
+    public static boolean aCoordonnees(Utilisateur utilisateur) {
+        return utilisateur.getLatitude() != null && utilisateur.getLongitude() != null;
+    }
+
+    /**
+     * Normalise une adresse pour la comparaison (casse et espaces).
+     *
+     * @param adresse Adresse saisie
+     * @return L'adresse normalisée, ou null si elle est vide
+     */
+    public static String normaliserAdresse(String adresse) {
+        if (adresse == null || adresse.trim().isEmpty()) {
+            return null;
+        }
+        return adresse.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Calcule la distance entre deux points GPS avec la formule de Haversine.
+     *
+     * @param lat1 Latitude du point 1
+     * @param lon1 Longitude du point 1
+     * @param lat2 Latitude du point 2
+     * @param lon2 Longitude du point 2
+     * @return Distance en kilomètres
+     */
+    public static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
+
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+
+        return RAYON_TERRE_KM * c;
+    }
+
+    /**
+     * Calcule la distance de Haversine entre les points de départ de deux utilisateurs.
+     *
+     * @param u1 Premier utilisateur (doit avoir des coordonnées)
+     * @param u2 Second utilisateur (doit avoir des coordonnées)
+     * @return Distance en kilomètres
+     */
+    public static double haversine(Utilisateur u1, Utilisateur u2) {
+        return haversine(u1.getLatitude(), u1.getLongitude(), u2.getLatitude(), u2.getLongitude());
+    }
+
+    /**
+     * Lit une emprise de carte au format "ouest,sud,est,nord" (celui de
+     * L.LatLngBounds.toBBoxString).
+     *
+     * @param bbox Emprise reçue en paramètre
+     * @return {ouest, sud, est, nord}, ou null si elle est mal formée
+     */
+    public static double[] lireEmprise(String bbox) {
+        return lireEmprise(bbox, false);
+    }
+
+    /**
+     * Lit une emprise de carte au format "ouest,sud,est,nord".
+     *
+     * @param bbox Emprise reçue en paramètre
+     * @param traverseAntimeridien true pour accepter ouest > est (emprise à cheval
+     *        sur l'antiméridien)
+     * @return {ouest, sud, est, nord}, ou null si elle est mal formée
+     */
+    public static double[] lireEmprise(String bbox, boolean traverseAntimeridien) {
+        String[] parties = bbox.split(",");
+        if (parties.length != 4) {
+            return null;
+        }
+        double[] emprise = new double[4];
+        try {
+            for (int k = 0; k < 4; k++) {
+                emprise[k] = Double.parseDouble(parties[k].trim());
+                if (!Double.isFinite(emprise[k])) {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        boolean longitudes = traverseAntimeridien || emprise[0] <= emprise[2];
+        return longitudes && emprise[1] <= emprise[3] ? emprise : null;
+    }
+
+    /**
+     * Calcule un rectangle englobant le disque de rayon donné autour d'un point,
+     * pour pré-filtrer une recherche par distance sur un index spatial.
+     *
+     * Le rectangle est élargi de la flèche des arcs de parallèle (un côté est-ouest
+     * suivi en géodésique s'écarte du parallèle vers le pôle). Près des pôles ou
+     * de l'antiméridien, il couvre toutes les longitudes.
+     *
+     * @param latitude Latitude du centre
+     * @param longitude Longitude du centre
+     * @param rayonKm Rayon en kilomètres
+     * @return {ouest, sud, est, nord}, dans le même ordre que lireEmprise
+     */
+    public static double[] empriseAutour(double latitude, double longitude, double rayonKm) {
+        double deltaLat = Math.toDegrees(rayonKm / RAYON_TERRE_KM);
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        double ouest = -180.0;
+        double est = 180.0;
+        double marge = 0.0;
+        if (Math.abs(latitude) + deltaLat < 89.0) {
+            double deltaLon = Math.toDegrees(rayonKm / (RAYON_TERRE_KM * cosLat));
+            if (longitude - deltaLon >= -180.0 && longitude + deltaLon <= 180.0) {
+                ouest = longitude - deltaLon;
+                est = longitude + deltaLon;
+                double largeur = Math.toRadians(2 * deltaLon);
+                marge = Math.toDegrees(largeur * largeur / 16);
+            }
+        }
+        return new double[] {
+            ouest,
+            Math.max(-90.0, latitude - deltaLat - marge),
+            est,
+            Math.min(90.0, latitude + deltaLat + marge)
+        };
+    }
+}
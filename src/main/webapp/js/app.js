@@ -5,6 +5,13 @@
 
 const API_BASE_URL = '/covoiturage/api';
 
+// Liste des utilisateurs paginée côté serveur
+const TAILLE_PAGE_UTILISATEURS = 50;
+let pageUtilisateurs = 0;
+
+// Passagers proposés: les plus proches du départ du conducteur du véhicule
+const PASSAGERS_CANDIDATS = 50;
+
 // ============================================
 // INITIALISATION
 // ============================================
@@ -31,6 +38,14 @@ function initEventListeners() {
     
     // Form optimisation
     document.getElementById('form-optimisation').addEventListener('submit', optimiserTrajet);
+    document.getElementById('vehiculeId').addEventListener('change', chargerPassagers);
+    
+    // Recherche du conducteur par nom
+    let minuterieRecherche = null;
+    document.getElementById('conducteurRecherche').addEventListener('input', event => {
+        clearTimeout(minuterieRecherche);
+        minuterieRecherche = setTimeout(() => rechercherConducteurs(event.target.value), 300);
+    });
 }
 
 // ============================================
@@ -62,11 +77,19 @@ function showTab(tabName) {
 // ============================================
 async function chargerUtilisateurs() {
     try {
-        const response = await fetch(`${API_BASE_URL}/utilisateurs`);
+        const response = await fetch(
+            `${API_BASE_URL}/utilisateurs?page=${pageUtilisateurs}&taille=${TAILLE_PAGE_UTILISATEURS}`);
         const utilisateurs = await response.json();
+        const total = parseInt(response.headers.get('X-Total-Count')) || 0;
+        
+        // La page courante a pu disparaître après une suppression
+        if (utilisateurs.length === 0 && pageUtilisateurs > 0) {
+            pageUtilisateurs = Math.max(0, Math.ceil(total / TAILLE_PAGE_UTILISATEURS) - 1);
+            return chargerUtilisateurs();
+        }
         
         afficherUtilisateurs(utilisateurs);
-        remplirSelectConducteurs(utilisateurs);
+        afficherPagination(total);
         
     } catch (error) {
         console.error('Erreur lors du chargement des utilisateurs:', error);
@@ -103,6 +126,19 @@ function afficherUtilisateurs(utilisateurs) {
     });
 }
 
+function afficherPagination(total) {
+    const pages = Math.max(1, Math.ceil(total / TAILLE_PAGE_UTILISATEURS));
+    document.getElementById('page-info').textContent =
+        `Page ${pageUtilisateurs + 1} / ${pages} (${total} utilisateurs)`;
+    document.getElementById('page-precedente').disabled = pageUtilisateurs === 0;
+    document.getElementById('page-suivante').disabled = pageUtilisateurs + 1 >= pages;
+}
+
+function changerPageUtilisateurs(delta) {
+    pageUtilisateurs = Math.max(0, pageUtilisateurs + delta);
+    chargerUtilisateurs();
+}
+
 async function ajouterUtilisateur(event) {
     event.preventDefault();
     
@@ -257,9 +293,25 @@ async function supprimerVehicule(id) {
 // ============================================
 // HELPERS - SELECTS
 // ============================================
-function remplirSelectConducteurs(utilisateurs) {
+async function rechercherConducteurs(nom) {
+    nom = nom.trim();
+    if (nom.length === 0) {
+        remplirSelectConducteurs([], 'Tapez le début d\'un nom');
+        return;
+    }
+    
+    try {
+        const response = await fetch(`${API_BASE_URL}/utilisateurs?nom=${encodeURIComponent(nom)}`);
+        remplirSelectConducteurs(await response.json(), 'Aucun utilisateur trouvé');
+    } catch (error) {
+        console.error('Erreur lors de la recherche des conducteurs:', error);
+    }
+}
+
+function remplirSelectConducteurs(utilisateurs, siVide) {
     const select = document.getElementById('conducteurId');
-    select.innerHTML = '<option value="">Sélectionner un utilisateur</option>';
+    const invite = utilisateurs.length > 0 ? 'Sélectionner un utilisateur' : siVide;
+    select.innerHTML = `<option value="">${invite}</option>`;
     
     utilisateurs.forEach(user => {
         const option = document.createElement('option');
@@ -282,12 +334,23 @@ function remplirSelectVehicules(vehicules) {
 }
 
 async function chargerPassagers() {
+    const container = document.getElementById('passagers-list');
+    const vehiculeId = document.getElementById('vehiculeId').value;
+    if (!vehiculeId) {
+        container.innerHTML = '<p>Sélectionnez un véhicule pour voir les passagers proches.</p>';
+        return;
+    }
+    
     try {
-        const response = await fetch(`${API_BASE_URL}/utilisateurs`);
+        const response = await fetch(
+            `${API_BASE_URL}/utilisateurs?vehiculeId=${vehiculeId}&k=${PASSAGERS_CANDIDATS}`);
         const utilisateurs = await response.json();
         
-        const container = document.getElementById('passagers-list');
         container.innerHTML = '';
+        if (!response.ok) {
+            container.innerHTML = `<p>${utilisateurs.error}</p>`;
+            return;
+        }
         
         utilisateurs.forEach(user => {
             const label = document.createElement('label');
@@ -7,6 +7,13 @@ let map;
 let markers = [];
 let routeLayer = null;
 let routingControl = null;
+let niveauxRoute = null;
+let coucheUtilisateurs = null;
+let requeteEmprise = 0;
+let minuteurEmprise = null;
+
+// En dessous de ce zoom, les utilisateurs sont regroupés en grappes par le serveur
+const ZOOM_DETAIL_UTILISATEURS = 15;
 
 // ============================================
 // INITIALISATION DE LA CARTE
@@ -23,6 +30,14 @@ function initMap() {
             minZoom: 3
         }).addTo(map);
         
+        // Utilisateurs visibles: seule l'emprise courante est demandée au serveur
+        coucheUtilisateurs = L.layerGroup().addTo(map);
+        map.on('moveend', () => {
+            clearTimeout(minuteurEmprise);
+            minuteurEmprise = setTimeout(chargerUtilisateursEmprise, 250);
+        });
+        chargerUtilisateursEmprise();
+        
         console.log('✅ Carte OpenStreetMap (Leaflet) initialisée');
     } catch (error) {
         console.error('❌ Erreur initialisation carte:', error);
@@ -35,6 +50,101 @@ document.addEventListener('DOMContentLoaded', () => {
     initMap();
 });
 
+// ============================================
+// UTILISATEURS DANS L'EMPRISE DE LA CARTE
+// ============================================
+async function chargerUtilisateursEmprise() {
+    if (map.getZoom() < ZOOM_DETAIL_UTILISATEURS) {
+        return chargerGrappesEmprise();
+    }
+    
+    const numero = ++requeteEmprise;
+    try {
+        const bbox = map.getBounds().toBBoxString();
+        const response = await fetch(`${API_BASE_URL}/utilisateurs?bbox=${bbox}`);
+        const utilisateurs = await response.json();
+        
+        // Une réponse plus récente a déjà été affichée
+        if (numero !== requeteEmprise || !Array.isArray(utilisateurs)) {
+            return;
+        }
+        
+        coucheUtilisateurs.clearLayers();
+        utilisateurs.forEach(user => {
+            L.circleMarker([user.latitude, user.longitude], {
+                radius: 5,
+                color: '#64748b',
+                fillColor: '#94a3b8',
+                fillOpacity: 0.8,
+                weight: 1
+            }).bindTooltip(user.nom).addTo(coucheUtilisateurs);
+        });
+        
+        if (response.headers.get('X-Resultats-Tronques')) {
+            console.warn(`⚠️ Emprise trop chargée: ${utilisateurs.length} utilisateurs affichés, zoomez pour voir les autres`);
+        }
+    } catch (error) {
+        console.error('❌ Erreur chargement des utilisateurs de l\'emprise:', error);
+    }
+}
+
+async function chargerGrappesEmprise() {
+    const numero = ++requeteEmprise;
+    try {
+        const bbox = map.getBounds().toBBoxString();
+        const zoom = map.getZoom();
+        const response = await fetch(`${API_BASE_URL}/utilisateurs/grappes?bbox=${bbox}&zoom=${zoom}`);
+        const grappes = await response.json();
+        
+        if (numero !== requeteEmprise || !Array.isArray(grappes)) {
+            return;
+        }
+        
+        coucheUtilisateurs.clearLayers();
+        grappes.forEach(grappe => {
+            const position = [grappe.latitude, grappe.longitude];
+            if (grappe.nombre === 1) {
+                L.circleMarker(position, {
+                    radius: 5,
+                    color: '#64748b',
+                    fillColor: '#94a3b8',
+                    fillOpacity: 0.8,
+                    weight: 1
+                }).addTo(coucheUtilisateurs);
+                return;
+            }
+            
+            // Taille du disque en fonction du nombre (échelle logarithmique)
+            const taille = Math.round(24 + 8 * Math.log10(grappe.nombre));
+            const icon = L.divIcon({
+                className: 'grappe-marker',
+                html: `<div style="
+                    background-color: rgba(100, 116, 139, 0.85);
+                    color: white;
+                    border-radius: 50%;
+                    width: ${taille}px;
+                    height: ${taille}px;
+                    display: flex;
+                    align-items: center;
+                    justify-content: center;
+                    font-size: 12px;
+                    font-weight: bold;
+                    border: 2px solid white;
+                ">${grappe.nombre}</div>`,
+                iconSize: [taille, taille],
+                iconAnchor: [taille / 2, taille / 2]
+            });
+            
+            // Un clic zoome sur la grappe
+            L.marker(position, { icon: icon })
+                .on('click', () => map.setView(position, Math.min(zoom + 2, ZOOM_DETAIL_UTILISATEURS)))
+                .addTo(coucheUtilisateurs);
+        });
+    } catch (error) {
+        console.error('❌ Erreur chargement des grappes:', error);
+    }
+}
+
 // ============================================
 // AFFICHAGE DU TRAJET
 // ============================================
@@ -61,14 +171,14 @@ function afficherTrajetSurCarte(trajet) {
     
     console.log(`📌 Affichage de ${utilisateurs.length} utilisateurs`);
     
-    // Afficher les marqueurs et la route
-    afficherMarqueurs(utilisateurs);
+    // Afficher les marqueurs et la route (tracé calculé par le serveur s'il existe)
+    afficherMarqueurs(utilisateurs, trajet.routePolyline);
 }
 
 // ============================================
 // AFFICHAGE DES MARQUEURS
 // ============================================
-function afficherMarqueurs(utilisateurs) {
+function afficherMarqueurs(utilisateurs, routePolyline) {
     const bounds = [];
     const routePoints = [];
     
@@ -133,14 +243,24 @@ function afficherMarqueurs(utilisateurs) {
             console.log(`   ✅ Marqueur ${index + 1} créé`);
             
         } else {
-            console.warn(`⚠️ Pas de coordonnées pour ${user.nom}, tentative de géocodage...`);
-            // Géocoder l'adresse si pas de coordonnées
-            geocoderAdresse(user.adresseDepart, index, user);
+            // Le géocodage est fait côté serveur à l'enregistrement de l'utilisateur
+            console.warn(`⚠️ Pas encore de coordonnées pour ${user.nom} (géocodage serveur en attente)`);
         }
     });
     
-    // Tracer une route qui suit les rues
-    if (routePoints.length > 1) {
+    // Tracé enregistré avec le trajet: aucun appel de routage côté client
+    const niveaux = lireNiveauxRoute(routePolyline);
+    if (niveaux) {
+        if (routeLayer) {
+            map.removeLayer(routeLayer);
+        }
+        niveauxRoute = niveaux;
+        routeLayer = L.polyline([], { color: '#2563eb', opacity: 0.8, weight: 5 }).addTo(map);
+        map.on('zoomend', redessinerRoute);
+        redessinerRoute();
+        console.log(`✅ Tracé enregistré affiché (${niveaux.length} niveau(x) de zoom)`);
+    } else if (routePoints.length > 1) {
+        // Trajet sans tracé enregistré: route qui suit les rues
         console.log(`🛣️ Création de la route avec ${routePoints.length} points`);
         
         // Supprimer l'ancienne route si elle existe
@@ -187,71 +307,74 @@ function afficherMarqueurs(utilisateurs) {
 }
 
 // ============================================
-// GÉOCODAGE D'ADRESSES avec Nominatim (OpenStreetMap)
+// TRACÉ ENREGISTRÉ (POLYLIGNES ENCODÉES)
 // ============================================
-async function geocoderAdresse(adresse, index, user) {
+
+/**
+ * Lit le document de tracé d'un trajet: {"niveaux":[{"zoomMax", "polyline"}, ...]},
+ * du niveau le plus simplifié au plus détaillé.
+ * @returns {Array|null} Niveaux décodés, ou null si le trajet n'a pas de tracé
+ */
+function lireNiveauxRoute(routePolyline) {
+    if (!routePolyline) {
+        return null;
+    }
     try {
-        // Utiliser l'API Nominatim (gratuite, OpenStreetMap)
-        const url = `https://nominatim.openstreetmap.org/search?format=json&q=${encodeURIComponent(adresse)}&limit=1`;
-        
-        const response = await fetch(url, {
-            headers: {
-                'User-Agent': 'Covoiturage-Optimisation-App/1.0'
-            }
-        });
-        
-        const data = await response.json();
-        
-        if (data && data.length > 0) {
-            const lat = parseFloat(data[0].lat);
-            const lng = parseFloat(data[0].lon);
-            const position = [lat, lng];
-            
-            // Mettre à jour les coordonnées de l'utilisateur
-            user.latitude = lat;
-            user.longitude = lng;
-            
-            // Créer une icône numérotée
-            const icon = L.divIcon({
-                className: 'custom-marker',
-                html: `<div style="
-                    background-color: #2563eb;
-                    color: white;
-                    border-radius: 50%;
-                    width: 32px;
-                    height: 32px;
-                    display: flex;
-                    align-items: center;
-                    justify-content: center;
-                    font-weight: bold;
-                    font-size: 14px;
-                    border: 2px solid white;
-                    box-shadow: 0 2px 5px rgba(0,0,0,0.3);
-                ">${index + 1}</div>`,
-                iconSize: [32, 32],
-                iconAnchor: [16, 16]
-            });
-            
-            const marker = L.marker(position, { icon: icon }).addTo(map);
-            
-            const popupContent = `
-                <div style="min-width: 200px;">
-                    <h3 style="margin: 0 0 10px 0; color: #2563eb;">${user.nom}</h3>
-                    <p style="margin: 5px 0;"><strong>📍 Départ:</strong><br>${user.adresseDepart}</p>
-                    <p style="margin: 5px 0;"><strong>🎯 Arrivée:</strong><br>${user.adresseArrivee}</p>
-                </div>
-            `;
-            marker.bindPopup(popupContent);
-            
-            markers.push(marker);
-            
-            console.log(`✅ Géocodé: ${adresse} → [${lat}, ${lng}]`);
-        } else {
-            console.warn(`⚠️ Adresse non trouvée: ${adresse}`);
+        const contenu = JSON.parse(routePolyline);
+        if (!contenu.niveaux || contenu.niveaux.length === 0) {
+            return null;
         }
+        // Décodage paresseux: un niveau n'est décodé qu'à son premier affichage
+        return contenu.niveaux.map(niveau => ({ zoomMax: niveau.zoomMax, polyline: niveau.polyline, points: null }));
     } catch (error) {
-        console.error('❌ Erreur géocodage pour:', adresse, error);
+        console.warn('⚠️ Tracé enregistré illisible, routage client utilisé', error);
+        return null;
+    }
+}
+
+/**
+ * Affiche le niveau de simplification adapté au zoom courant.
+ */
+function redessinerRoute() {
+    if (!routeLayer || !niveauxRoute) {
+        return;
+    }
+    const zoom = map.getZoom();
+    const niveau = niveauxRoute.find(n => zoom <= n.zoomMax) || niveauxRoute[niveauxRoute.length - 1];
+    if (!niveau.points) {
+        niveau.points = decoderPolyline(niveau.polyline);
+    }
+    routeLayer.setLatLngs(niveau.points);
+}
+
+/**
+ * Décode une polyligne au format "encoded polyline" (précision 1e-5).
+ * @returns {Array} Points [lat, lng]
+ */
+function decoderPolyline(encode) {
+    const points = [];
+    let index = 0;
+    let lat = 0;
+    let lng = 0;
+    
+    const lireValeur = () => {
+        let resultat = 0;
+        let decalage = 0;
+        let octet;
+        do {
+            octet = encode.charCodeAt(index++) - 63;
+            resultat |= (octet & 0x1f) << decalage;
+            decalage += 5;
+        } while (octet >= 0x20);
+        return (resultat & 1) ? ~(resultat >> 1) : (resultat >> 1);
+    };
+    
+    while (index < encode.length) {
+        lat += lireValeur();
+        lng += lireValeur();
+        points.push([lat / 1e5, lng / 1e5]);
     }
+    return points;
 }
 
 // ============================================
@@ -271,6 +394,8 @@ function effacerMarqueurs() {
         map.removeLayer(routeLayer);
         routeLayer = null;
     }
+    map.off('zoomend', redessinerRoute);
+    niveauxRoute = null;
     
     if (routingControl) {
         map.removeControl(routingControl);
@@ -333,7 +458,6 @@ window.initMap = initMap;
 window.afficherTrajetSurCarte = afficherTrajetSurCarte;
 window.afficherMarqueurs = afficherMarqueurs;
 window.effacerMarqueurs = effacerMarqueurs;
-window.geocoderAdresse = geocoderAdresse;
 window.calculerDistance = calculerDistance;
 window.centrerSurAdresse = centrerSurAdresse;
 window.afficherDeuxTrajets = afficherDeuxTrajets;
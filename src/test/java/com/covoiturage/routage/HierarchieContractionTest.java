@@ -0,0 +1,151 @@
+package com.covoiturage.routage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compare les requêtes de la hiérarchie de contraction à un Dijkstra sur le
+ * graphe d'origine.
+ */
+public class HierarchieContractionTest {
+
+    private static final int COTE = 12;
+    private static final double TOLERANCE = 1e-6;
+
+    private static GrapheRoutier graphe;
+    private static HierarchieContraction hierarchie;
+
+    @BeforeClass
+    public static void construire() throws IOException {
+        // Grille de rues perturbée, vitesses variées, quelques sens uniques et rues absentes
+        Random aleatoire = new Random(42);
+        StringBuilder fichier = new StringBuilder();
+        for (int i = 0; i < COTE; i++) {
+            for (int j = 0; j < COTE; j++) {
+                fichier.append(String.format(Locale.ROOT, "N %d %.6f %.6f%n", i * COTE + j,
+                    36.80 + i * 0.002 + aleatoire.nextDouble() * 0.0005,
+                    10.18 + j * 0.002 + aleatoire.nextDouble() * 0.0005));
+            }
+        }
+        for (int i = 0; i < COTE; i++) {
+            for (int j = 0; j < COTE; j++) {
+                int v = i * COTE + j;
+                if (j + 1 < COTE && aleatoire.nextDouble() > 0.1) {
+                    fichier.append(arc(aleatoire, v, v + 1));
+                }
+                if (i + 1 < COTE && aleatoire.nextDouble() > 0.1) {
+                    fichier.append(arc(aleatoire, v, v + COTE));
+                }
+            }
+        }
+        graphe = GrapheRoutier.charger(
+            new ByteArrayInputStream(fichier.toString().getBytes(StandardCharsets.UTF_8)));
+        hierarchie = HierarchieContraction.construire(graphe);
+    }
+
+    private static String arc(Random aleatoire, int u, int v) {
+        boolean inverse = aleatoire.nextBoolean();
+        return String.format(Locale.ROOT, "A %d %d %.1f %.1f %d%n", inverse ? v : u, inverse ? u : v,
+                             150 + aleatoire.nextDouble() * 150, 20 + aleatoire.nextDouble() * 60,
+                             aleatoire.nextDouble() < 0.2 ? 1 : 0);
+    }
+
+    @Test
+    public void plusieursVersPlusieursEgaleDijkstra() {
+        int n = graphe.getNombreNoeuds();
+        int[] sources = {0, 7, 40, 77, 100, n - 1};
+        int[] cibles = {3, 25, 64, 99, 120, n - 2, 0};
+        double[] temps = new double[sources.length * cibles.length];
+        double[] longueurs = new double[sources.length * cibles.length];
+        hierarchie.plusieursVersPlusieurs(sources, cibles, temps, longueurs);
+
+        for (int i = 0; i < sources.length; i++) {
+            double[][] attendu = dijkstra(sources[i]);
+            for (int j = 0; j < cibles.length; j++) {
+                int k = i * cibles.length + j;
+                assertEquals("temps " + sources[i] + " → " + cibles[j], attendu[0][cibles[j]], temps[k], TOLERANCE);
+                assertEquals("longueur " + sources[i] + " → " + cibles[j], attendu[1][cibles[j]], longueurs[k],
+                             TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void cheminSuitLesArcsEtEgaleDijkstra() {
+        int n = graphe.getNombreNoeuds();
+        Random aleatoire = new Random(7);
+        for (int essai = 0; essai < 50; essai++) {
+            int source = aleatoire.nextInt(n);
+            int cible = aleatoire.nextInt(n);
+            double attendu = dijkstra(source)[0][cible];
+            List<Integer> chemin = hierarchie.chemin(source, cible);
+
+            if (Double.isInfinite(attendu)) {
+                assertTrue("cible injoignable: chemin vide", chemin.isEmpty());
+                continue;
+            }
+            assertEquals(source, (int) chemin.get(0));
+            assertEquals(cible, (int) chemin.get(chemin.size() - 1));
+            double total = 0;
+            for (int k = 0; k + 1 < chemin.size(); k++) {
+                total += tempsArc(chemin.get(k), chemin.get(k + 1));
+            }
+            assertEquals("temps du chemin " + source + " → " + cible, attendu, total, TOLERANCE);
+        }
+    }
+
+    /** Plus court arc u → v du graphe d'origine (échoue s'il n'existe pas). */
+    private static double tempsArc(int u, int v) {
+        double meilleur = Double.POSITIVE_INFINITY;
+        for (int a = graphe.debutSortants(u); a < graphe.finSortants(u); a++) {
+            if (graphe.cible(a) == v) {
+                meilleur = Math.min(meilleur, graphe.tempsSecondes(a));
+            }
+        }
+        assertTrue("arc " + u + " → " + v + " absent du graphe", meilleur < Double.POSITIVE_INFINITY);
+        return meilleur;
+    }
+
+    /** Temps minimal et longueur du chemin correspondant depuis une source. */
+    private static double[][] dijkstra(int source) {
+        int n = graphe.getNombreNoeuds();
+        double[] temps = new double[n];
+        double[] longueurs = new double[n];
+        Arrays.fill(temps, Double.POSITIVE_INFINITY);
+        Arrays.fill(longueurs, Double.POSITIVE_INFINITY);
+        temps[source] = 0;
+        longueurs[source] = 0;
+
+        PriorityQueue<double[]> file = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        file.add(new double[] {0, source});
+        while (!file.isEmpty()) {
+            double[] tete = file.poll();
+            int u = (int) tete[1];
+            if (tete[0] > temps[u]) {
+                continue;
+            }
+            for (int a = graphe.debutSortants(u); a < graphe.finSortants(u); a++) {
+                int v = graphe.cible(a);
+                double t = temps[u] + graphe.tempsSecondes(a);
+                if (t < temps[v]) {
+                    temps[v] = t;
+                    longueurs[v] = longueurs[u] + graphe.longueurMetres(a);
+                    file.add(new double[] {t, v});
+                }
+            }
+        }
+        return new double[][] {temps, longueurs};
+    }
+}
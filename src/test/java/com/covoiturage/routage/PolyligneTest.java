@@ -0,0 +1,96 @@
+package com.covoiturage.routage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Allers-retours d'encodage des tracés: polylignes texte et géométrie compacte.
+ */
+public class PolyligneTest {
+
+    /** Demi-unité de la précision 1e-5° des deux formats. */
+    private static final double TOLERANCE = 0.5e-5 + 1e-12;
+
+    private static List<double[]> trace(long graine, int nombre) {
+        Random aleatoire = new Random(graine);
+        List<double[]> points = new ArrayList<>(nombre);
+        double lat = 36.8;
+        double lon = 10.18;
+        for (int k = 0; k < nombre; k++) {
+            lat += (aleatoire.nextDouble() - 0.3) * 0.001;
+            lon += (aleatoire.nextDouble() - 0.3) * 0.001;
+            points.add(new double[] {lat, lon});
+        }
+        return points;
+    }
+
+    private static void assertMemesPoints(List<double[]> attendus, List<double[]> obtenus) {
+        assertEquals(attendus.size(), obtenus.size());
+        for (int k = 0; k < attendus.size(); k++) {
+            assertEquals("latitude " + k, attendus.get(k)[0], obtenus.get(k)[0], TOLERANCE);
+            assertEquals("longitude " + k, attendus.get(k)[1], obtenus.get(k)[1], TOLERANCE);
+        }
+    }
+
+    @Test
+    public void encoderPuisDecoderRedonneLesPoints() {
+        List<double[]> points = trace(1, 500);
+        points.add(new double[] {-33.86785, 151.20732});
+        points.add(new double[] {0.0, -179.99999});
+        assertMemesPoints(points, Polyligne.decoder(Polyligne.encoder(points)));
+    }
+
+    @Test
+    public void exempleDeReference() {
+        // Exemple de la documentation du format "encoded polyline"
+        List<double[]> points = Arrays.asList(new double[] {38.5, -120.2}, new double[] {40.7, -120.95},
+                                              new double[] {43.252, -126.453});
+        assertEquals("_p~iF~ps|U_ulLnnqC_mqNvxq`@", Polyligne.encoder(points));
+        assertMemesPoints(points, Polyligne.decoder("_p~iF~ps|U_ulLnnqC_mqNvxq`@"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chaineTronqueeRefusee() {
+        String encode = Polyligne.encoder(trace(2, 10));
+        Polyligne.decoder(encode.substring(0, encode.length() - 1));
+    }
+
+    @Test
+    public void geometrieCompacteRedonneChaqueNiveau() {
+        for (int nombre : new int[] {2, 3, 40, 3000}) {
+            List<Polyligne.Niveau> niveaux = Polyligne.niveaux(trace(nombre, nombre));
+            List<Polyligne.Niveau> decodes = GeometrieCompacte.decoder(GeometrieCompacte.encoder(niveaux));
+
+            assertEquals(niveaux.size(), decodes.size());
+            for (int l = 0; l < niveaux.size(); l++) {
+                assertEquals(niveaux.get(l).getZoomMax(), decodes.get(l).getZoomMax());
+                assertMemesPoints(niveaux.get(l).getPoints(), decodes.get(l).getPoints());
+            }
+            assertEquals(Polyligne.document(decodes),
+                         GeometrieCompacte.versDocument(GeometrieCompacte.encoder(niveaux)));
+        }
+    }
+
+    @Test
+    public void niveauxEmboitesDuPlusGrossierAuPlusFin() {
+        List<Polyligne.Niveau> niveaux = Polyligne.niveaux(trace(3, 2000));
+        for (int l = 1; l < niveaux.size(); l++) {
+            assertTrue(niveaux.get(l).getZoomMax() > niveaux.get(l - 1).getZoomMax());
+            assertTrue(niveaux.get(l).getPoints().containsAll(niveaux.get(l - 1).getPoints()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void versionInconnueRefusee() {
+        byte[] octets = GeometrieCompacte.encoder(Polyligne.niveaux(trace(4, 100)));
+        octets[0] = (byte) (GeometrieCompacte.VERSION + 1);
+        GeometrieCompacte.decoder(octets);
+    }
+}
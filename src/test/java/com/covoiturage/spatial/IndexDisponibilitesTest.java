@@ -0,0 +1,128 @@
+package com.covoiturage.spatial;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.covoiturage.models.Vehicule;
+
+/**
+ * Compare l'arbre d'intervalles et l'index des disponibilités à un parcours linéaire.
+ */
+public class IndexDisponibilitesTest {
+
+    private static final int SECONDES_JOUR = 24 * 3600;
+
+    private static Vehicule vehicule(long id, Random aleatoire) {
+        LocalTime debut = null;
+        LocalTime fin = null;
+        if (aleatoire.nextDouble() > 0.1) {
+            int a = aleatoire.nextInt(SECONDES_JOUR);
+            int b = aleatoire.nextInt(SECONDES_JOUR);
+            debut = LocalTime.ofSecondOfDay(Math.min(a, b));
+            fin = LocalTime.ofSecondOfDay(Math.max(a, b));
+        }
+        return new Vehicule(id, id, "V-" + id, 4, debut, fin, aleatoire.nextDouble() > 0.15);
+    }
+
+    @Test
+    public void arbreIntervallesEgaleParcoursLineaire() {
+        Random aleatoire = new Random(3);
+        for (int n : new int[] {0, 1, 2, 7, 100, 3000}) {
+            int[] debuts = new int[n];
+            int[] fins = new int[n];
+            for (int i = 0; i < n; i++) {
+                // Plage resserrée: beaucoup de débuts et de fins égaux
+                int a = aleatoire.nextInt(200);
+                int b = aleatoire.nextInt(200);
+                debuts[i] = Math.min(a, b);
+                fins[i] = Math.max(a, b);
+            }
+            ArbreIntervalles arbre = ArbreIntervalles.construire(debuts, fins);
+            assertEquals(n, arbre.taille());
+
+            for (int t1 = 0; t1 < 200; t1 += 7) {
+                for (int t2 = t1; t2 < 200; t2 += 11) {
+                    Set<Integer> attendus = new TreeSet<>();
+                    for (int i = 0; i < n; i++) {
+                        if (debuts[i] <= t1 && fins[i] >= t2) {
+                            attendus.add(i);
+                        }
+                    }
+                    List<Integer> trouves = new ArrayList<>();
+                    arbre.couvrant(t1, t2, trouves::add);
+                    assertEquals(attendus.size(), trouves.size());
+                    assertEquals(attendus, new TreeSet<>(trouves));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void indexSuitEnregistrementsEtRetraits() {
+        Random aleatoire = new Random(4);
+        IndexDisponibilites index = new IndexDisponibilites(0.05);
+        Map<Long, Vehicule> reference = new HashMap<>();
+
+        List<Vehicule> initiaux = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            Vehicule v = vehicule(id, aleatoire);
+            initiaux.add(v);
+            reference.put(id, v);
+        }
+        index.initialiser(initiaux);
+
+        long prochainId = 1001;
+        for (int etape = 0; etape < 2000; etape++) {
+            double choix = aleatoire.nextDouble();
+            if (choix < 0.6) {
+                // Création ou modification
+                long id = choix < 0.3 ? prochainId++ : 1 + aleatoire.nextInt((int) prochainId - 1);
+                Vehicule v = vehicule(id, aleatoire);
+                reference.put(id, v);
+                index.enregistrer(v);
+            } else {
+                long id = 1 + aleatoire.nextInt((int) prochainId - 1);
+                reference.remove(id);
+                index.retirer(id);
+            }
+
+            if (etape % 100 == 0) {
+                verifier(index, reference, aleatoire);
+            }
+        }
+        verifier(index, reference, aleatoire);
+    }
+
+    private static void verifier(IndexDisponibilites index, Map<Long, Vehicule> reference, Random aleatoire) {
+        for (int essai = 0; essai < 20; essai++) {
+            int a = aleatoire.nextInt(SECONDES_JOUR);
+            int b = aleatoire.nextInt(SECONDES_JOUR);
+            LocalTime debut = LocalTime.ofSecondOfDay(Math.min(a, b));
+            LocalTime fin = LocalTime.ofSecondOfDay(Math.max(a, b));
+
+            Set<Long> attendus = new TreeSet<>();
+            for (Vehicule v : reference.values()) {
+                if (v.disponibleA(debut) && v.disponibleA(fin)) {
+                    attendus.add(v.getId());
+                }
+            }
+            List<Vehicule> trouves = index.disponiblesSur(debut, fin);
+            Set<Long> ids = new TreeSet<>();
+            for (Vehicule v : trouves) {
+                ids.add(v.getId());
+            }
+            assertEquals("aucun doublon", trouves.size(), ids.size());
+            assertEquals(debut + " - " + fin, attendus, ids);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.covoiturage.spatial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.covoiturage.models.Utilisateur;
+
+/**
+ * Cohérence des grappes après ajouts, déplacements et retraits, et recherche
+ * par emprise (cellules qui touchent l'emprise, antiméridien).
+ */
+public class IndexGrappesTest {
+
+    private IndexGrappes index;
+    private Map<Long, double[]> reference;
+
+    private static Utilisateur utilisateur(long id, double latitude, double longitude) {
+        Utilisateur u = new Utilisateur();
+        u.setId(id);
+        u.setLatitude(latitude);
+        u.setLongitude(longitude);
+        return u;
+    }
+
+    @Before
+    public void initialiser() {
+        Random aleatoire = new Random(5);
+        reference = new HashMap<>();
+        List<Utilisateur> utilisateurs = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            double[] position = {36.7 + aleatoire.nextDouble() * 0.4, 10.0 + aleatoire.nextDouble() * 0.4};
+            reference.put(id, position);
+            utilisateurs.add(utilisateur(id, position[0], position[1]));
+        }
+        index = IndexGrappes.getInstance();
+        index.initialiser(utilisateurs);
+    }
+
+    @Test
+    public void chaqueZoomCompteTousLesPointsApresEcritures() {
+        Random aleatoire = new Random(6);
+        for (int etape = 0; etape < 3000; etape++) {
+            long id = 1 + aleatoire.nextInt(1200);
+            if (aleatoire.nextDouble() < 0.7) {
+                double[] position = {36.7 + aleatoire.nextDouble() * 0.4, 10.0 + aleatoire.nextDouble() * 0.4};
+                reference.put(id, position);
+                index.placer(id, position[0], position[1]);
+            } else {
+                reference.remove(id);
+                index.retirer(id);
+            }
+        }
+
+        for (int zoom = 0; zoom <= IndexGrappes.ZOOM_MAX; zoom++) {
+            List<IndexGrappes.Grappe> grappes = index.rechercher(-85, -180, 85, 180, zoom);
+            int total = 0;
+            for (IndexGrappes.Grappe grappe : grappes) {
+                total += grappe.getNombre();
+                if (grappe.getNombre() == 1) {
+                    // Grappe d'un seul utilisateur: id et position exacte
+                    assertNotNull(grappe.getUtilisateurId());
+                    double[] position = reference.get(grappe.getUtilisateurId());
+                    assertNotNull("utilisateur retiré encore présent", position);
+                    assertEquals(position[0], grappe.getLatitude(), 0.0);
+                    assertEquals(position[1], grappe.getLongitude(), 0.0);
+                } else {
+                    assertNull(grappe.getUtilisateurId());
+                }
+            }
+            assertEquals("zoom " + zoom, reference.size(), total);
+        }
+    }
+
+    @Test
+    public void retirerToutVideLIndex() {
+        for (Long id : new ArrayList<>(reference.keySet())) {
+            index.retirer(id);
+        }
+        for (int zoom = 0; zoom <= IndexGrappes.ZOOM_MAX; zoom++) {
+            assertEquals(0, index.rechercher(-85, -180, 85, 180, zoom).size());
+        }
+    }
+
+    @Test
+    public void grappeGardeeTantQueSaCelluleToucheLEmprise() {
+        // Au zoom 3, la cellule de Tunis couvre environ 0° à 11,25° E et 32° à 41° N:
+        // l'emprise la touche sans contenir le centroïde des points
+        List<IndexGrappes.Grappe> grappes = index.rechercher(33, 1, 34, 2, 3);
+        assertEquals(1, grappes.size());
+        assertEquals(reference.size(), grappes.get(0).getNombre());
+    }
+
+    @Test
+    public void empriseACachevalSurLAntimeridien() {
+        index.placer(5001L, -17.7, 179.9);
+        index.placer(5002L, -17.8, -179.9);
+        int zoom = 10;
+
+        List<IndexGrappes.Grappe> ouestApresEst = index.rechercher(-18, 179.5, -17.5, -179.5, zoom);
+        List<IndexGrappes.Grappe> debordement = index.rechercher(-18, 179.5, -17.5, 180.5, zoom);
+        assertEquals(2, ouestApresEst.size());
+        assertEquals(2, debordement.size());
+        // 179,85° E est dans la cellule du point à 179,9° E (≈ 0,088° de large au zoom 10)
+        assertFalse(index.rechercher(-18, 179.5, -17.5, 179.85, zoom).isEmpty());
+    }
+}
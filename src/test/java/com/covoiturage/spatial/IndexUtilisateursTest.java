@@ -0,0 +1,139 @@
+package com.covoiturage.spatial;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.covoiturage.models.Utilisateur;
+
+/**
+ * Compare l'arbre R et l'index des utilisateurs (arbre + tampon) à un parcours linéaire.
+ */
+public class IndexUtilisateursTest {
+
+    private static final int RESULTATS_MAX = Integer.MAX_VALUE;
+
+    private static Utilisateur utilisateur(long id, double latitude, double longitude) {
+        Utilisateur u = new Utilisateur();
+        u.setId(id);
+        u.setNom("u" + id);
+        u.setLatitude(latitude);
+        u.setLongitude(longitude);
+        return u;
+    }
+
+    /** Rectangle aléatoire {latMin, lonMin, latMax, lonMax} autour de Tunis. */
+    private static double[] rectangle(Random aleatoire) {
+        double lat = 36.7 + aleatoire.nextDouble() * 0.3;
+        double lon = 10.0 + aleatoire.nextDouble() * 0.3;
+        return new double[] {lat, lon, lat + aleatoire.nextDouble() * 0.1, lon + aleatoire.nextDouble() * 0.1};
+    }
+
+    private static boolean dans(double latitude, double longitude, double[] r) {
+        return latitude >= r[0] && latitude <= r[2] && longitude >= r[1] && longitude <= r[3];
+    }
+
+    @Test
+    public void arbreREgaleParcoursLineaire() {
+        Random aleatoire = new Random(1);
+        for (int n : new int[] {0, 1, 15, 16, 17, 300, 5000}) {
+            double[] latitudes = new double[n];
+            double[] longitudes = new double[n];
+            for (int i = 0; i < n; i++) {
+                latitudes[i] = 36.7 + aleatoire.nextDouble() * 0.4;
+                longitudes[i] = 10.0 + aleatoire.nextDouble() * 0.4;
+            }
+            // Quelques doublons exacts
+            for (int i = 1; i < n; i += 50) {
+                latitudes[i] = latitudes[i - 1];
+                longitudes[i] = longitudes[i - 1];
+            }
+            ArbreR arbre = ArbreR.construire(latitudes, longitudes);
+            assertEquals(n, arbre.taille());
+
+            for (int essai = 0; essai < 100; essai++) {
+                double[] r = rectangle(aleatoire);
+                Set<Integer> attendus = new TreeSet<>();
+                for (int i = 0; i < n; i++) {
+                    if (dans(latitudes[i], longitudes[i], r)) {
+                        attendus.add(i);
+                    }
+                }
+                List<Integer> trouves = new ArrayList<>();
+                arbre.rechercher(r[0], r[1], r[2], r[3], trouves::add);
+                assertEquals("n=" + n, attendus.size(), trouves.size());
+                assertEquals("n=" + n, attendus, new TreeSet<>(trouves));
+            }
+        }
+    }
+
+    @Test
+    public void indexSuitAjoutsDeplacementsEtRetraits() {
+        Random aleatoire = new Random(2);
+        IndexUtilisateurs index = new IndexUtilisateurs(0.05);
+        Map<Long, Utilisateur> reference = new HashMap<>();
+
+        List<Utilisateur> initiaux = new ArrayList<>();
+        for (long id = 1; id <= 2000; id++) {
+            Utilisateur u = utilisateur(id, 36.7 + aleatoire.nextDouble() * 0.4, 10.0 + aleatoire.nextDouble() * 0.4);
+            initiaux.add(u);
+            reference.put(id, u);
+        }
+        index.initialiser(initiaux);
+
+        // Assez d'écritures pour passer par plusieurs reconstructions
+        long prochainId = 2001;
+        for (int etape = 0; etape < 3000; etape++) {
+            double choix = aleatoire.nextDouble();
+            long id = 1 + aleatoire.nextInt((int) prochainId - 1);
+            if (choix < 0.3) {
+                Utilisateur u = utilisateur(prochainId, 36.7 + aleatoire.nextDouble() * 0.4,
+                                            10.0 + aleatoire.nextDouble() * 0.4);
+                reference.put(prochainId++, u);
+                index.enregistrer(u);
+            } else if (choix < 0.7) {
+                double lat = 36.7 + aleatoire.nextDouble() * 0.4;
+                double lon = 10.0 + aleatoire.nextDouble() * 0.4;
+                if (reference.containsKey(id)) {
+                    index.deplacer(id, lat, lon);
+                    reference.put(id, utilisateur(id, lat, lon));
+                }
+            } else {
+                reference.remove(id);
+                index.retirer(id);
+            }
+
+            if (etape % 100 == 0) {
+                verifier(index, reference, aleatoire);
+            }
+        }
+        verifier(index, reference, aleatoire);
+    }
+
+    private static void verifier(IndexUtilisateurs index, Map<Long, Utilisateur> reference, Random aleatoire) {
+        for (int essai = 0; essai < 20; essai++) {
+            double[] r = rectangle(aleatoire);
+            Set<Long> attendus = new TreeSet<>();
+            for (Utilisateur u : reference.values()) {
+                if (dans(u.getLatitude(), u.getLongitude(), r)) {
+                    attendus.add(u.getId());
+                }
+            }
+            List<Utilisateur> trouves = index.rechercher(r[0], r[1], r[2], r[3], RESULTATS_MAX);
+            Set<Long> ids = new TreeSet<>();
+            for (Utilisateur u : trouves) {
+                ids.add(u.getId());
+            }
+            assertEquals("aucun doublon", trouves.size(), ids.size());
+            assertEquals(attendus, ids);
+        }
+    }
+}